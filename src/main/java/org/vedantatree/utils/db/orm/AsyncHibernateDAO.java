@@ -0,0 +1,506 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
+import org.vedantatree.utils.StringUtils;
+import org.vedantatree.utils.Utilities;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Asynchronous facade of HibernateDAO. Methods submit the DAO call to a dedicated executor, and return a Future of its
+ * result, so that calling threads, like request threads of web tier, are not blocked on database.
+ * 
+ * Each call is executed as its own unit of work, using HibernateUtil.scopedTask. So session is opened and closed by
+ * executor thread for each call, and write calls are executed in a transaction. Objects returned are detached, and
+ * associations which are needed after the call should be initialized using a FetchPlan.
+ * 
+ * Executor has a fixed number of threads, configured using 'hibernate.util.async.threads' property (default 10), which
+ * should not be more than size of connection pool. Calls waiting for a thread are queued, up to
+ * 'hibernate.util.async.queuesize' property (default 100). If queue is full, call is rejected with DAOException
+ * immediately, so that a slow database pushes back on callers instead of piling up the work. Rejections and other
+ * counters are available for monitoring.
+ * 
+ * Completion can be awaited on the returned Future, or notified to an IAsyncCallback passed with the call, so that
+ * caller does not need to block or poll. Tree targets Java 6, where CompletableFuture is not available.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public abstract class AsyncHibernateDAO
+{
+
+	private static Log							LOGGER				= LogFactory.getLog( AsyncHibernateDAO.class );
+
+	private final static String					THREADS_PRP			= "hibernate.util.async.threads";
+	private final static String					QUEUE_SIZE_PRP		= "hibernate.util.async.queuesize";
+
+	private static final ThreadPoolExecutor		executor;
+
+	private static final AtomicLong				submittedCount		= new AtomicLong();
+	private static final AtomicLong				rejectedCount		= new AtomicLong();
+	private static final AtomicLong				completedCount		= new AtomicLong();
+	private static final AtomicLong				failedCount			= new AtomicLong();
+
+	/**
+	 * Total and maximum time spent by calls in queue, in milliseconds
+	 */
+	private static final AtomicLong				totalQueueTime		= new AtomicLong();
+	private static final AtomicLong				maxQueueTime		= new AtomicLong();
+
+	static
+	{
+		HibernateUtil.ensurePropertiesLoaded();
+		int threads = HibernateUtil.getIntegerProperty( THREADS_PRP, 10 );
+		int queueSize = HibernateUtil.getIntegerProperty( QUEUE_SIZE_PRP, 100 );
+		if( threads <= 0 || queueSize <= 0 )
+		{
+			// failing here would leave the class unusable till JVM restarts, so defaults are used instead
+			LOGGER.error( "Number of threads and queue size of async DAO executor should be more than zero, using "
+					+ "the defaults. threads[" + threads + "] queueSize[" + queueSize + "]" );
+			threads = threads <= 0 ? 10 : threads;
+			queueSize = queueSize <= 0 ? 100 : queueSize;
+		}
+		executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue(
+				queueSize ), new ThreadFactory()
+		{
+
+			private final AtomicInteger	threadNumber	= new AtomicInteger();
+
+			public Thread newThread( Runnable runnable )
+			{
+				Thread thread = new Thread( runnable, "hibernate-async-dao-" + threadNumber.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		}, new ThreadPoolExecutor.AbortPolicy() );
+		// idle threads are released, as database work may come in bursts
+		executor.allowCoreThreadTimeOut( true );
+		LOGGER.info( "async DAO executor initialized. threads[" + threads + "] queueSize[" + queueSize + "]" );
+	}
+
+	public static Future getObjectByIdAsync( final Serializable id, final Class clazz, final FetchPlan fetchPlan )
+			throws DAOException
+	{
+		return getObjectByIdAsync( id, clazz, fetchPlan, null );
+	}
+
+	/**
+	 * @param callback Notified when call completes, can be null
+	 */
+	public static Future getObjectByIdAsync( final Serializable id, final Class clazz, final FetchPlan fetchPlan,
+			final IAsyncCallback callback ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( id );
+		Utilities.assertNotNullArgument( clazz );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				Object object = HibernateUtil.getObjectById( id, clazz );
+				// object is returned by load, and may be a proxy which can not be initialized after session is closed
+				Hibernate.initialize( object );
+				if( fetchPlan != null )
+				{
+					HibernateUtil.initializeAssociations( object, fetchPlan );
+				}
+				return object;
+			}
+
+			public String toString()
+			{
+				return "getObjectById: id[" + id + "] class[" + clazz + "]";
+			}
+		}, false, callback );
+	}
+
+	public static Future getObjectsByQueryAsync( final String queryString, final Map<Object, Object> parameters,
+			final FetchPlan fetchPlan ) throws DAOException
+	{
+		return getObjectsByQueryAsync( queryString, parameters, fetchPlan, null );
+	}
+
+	/**
+	 * @param callback Notified when call completes, can be null
+	 */
+	public static Future getObjectsByQueryAsync( final String queryString, final Map<Object, Object> parameters,
+			final FetchPlan fetchPlan, final IAsyncCallback callback ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( queryString );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				List objects = HibernateUtil.getObjectsByQuery( queryString, parameters );
+				if( fetchPlan != null )
+				{
+					HibernateUtil.initializeAssociations( objects, fetchPlan );
+				}
+				return objects;
+			}
+
+			public String toString()
+			{
+				return "getObjectsByQuery: queryString[" + queryString + "]";
+			}
+		}, false, callback );
+	}
+
+	public static Future getPaginatedDataAsync( final String className, final String[] selectString,
+			final String whereClause, final int pageStartIndex, final int pageSize, final String orderBy,
+			final int totalRecords ) throws DAOException
+	{
+		return getPaginatedDataAsync( className, selectString, whereClause, pageStartIndex, pageSize, orderBy,
+				totalRecords, null );
+	}
+
+	/**
+	 * @param callback Notified when call completes, can be null
+	 */
+	public static Future getPaginatedDataAsync( final String className, final String[] selectString,
+			final String whereClause, final int pageStartIndex, final int pageSize, final String orderBy,
+			final int totalRecords, final IAsyncCallback callback ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( className );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return HibernateUtil.getPaginatedData( className, selectString, whereClause, pageStartIndex, pageSize,
+						orderBy, totalRecords );
+			}
+
+			public String toString()
+			{
+				return "getPaginatedData: className[" + className + "] pageStartIndex[" + pageStartIndex
+						+ "] pageSize[" + pageSize + "]";
+			}
+		}, false, callback );
+	}
+
+	public static Future getPaginatedDataAsync( final int pageStartIndex, final int pageSize,
+			final String completeHQL, final int totalRecords ) throws DAOException
+	{
+		return getPaginatedDataAsync( pageStartIndex, pageSize, completeHQL, totalRecords, null );
+	}
+
+	/**
+	 * @param callback Notified when call completes, can be null
+	 */
+	public static Future getPaginatedDataAsync( final int pageStartIndex, final int pageSize,
+			final String completeHQL, final int totalRecords, final IAsyncCallback callback ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( completeHQL );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return HibernateUtil.getPaginatedData( pageStartIndex, pageSize, completeHQL, totalRecords );
+			}
+
+			public String toString()
+			{
+				return "getPaginatedData: hql[" + completeHQL + "] pageStartIndex[" + pageStartIndex + "] pageSize["
+						+ pageSize + "]";
+			}
+		}, false, callback );
+	}
+
+	/**
+	 * @return Future of Integer
+	 */
+	public static Future getTotalNumberOfRecordsAsync( final String className, final String whereClause )
+			throws DAOException
+	{
+		return getTotalNumberOfRecordsAsync( className, whereClause, null );
+	}
+
+	/**
+	 * @param callback Notified when call completes, can be null
+	 * @return Future of Integer
+	 */
+	public static Future getTotalNumberOfRecordsAsync( final String className, final String whereClause,
+			final IAsyncCallback callback ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( className );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return new Integer( HibernateUtil.getTotalNumberOfRecords( className, whereClause ) );
+			}
+
+			public String toString()
+			{
+				return "getTotalNumberOfRecords: className[" + className + "] whereClause[" + whereClause + "]";
+			}
+		}, false, callback );
+	}
+
+	/**
+	 * Saves the given object in a transaction
+	 * 
+	 * @return Future of saved object
+	 */
+	public static Future saveAsync( final Object obj ) throws DAOException
+	{
+		return saveAsync( obj, null );
+	}
+
+	/**
+	 * Saves the given object in a transaction
+	 * 
+	 * @param callback Notified when call completes, can be null
+	 * @return Future of saved object
+	 */
+	public static Future saveAsync( final Object obj, final IAsyncCallback callback ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( obj );
+
+		return submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return HibernateUtil.saveNewObject( obj );
+			}
+
+			public String toString()
+			{
+				return "saveNewObject: class[" + obj.getClass().getName() + "]";
+			}
+		}, true, callback );
+	}
+
+	/**
+	 * Submits the given DAO work to executor, to be executed as its own unit of work
+	 * 
+	 * @param work Work to execute, using HibernateUtil or HibernateDAO
+	 * @param transactional true if work should be executed in a transaction
+	 * @return Future of value returned by work. Exceptions of work are thrown by its get, as cause of
+	 *         ExecutionException.
+	 * @throws DAOException If queue of executor is full, or executor is shut down
+	 */
+	public static Future submit( Callable work, boolean transactional ) throws DAOException
+	{
+		return submit( work, transactional, null );
+	}
+
+	/**
+	 * Submits the given DAO work to executor, and notifies the given callback when it completes
+	 * 
+	 * @param work Work to execute, using HibernateUtil or HibernateDAO
+	 * @param transactional true if work should be executed in a transaction
+	 * @param callback Notified with result or failure of work, after its unit of work has ended. Can be null.
+	 * @return Future of value returned by work
+	 * @throws DAOException If queue of executor is full, or executor is shut down. Callback is not called in this
+	 *         case.
+	 */
+	public static Future submit( Callable work, boolean transactional, IAsyncCallback callback ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( work );
+
+		try
+		{
+			Future future = executor.submit( new MonitoredTask( HibernateUtil.scopedTask( work, transactional ),
+					callback ) );
+			submittedCount.incrementAndGet();
+			return future;
+		}
+		catch( RejectedExecutionException e )
+		{
+			rejectedCount.incrementAndGet();
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+					"Async DAO executor is saturated or shut down, call is rejected. work[" + work + "] activeCount["
+							+ executor.getActiveCount() + "] queuedCount[" + executor.getQueue().size() + "]", e );
+			LOGGER.warn( de );
+			throw de;
+		}
+	}
+
+	/**
+	 * Stops accepting the new calls. Calls already submitted are completed.
+	 */
+	public static void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	public static long getSubmittedCount()
+	{
+		return submittedCount.get();
+	}
+
+	public static long getRejectedCount()
+	{
+		return rejectedCount.get();
+	}
+
+	public static long getCompletedCount()
+	{
+		return completedCount.get();
+	}
+
+	public static long getFailedCount()
+	{
+		return failedCount.get();
+	}
+
+	/**
+	 * @return Number of calls being executed
+	 */
+	public static int getActiveCount()
+	{
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return Number of calls waiting in queue
+	 */
+	public static int getQueuedCount()
+	{
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return Remaining capacity of queue, before calls are rejected
+	 */
+	public static int getRemainingQueueCapacity()
+	{
+		return executor.getQueue().remainingCapacity();
+	}
+
+	/**
+	 * @return Average time spent by calls in queue, in milliseconds
+	 */
+	public static double getAverageQueueTime()
+	{
+		long executed = completedCount.get() + failedCount.get();
+		return executed == 0 ? 0 : (double) totalQueueTime.get() / executed;
+	}
+
+	/**
+	 * @return Maximum time spent by a call in queue, in milliseconds
+	 */
+	public static long getMaxQueueTime()
+	{
+		return maxQueueTime.get();
+	}
+
+	public static String getStatus()
+	{
+		return "AsyncHibernateDAO: poolSize[" + executor.getMaximumPoolSize() + "] activeCount[" + getActiveCount()
+				+ "] queuedCount[" + getQueuedCount() + "] submittedCount[" + getSubmittedCount()
+				+ "] rejectedCount[" + getRejectedCount() + "] completedCount[" + getCompletedCount()
+				+ "] failedCount[" + getFailedCount() + "] averageQueueTime[" + getAverageQueueTime()
+				+ "] maxQueueTime[" + getMaxQueueTime() + "]";
+	}
+
+	/**
+	 * Records the queue time and outcome of a call
+	 */
+	private static final class MonitoredTask implements Callable
+	{
+
+		private final Callable			task;
+
+		private final IAsyncCallback	callback;
+
+		private final long				submitTime	= System.currentTimeMillis();
+
+		private MonitoredTask( Callable task, IAsyncCallback callback )
+		{
+			this.task = task;
+			this.callback = callback;
+		}
+
+		public Object call() throws Exception
+		{
+			long queueTime = System.currentTimeMillis() - submitTime;
+			totalQueueTime.addAndGet( queueTime );
+			long currentMax = maxQueueTime.get();
+			while( queueTime > currentMax && !maxQueueTime.compareAndSet( currentMax, queueTime ) )
+			{
+				// other call has updated the maximum meanwhile
+				currentMax = maxQueueTime.get();
+			}
+
+			Object result;
+			try
+			{
+				result = task.call();
+			}
+			catch( Exception e )
+			{
+				failedCount.incrementAndGet();
+				notifyFailure( e );
+				throw e;
+			}
+			catch( Error e )
+			{
+				failedCount.incrementAndGet();
+				notifyFailure( e );
+				throw e;
+			}
+			completedCount.incrementAndGet();
+			if( callback != null )
+			{
+				try
+				{
+					callback.onSuccess( result );
+				}
+				catch( RuntimeException e )
+				{
+					LOGGER.error( "Callback failed on success of async call. work[" + task + "]", e );
+				}
+			}
+			return result;
+		}
+
+		private void notifyFailure( Throwable cause )
+		{
+			if( callback == null )
+			{
+				return;
+			}
+			try
+			{
+				callback.onFailure( cause );
+			}
+			catch( RuntimeException e )
+			{
+				LOGGER.error( "Callback failed on failure of async call. work[" + task + "] cause[" + cause + "]", e );
+			}
+		}
+
+		public String toString()
+		{
+			return task.toString();
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Retry policy which retries up to a maximum number of attempts, with exponentially increasing delay. A random part
+ * is added to delay, so that writers which have conflicted with each other do not retry at the same time again.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class BackoffRetryPolicy implements IRetryPolicy
+{
+
+	private static Log						LOGGER		= LogFactory.getLog( BackoffRetryPolicy.class );
+
+	/**
+	 * Policy which never retries
+	 */
+	public static final BackoffRetryPolicy	NO_RETRY	= new BackoffRetryPolicy( 1, 0, 1 );
+
+	private static final Random				RANDOM		= new Random();
+
+	private final int						maxAttempts;
+
+	private final long						initialDelayMillis;
+
+	private final double					multiplier;
+
+	/**
+	 * @param maxAttempts Maximum number of attempts, including the first one
+	 * @param initialDelayMillis Delay before second attempt
+	 * @param multiplier Factor by which delay is increased for every next attempt
+	 */
+	public BackoffRetryPolicy( int maxAttempts, long initialDelayMillis, double multiplier )
+	{
+		if( maxAttempts < 1 || initialDelayMillis < 0 || multiplier < 1 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"maxAttempts should be at least 1, initialDelayMillis should not be negative and multiplier should be at least 1. maxAttempts["
+							+ maxAttempts + "] initialDelayMillis[" + initialDelayMillis + "] multiplier["
+							+ multiplier + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		this.maxAttempts = maxAttempts;
+		this.initialDelayMillis = initialDelayMillis;
+		this.multiplier = multiplier;
+	}
+
+	public long getRetryDelay( int attempt, DAOException failure )
+	{
+		if( attempt >= maxAttempts )
+		{
+			return -1;
+		}
+		long delay = (long) ( initialDelayMillis * Math.pow( multiplier, attempt - 1 ) );
+		if( delay <= 0 )
+		{
+			return 0;
+		}
+		// half of delay is fixed, and other half is random
+		long randomPart;
+		synchronized( RANDOM )
+		{
+			randomPart = (long) ( RANDOM.nextDouble() * ( delay / 2 + 1 ) );
+		}
+		return delay - delay / 2 + randomPart;
+	}
+
+	public int getMaxAttempts()
+	{
+		return maxAttempts;
+	}
+
+	public String toString()
+	{
+		return "BackoffRetryPolicy: maxAttempts[" + maxAttempts + "] initialDelayMillis[" + initialDelayMillis
+				+ "] multiplier[" + multiplier + "]";
+	}
+
+}
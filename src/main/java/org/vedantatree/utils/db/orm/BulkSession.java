@@ -0,0 +1,411 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.vedantatree.utils.StringUtils;
+import org.vedantatree.utils.Utilities;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Session for bulk processing jobs, like ETL, backed by Hibernate StatelessSession.
+ * 
+ * Stateless session does not have first level cache, dirty checking, cascades or interceptors. Objects are written
+ * to database as soon as these are inserted, updated or deleted, and objects read are not kept by session. So memory
+ * used by a job remains constant whatever is the number of rows, and there is no cost of snapshots and flush time
+ * dirty checks per row. Associations are not loaded lazily, and collections are neither loaded nor written.
+ * 
+ * Writes are batched by JDBC as per 'hibernate.jdbc.batch_size' setting of session factory, if id generation of
+ * entity allows it. Pending batch is executed on flush and commit.
+ * 
+ * Transaction is started with first operation and is committed by commit, after which next operation starts a new
+ * transaction. So long jobs should commit at intervals, to keep the transaction and undo size limited. Session should
+ * always be closed in finally block, which rolls back any uncommitted work. HibernateUtil.executeBulkWork can be used
+ * to get it done automatically.
+ * 
+ * Writes done with bulk session invalidate the query result cache of HibernateUtil on commit. Session is not thread
+ * safe.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class BulkSession
+{
+
+	private static Log					LOGGER		= LogFactory.getLog( BulkSession.class );
+
+	private final StatelessSession		statelessSession;
+
+	private Transaction					transaction;
+
+	/**
+	 * Names of entities written in current transaction, to invalidate the query result cache on commit. Null entry
+	 * means that written entities are not known, like for bulk HQL updates.
+	 */
+	private final Set					writtenEntityNames	= new HashSet();
+
+	private long						insertCount;
+
+	private long						updateCount;
+
+	private long						deleteCount;
+
+	private long						commitCount;
+
+	private boolean						closed;
+
+	BulkSession( StatelessSession statelessSession )
+	{
+		this.statelessSession = statelessSession;
+	}
+
+	/**
+	 * Inserts the given object
+	 * 
+	 * @return Generated or assigned identifier of object
+	 */
+	public Serializable insert( Object obj ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( obj );
+		ensureTransaction();
+		try
+		{
+			Serializable id = statelessSession.insert( obj );
+			insertCount++;
+			writtenEntityNames.add( getEntityName( obj ) );
+			return id;
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while inserting the object. obj[" + obj + "]", e );
+		}
+	}
+
+	/**
+	 * Inserts all the given objects
+	 * 
+	 * @return Number of objects inserted
+	 */
+	public int insertAll( Collection objects ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( objects );
+		for( Iterator iterator = objects.iterator(); iterator.hasNext(); )
+		{
+			insert( iterator.next() );
+		}
+		return objects.size();
+	}
+
+	/**
+	 * Updates the given object. All the columns are updated, as there is no snapshot to find the changed ones.
+	 */
+	public void update( Object obj ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( obj );
+		ensureTransaction();
+		try
+		{
+			statelessSession.update( obj );
+			updateCount++;
+			writtenEntityNames.add( getEntityName( obj ) );
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while updating the object. obj[" + obj + "]", e );
+		}
+	}
+
+	/**
+	 * Deletes the given object. Deletes are not cascaded to associated objects.
+	 */
+	public void delete( Object obj ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( obj );
+		ensureTransaction();
+		try
+		{
+			statelessSession.delete( obj );
+			deleteCount++;
+			writtenEntityNames.add( getEntityName( obj ) );
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while deleting the object. obj[" + obj + "]", e );
+		}
+	}
+
+	/**
+	 * @return Object for given id, or null if there is no such object
+	 */
+	public Object get( Class clazz, Serializable id ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( clazz );
+		Utilities.assertNotNullArgument( id );
+		ensureTransaction();
+		try
+		{
+			return statelessSession.get( clazz, id );
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while getting the object. class[" + clazz + "] id[" + id + "]", e );
+		}
+	}
+
+	/**
+	 * Returns an iterator over the results of given HQL query. Rows are read from database cursor as iteration
+	 * progresses, and nothing is kept by session, so it can be used to read any number of rows.
+	 * 
+	 * @param queryString HQL query
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @param fetchSize Number of rows to fetch from database in one round trip, zero or less to use driver default
+	 * @return Iterator over the results, which should be closed by caller
+	 */
+	public ScrollableResultIterator scroll( String queryString, Map<Object, Object> parameters, int fetchSize )
+			throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( queryString );
+		ensureTransaction();
+		try
+		{
+			Query query = statelessSession.createQuery( queryString );
+			HibernateUtil.setQueryParameters( query, queryString, parameters );
+			if( fetchSize > 0 )
+			{
+				query.setFetchSize( fetchSize );
+			}
+			// nothing to evict from stateless session
+			return new ScrollableResultIterator( query.scroll( ScrollMode.FORWARD_ONLY ), null );
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while scrolling the query. queryString[" + queryString + "]", e );
+		}
+	}
+
+	/**
+	 * Executes the given HQL update or delete query
+	 * 
+	 * @param queryString HQL update or delete query
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @return Number of rows updated or deleted
+	 */
+	public int executeUpdate( String queryString, Map<Object, Object> parameters ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( queryString );
+		ensureTransaction();
+		try
+		{
+			// pending batch should reach to database before the query
+			executeBatch();
+			Query query = statelessSession.createQuery( queryString );
+			HibernateUtil.setQueryParameters( query, queryString, parameters );
+			int count = query.executeUpdate();
+			writtenEntityNames.add( null );
+			return count;
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while executing the update. queryString[" + queryString + "]", e );
+		}
+	}
+
+	/**
+	 * Executes the pending JDBC batch, if any
+	 */
+	public void flush() throws DAOException
+	{
+		assertOpen();
+		try
+		{
+			executeBatch();
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while flushing the bulk session.", e );
+		}
+	}
+
+	/**
+	 * Executes the pending batch and commits the current transaction, if any. Next operation starts a new transaction.
+	 */
+	public void commit() throws DAOException
+	{
+		assertOpen();
+		if( transaction == null )
+		{
+			return;
+		}
+		try
+		{
+			executeBatch();
+			transaction.commit();
+			transaction = null;
+			commitCount++;
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while committing the bulk session.", e );
+		}
+		finally
+		{
+			// invalidated even if commit fails, as part of the batch may have been written
+			HibernateUtil.afterExternalWrite( writtenEntityNames );
+			writtenEntityNames.clear();
+		}
+		LOGGER.debug( "committed. " + this );
+	}
+
+	/**
+	 * Rolls back the current transaction, if any
+	 */
+	public void rollback() throws DAOException
+	{
+		assertOpen();
+		if( transaction == null )
+		{
+			return;
+		}
+		try
+		{
+			transaction.rollback();
+		}
+		catch( HibernateException e )
+		{
+			throw toDAOException( "Error while rolling back the bulk session.", e );
+		}
+		finally
+		{
+			transaction = null;
+			writtenEntityNames.clear();
+		}
+	}
+
+	/**
+	 * Closes the session. Uncommitted work, if any, is rolled back.
+	 */
+	public void close() throws DAOException
+	{
+		if( closed )
+		{
+			return;
+		}
+		try
+		{
+			if( transaction != null )
+			{
+				LOGGER.warn( "closing bulk session with uncommitted work, rolling back. " + this );
+				rollback();
+			}
+		}
+		finally
+		{
+			closed = true;
+			try
+			{
+				statelessSession.close();
+			}
+			catch( HibernateException e )
+			{
+				LOGGER.error( "Error while closing the bulk session.", e );
+				throw new DAOException( IErrorCodes.SESSION_CLOSE_ERROR, "Error while closing the bulk session.", e );
+			}
+		}
+		LOGGER.debug( "closed. " + this );
+	}
+
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	public long getInsertCount()
+	{
+		return insertCount;
+	}
+
+	public long getUpdateCount()
+	{
+		return updateCount;
+	}
+
+	public long getDeleteCount()
+	{
+		return deleteCount;
+	}
+
+	public long getCommitCount()
+	{
+		return commitCount;
+	}
+
+	/**
+	 * @return Underlying stateless session, for the operations not exposed by bulk session
+	 */
+	public StatelessSession getStatelessSession()
+	{
+		return statelessSession;
+	}
+
+	private void ensureTransaction() throws DAOException
+	{
+		assertOpen();
+		if( transaction == null )
+		{
+			try
+			{
+				transaction = statelessSession.beginTransaction();
+			}
+			catch( HibernateException e )
+			{
+				throw toDAOException( "Error while starting the transaction of bulk session.", e );
+			}
+		}
+	}
+
+	private void assertOpen()
+	{
+		if( closed )
+		{
+			throw new IllegalStateException( "Bulk session is already closed." );
+		}
+	}
+
+	private void executeBatch()
+	{
+		( (SessionImplementor) statelessSession ).getBatcher().executeBatch();
+	}
+
+	private static String getEntityName( Object obj )
+	{
+		return obj instanceof HibernateProxy ? ( (HibernateProxy) obj ).getHibernateLazyInitializer().getEntityName()
+				: obj.getClass().getName();
+	}
+
+	private static DAOException toDAOException( String message, HibernateException e )
+	{
+		LOGGER.error( message, e );
+		return new DAOException( IErrorCodes.DAO_ERROR, message + " error-message[" + e.getMessage() + "]", e );
+	}
+
+	public String toString()
+	{
+		return "BulkSession: inserts[" + insertCount + "] updates[" + updateCount + "] deletes[" + deleteCount
+				+ "] commits[" + commitCount + "] closed[" + closed + "]";
+	}
+
+}
@@ -0,0 +1,630 @@
+package org.vedantatree.utils.db.orm;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Result of a projection query, stored column wise in primitive arrays.
+ * 
+ * Each numeric column is kept as one int[], long[] or double[] array, and each string column is dictionary encoded,
+ * i.e. as int[] codes of distinct values. Nulls are tracked in a bit set per column. So a result of million rows and a
+ * few columns takes a few arrays, rather than million Object[] rows with boxed values, and can be aggregated with tight
+ * loops over arrays.
+ * 
+ * Types of columns are decided from the query. Integer, short, byte and boolean values are stored as INT (boolean as 1
+ * or 0), long values and integral decimals of up to 18 digits as LONG, floating point values as DOUBLE, dates and
+ * timestamps as LONG milliseconds, and character and other values as STRING. BigDecimal and BigInteger values, and
+ * other decimals, are stored as DECIMAL, i.e. as BigDecimal objects, so that amounts and large numbers are not rounded
+ * or wrapped. Numeric getters and aggregations returning double convert these to double, and sumDecimal should be used
+ * to sum them exactly.
+ * 
+ * Result is built by HibernateUtil, and is not modified afterwards. So it can be shared by threads.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class ColumnarResult
+{
+
+	public static final int	TYPE_INT		= 1;
+
+	public static final int	TYPE_LONG		= 2;
+
+	public static final int	TYPE_DOUBLE		= 3;
+
+	public static final int	TYPE_STRING		= 4;
+
+	public static final int	TYPE_DECIMAL	= 5;
+
+	private static final int	INITIAL_CAPACITY	= 1024;
+
+	private final Column[]		columns;
+
+	private int					rowCount;
+
+	ColumnarResult( String[] columnNames, int[] columnTypes )
+	{
+		columns = new Column[columnNames.length];
+		for( int i = 0; i < columns.length; i++ )
+		{
+			columns[i] = new Column( columnNames[i], columnTypes[i] );
+		}
+	}
+
+	// ----------------------------- Building ----------------------------------
+
+	void appendInt( int column, int value )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		col.ints[rowCount] = value;
+	}
+
+	void appendLong( int column, long value )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		col.longs[rowCount] = value;
+	}
+
+	void appendDouble( int column, double value )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		col.doubles[rowCount] = value;
+	}
+
+	void appendDecimal( int column, BigDecimal value )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		col.decimals[rowCount] = value;
+	}
+
+	void appendString( int column, String value )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		Integer code = (Integer) col.codes.get( value );
+		if( code == null )
+		{
+			code = new Integer( col.dictionary.size() );
+			col.dictionary.add( value );
+			col.codes.put( value, code );
+		}
+		col.ints[rowCount] = code.intValue();
+	}
+
+	void appendNull( int column )
+	{
+		Column col = columns[column];
+		col.ensureCapacity( rowCount + 1 );
+		if( col.type == TYPE_STRING )
+		{
+			col.ints[rowCount] = -1;
+		}
+		col.nulls.set( rowCount );
+	}
+
+	/**
+	 * Completes the current row, after values of all the columns have been appended
+	 */
+	void endRow()
+	{
+		rowCount++;
+	}
+
+	/**
+	 * Trims the arrays to row count, and drops the data needed only while building
+	 */
+	void complete()
+	{
+		for( int i = 0; i < columns.length; i++ )
+		{
+			columns[i].trim( rowCount );
+		}
+	}
+
+	// ----------------------------- Reading -----------------------------------
+
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	public int getColumnCount()
+	{
+		return columns.length;
+	}
+
+	public String getColumnName( int column )
+	{
+		return columns[column].name;
+	}
+
+	/**
+	 * @return One of TYPE_INT, TYPE_LONG, TYPE_DOUBLE, TYPE_STRING or TYPE_DECIMAL
+	 */
+	public int getColumnType( int column )
+	{
+		return columns[column].type;
+	}
+
+	/**
+	 * @return Index of column with given name, ignoring case, or -1 if there is no such column
+	 */
+	public int getColumnIndex( String columnName )
+	{
+		for( int i = 0; i < columns.length; i++ )
+		{
+			if( columns[i].name != null && columns[i].name.equalsIgnoreCase( columnName ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean isNull( int row, int column )
+	{
+		return columns[column].nulls.get( row );
+	}
+
+	/**
+	 * @return Value of INT column, 0 for null
+	 */
+	public int getInt( int row, int column )
+	{
+		return assertType( column, TYPE_INT ).ints[row];
+	}
+
+	/**
+	 * @return Value of INT or LONG column, 0 for null
+	 */
+	public long getLong( int row, int column )
+	{
+		Column col = columns[column];
+		return col.type == TYPE_INT ? col.ints[row] : assertType( column, TYPE_LONG ).longs[row];
+	}
+
+	/**
+	 * @return Value of any numeric column, 0 for null. Value of DECIMAL column may lose precision.
+	 */
+	public double getDouble( int row, int column )
+	{
+		Column col = columns[column];
+		switch( col.type )
+		{
+			case TYPE_INT:
+				return col.ints[row];
+			case TYPE_LONG:
+				return col.longs[row];
+			case TYPE_DECIMAL:
+				return col.decimals[row] == null ? 0 : col.decimals[row].doubleValue();
+			default:
+				return assertType( column, TYPE_DOUBLE ).doubles[row];
+		}
+	}
+
+	/**
+	 * @return Value of DECIMAL column, null for null
+	 */
+	public BigDecimal getDecimal( int row, int column )
+	{
+		return assertType( column, TYPE_DECIMAL ).decimals[row];
+	}
+
+	/**
+	 * @return Value of STRING column, null for null
+	 */
+	public String getString( int row, int column )
+	{
+		int code = assertType( column, TYPE_STRING ).ints[row];
+		return code == -1 ? null : (String) columns[column].dictionary.get( code );
+	}
+
+	/**
+	 * @return Value of any column as object, i.e. Integer, Long, Double, String or BigDecimal. Null for null.
+	 */
+	public Object getValue( int row, int column )
+	{
+		if( isNull( row, column ) )
+		{
+			return null;
+		}
+		switch( columns[column].type )
+		{
+			case TYPE_INT:
+				return new Integer( columns[column].ints[row] );
+			case TYPE_LONG:
+				return new Long( columns[column].longs[row] );
+			case TYPE_DOUBLE:
+				return new Double( columns[column].doubles[row] );
+			case TYPE_DECIMAL:
+				return columns[column].decimals[row];
+			default:
+				return getString( row, column );
+		}
+	}
+
+	/**
+	 * @return Values of INT column, or codes of STRING column. Array is not copied, and should not be modified.
+	 */
+	public int[] getIntColumn( int column )
+	{
+		Column col = columns[column];
+		if( col.type != TYPE_STRING )
+		{
+			assertType( column, TYPE_INT );
+		}
+		return col.ints;
+	}
+
+	/**
+	 * @return Values of LONG column. Array is not copied, and should not be modified.
+	 */
+	public long[] getLongColumn( int column )
+	{
+		return assertType( column, TYPE_LONG ).longs;
+	}
+
+	/**
+	 * @return Values of DOUBLE column. Array is not copied, and should not be modified.
+	 */
+	public double[] getDoubleColumn( int column )
+	{
+		return assertType( column, TYPE_DOUBLE ).doubles;
+	}
+
+	/**
+	 * @return Values of DECIMAL column, null for nulls. Array is not copied, and should not be modified.
+	 */
+	public BigDecimal[] getDecimalColumn( int column )
+	{
+		return assertType( column, TYPE_DECIMAL ).decimals;
+	}
+
+	/**
+	 * @return Distinct values of STRING column, indexed by their codes
+	 */
+	public String[] getDictionary( int column )
+	{
+		List dictionary = assertType( column, TYPE_STRING ).dictionary;
+		return (String[]) dictionary.toArray( new String[dictionary.size()] );
+	}
+
+	// ---------------------------- Aggregation --------------------------------
+
+	/**
+	 * @return Sum of non null values of numeric column
+	 */
+	public double sum( int column )
+	{
+		Column col = assertNumeric( column );
+		if( col.type == TYPE_DECIMAL )
+		{
+			return sumDecimal( column ).doubleValue();
+		}
+		double sum = 0;
+		for( int row = 0; row < rowCount; row++ )
+		{
+			// nulls are stored as 0, so these need not be skipped for sum
+			sum += col.type == TYPE_INT ? col.ints[row] : col.type == TYPE_LONG ? col.longs[row] : col.doubles[row];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Exact sum of non null values of INT, LONG or DECIMAL column
+	 */
+	public BigDecimal sumDecimal( int column )
+	{
+		Column col = columns[column];
+		if( col.type != TYPE_DECIMAL )
+		{
+			return BigDecimal.valueOf( sumLong( column ) );
+		}
+		BigDecimal sum = BigDecimal.ZERO;
+		for( int row = 0; row < rowCount; row++ )
+		{
+			if( col.decimals[row] != null )
+			{
+				sum = sum.add( col.decimals[row] );
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Sum of non null values of INT or LONG column, without the precision loss of double
+	 */
+	public long sumLong( int column )
+	{
+		Column col = columns[column];
+		long sum = 0;
+		if( col.type == TYPE_INT )
+		{
+			for( int row = 0; row < rowCount; row++ )
+			{
+				sum += col.ints[row];
+			}
+		}
+		else
+		{
+			long[] values = assertType( column, TYPE_LONG ).longs;
+			for( int row = 0; row < rowCount; row++ )
+			{
+				sum += values[row];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Minimum of non null values of numeric column, NaN if there is no such value
+	 */
+	public double min( int column )
+	{
+		return extreme( column, true );
+	}
+
+	/**
+	 * @return Maximum of non null values of numeric column, NaN if there is no such value
+	 */
+	public double max( int column )
+	{
+		return extreme( column, false );
+	}
+
+	private double extreme( int column, boolean min )
+	{
+		Column col = assertNumeric( column );
+		boolean found = false;
+		double extreme = 0;
+		for( int row = 0; row < rowCount; row++ )
+		{
+			if( col.nulls.get( row ) )
+			{
+				continue;
+			}
+			double value = getDouble( row, column );
+			if( !found || ( min ? value < extreme : value > extreme ) )
+			{
+				extreme = value;
+				found = true;
+			}
+		}
+		return found ? extreme : Double.NaN;
+	}
+
+	/**
+	 * Counts the rows for each distinct value of given column
+	 * 
+	 * @return Value (as returned by getValue) to count (Integer), in order of first occurrence. Null key for nulls.
+	 */
+	public Map groupCount( int column )
+	{
+		Column col = columns[column];
+		if( col.type == TYPE_STRING )
+		{
+			// counted by codes in an array, without any map lookup per row
+			int[] counts = new int[col.dictionary.size()];
+			int nullCount = 0;
+			for( int row = 0; row < rowCount; row++ )
+			{
+				int code = col.ints[row];
+				if( code == -1 )
+				{
+					nullCount++;
+				}
+				else
+				{
+					counts[code]++;
+				}
+			}
+			Map groups = new LinkedHashMap();
+			for( int code = 0; code < counts.length; code++ )
+			{
+				if( counts[code] > 0 )
+				{
+					groups.put( col.dictionary.get( code ), new Integer( counts[code] ) );
+				}
+			}
+			if( nullCount > 0 )
+			{
+				groups.put( null, new Integer( nullCount ) );
+			}
+			return groups;
+		}
+
+		Map counts = new LinkedHashMap();
+		for( int row = 0; row < rowCount; row++ )
+		{
+			Object key = getValue( row, column );
+			int[] count = (int[]) counts.get( key );
+			if( count == null )
+			{
+				counts.put( key, new int[] { 1 } );
+			}
+			else
+			{
+				count[0]++;
+			}
+		}
+		Map groups = new LinkedHashMap();
+		for( Iterator iterator = counts.entrySet().iterator(); iterator.hasNext(); )
+		{
+			Map.Entry entry = (Map.Entry) iterator.next();
+			groups.put( entry.getKey(), new Integer( ( (int[]) entry.getValue() )[0] ) );
+		}
+		return groups;
+	}
+
+	/**
+	 * Sums the non null values of numeric column for each distinct value of group column
+	 * 
+	 * @return Value of group column to sum (Double), in order of first occurrence
+	 */
+	public Map groupSum( int groupColumn, int valueColumn )
+	{
+		assertNumeric( valueColumn );
+		Map sums = new LinkedHashMap();
+		for( int row = 0; row < rowCount; row++ )
+		{
+			Object key = getValue( row, groupColumn );
+			double[] sum = (double[]) sums.get( key );
+			if( sum == null )
+			{
+				sum = new double[1];
+				sums.put( key, sum );
+			}
+			sum[0] += getDouble( row, valueColumn );
+		}
+		Map groups = new LinkedHashMap();
+		for( Iterator iterator = sums.entrySet().iterator(); iterator.hasNext(); )
+		{
+			Map.Entry entry = (Map.Entry) iterator.next();
+			groups.put( entry.getKey(), new Double( ( (double[]) entry.getValue() )[0] ) );
+		}
+		return groups;
+	}
+
+	private Column assertType( int column, int type )
+	{
+		Column col = columns[column];
+		if( col.type != type )
+		{
+			throw new IllegalArgumentException( "Column is not of asked type. column[" + col.name + "] type["
+					+ col.type + "] askedType[" + type + "]" );
+		}
+		return col;
+	}
+
+	private Column assertNumeric( int column )
+	{
+		Column col = columns[column];
+		if( col.type == TYPE_STRING )
+		{
+			throw new IllegalArgumentException( "Column is not numeric. column[" + col.name + "]" );
+		}
+		return col;
+	}
+
+	public String toString()
+	{
+		StringBuilder columnsString = new StringBuilder();
+		for( int i = 0; i < columns.length; i++ )
+		{
+			columnsString.append( i == 0 ? "" : ", " ).append( columns[i].name ).append( ":" ).append(
+					columns[i].type );
+		}
+		return "ColumnarResult: rows[" + rowCount + "] columns[" + columnsString + "]";
+	}
+
+	/**
+	 * Values of one column
+	 */
+	private static final class Column
+	{
+
+		private final String	name;
+
+		private final int		type;
+
+		/**
+		 * Values of INT column, or codes of STRING column (-1 for null)
+		 */
+		private int[]			ints;
+
+		private long[]			longs;
+
+		private double[]		doubles;
+
+		private BigDecimal[]	decimals;
+
+		/**
+		 * Distinct values of STRING column, indexed by code
+		 */
+		private final List		dictionary;
+
+		/**
+		 * Value to code of STRING column, needed only while building
+		 */
+		private Map				codes;
+
+		private final BitSet	nulls	= new BitSet();
+
+		private Column( String name, int type )
+		{
+			this.name = name;
+			this.type = type;
+			dictionary = type == TYPE_STRING ? new ArrayList() : null;
+			codes = type == TYPE_STRING ? new HashMap() : null;
+			switch( type )
+			{
+				case TYPE_LONG:
+					longs = new long[INITIAL_CAPACITY];
+					break;
+				case TYPE_DOUBLE:
+					doubles = new double[INITIAL_CAPACITY];
+					break;
+				case TYPE_DECIMAL:
+					decimals = new BigDecimal[INITIAL_CAPACITY];
+					break;
+				default:
+					ints = new int[INITIAL_CAPACITY];
+			}
+		}
+
+		private void ensureCapacity( int capacity )
+		{
+			int length = type == TYPE_LONG ? longs.length : type == TYPE_DOUBLE ? doubles.length
+					: type == TYPE_DECIMAL ? decimals.length : ints.length;
+			if( capacity <= length )
+			{
+				return;
+			}
+			int newLength = Math.max( capacity, length + ( length >> 1 ) );
+			resize( newLength );
+		}
+
+		private void resize( int newLength )
+		{
+			switch( type )
+			{
+				case TYPE_LONG:
+					long[] newLongs = new long[newLength];
+					System.arraycopy( longs, 0, newLongs, 0, Math.min( longs.length, newLength ) );
+					longs = newLongs;
+					break;
+				case TYPE_DOUBLE:
+					double[] newDoubles = new double[newLength];
+					System.arraycopy( doubles, 0, newDoubles, 0, Math.min( doubles.length, newLength ) );
+					doubles = newDoubles;
+					break;
+				case TYPE_DECIMAL:
+					BigDecimal[] newDecimals = new BigDecimal[newLength];
+					System.arraycopy( decimals, 0, newDecimals, 0, Math.min( decimals.length, newLength ) );
+					decimals = newDecimals;
+					break;
+				default:
+					int[] newInts = new int[newLength];
+					System.arraycopy( ints, 0, newInts, 0, Math.min( ints.length, newLength ) );
+					ints = newInts;
+			}
+		}
+
+		private void trim( int rowCount )
+		{
+			resize( rowCount );
+			codes = null;
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
+import org.vedantatree.utils.StringUtils;
+
+
+/**
+ * Concurrent cache for class name resolution and entity metadata lookups of HibernateUtil.
+ * 
+ * Generic CRUD methods receive the class name as String, and resolve it to class and metadata on every call. Resolving
+ * an unqualified name throws and catches a ClassNotFoundException before trying the pojo base path, and property
+ * metadata is built again from ClassMetadata every time. Cache keeps the result of these lookups, so repeated calls are
+ * served by a map lookup.
+ * 
+ * Names which can not be resolved are also cached as negative entries, so that a wrong name sent repeatedly does not
+ * go through class loading every time. As such names may come from outside, number of negative entries is limited,
+ * and these are dropped all together once limit is reached.
+ * 
+ * Mappings of a session factory do not change after it is built, so entries never expire. clear() can be used if
+ * classes are reloaded.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class EntityMetadataCache
+{
+
+	private static Log					LOGGER					= LogFactory.getLog( EntityMetadataCache.class );
+
+	/**
+	 * Marker cached for the class names which could not be resolved
+	 */
+	private static final Object			CLASS_NOT_FOUND			= new Object();
+
+	/**
+	 * Maximum number of class names cached as not found
+	 */
+	private static final int			MAX_NEGATIVE_ENTRIES	= 1000;
+
+	private final SessionFactory		sessionFactory;
+
+	private final String				pojoPath;
+
+	/**
+	 * Class name to Class, or to CLASS_NOT_FOUND if name can not be resolved
+	 */
+	private final ConcurrentHashMap		classes					= new ConcurrentHashMap();
+
+	/**
+	 * Class names which could not be resolved. Kept separately to limit their count.
+	 */
+	private final ConcurrentHashMap		negativeEntries			= new ConcurrentHashMap();
+
+	/**
+	 * Entity name to EntityMetadata
+	 */
+	private final ConcurrentHashMap		entities				= new ConcurrentHashMap();
+
+	/**
+	 * @param sessionFactory Session factory to read the metadata from
+	 * @param pojoPath Base package to try for unqualified class names, can be null
+	 */
+	EntityMetadataCache( SessionFactory sessionFactory, String pojoPath )
+	{
+		this.sessionFactory = sessionFactory;
+		this.pojoPath = StringUtils.isQualifiedString( pojoPath ) ? pojoPath : null;
+	}
+
+	/**
+	 * Resolves the given class name, trying it as qualified name first and then with pojo base path
+	 * 
+	 * @param className Qualified or unqualified name of class
+	 * @return Class for given name, or null if it can not be resolved
+	 */
+	Class getClass( String className )
+	{
+		Object cls = classes.get( className );
+		if( cls == null )
+		{
+			cls = loadClass( className );
+			if( cls == null )
+			{
+				if( negativeEntries.size() >= MAX_NEGATIVE_ENTRIES )
+				{
+					clearNegativeEntries();
+				}
+				negativeEntries.put( className, CLASS_NOT_FOUND );
+				cls = CLASS_NOT_FOUND;
+			}
+			classes.put( className, cls );
+		}
+		return cls == CLASS_NOT_FOUND ? null : (Class) cls;
+	}
+
+	private Class loadClass( String className )
+	{
+		try
+		{
+			// try if it is a qualified name
+			return Class.forName( className );
+		}
+		catch( ClassNotFoundException cnfe )
+		{
+			if( pojoPath == null )
+			{
+				LOGGER.debug( "class not found. className[" + className + "]" );
+				return null;
+			}
+		}
+		try
+		{
+			// try if pojo path helps
+			return Class.forName( pojoPath + "." + className.trim() );
+		}
+		catch( ClassNotFoundException cnfe )
+		{
+			LOGGER.debug( "class not found with pojo path. className[" + className + "] pojoPath[" + pojoPath + "]" );
+			return null;
+		}
+	}
+
+	private void clearNegativeEntries()
+	{
+		LOGGER.warn( "too many unresolved class names, dropping the negative entries. count[" + negativeEntries.size()
+				+ "]" );
+		Object[] classNames = negativeEntries.keySet().toArray();
+		for( int i = 0; i < classNames.length; i++ )
+		{
+			negativeEntries.remove( classNames[i] );
+			classes.remove( classNames[i], CLASS_NOT_FOUND );
+		}
+	}
+
+	/**
+	 * @param entityName Qualified name of entity
+	 * @return Metadata of entity, or null if entity is not mapped with hibernate
+	 */
+	EntityMetadata getEntityMetadata( String entityName )
+	{
+		EntityMetadata entityMetadata = (EntityMetadata) entities.get( entityName );
+		if( entityMetadata == null )
+		{
+			ClassMetadata classMetadata = sessionFactory.getClassMetadata( entityName );
+			if( classMetadata == null )
+			{
+				// mappings do not change, but unmapped names are not cached to keep the map bounded by mapped entities
+				return null;
+			}
+			entityMetadata = new EntityMetadata( classMetadata );
+			EntityMetadata existingMetadata = (EntityMetadata) entities.putIfAbsent( entityName, entityMetadata );
+			if( existingMetadata != null )
+			{
+				entityMetadata = existingMetadata;
+			}
+		}
+		return entityMetadata;
+	}
+
+	/**
+	 * Removes all the cached entries
+	 */
+	void clear()
+	{
+		classes.clear();
+		negativeEntries.clear();
+		entities.clear();
+		LOGGER.info( "entity metadata cache cleared" );
+	}
+
+	public String toString()
+	{
+		return "EntityMetadataCache: classes[" + classes.size() + "] negativeEntries[" + negativeEntries.size()
+				+ "] entities[" + entities.size() + "]";
+	}
+
+	/**
+	 * Metadata of one entity, read once from ClassMetadata
+	 */
+	static final class EntityMetadata
+	{
+
+		private final ClassMetadata							classMetadata;
+
+		private final String								identifierPropertyName;
+
+		private final String								identifierPropertyType;
+
+		private final List<HashMap<String, String>>	propertyInformation;
+
+		private EntityMetadata( ClassMetadata classMetadata )
+		{
+			this.classMetadata = classMetadata;
+			identifierPropertyName = classMetadata.getIdentifierPropertyName();
+			identifierPropertyType = StringUtils.getSimpleClassName( classMetadata.getIdentifierType()
+					.getReturnedClass().getName() );
+
+			String[] names = classMetadata.getPropertyNames();
+			Type[] types = classMetadata.getPropertyTypes();
+			boolean[] nulls = classMetadata.getPropertyNullability();
+
+			List<HashMap<String, String>> properties = new ArrayList<HashMap<String, String>>( names.length );
+			for( int i = 0; i < names.length; i++ )
+			{
+				HashMap<String, String> property = new HashMap<String, String>();
+				property.put( HibernateUtil.PROPERTY_IS_NULL_ALLOWED, "" + nulls[i] );
+				property.put( HibernateUtil.PROPERTY_NAME, names[i] );
+				property.put( HibernateUtil.PROPERTY_TYPE, types[i].getClass().getCanonicalName() );
+				properties.add( property );
+			}
+			propertyInformation = Collections.unmodifiableList( properties );
+		}
+
+		ClassMetadata getClassMetadata()
+		{
+			return classMetadata;
+		}
+
+		String getIdentifierPropertyName()
+		{
+			return identifierPropertyName;
+		}
+
+		String getIdentifierPropertyType()
+		{
+			return identifierPropertyType;
+		}
+
+		/**
+		 * @return Copy of property information, so that callers can not change the cached maps
+		 */
+		List<HashMap<String, String>> getPropertyInformation()
+		{
+			List<HashMap<String, String>> properties = new ArrayList<HashMap<String, String>>( propertyInformation
+					.size() );
+			for( int i = 0; i < propertyInformation.size(); i++ )
+			{
+				properties.add( new HashMap<String, String>( propertyInformation.get( i ) ) );
+			}
+			return properties;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.vedantatree.utils.StringUtils;
+
+
+/**
+ * Declares the association paths which should be initialized for a set of loaded objects.
+ * 
+ * Paths are dot separated association property names relative to root objects, like 'items', 'items.product' or
+ * 'supplier.address'. Each intermediate association of a path is initialized as well, so 'items.product' initializes
+ * 'items' and then 'product' of each item.
+ * 
+ * Plan is used by HibernateUtil.initializeAssociations, which initializes the paths level by level. For each
+ * association at a level, it fetches the values for all the objects of that level together with 'in' queries, rather
+ * than initializing one proxy or collection at a time.
+ * 
+ * <pre>
+ * FetchPlan fetchPlan = new FetchPlan().add( &quot;items.product&quot; ).add( &quot;supplier&quot; );
+ * HibernateUtil.initializeAssociations( orders, fetchPlan );
+ * </pre>
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class FetchPlan
+{
+
+	/**
+	 * Association property name to plan for the objects of that association
+	 */
+	private final Map	children	= new LinkedHashMap();
+
+	public FetchPlan()
+	{
+	}
+
+	/**
+	 * @param paths Association paths to initialize
+	 */
+	public FetchPlan( String[] paths )
+	{
+		if( paths == null )
+		{
+			throw new IllegalArgumentException( "Paths can not be null" );
+		}
+		for( int i = 0; i < paths.length; i++ )
+		{
+			add( paths[i] );
+		}
+	}
+
+	/**
+	 * Adds an association path to initialize
+	 * 
+	 * @param path Dot separated association property names, relative to root objects
+	 * @return This plan, so that more paths can be added
+	 */
+	public FetchPlan add( String path )
+	{
+		if( !StringUtils.isQualifiedString( path ) )
+		{
+			throw new IllegalArgumentException( "Path can not be empty. path[" + path + "]" );
+		}
+		FetchPlan plan = this;
+		for( StringTokenizer tokenizer = new StringTokenizer( path, "." ); tokenizer.hasMoreTokens(); )
+		{
+			String propertyName = tokenizer.nextToken().trim();
+			if( propertyName.length() == 0 )
+			{
+				throw new IllegalArgumentException( "Path contains empty property name. path[" + path + "]" );
+			}
+			FetchPlan childPlan = (FetchPlan) plan.children.get( propertyName );
+			if( childPlan == null )
+			{
+				childPlan = new FetchPlan();
+				plan.children.put( propertyName, childPlan );
+			}
+			plan = childPlan;
+		}
+		return this;
+	}
+
+	/**
+	 * @return Association property name to FetchPlan for the objects of that association
+	 */
+	Map getChildren()
+	{
+		return Collections.unmodifiableMap( children );
+	}
+
+	public boolean isEmpty()
+	{
+		return children.isEmpty();
+	}
+
+	public String toString()
+	{
+		return "FetchPlan" + children;
+	}
+
+}
@@ -0,0 +1,370 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.EntityMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Initializes the associations of a set of persistent objects level by level, using batched 'in' queries.
+ * 
+ * For each association at a level, values of all the objects of that level are fetched together. Uninitialized
+ * many-to-one proxies are loaded with 'from Entity where id in (:ids)', and uninitialized collections are loaded with
+ * 'select distinct o from Owner o left join fetch o.collection where o.id in (:ids)'. Loaded objects are associated
+ * with the session, so initializing the proxies and collections afterwards does not hit the database again. So the
+ * number of queries depends on number of associations and chunks, and not on the number of objects.
+ * 
+ * Initializer works with the given session, which should be the session objects were loaded with. It is not thread
+ * safe, and is meant to be used for one call.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class FetchPlanInitializer
+{
+
+	private static Log							LOGGER	= LogFactory.getLog( FetchPlanInitializer.class );
+
+	private final Session						session;
+
+	private final SessionFactoryImplementor	sessionFactory;
+
+	private final int							chunkSize;
+
+	private int									queryCount;
+
+	/**
+	 * @param session Session which objects are associated with
+	 * @param chunkSize Maximum number of ids in one 'in' clause
+	 */
+	FetchPlanInitializer( Session session, int chunkSize )
+	{
+		this.session = session;
+		this.sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Initializes the given objects and the association paths declared by fetch plan
+	 * 
+	 * @param objects Persistent objects or proxies
+	 * @param fetchPlan Association paths to initialize
+	 */
+	void initialize( Collection objects, FetchPlan fetchPlan ) throws DAOException
+	{
+		List levelPlans = new ArrayList();
+		List levelObjects = new ArrayList();
+		levelPlans.add( fetchPlan );
+		levelObjects.add( initializeEntities( objects ) );
+
+		for( int level = 1; !levelPlans.isEmpty(); level++ )
+		{
+			List nextLevelPlans = new ArrayList();
+			List nextLevelObjects = new ArrayList();
+			for( int i = 0; i < levelPlans.size(); i++ )
+			{
+				Map objectsByEntity = groupByEntityName( (List) levelObjects.get( i ) );
+				Map children = ( (FetchPlan) levelPlans.get( i ) ).getChildren();
+				for( Iterator iterator = children.entrySet().iterator(); iterator.hasNext(); )
+				{
+					Map.Entry child = (Map.Entry) iterator.next();
+					String propertyName = (String) child.getKey();
+					List associatedObjects = new ArrayList();
+					for( Iterator entityIterator = objectsByEntity.entrySet().iterator(); entityIterator.hasNext(); )
+					{
+						Map.Entry entityObjects = (Map.Entry) entityIterator.next();
+						associatedObjects.addAll( fetchAssociation( (String) entityObjects.getKey(),
+								(List) entityObjects.getValue(), propertyName ) );
+					}
+					FetchPlan childPlan = (FetchPlan) child.getValue();
+					if( !childPlan.isEmpty() && !associatedObjects.isEmpty() )
+					{
+						nextLevelPlans.add( childPlan );
+						nextLevelObjects.add( associatedObjects );
+					}
+				}
+			}
+			LOGGER.debug( "level initialized. level[" + level + "] queryCount[" + queryCount + "]" );
+			levelPlans = nextLevelPlans;
+			levelObjects = nextLevelObjects;
+		}
+	}
+
+	/**
+	 * Initializes the given objects and all of their associations up to given depth. Objects are visited only once, so
+	 * cycles in object graph are not followed again.
+	 * 
+	 * @param objects Persistent objects or proxies
+	 * @param desiredDepth Depth up to which associations should be initialized, 0 for given objects only, -1 if no
+	 *        limit
+	 */
+	void initializeAll( Collection objects, int desiredDepth ) throws DAOException
+	{
+		Map visitedObjects = new IdentityHashMap();
+		List levelObjects = new ArrayList();
+		addUnvisited( initializeEntities( objects ), levelObjects, visitedObjects );
+
+		for( int level = 1; !levelObjects.isEmpty() && ( desiredDepth == -1 || level <= desiredDepth ); level++ )
+		{
+			List nextLevelObjects = new ArrayList();
+			Map objectsByEntity = groupByEntityName( levelObjects );
+			for( Iterator iterator = objectsByEntity.entrySet().iterator(); iterator.hasNext(); )
+			{
+				Map.Entry entityObjects = (Map.Entry) iterator.next();
+				String entityName = (String) entityObjects.getKey();
+				ClassMetadata classMetadata = sessionFactory.getClassMetadata( entityName );
+				String[] propertyNames = classMetadata.getPropertyNames();
+				Type[] propertyTypes = classMetadata.getPropertyTypes();
+				for( int i = 0; i < propertyNames.length; i++ )
+				{
+					if( propertyTypes[i].isEntityType() || propertyTypes[i].isCollectionType() )
+					{
+						addUnvisited( fetchAssociation( entityName, (List) entityObjects.getValue(), propertyNames[i] ),
+								nextLevelObjects, visitedObjects );
+					}
+				}
+			}
+			LOGGER.debug( "level initialized. level[" + level + "] queryCount[" + queryCount + "]" );
+			levelObjects = nextLevelObjects;
+		}
+	}
+
+	/**
+	 * @return Number of queries executed by this initializer
+	 */
+	int getQueryCount()
+	{
+		return queryCount;
+	}
+
+	private static void addUnvisited( List objects, List target, Map visitedObjects )
+	{
+		for( int i = 0; i < objects.size(); i++ )
+		{
+			Object obj = objects.get( i );
+			if( visitedObjects.put( obj, Boolean.TRUE ) == null )
+			{
+				target.add( obj );
+			}
+		}
+	}
+
+	/**
+	 * Groups the given objects by their entity name, so that metadata of each group is same
+	 */
+	private Map groupByEntityName( List objects )
+	{
+		Map objectsByEntity = new LinkedHashMap();
+		for( int i = 0; i < objects.size(); i++ )
+		{
+			Object obj = objects.get( i );
+			String entityName = session.getEntityName( obj );
+			List entityObjects = (List) objectsByEntity.get( entityName );
+			if( entityObjects == null )
+			{
+				entityObjects = new ArrayList();
+				objectsByEntity.put( entityName, entityObjects );
+			}
+			entityObjects.add( obj );
+		}
+		return objectsByEntity;
+	}
+
+	/**
+	 * Initializes the given association of all the given objects
+	 * 
+	 * @param entityName Entity name of all the objects
+	 * @param objects Initialized objects, not proxies
+	 * @param propertyName Name of association property
+	 * @return Initialized objects of association, i.e. referred entities or entity elements of collections
+	 */
+	private List fetchAssociation( String entityName, List objects, String propertyName ) throws DAOException
+	{
+		ClassMetadata classMetadata = sessionFactory.getClassMetadata( entityName );
+		Type propertyType;
+		try
+		{
+			propertyType = classMetadata.getPropertyType( propertyName );
+		}
+		catch( HibernateException e )
+		{
+			DAOException daoException = new DAOException( IErrorCodes.PROPERTY_NOT_FOUND,
+					"Property is not mapped. entity[" + entityName + "] property[" + propertyName + "]", e );
+			LOGGER.error( daoException );
+			throw daoException;
+		}
+
+		if( propertyType.isEntityType() )
+		{
+			List values = new ArrayList( objects.size() );
+			for( int i = 0; i < objects.size(); i++ )
+			{
+				Object value = classMetadata.getPropertyValue( objects.get( i ), propertyName, EntityMode.POJO );
+				if( value != null )
+				{
+					values.add( value );
+				}
+			}
+			return initializeEntities( values );
+		}
+		if( propertyType.isCollectionType() )
+		{
+			return fetchCollection( classMetadata, objects, propertyName, (CollectionType) propertyType );
+		}
+
+		DAOException daoException = new DAOException( IErrorCodes.PROPERTY_NOT_FOUND,
+				"Property is not an association. entity[" + entityName + "] property[" + propertyName + "] type["
+						+ propertyType.getName() + "]" );
+		LOGGER.error( daoException );
+		throw daoException;
+	}
+
+	/**
+	 * Loads the uninitialized collections of given property for all the objects, with a fetch join query per chunk
+	 */
+	private List fetchCollection( ClassMetadata classMetadata, List objects, String propertyName,
+			CollectionType collectionType ) throws DAOException
+	{
+		Set uninitializedIds = new LinkedHashSet();
+		for( int i = 0; i < objects.size(); i++ )
+		{
+			Object obj = objects.get( i );
+			if( !Hibernate.isInitialized( classMetadata.getPropertyValue( obj, propertyName, EntityMode.POJO ) ) )
+			{
+				uninitializedIds.add( classMetadata.getIdentifier( obj, EntityMode.POJO ) );
+			}
+		}
+		if( !uninitializedIds.isEmpty() )
+		{
+			executeInQuery( "select distinct o from " + classMetadata.getEntityName() + " o left join fetch o."
+					+ propertyName + " where o." + getIdentifierPropertyName( classMetadata ) + " in (:ids)",
+					uninitializedIds );
+		}
+
+		boolean entityElements = collectionType.getElementType( sessionFactory ).isEntityType();
+		List elements = new ArrayList();
+		for( int i = 0; i < objects.size(); i++ )
+		{
+			Object collection = classMetadata.getPropertyValue( objects.get( i ), propertyName, EntityMode.POJO );
+			if( collection == null )
+			{
+				continue;
+			}
+			// already loaded by fetch join, so it is resolved from session without any query
+			Hibernate.initialize( collection );
+			if( entityElements )
+			{
+				elements.addAll( collection instanceof Map ? ( (Map) collection ).values() : (Collection) collection );
+			}
+		}
+		return entityElements ? initializeEntities( elements ) : new ArrayList();
+	}
+
+	/**
+	 * Initializes the given entities, loading the uninitialized proxies with one query per entity name and chunk
+	 * 
+	 * @param entities Entities or proxies
+	 * @return Actual implementations of given entities
+	 */
+	private List initializeEntities( Collection entities ) throws DAOException
+	{
+		Map uninitializedIdsByEntity = new LinkedHashMap();
+		for( Iterator iterator = entities.iterator(); iterator.hasNext(); )
+		{
+			Object entity = iterator.next();
+			if( entity instanceof HibernateProxy )
+			{
+				LazyInitializer lazyInitializer = ( (HibernateProxy) entity ).getHibernateLazyInitializer();
+				if( lazyInitializer.isUninitialized() )
+				{
+					Set ids = (Set) uninitializedIdsByEntity.get( lazyInitializer.getEntityName() );
+					if( ids == null )
+					{
+						ids = new LinkedHashSet();
+						uninitializedIdsByEntity.put( lazyInitializer.getEntityName(), ids );
+					}
+					ids.add( lazyInitializer.getIdentifier() );
+				}
+			}
+		}
+		for( Iterator iterator = uninitializedIdsByEntity.entrySet().iterator(); iterator.hasNext(); )
+		{
+			Map.Entry entityIds = (Map.Entry) iterator.next();
+			String entityName = (String) entityIds.getKey();
+			executeInQuery( "from " + entityName + " o where o."
+					+ getIdentifierPropertyName( sessionFactory.getClassMetadata( entityName ) ) + " in (:ids)",
+					(Set) entityIds.getValue() );
+		}
+
+		List implementations = new ArrayList( entities.size() );
+		for( Iterator iterator = entities.iterator(); iterator.hasNext(); )
+		{
+			Object entity = iterator.next();
+			if( entity instanceof HibernateProxy )
+			{
+				// loaded by above query, so it is resolved from session without any query
+				entity = ( (HibernateProxy) entity ).getHibernateLazyInitializer().getImplementation();
+			}
+			if( entity != null )
+			{
+				implementations.add( entity );
+			}
+		}
+		return implementations;
+	}
+
+	private static String getIdentifierPropertyName( ClassMetadata classMetadata )
+	{
+		// 'id' refers to identifier in HQL, even if identifier property has no name
+		return classMetadata.getIdentifierPropertyName() == null ? "id" : classMetadata.getIdentifierPropertyName();
+	}
+
+	/**
+	 * Executes the query for given ids, in chunks, only to load the objects in session
+	 */
+	private void executeInQuery( String queryString, Set ids ) throws DAOException
+	{
+		LOGGER.debug( "fetching. queryString[" + queryString + "] idsCount[" + ids.size() + "]" );
+		try
+		{
+			List chunk = new ArrayList( Math.min( chunkSize, ids.size() ) );
+			for( Iterator iterator = ids.iterator(); iterator.hasNext(); )
+			{
+				chunk.add( iterator.next() );
+				if( chunk.size() == chunkSize || !iterator.hasNext() )
+				{
+					session.createQuery( queryString ).setParameterList( "ids", chunk ).list();
+					queryCount++;
+					chunk.clear();
+				}
+			}
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while fetching the associations. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while fetching the associations. queryString["
+					+ queryString + "]", e );
+		}
+	}
+
+}
@@ -0,0 +1,465 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.vedantatree.utils.StringUtils;
+import org.vedantatree.utils.config.ConfigurationManager;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.SystemException;
+
+
+/**
+ * Controls the initialization of HibernateUtil, i.e. loading of properties and building of session factories.
+ * 
+ * Initialization is lazy. If nothing is done, it happens on the first call of HibernateUtil which needs the session
+ * factory, in the calling thread. Application can rather call start at startup, which initializes in background and
+ * returns immediately, and can check the readiness using getState or awaitReady.
+ * 
+ * Background initialization is retried if it fails, up to 'hibernate.util.bootstrap.attempts' times (default 3), with
+ * a delay of 'hibernate.util.bootstrap.retrydelay' milliseconds (default 5000) which is doubled after every attempt.
+ * After successful initialization, warm-up queries are executed, which are either added using addWarmUpQuery, or are
+ * specified with 'hibernate.util.bootstrap.warmup.queries' property separated by ';'. Session factory can be used
+ * while warm-up is running.
+ * 
+ * If initialization fails, calls of HibernateUtil fail with SystemException, and first call after the retry delay
+ * tries to initialize again. So a transient failure, like database not reachable at startup, does not leave
+ * HibernateUtil unusable, and callers do not retry it on every call meanwhile.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public final class HibernateBootstrap
+{
+
+	private static Log				LOGGER				= LogFactory.getLog( HibernateBootstrap.class );
+
+	public static final int			NOT_STARTED			= 0;
+	public static final int			INITIALIZING		= 1;
+	public static final int			WARMING_UP			= 2;
+	public static final int			READY				= 3;
+	public static final int			FAILED				= 4;
+
+	private static final String[]	STATE_NAMES			= { "NOT_STARTED", "INITIALIZING", "WARMING_UP", "READY", "FAILED" };
+
+	private final static String		ATTEMPTS_PRP		= "hibernate.util.bootstrap.attempts";
+	private final static String		RETRY_DELAY_PRP		= "hibernate.util.bootstrap.retrydelay";
+	private final static String		WARM_UP_QUERIES_PRP	= "hibernate.util.bootstrap.warmup.queries";
+
+	/**
+	 * Guards the state. Threads wait on it while initialization is running in other thread.
+	 */
+	private static final Object		LOCK				= new Object();
+
+	private static volatile int		state				= NOT_STARTED;
+
+	private static Thread			bootstrapThread;
+
+	private static int				attemptCount;
+
+	private static Throwable		lastFailure;
+
+	/**
+	 * Time of last failed initialization, and number of failures since last success. Callers fail without trying
+	 * again for retry delay after a failure, doubled for each consecutive failure up to MAX_BACKOFF_FACTOR times.
+	 */
+	private static long				lastFailureTime;
+	private static int				consecutiveFailures;
+	private static long				retryDelay			= -1;
+
+	private static final int		MAX_BACKOFF_FACTOR	= 64;
+
+	/**
+	 * Time taken by last successful initialization, in milliseconds
+	 */
+	private static long				initializationTime;
+
+	private static final List		warmUpQueries		= new ArrayList();
+
+	private HibernateBootstrap()
+	{
+	}
+
+	/**
+	 * Adds a HQL query to run after initialization, to warm up its query plan and the connection pool. It should be
+	 * added before start.
+	 */
+	public static void addWarmUpQuery( String query )
+	{
+		StringUtils.assertQualifiedArgument( query );
+		synchronized( warmUpQueries )
+		{
+			warmUpQueries.add( query.trim() );
+		}
+	}
+
+	/**
+	 * Starts the initialization in background, with retry and warm-up configured using properties. It returns
+	 * immediately, and does nothing if initialization is already started or done.
+	 */
+	public static void start()
+	{
+		HibernateUtil.ensurePropertiesLoaded();
+		start( HibernateUtil.getIntegerProperty( ATTEMPTS_PRP, 3 ), HibernateUtil.getIntegerProperty(
+				RETRY_DELAY_PRP, 5000 ) );
+	}
+
+	/**
+	 * Starts the initialization in background. It returns immediately, and does nothing if initialization is already
+	 * started or done.
+	 * 
+	 * @param maxAttempts Number of times to try the initialization, before leaving it failed
+	 * @param retryDelayMillis Delay before second attempt, doubled for every next attempt
+	 */
+	public static void start( final int maxAttempts, final long retryDelayMillis )
+	{
+		synchronized( LOCK )
+		{
+			if( bootstrapThread != null || state != NOT_STARTED && state != FAILED )
+			{
+				LOGGER.debug( "bootstrap is already started. state[" + getStateName() + "]" );
+				return;
+			}
+			retryDelay = retryDelayMillis;
+			// backoff starts again, as bootstrap has its own delays between attempts
+			consecutiveFailures = 0;
+			bootstrapThread = new Thread( new Runnable()
+			{
+
+				public void run()
+				{
+					try
+					{
+						bootstrap( maxAttempts, retryDelayMillis );
+					}
+					finally
+					{
+						synchronized( LOCK )
+						{
+							bootstrapThread = null;
+						}
+					}
+				}
+			}, "hibernate-bootstrap" );
+			bootstrapThread.setDaemon( true );
+			bootstrapThread.start();
+		}
+		LOGGER.info( "hibernate bootstrap started in background. maxAttempts[" + maxAttempts + "] retryDelayMillis["
+				+ retryDelayMillis + "]" );
+	}
+
+	private static void bootstrap( int maxAttempts, long retryDelayMillis )
+	{
+		long delay = retryDelayMillis;
+		for( int attempt = 1; attempt <= maxAttempts; attempt++ )
+		{
+			if( initialize() )
+			{
+				warmUp();
+				return;
+			}
+			if( state != FAILED )
+			{
+				// initialized by a caller thread meanwhile
+				return;
+			}
+			if( attempt < maxAttempts )
+			{
+				LOGGER.warn( "hibernate initialization failed, retrying. attempt[" + attempt + "] delayMillis[" + delay
+						+ "]" );
+				try
+				{
+					Thread.sleep( delay );
+				}
+				catch( InterruptedException e )
+				{
+					LOGGER.warn( "hibernate bootstrap is interrupted, leaving initialization for first call." );
+					return;
+				}
+				delay *= 2;
+			}
+		}
+		LOGGER.error( "hibernate initialization failed in all attempts, first call will try again. maxAttempts["
+				+ maxAttempts + "]", lastFailure );
+	}
+
+	/**
+	 * Initializes HibernateUtil, unless it is already initialized or is being initialized by other thread
+	 * 
+	 * @return true if initialized by this call
+	 */
+	private static boolean initialize()
+	{
+		synchronized( LOCK )
+		{
+			while( state == INITIALIZING )
+			{
+				try
+				{
+					LOCK.wait();
+				}
+				catch( InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					SystemException se = new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR,
+							"Interrupted while waiting for hibernate initialization." );
+					LOGGER.error( se );
+					throw se;
+				}
+			}
+			if( state == WARMING_UP || state == READY )
+			{
+				return false;
+			}
+			state = INITIALIZING;
+			attemptCount++;
+		}
+
+		long startTime = System.currentTimeMillis();
+		Throwable failure = null;
+		try
+		{
+			HibernateUtil.initialize();
+		}
+		catch( Throwable th )
+		{
+			failure = th;
+		}
+		synchronized( LOCK )
+		{
+			if( failure == null )
+			{
+				initializationTime = System.currentTimeMillis() - startTime;
+				lastFailure = null;
+				consecutiveFailures = 0;
+				// warm-up is done only by background bootstrap
+				state = Thread.currentThread() == bootstrapThread ? WARMING_UP : READY;
+				LOGGER.info( "hibernate initialized. initializationTime[" + initializationTime + "] attemptCount["
+						+ attemptCount + "]" );
+			}
+			else
+			{
+				lastFailure = failure;
+				lastFailureTime = System.currentTimeMillis();
+				consecutiveFailures++;
+				state = FAILED;
+			}
+			LOCK.notifyAll();
+		}
+		return failure == null;
+	}
+
+	private static void warmUp()
+	{
+		List queries = new ArrayList();
+		synchronized( warmUpQueries )
+		{
+			queries.addAll( warmUpQueries );
+		}
+		String queriesProperty = ConfigurationManager.getSharedInstance().getPropertyValue( WARM_UP_QUERIES_PRP,
+				false );
+		if( StringUtils.isQualifiedString( queriesProperty ) )
+		{
+			for( StringTokenizer tokenizer = new StringTokenizer( queriesProperty, ";" ); tokenizer.hasMoreTokens(); )
+			{
+				String query = tokenizer.nextToken().trim();
+				if( query.length() > 0 )
+				{
+					queries.add( query );
+				}
+			}
+		}
+
+		long startTime = System.currentTimeMillis();
+		try
+		{
+			int succeeded = HibernateUtil.warmUp( queries );
+			LOGGER.info( "hibernate warm-up done. timeTaken[" + ( System.currentTimeMillis() - startTime )
+					+ "] queries[" + queries.size() + "] succeeded[" + succeeded + "]" );
+		}
+		catch( Throwable th )
+		{
+			// session factory is ready, so failure of warm-up should not fail the bootstrap
+			LOGGER.error( "Error while warming up the hibernate", th );
+		}
+		finally
+		{
+			synchronized( LOCK )
+			{
+				state = READY;
+				LOCK.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that HibernateUtil is initialized, by initializing it in current thread, or by waiting for the
+	 * initialization running in other thread. Warm-up is not waited for.
+	 * 
+	 * If last initialization has failed within the backed off retry delay, or background bootstrap is still retrying,
+	 * it fails immediately with the last failure. So callers do not hammer the database with initialization attempts
+	 * while it is down. Delay is doubled for each consecutive failure, same as between the attempts of bootstrap, so
+	 * after bootstrap has given up, callers continue with the next delay of its backoff.
+	 * 
+	 * @throws SystemException If initialization fails
+	 */
+	static void ensureInitialized()
+	{
+		boolean coolingDown;
+		synchronized( LOCK )
+		{
+			coolingDown = state == FAILED
+					&& ( bootstrapThread != null || System.currentTimeMillis() - lastFailureTime < getBackoffDelay() );
+		}
+		if( !coolingDown )
+		{
+			initialize();
+		}
+		if( state == FAILED )
+		{
+			String message = coolingDown ? "problem while initializing the Hiberante Utils, last attempt has failed "
+					+ "recently and is not retried yet." : "problem while initializing the Hiberante Utils.";
+			SystemException se = new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR, message,
+					lastFailure );
+			LOGGER.error( se );
+			throw se;
+		}
+	}
+
+	/**
+	 * @return Retry delay doubled for each consecutive failure after first, up to MAX_BACKOFF_FACTOR times. Caller
+	 *         should hold the LOCK.
+	 */
+	private static long getBackoffDelay()
+	{
+		int factor = Math.min( MAX_BACKOFF_FACTOR, 1 << Math.min( 30, Math.max( 0, consecutiveFailures - 1 ) ) );
+		return getRetryDelay() * factor;
+	}
+
+	/**
+	 * @return Retry delay given to start, else as configured by property. Caller should hold the LOCK.
+	 */
+	private static long getRetryDelay()
+	{
+		if( retryDelay < 0 )
+		{
+			try
+			{
+				HibernateUtil.ensurePropertiesLoaded();
+				retryDelay = HibernateUtil.getIntegerProperty( RETRY_DELAY_PRP, 5000 );
+			}
+			catch( RuntimeException e )
+			{
+				// properties may be the cause of failure, default is used till these can be loaded
+				LOGGER.debug( "could not read the retry delay, using default.", e );
+				return 5000;
+			}
+		}
+		return retryDelay;
+	}
+
+	/**
+	 * Waits till HibernateUtil is ready, i.e. initialized and warmed up, or till initialization has failed
+	 * 
+	 * @param timeoutMillis Maximum time to wait, zero to wait without timeout
+	 * @return true if ready
+	 * @throws InterruptedException If thread is interrupted while waiting
+	 */
+	public static boolean awaitReady( long timeoutMillis ) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized( LOCK )
+		{
+			while( state != READY && ( state != FAILED && state != NOT_STARTED || bootstrapThread != null ) )
+			{
+				if( timeoutMillis <= 0 )
+				{
+					LOCK.wait();
+					continue;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if( remaining <= 0 )
+				{
+					break;
+				}
+				LOCK.wait( remaining );
+			}
+			return state == READY;
+		}
+	}
+
+	/**
+	 * @return true if initialization and warm-up are done
+	 */
+	public static boolean isReady()
+	{
+		return state == READY;
+	}
+
+	/**
+	 * @return Current state, one of NOT_STARTED, INITIALIZING, WARMING_UP, READY and FAILED
+	 */
+	public static int getState()
+	{
+		return state;
+	}
+
+	public static String getStateName()
+	{
+		return STATE_NAMES[state];
+	}
+
+	/**
+	 * @return Number of times initialization has been tried
+	 */
+	public static int getAttemptCount()
+	{
+		synchronized( LOCK )
+		{
+			return attemptCount;
+		}
+	}
+
+	/**
+	 * @return Failure of last initialization attempt, null if it succeeded or is not tried yet
+	 */
+	public static Throwable getLastFailure()
+	{
+		synchronized( LOCK )
+		{
+			return lastFailure;
+		}
+	}
+
+	/**
+	 * @return Time taken by successful initialization in milliseconds, excluding warm-up. Zero if not initialized.
+	 */
+	public static long getInitializationTime()
+	{
+		synchronized( LOCK )
+		{
+			return initializationTime;
+		}
+	}
+
+	/**
+	 * @return Warm-up queries added using addWarmUpQuery
+	 */
+	public static List getWarmUpQueries()
+	{
+		synchronized( warmUpQueries )
+		{
+			return Collections.unmodifiableList( new ArrayList( warmUpQueries ) );
+		}
+	}
+
+	public static String getStatus()
+	{
+		return "HibernateBootstrap: state[" + getStateName() + "] attemptCount[" + getAttemptCount()
+				+ "] initializationTime[" + getInitializationTime() + "] lastFailure[" + getLastFailure() + "]";
+	}
+
+}
@@ -32,6 +32,17 @@ public abstract class HibernateDAO
 		return HibernateUtil.getObjectById( id, className );
 	}
 
+	public static List getObjectsByIds( Class clazz, Collection ids ) throws DAOException
+	{
+		return HibernateUtil.getObjectsByIds( clazz, ids );
+	}
+
+	public static List getObjectsByIds( Class clazz, Collection ids, int chunkSize, Collection missingIds )
+			throws DAOException
+	{
+		return HibernateUtil.getObjectsByIds( clazz, ids, chunkSize, missingIds );
+	}
+
 	/**
 	 * deletes object based on id and class name
 	 * 
@@ -44,6 +55,17 @@ public abstract class HibernateDAO
 		HibernateUtil.deleteObjectById( clazz, id );
 	}
 
+	public static int deleteObjectsByIds( Class clazz, Collection ids ) throws DAOException, RelationExistException
+	{
+		return HibernateUtil.deleteObjectsByIds( clazz, ids );
+	}
+
+	public static int bulkUpdate( Class clazz, String whereClause, Map<String, Object> assignments,
+			Map<Object, Object> parameters ) throws DAOException, RelationExistException
+	{
+		return HibernateUtil.bulkUpdate( clazz, whereClause, assignments, parameters );
+	}
+
 	public static void deleteObject( Object objToDelete ) throws DAOException, RelationExistException
 	{
 		HibernateUtil.deleteObject( objToDelete );
@@ -54,6 +76,12 @@ public abstract class HibernateDAO
 		return HibernateUtil.saveNewObject( obj );
 	}
 
+	public static int saveAllObjects( Collection objects, int batchSize ) throws DAOException,
+			ConstraintViolationException
+	{
+		return HibernateUtil.saveAllObjects( objects, batchSize );
+	}
+
 	// TODO: Need to find out some method using which we can get the id of a
 	// persistent object from hibernate itself and hence can avoid to pass the id
 	// here
@@ -62,6 +90,17 @@ public abstract class HibernateDAO
 		return HibernateUtil.updateObject( obj );
 	}
 
+	public static Object updateObjectOptimistic( Object obj ) throws DAOException
+	{
+		return HibernateUtil.updateObjectOptimistic( obj );
+	}
+
+	public static Object updateObjectOptimistic( Class clazz, Serializable id, IEntityUpdater updater,
+			IRetryPolicy retryPolicy ) throws DAOException, ObjectNotFoundException
+	{
+		return HibernateUtil.updateObjectOptimistic( clazz, id, updater, retryPolicy );
+	}
+
 	public static Object saveOrUpdateObject( Object obj ) throws DAOException, ConstraintViolationException
 	{
 		return HibernateUtil.saveOrUpdateObject( obj );
@@ -83,11 +122,45 @@ public abstract class HibernateDAO
 		return HibernateUtil.getObjectsByQuery( queryString, parameters );
 	}
 
+	public List getObjectsByQuery( String queryString, Map<Object, Object> parameters, boolean useCache )
+			throws DAOException
+	{
+		return HibernateUtil.getObjectsByQuery( queryString, parameters, useCache );
+	}
+
+	public ScrollableResultIterator iterateObjectsByQuery( String queryString, Map<Object, Object> parameters,
+			int fetchSize ) throws DAOException
+	{
+		return HibernateUtil.iterateObjectsByQuery( queryString, parameters, fetchSize );
+	}
+
 	public static int executeSQLUpdateByPreparedStatement( String sqlQuery, List parameters ) throws DAOException
 	{
 		return HibernateUtil.executeSQLUpdateByPreparedStatement( sqlQuery, parameters );
 	}
 
+	public static int[] executeSQLBatch( String sqlQuery, List parameterSets ) throws DAOException
+	{
+		return HibernateUtil.executeSQLBatch( sqlQuery, parameterSets );
+	}
+
+	public static int[] executeSQLBatch( String sqlQuery, List parameterSets, int batchSize ) throws DAOException
+	{
+		return HibernateUtil.executeSQLBatch( sqlQuery, parameterSets, batchSize );
+	}
+
+	public static ColumnarResult executeSQLSelectColumnar( String sqlQuery, List parameters, int fetchSize )
+			throws DAOException
+	{
+		return HibernateUtil.executeSQLSelectColumnar( sqlQuery, parameters, fetchSize );
+	}
+
+	public static ColumnarResult getColumnarDataByColumnNames( String className, String[] columnNames,
+			String completeWhereClause ) throws DAOException
+	{
+		return HibernateUtil.getColumnarDataByColumnNames( className, columnNames, completeWhereClause );
+	}
+
 	public static boolean executeSQLStoredProcedure( String sqlStoredProcedureQuery, List parameters )
 			throws DAOException
 	{
@@ -0,0 +1,273 @@
+package org.vedantatree.utils.db.orm;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.stat.Statistics;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.SystemException;
+
+
+/**
+ * Publishes the Hibernate statistics of a session factory as snapshots and as a JMX MBean.
+ * 
+ * Monitor samples the statistics at configured interval using a daemon thread, and keeps the last snapshot. Snapshot
+ * API and MBean attributes both are served from last snapshot. So hot queries, entity load counts and cache hit ratios
+ * can be observed in production without attaching a profiler.
+ * 
+ * On each sample, summary and top queries are logged at debug level.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class HibernateStatisticsMonitor implements HibernateStatisticsMonitorMBean
+{
+
+	private static Log							LOGGER				= LogFactory.getLog( HibernateStatisticsMonitor.class );
+
+	/**
+	 * Number of queries published as top queries
+	 */
+	private static final int					TOP_QUERIES_COUNT	= 20;
+
+	public static final String					MBEAN_NAME			= "org.vedantatree.utils:type=HibernateStatistics";
+
+	private final Statistics					statistics;
+
+	private final long							samplingIntervalMillis;
+
+	private ScheduledExecutorService			sampler;
+
+	private volatile StatisticsSnapshot			lastSnapshot;
+
+	private ObjectName							registeredName;
+
+	/**
+	 * @param statistics Statistics of session factory to monitor
+	 * @param samplingIntervalMillis Interval at which statistics should be sampled, zero or less if statistics should
+	 *        be sampled only on demand
+	 */
+	public HibernateStatisticsMonitor( Statistics statistics, long samplingIntervalMillis )
+	{
+		this.statistics = statistics;
+		this.samplingIntervalMillis = samplingIntervalMillis;
+		this.lastSnapshot = new StatisticsSnapshot( statistics );
+	}
+
+	/**
+	 * Starts sampling the statistics at configured interval, if interval is more than zero
+	 */
+	public synchronized void start()
+	{
+		if( sampler != null || samplingIntervalMillis <= 0 )
+		{
+			return;
+		}
+		sampler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+		{
+
+			public Thread newThread( Runnable runnable )
+			{
+				Thread thread = new Thread( runnable, "hibernate-statistics-sampler" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+		sampler.scheduleWithFixedDelay( new Runnable()
+		{
+
+			public void run()
+			{
+				try
+				{
+					sample();
+				}
+				catch( Throwable th )
+				{
+					// exception should not stop the subsequent samples
+					LOGGER.error( "Error while sampling the hibernate statistics", th );
+				}
+			}
+		}, samplingIntervalMillis, samplingIntervalMillis, TimeUnit.MILLISECONDS );
+		LOGGER.info( "hibernate statistics sampling started. samplingIntervalMillis[" + samplingIntervalMillis + "]" );
+	}
+
+	/**
+	 * Stops the sampling and unregisters the MBean, if registered
+	 */
+	public synchronized void stop()
+	{
+		if( sampler != null )
+		{
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		if( registeredName != null )
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean( registeredName );
+			}
+			catch( Exception e )
+			{
+				LOGGER.error( "Error while unregistering the statistics MBean. name[" + registeredName + "]", e );
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * Registers this monitor with platform MBean server
+	 * 
+	 * @param mbeanName Object name to register with, default name is used if null
+	 */
+	public synchronized void registerMBean( String mbeanName )
+	{
+		try
+		{
+			ObjectName objectName = new ObjectName( mbeanName == null ? MBEAN_NAME : mbeanName );
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			if( mbeanServer.isRegistered( objectName ) )
+			{
+				LOGGER.warn( "replacing the already registered statistics MBean. name[" + objectName + "]" );
+				mbeanServer.unregisterMBean( objectName );
+			}
+			mbeanServer.registerMBean( this, objectName );
+			registeredName = objectName;
+			LOGGER.info( "hibernate statistics MBean registered. name[" + objectName + "]" );
+		}
+		catch( Exception e )
+		{
+			SystemException se = new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR,
+					"Error while registering the statistics MBean. name[" + mbeanName + "]", e );
+			LOGGER.error( se );
+			throw se;
+		}
+	}
+
+	/**
+	 * @return Last sampled snapshot of statistics
+	 */
+	public StatisticsSnapshot getLastSnapshot()
+	{
+		return lastSnapshot;
+	}
+
+	/**
+	 * Takes a new snapshot of statistics, and keeps it as last snapshot
+	 * 
+	 * @return New snapshot
+	 */
+	public StatisticsSnapshot takeSnapshot()
+	{
+		StatisticsSnapshot snapshot = new StatisticsSnapshot( statistics );
+		lastSnapshot = snapshot;
+		return snapshot;
+	}
+
+	// ------------------------------ MBean Methods ----------------------------
+
+	public void sample()
+	{
+		StatisticsSnapshot snapshot = takeSnapshot();
+		if( LOGGER.isDebugEnabled() )
+		{
+			LOGGER.debug( snapshot );
+			List topQueries = snapshot.getTopQueriesByTotalTime( TOP_QUERIES_COUNT );
+			for( int i = 0; i < topQueries.size(); i++ )
+			{
+				LOGGER.debug( "top-query[" + ( i + 1 ) + "] " + topQueries.get( i ) );
+			}
+		}
+	}
+
+	public void clear()
+	{
+		statistics.clear();
+		sample();
+	}
+
+	public long getSamplingIntervalMillis()
+	{
+		return samplingIntervalMillis;
+	}
+
+	public long getLastSampleTime()
+	{
+		return lastSnapshot.getCaptureTime();
+	}
+
+	public long getSessionOpenCount()
+	{
+		return lastSnapshot.getSessionOpenCount();
+	}
+
+	public long getSessionCloseCount()
+	{
+		return lastSnapshot.getSessionCloseCount();
+	}
+
+	public long getEntityLoadCount()
+	{
+		return lastSnapshot.getEntityLoadCount();
+	}
+
+	public long getEntityFetchCount()
+	{
+		return lastSnapshot.getEntityFetchCount();
+	}
+
+	public long getCollectionFetchCount()
+	{
+		return lastSnapshot.getCollectionFetchCount();
+	}
+
+	public long getQueryExecutionCount()
+	{
+		return lastSnapshot.getQueryExecutionCount();
+	}
+
+	public long getQueryExecutionMaxTime()
+	{
+		return lastSnapshot.getQueryExecutionMaxTime();
+	}
+
+	public String getQueryExecutionMaxTimeQueryString()
+	{
+		return lastSnapshot.getQueryExecutionMaxTimeQueryString();
+	}
+
+	public double getSecondLevelCacheHitRatio()
+	{
+		return lastSnapshot.getSecondLevelCacheHitRatio();
+	}
+
+	public String[] getTopQueries()
+	{
+		return toStringArray( lastSnapshot.getTopQueriesByTotalTime( TOP_QUERIES_COUNT ) );
+	}
+
+	public String[] getSecondLevelCacheRegions()
+	{
+		return toStringArray( lastSnapshot.getCacheRegionEntries() );
+	}
+
+	private static String[] toStringArray( List entries )
+	{
+		String[] strings = new String[entries.size()];
+		for( int i = 0; i < strings.length; i++ )
+		{
+			strings[i] = entries.get( i ).toString();
+		}
+		return strings;
+	}
+
+}
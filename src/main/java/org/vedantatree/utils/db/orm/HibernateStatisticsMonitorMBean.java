@@ -0,0 +1,56 @@
+package org.vedantatree.utils.db.orm;
+
+/**
+ * JMX management interface of HibernateStatisticsMonitor.
+ * 
+ * All the attributes are read from the last sampled snapshot, so reading these does not touch the live statistics of
+ * session factory.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface HibernateStatisticsMonitorMBean
+{
+
+	long getSamplingIntervalMillis();
+
+	long getLastSampleTime();
+
+	long getSessionOpenCount();
+
+	long getSessionCloseCount();
+
+	long getEntityLoadCount();
+
+	long getEntityFetchCount();
+
+	long getCollectionFetchCount();
+
+	long getQueryExecutionCount();
+
+	long getQueryExecutionMaxTime();
+
+	String getQueryExecutionMaxTimeQueryString();
+
+	double getSecondLevelCacheHitRatio();
+
+	/**
+	 * @return Queries which have taken maximum total time, with their execution count, average and max time
+	 */
+	String[] getTopQueries();
+
+	/**
+	 * @return Hit ratio and counts of each second level cache region
+	 */
+	String[] getSecondLevelCacheRegions();
+
+	/**
+	 * Takes a fresh sample of statistics, without waiting for sampling interval
+	 */
+	void sample();
+
+	/**
+	 * Clears the statistics of session factory, and takes a fresh sample
+	 */
+	void clear();
+
+}
@@ -1,30 +1,51 @@
 package org.vedantatree.utils.db.orm;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
+import java.lang.ref.WeakReference;
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Types;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.ConnectionReleaseMode;
 import org.hibernate.Criteria;
 import org.hibernate.EntityMode;
-import org.hibernate.Hibernate;
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
+import org.hibernate.MappingException;
+import org.hibernate.Hibernate;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.query.ReturnMetadata;
 import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.type.Type;
@@ -32,11 +53,14 @@ import org.vedantatree.utils.BeanUtils;
 import org.vedantatree.utils.StringUtils;
 import org.vedantatree.utils.Utilities;
 import org.vedantatree.utils.config.ConfigurationManager;
+import org.vedantatree.utils.db.AbstractBDO;
+import org.vedantatree.utils.exceptions.ApplicationException;
 import org.vedantatree.utils.exceptions.IErrorCodes;
 import org.vedantatree.utils.exceptions.ObjectNotFoundException;
 import org.vedantatree.utils.exceptions.SystemException;
 import org.vedantatree.utils.exceptions.db.ConstraintViolationException;
 import org.vedantatree.utils.exceptions.db.DAOException;
+import org.vedantatree.utils.exceptions.db.OptimisticLockException;
 import org.vedantatree.utils.exceptions.db.RelationExistException;
 import org.vedantatree.utils.exceptions.server.ServerSystemException;
 
@@ -75,7 +99,46 @@ public class HibernateUtil
 	private static String				POJO_PATH;
 
 	private final static String			J2EE_ENV					= "hibernate_j2ee_env";
+
+	/**
+	 * Property of AbstractBDO used as version, for optimistic update of classes not mapped with a version
+	 */
+	private final static String			UPDATED_ON_PROPERTY			= "updatedOn";
 	private final static String			CONFIG_PATH					= "hibernate.config.path";
+	private final static String			REPLICA_CONFIG_PATH			= "hibernate.replica.config.path";
+	private final static String			REPLICA_READ_AFTER_WRITE_PRP	= "hibernate.replica.primaryafterwrite";
+	private final static String			QUERY_CACHE_MAX_ENTRIES_PRP	= "hibernate.util.querycache.maxentries";
+	private final static String			QUERY_CACHE_TTL_PRP			= "hibernate.util.querycache.ttl";
+	private final static String			COUNT_MODE_PRP				= "hibernate.util.count.mode";
+	private final static String			COUNT_CACHE_MAX_ENTRIES_PRP	= "hibernate.util.countcache.maxentries";
+	private final static String			COUNT_CACHE_TTL_PRP			= "hibernate.util.countcache.ttl";
+	private final static String			PAGE_CACHE_MAX_ENTRIES_PRP	= "hibernate.util.pagecache.maxentries";
+	private final static String			PAGE_CACHE_TTL_PRP			= "hibernate.util.pagecache.ttl";
+	private final static String			SINGLE_FLIGHT_PRP			= "hibernate.util.singleflight.enabled";
+	private final static String			IN_CLAUSE_CHUNK_SIZE_PRP	= "hibernate.util.inclause.chunksize";
+	private final static String			STATISTICS_INTERVAL_PRP		= "hibernate.util.statistics.interval";
+	private final static String			STATISTICS_JMX_NAME_PRP		= "hibernate.util.statistics.jmx.name";
+	private final static String			MONITOR_ENABLED_PRP			= "hibernate.util.monitor.enabled";
+	private final static String			SLOW_QUERY_THRESHOLD_PRP	= "hibernate.util.monitor.slowquery.threshold";
+	private final static String			STATEMENT_CACHE_SIZE_PRP	= "hibernate.util.statementcache.size";
+	private final static String			SESSION_TRACKER_ENABLED_PRP	= "hibernate.util.sessiontracker.enabled";
+	private final static String			SESSION_MAX_AGE_PRP			= "hibernate.util.sessiontracker.maxage";
+	private final static String			SESSION_FORCE_CLOSE_PRP		= "hibernate.util.sessiontracker.forceclose";
+	private final static String			SESSION_CAPTURE_STACK_PRP	= "hibernate.util.sessiontracker.capturestack";
+	private final static String			SESSION_CHECK_INTERVAL_PRP	= "hibernate.util.sessiontracker.interval";
+
+	/**
+	 * Maximum number of values to put in one 'in' clause, when objects are fetched for a list of ids. Some databases
+	 * limit the number of values in 'in' clause, like Oracle allows at most 1000.
+	 */
+	private static int					inClauseChunkSize;
+
+	/**
+	 * Maximum number of prepared statements cached per thread, configured using 'hibernate.util.statementcache.size'
+	 * property. Statements are cached only in non-j2ee environment, for the active transaction of session, and are
+	 * closed when inTransaction ends the transaction or by closeCurrentSession. Zero if caching is disabled.
+	 */
+	private static int					statementCacheSize;
 
 	/**
 	 * True if we are working in j2ee environment. In j2ee environment, HibernateUtils always ask session factory for
@@ -94,14 +157,144 @@ public class HibernateUtil
 
 	// private static final String SESSION_FACTORY_JNDI_REF = "hibernate.sessionfactory.jndiref";
 
-	private static final SessionFactory	sessionFactory;
+	private static SessionFactory		sessionFactory;
+
+	/**
+	 * True after components are initialized successfully. Session factories and other components are initialized
+	 * lazily, please refer to HibernateBootstrap for details.
+	 */
+	private static volatile boolean		initialized;
+
+	/**
+	 * Session factory for read only replica of database, configured using 'hibernate.replica.config.path' property.
+	 * If configured, query methods like getObjectsByQuery, getPaginatedData*, getTotalNumberOfRecords and
+	 * executeSQLSelect read from replica, unless reads are forced to primary for current thread. Null if replica is
+	 * not configured, and then all the methods use primary.
+	 */
+	private static SessionFactory		replicaSessionFactory;
+
+	/**
+	 * Cache for replica sessions, in non-j2ee environment. Please refer to SESSION_CACHE for details.
+	 */
+	private static final ThreadLocal	REPLICA_SESSION_CACHE		= new ThreadLocal();
+
+	/**
+	 * Boolean.TRUE if reads of current thread should go to primary, as set explicitly. It is cleared on
+	 * closeCurrentSession.
+	 */
+	private static final ThreadLocal	PRIMARY_READS				= new ThreadLocal();
+
+	/**
+	 * Session of current thread which has written, if 'hibernate.replica.primaryafterwrite' is true (default), so that
+	 * thread reads its own writes from primary as these may not have reached to replica yet. It is kept as weak
+	 * reference, and applies only while same session is current and open. So it ends with the transaction in j2ee
+	 * environment, where session is closed on completion of transaction, and pooled threads go back to replica.
+	 * Boolean.TRUE if write was done without a current session, then it applies till closeCurrentSession.
+	 */
+	private static final ThreadLocal	PRIMARY_WRITE				= new ThreadLocal();
+
+	/**
+	 * Sequence of SingleFlight after which current thread's last write was committed, so that thread shares only the
+	 * queries started after it. UNCONFIRMED_WRITE till commit is seen, i.e. till the first read without an active
+	 * transaction after the write. It is kept whether or not replica is configured.
+	 */
+	private static final ThreadLocal	WRITE_FLIGHT_SEQUENCE		= new ThreadLocal();
+
+	private static final Long			UNCONFIRMED_WRITE			= new Long( Long.MAX_VALUE );
+
+	private static boolean				primaryReadsAfterWrite;
+
+	/**
+	 * Names of entities written by current thread, whose cached query results are invalidated again once transaction
+	 * is committed, as other threads may have cached the old state between the write and the commit. It is processed
+	 * on commit by inTransaction and on closeCurrentSession. Null element if tables written are not known, like by
+	 * native SQL, then all the cached results are cleared.
+	 */
+	private static final ThreadLocal	PENDING_INVALIDATIONS		= new ThreadLocal();
+
+	/**
+	 * SessionScope of current thread, if thread is working in a unit of work opened by inSession or inTransaction, or
+	 * in a task propagated from such unit of work
+	 */
+	private static final ThreadLocal	SESSION_SCOPE				= new ThreadLocal();
+
+	/**
+	 * Cache for results of queries which are opted for caching. Size and time to live (in milliseconds) of entries can
+	 * be configured using 'hibernate.util.querycache.maxentries' and 'hibernate.util.querycache.ttl' properties.
+	 */
+	private static QueryResultCache		queryResultCache;
+
+	/**
+	 * Modes of counting the records by getTotalNumberOfRecords. Exact mode counts the records every time. Cached mode
+	 * keeps the counts in count cache, till time to live or till any entity using same tables is written using
+	 * HibernateUtil. Approximate mode reads the estimated number of rows from database statistics when there is no
+	 * where clause, and is same as cached mode otherwise.
+	 */
+	public static final int				COUNT_EXACT					= 0;
+	public static final int				COUNT_CACHED				= 1;
+	public static final int				COUNT_APPROXIMATE			= 2;
+
+	/**
+	 * Cache for counts of records. Size and time to live (in milliseconds) of entries can be configured using
+	 * 'hibernate.util.countcache.maxentries' and 'hibernate.util.countcache.ttl' properties.
+	 */
+	private static QueryResultCache		countCache;
+
+	/**
+	 * Count mode used by getTotalNumberOfRecords, if mode is not specified. It can be configured using
+	 * 'hibernate.util.count.mode' property as 'exact' (default), 'cached' or 'approximate'.
+	 */
+	private static int					defaultCountMode;
+
+	/**
+	 * Cache for pages prefetched by getPaginatedResult, kept per owner, like user session. Pages are kept for short
+	 * time only, as these are meant for the user browsing the pages in sequence. Size and time to live (in
+	 * milliseconds) of entries can be configured using 'hibernate.util.pagecache.maxentries' and
+	 * 'hibernate.util.pagecache.ttl' properties.
+	 */
+	private static QueryResultCache		pageCache;
+
+	/**
+	 * Coalesces the identical read queries made concurrently by different threads, so that these are executed once.
+	 * It is applied to counts, to queries returning scalar values, and to queries opted for caching, whose results can
+	 * be shared across sessions. Reads of threads which have written, or are in a transaction, are not coalesced, so
+	 * that these see their own writes. It is enabled by default, and can be disabled using
+	 * 'hibernate.util.singleflight.enabled' property.
+	 */
+	private static SingleFlight			singleFlight;
+
+	/**
+	 * Monitor to sample and publish the statistics of session factory. Sampling interval (in milliseconds) can be
+	 * configured using 'hibernate.util.statistics.interval' property, zero to sample only on demand. If
+	 * 'hibernate.util.statistics.jmx.name' property is specified, monitor is registered as MBean with that name.
+	 */
+	private static HibernateStatisticsMonitor	statisticsMonitor;
+
+	/**
+	 * Cache for class name resolution and entity metadata, so that generic CRUD methods working on class names do not
+	 * load the class and read the metadata on every call.
+	 */
+	private static EntityMetadataCache			metadataCache;
+
+	/**
+	 * Tracker for the sessions kept in SESSION_CACHE and REPLICA_SESSION_CACHE, to detect the sessions which are not
+	 * closed. Please refer to SessionLeakTracker for details. Tracking is enabled by default in non-j2ee environment,
+	 * and can be configured using 'hibernate.util.sessiontracker.*' properties. Null if tracking is disabled.
+	 */
+	private static SessionLeakTracker			sessionLeakTracker;
 
-	static
+	/**
+	 * Initializes the session factories and other components, using 'hibernate.properties'. It is called by
+	 * HibernateBootstrap, either in background on start, or by first call which needs the session factory. If it fails,
+	 * components are left uninitialized, so that initialization can be tried again.
+	 * 
+	 * @throws SystemException If there is any problem in initialization
+	 */
+	static void initialize()
 	{
 		try
 		{
-			ConfigurationManager.ensurePropertiesLoaded( "hibernate.properties" );
-			LOGGER.debug( "hibernate properties initialized" );
+			ensurePropertiesLoaded();
 
 			String j2eeEnvStr = ConfigurationManager.getSharedInstance().getPropertyValue( J2EE_ENV );
 			LOGGER.info( "j2eeEnvStr[" + j2eeEnvStr + "]" );
@@ -119,39 +312,280 @@ public class HibernateUtil
 			cfg.configure( configPath );
 			sessionFactory = cfg.buildSessionFactory();
 
+			String replicaConfigPath = ConfigurationManager.getSharedInstance().getPropertyValue( REPLICA_CONFIG_PATH,
+					false );
+			LOGGER.info( "replicaConfigPath[" + replicaConfigPath + "]" );
+			if( StringUtils.isQualifiedString( replicaConfigPath ) )
+			{
+				replicaSessionFactory = new Configuration().configure( replicaConfigPath.trim() ).buildSessionFactory();
+				replicaSessionFactory.getStatistics().setStatisticsEnabled( true );
+			}
+			primaryReadsAfterWrite = !"false".equalsIgnoreCase( ConfigurationManager.getSharedInstance()
+					.getPropertyValue( REPLICA_READ_AFTER_WRITE_PRP, false ) );
+
 			POJO_PATH = ConfigurationManager.getSharedInstance().getPropertyValue( POJO_BASE_PATH_PRP, false );
 			LOGGER.info( "pojo_base_path[" + POJO_PATH + "]" );
 
+			metadataCache = new EntityMetadataCache( sessionFactory, POJO_PATH );
+
+			inClauseChunkSize = getIntegerProperty( IN_CLAUSE_CHUNK_SIZE_PRP, 500 );
+			statementCacheSize = j2eeEnv ? 0 : getIntegerProperty( STATEMENT_CACHE_SIZE_PRP, 50 );
+
+			queryResultCache = new QueryResultCache( getIntegerProperty( QUERY_CACHE_MAX_ENTRIES_PRP, 1000 ),
+					getIntegerProperty( QUERY_CACHE_TTL_PRP, 60000 ) );
+			LOGGER.info( "queryResultCache[" + queryResultCache + "]" );
+
+			countCache = new QueryResultCache( getIntegerProperty( COUNT_CACHE_MAX_ENTRIES_PRP, 1000 ),
+					getIntegerProperty( COUNT_CACHE_TTL_PRP, 30000 ) );
+			String countMode = ConfigurationManager.getSharedInstance().getPropertyValue( COUNT_MODE_PRP, false );
+			defaultCountMode = "approximate".equalsIgnoreCase( countMode ) ? COUNT_APPROXIMATE : "cached"
+					.equalsIgnoreCase( countMode ) ? COUNT_CACHED : COUNT_EXACT;
+			LOGGER.info( "countCache[" + countCache + "] defaultCountMode[" + defaultCountMode + "]" );
+
+			pageCache = new QueryResultCache( getIntegerProperty( PAGE_CACHE_MAX_ENTRIES_PRP, 200 ),
+					getIntegerProperty( PAGE_CACHE_TTL_PRP, 10000 ) );
+			LOGGER.info( "pageCache[" + pageCache + "]" );
+
+			singleFlight = new SingleFlight( !"false".equalsIgnoreCase( ConfigurationManager.getSharedInstance()
+					.getPropertyValue( SINGLE_FLIGHT_PRP, false ) ) );
+			LOGGER.info( "singleFlight[" + singleFlight + "]" );
+
 			sessionFactory.getStatistics().setStatisticsEnabled( true );
 			LOGGER.info( "HibernateUtil: J2EE Environement >> " + j2eeEnvStr );
 
-			// can run a dameon thread to print the summary of session factory on log using logsummary method
+			statisticsMonitor = new HibernateStatisticsMonitor( sessionFactory.getStatistics(), getIntegerProperty(
+					STATISTICS_INTERVAL_PRP, 60000 ) );
+			statisticsMonitor.start();
+			String statisticsMBeanName = ConfigurationManager.getSharedInstance().getPropertyValue(
+					STATISTICS_JMX_NAME_PRP, false );
+			if( StringUtils.isQualifiedString( statisticsMBeanName ) )
+			{
+				statisticsMonitor.registerMBean( statisticsMBeanName.trim() );
+			}
+
+			if( !j2eeEnv
+					&& !"false".equalsIgnoreCase( ConfigurationManager.getSharedInstance().getPropertyValue(
+							SESSION_TRACKER_ENABLED_PRP, false ) ) )
+			{
+				// age and interval are in milliseconds, leaked sessions are only logged unless force close is asked
+				sessionLeakTracker = new SessionLeakTracker( getIntegerProperty( SESSION_MAX_AGE_PRP, 600000 ),
+						"true".equalsIgnoreCase( ConfigurationManager.getSharedInstance().getPropertyValue(
+								SESSION_FORCE_CLOSE_PRP, false ) ), !"false".equalsIgnoreCase( ConfigurationManager
+								.getSharedInstance().getPropertyValue( SESSION_CAPTURE_STACK_PRP, false ) ),
+						getIntegerProperty( SESSION_CHECK_INTERVAL_PRP, 60000 ) );
+				sessionLeakTracker.start();
+			}
+
+			// latency monitoring is disabled unless asked, slow query threshold is in milliseconds
+			QueryLatencyMonitor.setSlowQueryThresholdMillis( getIntegerProperty( SLOW_QUERY_THRESHOLD_PRP, 1000 ) );
+			QueryLatencyMonitor.setEnabled( "true".equalsIgnoreCase( ConfigurationManager.getSharedInstance()
+					.getPropertyValue( MONITOR_ENABLED_PRP, false ) ) );
 
-			// MBean service registration for all SessionFactory's - Need to deploy hibernate as jmx service on server
-			// first
-			// refer to
-			// http://docs.jboss.org/hibernate/core/3.3/reference/en/html/session-configuration.html#configuration-j2ee
-			// Hashtable tb = new Hashtable();
-			// tb.put("type", "statistics");
-			// tb.put("sessionFactory", "all");
-			// ObjectName on = new ObjectName("hibernate", tb); // MBean object name
-			//
-			// StatisticsService stats = new StatisticsService(); // MBean implementation
-			// server.registerMBean(stats, on); // Register the MBean on the server
+			initialized = true;
 		}
 		catch( Throwable th )
 		{
 			LOGGER.fatal( "problem while initializing the Hiberante Utils.", th );
+			releasePartialInitialization();
 
 			throw new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR,
 					"problem while initializing the Hiberante Utils.", th );
 		}
 	}
 
+	/**
+	 * Closes the session factories and stops the monitors, which were started by a failed initialization
+	 */
+	private static void releasePartialInitialization()
+	{
+		if( sessionLeakTracker != null )
+		{
+			sessionLeakTracker.stop();
+			sessionLeakTracker = null;
+		}
+		if( statisticsMonitor != null )
+		{
+			statisticsMonitor.stop();
+			statisticsMonitor = null;
+		}
+		try
+		{
+			if( replicaSessionFactory != null )
+			{
+				replicaSessionFactory.close();
+			}
+			if( sessionFactory != null )
+			{
+				sessionFactory.close();
+			}
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while closing the session factory of failed initialization", e );
+		}
+		replicaSessionFactory = null;
+		sessionFactory = null;
+		j2eeEnv = false;
+	}
+
+	/**
+	 * Loads 'hibernate.properties' using ConfigurationManager, if not loaded already
+	 * 
+	 * @throws SystemException If properties can not be loaded
+	 */
+	static void ensurePropertiesLoaded()
+	{
+		try
+		{
+			ConfigurationManager.ensurePropertiesLoaded( "hibernate.properties" );
+			LOGGER.debug( "hibernate properties initialized" );
+		}
+		catch( ApplicationException e )
+		{
+			SystemException se = new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR,
+					"problem while loading the hibernate properties.", e );
+			LOGGER.error( se );
+			throw se;
+		}
+	}
+
+	/**
+	 * Initializes the components if not initialized yet, or waits for the initialization running in background
+	 * 
+	 * @throws SystemException If initialization fails
+	 */
+	private static void ensureInitialized()
+	{
+		if( !initialized )
+		{
+			HibernateBootstrap.ensureInitialized();
+		}
+	}
+
+	private static SessionFactory getSessionFactory()
+	{
+		ensureInitialized();
+		return sessionFactory;
+	}
+
+	private static SessionFactory getReplicaSessionFactory()
+	{
+		ensureInitialized();
+		return replicaSessionFactory;
+	}
+
+	private static boolean isJ2EEEnv()
+	{
+		ensureInitialized();
+		return j2eeEnv;
+	}
+
+	private static EntityMetadataCache getMetadataCache()
+	{
+		ensureInitialized();
+		return metadataCache;
+	}
+
+	static int getInClauseChunkSize()
+	{
+		ensureInitialized();
+		return inClauseChunkSize;
+	}
+
+	private static int getStatementCacheSize()
+	{
+		ensureInitialized();
+		return statementCacheSize;
+	}
+
+	/**
+	 * Returns the owner which statements of given session can be cached for, i.e. its active transaction. Null if
+	 * statements should not be cached, as session may give its connection back to pool after every statement when
+	 * there is no transaction, or if configured so. Release mode is taken from the factory of session, which may be
+	 * primary or replica.
+	 */
+	private static Object getStatementOwner( Session session )
+	{
+		if( getStatementCacheSize() <= 0 || ( (SessionFactoryImplementor) session.getSessionFactory() ).getSettings()
+				.getConnectionReleaseMode() == ConnectionReleaseMode.AFTER_STATEMENT )
+		{
+			return null;
+		}
+		Transaction transaction = session.getTransaction();
+		return transaction.isActive() ? transaction : null;
+	}
+
+	/**
+	 * Runs the given queries once, each fetching at most one row, and reads the metadata of all the mapped entities.
+	 * So query plans, metadata cache and connection pool are ready before first request. Failure of a query is only
+	 * logged.
+	 * 
+	 * @param queries HQL queries to run
+	 * @return Number of queries run successfully
+	 */
+	static int warmUp( final List queries ) throws DAOException
+	{
+		Integer succeeded = (Integer) inSession( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				for( Iterator iterator = getSessionFactory().getAllClassMetadata().keySet().iterator(); iterator
+						.hasNext(); )
+				{
+					getMetadataCache().getEntityMetadata( (String) iterator.next() );
+				}
+				int succeeded = 0;
+				for( Iterator iterator = queries.iterator(); iterator.hasNext(); )
+				{
+					String query = (String) iterator.next();
+					long startTime = System.currentTimeMillis();
+					try
+					{
+						getCurrentSession().createQuery( query ).setMaxResults( 1 ).list();
+						succeeded++;
+						LOGGER.info( "warm-up query executed. timeTaken[" + ( System.currentTimeMillis() - startTime )
+								+ "] query[" + query + "]" );
+					}
+					catch( HibernateException e )
+					{
+						LOGGER.error( "Error while executing warm-up query. query[" + query + "]", e );
+					}
+				}
+				return new Integer( succeeded );
+			}
+		} );
+		return succeeded.intValue();
+	}
+
 	private HibernateUtil()
 	{
 	}
 
+	/**
+	 * Returns the value of given property as int, or default value if property is not specified
+	 */
+	static int getIntegerProperty( String propertyName, int defaultValue )
+	{
+		String propertyValue = ConfigurationManager.getSharedInstance().getPropertyValue( propertyName, false );
+		if( !StringUtils.isQualifiedString( propertyValue ) )
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Integer.parseInt( propertyValue.trim() );
+		}
+		catch( NumberFormatException e )
+		{
+			SystemException se = new SystemException( IErrorCodes.COMPONENT_INITIALIZATION_ERROR,
+					"Property value should be a number. propertyName[" + propertyName + "] propertyValue["
+							+ propertyValue + "]", e );
+			LOGGER.error( se );
+			throw se;
+		}
+	}
+
 	// ---------------------------- Session Management -------------------------
 
 	/**
@@ -163,12 +597,12 @@ public class HibernateUtil
 	 */
 	private static Session getCurrentJ2EESession()
 	{
-		if( !j2eeEnv )
+		if( !isJ2EEEnv() )
 		{
 			throw new SystemException( IErrorCodes.ILLEGAL_STATE_ERROR,
 					"This method is made only for j2EE environment. Either you are not working in J2EE env or configuration has not been set properly." );
 		}
-		return sessionFactory.getCurrentSession();
+		return getSessionFactory().getCurrentSession();
 	}
 
 	/**
@@ -183,10 +617,19 @@ public class HibernateUtil
 		try
 		{
 			Session session = (Session) SESSION_CACHE.get();
-			if( session == null )
+			if( session == null || !session.isOpen() )
 			{
-				session = sessionFactory.openSession();
+				if( session != null )
+				{
+					LOGGER.warn( "session of current thread was closed without closeCurrentSession, "
+							+ "may be by leak tracker. Opening new session." );
+				}
+				session = getSessionFactory().openSession();
 				SESSION_CACHE.set( session );
+				if( sessionLeakTracker != null )
+				{
+					sessionLeakTracker.sessionOpened( session, false );
+				}
 			}
 			return session;
 		}
@@ -212,7 +655,14 @@ public class HibernateUtil
 			SESSION_CACHE.set( null );
 			if( s != null )
 			{
-				s.close();
+				if( sessionLeakTracker != null )
+				{
+					sessionLeakTracker.sessionClosed( s );
+				}
+				if( s.isOpen() )
+				{
+					s.close();
+				}
 			}
 		}
 		catch( HibernateException e )
@@ -224,722 +674,3221 @@ public class HibernateUtil
 
 	private static Session getCurrentSession() throws DAOException
 	{
-		return j2eeEnv ? getCurrentJ2EESession() : getCurrentExplicitSession();
+		return isJ2EEEnv() ? getCurrentJ2EESession() : getCurrentExplicitSession();
 	}
 
-	public static void closeCurrentSession() throws DAOException
+	/**
+	 * Returns the session to be used for read only queries. It is the replica session if replica is configured and
+	 * reads are not forced to primary for current thread, otherwise the current primary session.
+	 * 
+	 * Replica sessions are never flushed, and objects read from replica should be used as read only. If objects are
+	 * read to be modified, reads should be forced to primary using setPrimaryReads or executeOnPrimary.
+	 */
+	private static Session getCurrentReadSession() throws DAOException
 	{
-		if( !j2eeEnv )
+		if( getReplicaSessionFactory() == null || isPrimaryReadsForced() )
+		{
+			return getCurrentSession();
+		}
+		if( isJ2EEEnv() )
+		{
+			return getReplicaSessionFactory().getCurrentSession();
+		}
+		try
+		{
+			Session session = (Session) REPLICA_SESSION_CACHE.get();
+			if( session == null || !session.isOpen() )
+			{
+				session = getReplicaSessionFactory().openSession();
+				session.setFlushMode( FlushMode.NEVER );
+				REPLICA_SESSION_CACHE.set( session );
+				if( sessionLeakTracker != null )
+				{
+					sessionLeakTracker.sessionOpened( session, true );
+				}
+			}
+			return session;
+		}
+		catch( HibernateException e )
 		{
-			closeCurrentExplicitSession();
+			LOGGER.error( "There is an error in getting replica session : ", e );
+			throw new DAOException( IErrorCodes.SESSION_OPEN_ERROR, "There is an error in getting replica session : ",
+					e );
 		}
 	}
 
 	/**
-	 * It flushes the data from current session to database
-	 * 
-	 * @throws DAOException if there is any problem
+	 * Forces the reads of current thread to primary after a write, if configured, so that thread reads its own writes
 	 */
-	public static void flush() throws DAOException
-	{
-		getCurrentSession().flush();
-	}
-
-	// ----------------------------- Object Management -------------------------
-
-	public static Serializable getObjectIdentifier( Object obj )
+	private static void markPrimaryWrite()
 	{
-		Utilities.assertNotNullArgument( obj );
-		/*
-		 * If object is proxy, then get the actual implementation and then use it to get class name.
-		 */
-		if( obj instanceof HibernateProxy )
+		WRITE_FLIGHT_SEQUENCE.set( UNCONFIRMED_WRITE );
+		if( primaryReadsAfterWrite && getReplicaSessionFactory() != null )
 		{
-			obj = ( (HibernateProxy) obj ).getHibernateLazyInitializer().getImplementation();
+			Session session = getOpenCurrentSession();
+			PRIMARY_WRITE.set( session != null ? (Object) new WeakReference( session ) : Boolean.TRUE );
 		}
-		return sessionFactory.getClassMetadata( obj.getClass() ).getIdentifier( obj, EntityMode.POJO );
 	}
 
 	/**
-	 * returns identity column name for the particular className
-	 * 
-	 * @param className
-	 * @return String
-	 * @throws DAOException
+	 * @return true if reads of current thread are forced to primary, explicitly or by a write in current session
 	 */
-	public static String getIdentifierPropertyName( String className ) throws DAOException
+	private static boolean isPrimaryReadsForced()
 	{
-		LOGGER.trace( "getIdentifierPropertyName: className[" + className + "]" );
-
-		className = validateClassName( className );
-		ClassMetadata classMetaData = sessionFactory.getClassMetadata( className.trim() );
-		String identityName = classMetaData.getIdentifierPropertyName();
-
-		return identityName;
+		if( PRIMARY_READS.get() != null )
+		{
+			return true;
+		}
+		Object primaryWrite = PRIMARY_WRITE.get();
+		if( primaryWrite instanceof WeakReference )
+		{
+			Session writeSession = (Session) ( (WeakReference) primaryWrite ).get();
+			if( writeSession == null || !writeSession.isOpen() || writeSession != getOpenCurrentSession() )
+			{
+				// write was done in a session which has ended
+				PRIMARY_WRITE.set( null );
+				return false;
+			}
+		}
+		return primaryWrite != null;
 	}
 
 	/**
-	 * returns identity column type for the particular className
-	 * 
-	 * @param className
-	 * @return String
-	 * @throws DAOException
+	 * @return Current primary session of thread, null if there is no open session
 	 */
-	public static String getIdentifierPropertyType( String className ) throws DAOException
+	private static Session getOpenCurrentSession()
 	{
-		LOGGER.debug( "getIdentifierPropertyType: className[" + className + "]" );
+		Session session;
+		if( isJ2EEEnv() )
+		{
+			try
+			{
+				session = getSessionFactory().getCurrentSession();
+			}
+			catch( HibernateException e )
+			{
+				// there is no transaction, so no current session
+				return null;
+			}
+		}
+		else
+		{
+			session = (Session) SESSION_CACHE.get();
+		}
+		return session != null && session.isOpen() ? session : null;
+	}
 
-		className = validateClassName( className );
-		ClassMetadata classMetaData = sessionFactory.getClassMetadata( className.trim() );
-
-		Type identityType = classMetaData.getIdentifierType();
-		return StringUtils.getSimpleClassName( identityType.getReturnedClass().getName() );
-	}
-
-	// TODO: Remove the unqualified class name, it should be qualified, that is much easier to implement
-	public static Object getObjectById( Serializable id, String className ) throws DAOException, ObjectNotFoundException
-	{
-
-		Utilities.assertNotNullArgument( id );
-		StringUtils.assertQualifiedArgument( className );
-
-		Class cls = getClassByClassName( className );
-		return getObjectById( id, cls );
-	}
-
-	public static Object getObjectById( Serializable id, Class clazz ) throws ObjectNotFoundException, DAOException
+	public static void closeCurrentSession() throws DAOException
 	{
-
-		LOGGER.trace( "getObjectById: id[ " + id + "] class[ " + clazz + " ]" );
-		Utilities.assertNotNullArgument( id );
-		Utilities.assertNotNullArgument( clazz );
-
+		PRIMARY_READS.set( null );
+		PRIMARY_WRITE.set( null );
 		try
 		{
-			Object obj = getCurrentSession().load( clazz, id );
-			LOGGER.debug( "obj[" + obj + "]" );
-			return obj;
+			// raw flag is used, so that closing does not initialize the components, nothing is open before these are
+			if( !j2eeEnv )
+			{
+				PreparedStatementCache.close();
+				closeCurrentReplicaSession();
+				closeCurrentExplicitSession();
+			}
 		}
-		catch( org.hibernate.ObjectNotFoundException e )
+		finally
 		{
-
-			LOGGER.debug( "Requested object of class[ " + clazz + " ]not found id[ " + id + " ]" );
-			throw new ObjectNotFoundException( IErrorCodes.RESOURCE_NOT_FOUND,
-					"Requested object of class[ " + clazz + " ]not found id[ " + id + " ]" );
-			// , e );
+			invalidatePendingQueryResults();
 		}
 	}
 
-	/**
-	 * deletes object based on id and class name
-	 * 
-	 * @param className String
-	 * @param objectId long
-	 * @throws DAOException
-	 * @throws RelationExistException
-	 * @throws HibernateException
-	 */
-	public static void deleteObject( String className, Long objectId ) throws DAOException, RelationExistException
+	private static void closeCurrentReplicaSession()
 	{
-		LOGGER.debug( "deleteObject: className[ " + className + " ] Id[ " + objectId + " ]" );
-
-		StringUtils.assertQualifiedArgument( className );
-		Utilities.assertNotNullArgument( objectId );
-
-		Class cls = getClassByClassName( className );
-		deleteObjectById( cls, objectId );
+		Session session = (Session) REPLICA_SESSION_CACHE.get();
+		REPLICA_SESSION_CACHE.set( null );
+		if( session != null )
+		{
+			if( sessionLeakTracker != null )
+			{
+				sessionLeakTracker.sessionClosed( session );
+			}
+			try
+			{
+				if( session.isOpen() )
+				{
+					session.close();
+				}
+			}
+			catch( HibernateException e )
+			{
+				// replica session is read only, so problem in closing it should not fail the primary close
+				LOGGER.error( "There is an error in closing replica session : ", e );
+			}
+		}
 	}
 
-	public static void deleteObjectById( Class clazz, Serializable id ) throws DAOException, RelationExistException
+	/**
+	 * @return true if a read replica is configured
+	 */
+	public static boolean isReplicaConfigured()
 	{
-		Object pojoObject = getCurrentSession().load( clazz, id );
-		deleteObject( pojoObject );
+		return getReplicaSessionFactory() != null;
 	}
 
 	/**
-	 * deletes object based on id and class name
+	 * Forces the reads of current thread to primary, or lets these go to replica again, even after a write. Setting is
+	 * cleared on closeCurrentSession.
 	 * 
-	 * @param className String
-	 * @param Id long
-	 * @throws DAOException
-	 * @throws RelationExistException
-	 * @throws HibernateException
+	 * @param primaryReads true if reads should go to primary
 	 */
-	public static void deleteObject( Object objToDelete ) throws DAOException, RelationExistException
+	public static void setPrimaryReads( boolean primaryReads )
 	{
-		try
-		{
-			getCurrentSession().delete( objToDelete );
-
-			/*
-			 * Because we were facing the problem of ConstraintViolationException while server was committing the
-			 * transaction and flushing the session so we are explicitly flushing the session,so that this exception
-			 * will be throw at the time of flushing. and the appropriate action could be taken
-			 */
-			getCurrentSession().flush();
-		}
-		catch( ConstraintViolationException e )
+		PRIMARY_READS.set( primaryReads ? Boolean.TRUE : null );
+		if( !primaryReads )
 		{
-
-			LOGGER.error( "Object: " + objToDelete + " could not be deleted since it is referenced by another object",
-					e );
-			throw new RelationExistException( IErrorCodes.CHILD_RECORD_FOUND,
-					"Object: " + objToDelete + " could not be deleted since it is referenced by another object", e );
+			PRIMARY_WRITE.set( null );
 		}
+	}
 
+	/**
+	 * @return true if reads of current thread go to primary
+	 */
+	public static boolean isPrimaryReads()
+	{
+		return getReplicaSessionFactory() == null || isPrimaryReadsForced();
 	}
 
 	/**
-	 * To save given object in the DataBase.
-	 * 
-	 * @param obj object of POJO class to save in Database.
-	 * @throws DAOException
-	 * @throws ConstraintViolationException
-	 * @throws HibernateException
+	 * Executes the given task with reads forced to primary, and restores the previous setting afterwards. It is useful
+	 * for a single call which must see the latest data, like reading an object to update it.
 	 * 
+	 * @param task Task to execute
+	 * @return Value returned by task
+	 * @throws DAOException If task throws any exception
 	 */
-	public static Object saveNewObject( Object obj ) throws DAOException, ConstraintViolationException
+	public static Object executeOnPrimary( Callable task ) throws DAOException
 	{
-		LOGGER.trace( "entered saveNewObject: obj[" + obj + "]" );
-		Utilities.assertNotNullArgument( obj );
+		Utilities.assertNotNullArgument( task );
 
+		Object previousPrimaryReads = PRIMARY_READS.get();
+		PRIMARY_READS.set( Boolean.TRUE );
 		try
 		{
-			Long id = (Long) getCurrentSession().save( obj );
-			Object object = getCurrentSession().load( obj.getClass(), id );
-			getCurrentSession().flush();
-			return object;
+			return task.call();
 		}
-		catch( ConstraintViolationException cve )
+		catch( DAOException e )
 		{
-			ConstraintViolationException localCVE = new ConstraintViolationException(
-					"Constraint Violation exception is faced while saving the object. error-message[" + cve.getMessage()
-							+ "]",
-					cve, null );
-			// , cve.getSQLException() );
-			LOGGER.error( localCVE );
-			throw localCVE;
+			throw e;
 		}
-		catch( Exception ex )
+		catch( RuntimeException e )
 		{
-			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
-					"Error while saving new object. error-message[" + ex.getMessage() + "]", ex );
-			LOGGER.error( daoEx );
-			throw daoEx;
+			throw e;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while executing task on primary. task[" + task + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while executing task on primary. task[" + task + "]",
+					e );
+		}
+		finally
+		{
+			PRIMARY_READS.set( previousPrimaryReads );
 		}
 	}
 
-	/**
-	 * To update the given object in the DataBase.
-	 * 
-	 * @param obj Object
-	 * @param id long
-	 * @throws DAOException
-	 * @throws HibernateException
-	 */
-	public static Object updateObject( Object obj ) throws DAOException
-	{
-		LOGGER.trace( "updateObject: obj[" + obj + "]" );
-		Utilities.assertNotNullArgument( obj );
-
-		getCurrentSession().lock( obj, LockMode.UPGRADE );
-		// getSession().update( obj );
-
-		Serializable id = HibernateUtil.getObjectIdentifier( obj );
-		Object object = getCurrentSession().load( obj.getClass(), id );
-		return object;
-	}
+	// ------------------------------ Session Scope ----------------------------
 
 	/**
-	 * saves or updates the object values.
+	 * Executes the given work as a unit of work, with a session bound to current thread for its duration. Session is
+	 * closed when work ends, whether it succeeds or fails, along with the replica session and cached statements of
+	 * thread. So work need not call closeCurrentSession.
 	 * 
-	 * @param className String
-	 * @param listOfObjects List<HashMap<String, String>>
-	 * @throws DAOException
-	 * @throws ConstraintViolationException
-	 * @throws HibernateException
+	 * If thread is already working in a unit of work, or has a session opened outside of any unit of work, work joins
+	 * that session and it is not closed here. In j2ee environment, sessions are managed by container, and work is
+	 * simply executed.
+	 * 
+	 * Session is bound to thread, and it is not visible to other threads. Tasks submitted to executors from the work
+	 * should be wrapped using propagateSession to work with the same session, or using scopedTask to work with their
+	 * own session.
+	 * 
+	 * @param work Work to execute
+	 * @return Value returned by work
+	 * @throws DAOException If work throws any exception, or session can not be opened or closed
 	 */
-
-	public static Object saveOrUpdateObject( Object pojoObject ) throws DAOException, ConstraintViolationException
+	public static Object inSession( Callable work ) throws DAOException
 	{
-		LOGGER.trace( "saveOrUpdateObject: pojoObject[ " + pojoObject + " ]" );
+		Utilities.assertNotNullArgument( work );
 
-		Utilities.assertNotNullArgument( pojoObject );
-
-		Serializable id = getObjectIdentifier( pojoObject );
-
-		if( id == null )
-		{
-			LOGGER.debug( "newObject-save" );
-			return saveNewObject( pojoObject );
-		}
-		else
+		if( isJ2EEEnv() || SESSION_SCOPE.get() != null || SESSION_CACHE.get() != null )
 		{
-			// LOGGER.debug( "persistentObject-Merge" );
-			pojoObject = getCurrentSession().merge( pojoObject );
-			getCurrentSession().saveOrUpdate( pojoObject );
-			return pojoObject;
-			// getSession().lock( pojoObject, LockMode.NONE );
+			return callWork( work, "inSession" );
 		}
-	}
 
-	// ------------------------------ Query Management -------------------------
-
-	public static Criteria createCriteria( String criteria ) throws DAOException
-	{
+		SessionScope scope = new SessionScope( getCurrentExplicitSession() );
+		SESSION_SCOPE.set( scope );
+		boolean succeeded = false;
 		try
 		{
-			return getCurrentSession().createCriteria( criteria );
+			Object result = callWork( work, "inSession" );
+			succeeded = true;
+			return result;
 		}
-		catch( Exception e )
+		finally
 		{
-			LOGGER.error( "Error while creating criteria. criteria-specified[" + criteria + "]", e );
-			throw new DAOException( IErrorCodes.DAO_ERROR,
-					"Error while creating criteria. criteria-specified[" + criteria + "]", e );
+			scope.close();
+			SESSION_SCOPE.set( null );
+			try
+			{
+				closeCurrentSession();
+			}
+			catch( DAOException e )
+			{
+				// failure of work is more relevant for caller than failure in closing the session
+				if( succeeded )
+				{
+					throw e;
+				}
+			}
 		}
-
 	}
 
-	// integer sql type and value
-	public static boolean executeSQLStoredProcedure( String sqlStoredProcedureQuery, List parameters )
-			throws DAOException
+	/**
+	 * Executes the given work as a unit of work in a transaction. Transaction is committed if work succeeds, and is
+	 * rolled back if it fails. Please refer to inSession for details of session.
+	 * 
+	 * If a transaction is already active for the session, work joins it, and it is neither committed nor rolled back
+	 * here.
+	 * 
+	 * @param work Work to execute
+	 * @return Value returned by work
+	 * @throws DAOException If work throws any exception, or transaction can not be committed
+	 */
+	public static Object inTransaction( final Callable work ) throws DAOException
 	{
-		LOGGER.debug( "executeSQLStoredProcedure: sqlStoredProcedureQuery[" + sqlStoredProcedureQuery + "] parameters["
-				+ parameters + "]" );
+		Utilities.assertNotNullArgument( work );
 
-		StringUtils.assertQualifiedArgument( sqlStoredProcedureQuery );
-		CallableStatement callableStmt = null;
-		try
+		return inSession( new Callable()
 		{
-			callableStmt = getCurrentSession().connection().prepareCall( sqlStoredProcedureQuery );
-			if( parameters != null && parameters.size() > 0 )
+
+			public Object call() throws Exception
 			{
-				int parameterIndex = 0;
-				for( Iterator iterator = parameters.iterator(); iterator.hasNext(); )
+				Session session = getCurrentSession();
+				if( session.getTransaction().isActive() )
 				{
-					++parameterIndex;
-					int parameterType = ( (Integer) iterator.next() ).intValue();
-					Object parameterValue = iterator.next();
-					// only name based or index based cases are handled
-					if( parameterValue == null )
-					{
-						callableStmt.setNull( parameterIndex, parameterType );
-					}
-					else if( Types.VARCHAR == parameterType )
-					{
-						LOGGER.debug( "setting String Prameter. value[" + parameterValue + "] class["
-								+ parameterValue.getClass() + "]" );
-						if( !( parameterValue instanceof String ) )
-						{
-							IllegalArgumentException iae = new IllegalArgumentException( "Parameter type is "
-									+ parameterType + ", however parameter value is of different type. parameterValue["
-									+ parameterValue + "]" );
-							LOGGER.error( iae );
-							throw iae;
-						}
-						callableStmt.setString( parameterIndex, (String) parameterValue );
-					}
-					else if( Types.INTEGER == parameterType )
-					{
-						LOGGER.debug( "setting Integer Prameter. value[" + parameterValue + "] class["
-								+ parameterValue.getClass() + "]" );
-						if( !( parameterValue instanceof Integer ) && !( parameterValue instanceof Long ) )
-						{
-							IllegalArgumentException iae = new IllegalArgumentException( "Parameter type is "
-									+ parameterType + ", however parameter value is of different type. parameterValue["
-									+ parameterValue + "]" );
-							LOGGER.error( iae );
-							throw iae;
-						}
-						if( parameterValue instanceof Integer )
-						{
-							callableStmt.setInt( parameterIndex, ( (Integer) parameterValue ).intValue() );
-						}
-						else if( parameterValue instanceof Long )
-						{
-							callableStmt.setLong( parameterIndex, ( (Long) parameterValue ).longValue() );
-						}
-					}
-					else
-					{
-						UnsupportedOperationException use = new UnsupportedOperationException(
-								"Only Varchar, Integer and Long type parameter is handled as of now. Mohit, please implement others. parameters["
-										+ parameters + "]" );
-						LOGGER.error( use );
-						throw use;
-					}
+					return callWork( work, "inTransaction" );
+				}
+
+				Transaction transaction = session.beginTransaction();
+				try
+				{
+					Object result = callWork( work, "inTransaction" );
+					// cached statements are closed before connection is given back to pool on commit
+					PreparedStatementCache.close();
+					transaction.commit();
+					invalidatePendingQueryResults();
+					return result;
+				}
+				catch( HibernateException e )
+				{
+					rollback( transaction );
+					LOGGER.error( "Error while executing the work in transaction. work[" + work + "]", e );
+					throw new DAOException( IErrorCodes.DAO_ERROR,
+							"Error while executing the work in transaction. work[" + work + "]", e );
+				}
+				catch( Exception e )
+				{
+					rollback( transaction );
+					throw e;
+				}
+				catch( Error e )
+				{
+					rollback( transaction );
+					throw e;
 				}
 			}
+		} );
+	}
 
-			// callableStmt.registerOutParameter( 1, java.sql.Types.DECIMAL );
-			// callableStmt.getBigDecimal( 1 );
+	/**
+	 * Wraps the given task, so that it works with the session of current unit of work when executed by other thread,
+	 * like a child task submitted to an executor. It is for tasks which should see the uncommitted changes of unit of
+	 * work, or should write in its transaction.
+	 * 
+	 * As session is not thread safe, propagated tasks of a unit of work are executed one at a time, and unit of work
+	 * should not use the session while its propagated tasks are running, like it should wait for their futures. Unit
+	 * of work waits for the running propagated task before closing the session, and tasks started after it has ended
+	 * fail. Reads of propagated tasks go to primary, as they share the primary session. For tasks which should run in
+	 * parallel, use scopedTask.
+	 * 
+	 * @param task Task to propagate the session to
+	 * @return Task which executes the given task with session of current unit of work
+	 * @throws DAOException If current thread is not working in a unit of work
+	 */
+	public static Callable propagateSession( final Callable task ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( task );
 
-			return callableStmt.execute();
-		}
-		catch( Exception e )
+		final SessionScope scope = (SessionScope) SESSION_SCOPE.get();
+		if( scope == null )
 		{
-			LOGGER.error( "Error while executing sql update query. sqlStoredProcedureQuery[" + sqlStoredProcedureQuery
-					+ "] parameters[" + parameters + "]", e );
-			throw new DAOException( IErrorCodes.DAO_ERROR,
-					"Error while executing sql update query. sqlStoredProcedureQuery[" + sqlStoredProcedureQuery
-							+ "] parameters[" + parameters + "]",
-					e );
+			DAOException de = new DAOException( IErrorCodes.ILLEGAL_STATE_ERROR,
+					"Session can be propagated only from a unit of work opened by inSession or inTransaction. task["
+							+ task + "]" );
+			LOGGER.error( de );
+			throw de;
 		}
-		finally
+
+		return new Callable()
 		{
-			if( callableStmt != null )
+
+			public Object call() throws Exception
 			{
+				if( !scope.acquire() )
+				{
+					DAOException de = new DAOException( IErrorCodes.ILLEGAL_STATE_ERROR,
+							"Unit of work has already ended, session can not be propagated. scope[" + scope
+									+ "] task[" + task + "]" );
+					LOGGER.error( de );
+					throw de;
+				}
+
+				Object previousScope = SESSION_SCOPE.get();
+				Object previousSession = SESSION_CACHE.get();
+				Object previousPrimaryReads = PRIMARY_READS.get();
+				Object suspendedStatements = PreparedStatementCache.suspend();
+				SESSION_SCOPE.set( scope );
+				SESSION_CACHE.set( scope.getSession() );
+				PRIMARY_READS.set( Boolean.TRUE );
 				try
 				{
-					callableStmt.close();
+					return task.call();
 				}
-				catch( SQLException e )
+				finally
 				{
-					LOGGER.error( "Error while executing sql update query. sqlStoredProcedureQuery["
-							+ sqlStoredProcedureQuery + "] parameters[" + parameters + "]", e );
-					throw new DAOException( IErrorCodes.DAO_ERROR,
-							"Error while executing sql update query. sqlStoredProcedureQuery[" + sqlStoredProcedureQuery
-									+ "] parameters[" + parameters + "]",
-							e );
+					PreparedStatementCache.resume( suspendedStatements );
+					PRIMARY_READS.set( previousPrimaryReads );
+					SESSION_CACHE.set( previousSession );
+					SESSION_SCOPE.set( previousScope );
+					scope.release();
 				}
 			}
-		}
 
+			public String toString()
+			{
+				return "propagated " + task;
+			}
+		};
 	}
 
 	/**
-	 * Executes the specified prepared statement sql using the given parameters and return the update count
-	 * 
-	 * @param sqlQuery SQLQuery for prepared statement
-	 * @param parameters Parameters to set in query
-	 * @return update count
-	 * @throws DAOException If there is any problem in query execution
+	 * Wraps the given task, so that it is executed as its own unit of work by the thread executing it. Session opened
+	 * for the task is closed when task ends, so tasks submitted to executors do not leave sessions in pooled threads,
+	 * and number of open sessions is bounded by the number of threads of executor.
 	 * 
-	 * @Deprecated Using prepared statement for one time is not recommended. Use executeSQLUpdate or executeSQLSelect
-	 *             instead.
+	 * @param task Task to execute as unit of work
+	 * @param transactional true if task should be executed in a transaction
+	 * @return Task which executes the given task using inSession or inTransaction
 	 */
-	public static int executeSQLUpdateByPreparedStatement( String sqlQuery, List parameters ) throws DAOException
+	public static Callable scopedTask( final Callable task, final boolean transactional )
 	{
-		LOGGER.trace( "executeSQLUpdate: sqlQuery[" + sqlQuery + "] parameters[" + parameters + "]" );
-		StringUtils.assertQualifiedArgument( sqlQuery );
+		Utilities.assertNotNullArgument( task );
 
-		PreparedStatement pStmt = null;
-		try
+		return new Callable()
 		{
-			pStmt = getCurrentSession().connection().prepareStatement( sqlQuery );
 
-			if( parameters != null && parameters.size() > 0 )
+			public Object call() throws Exception
 			{
-				int parameterIndex = 0;
-				for( Iterator iterator = parameters.iterator(); iterator.hasNext(); )
-				{
-
-					++parameterIndex;
-					Class parameterType = (Class) iterator.next();
-					Object parameterValue = iterator.next();
+				return transactional ? inTransaction( task ) : inSession( task );
+			}
 
-					// only name based or index based cases are handled
-					if( parameterType.isAssignableFrom( String.class ) )
-					{
-						if( !( parameterValue instanceof String ) )
-						{
-							IllegalArgumentException iae = new IllegalArgumentException(
-									"Parameter type is String, however parameter value is of different type. parameterValue["
-											+ parameterValue + "]" );
-							LOGGER.error( iae );
-							throw iae;
-						}
-						pStmt.setString( parameterIndex, (String) parameterValue );
-					}
-					else
-					{
-						UnsupportedOperationException use = new UnsupportedOperationException(
-								"Only String type parameter is handled as of now. Mohit, please implement others. parameters["
-										+ parameters + "]" );
-						LOGGER.error( use );
-						throw use;
-					}
-				}
+			public String toString()
+			{
+				return "scoped " + task;
 			}
-			return pStmt.executeUpdate();
+		};
+	}
+
+	/**
+	 * @return true if current thread is working in a unit of work opened by inSession or inTransaction, or in a task
+	 *         propagated from it
+	 */
+	public static boolean isInSessionScope()
+	{
+		return SESSION_SCOPE.get() != null;
+	}
+
+	private static Object callWork( Callable work, String operation ) throws DAOException
+	{
+		try
+		{
+			return work.call();
+		}
+		catch( DAOException e )
+		{
+			throw e;
+		}
+		catch( RuntimeException e )
+		{
+			throw e;
 		}
 		catch( Exception e )
 		{
-			LOGGER.error( "Error while executing sql update query. queryString[" + sqlQuery + "] parameters["
-					+ parameters + "]", e );
-			throw new DAOException( IErrorCodes.DAO_ERROR,
-					"Error while executing sql update query. queryString[" + sqlQuery + "]", e );
+			LOGGER.error( "Error while executing work. operation[" + operation + "] work[" + work + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while executing work. operation[" + operation
+					+ "] work[" + work + "]", e );
+		}
+	}
+
+	private static void rollback( Transaction transaction )
+	{
+		PreparedStatementCache.close();
+		try
+		{
+			if( transaction.isActive() )
+			{
+				transaction.rollback();
+			}
+		}
+		catch( HibernateException e )
+		{
+			// failure of work is more relevant for caller than failure in rollback
+			LOGGER.error( "Error while rolling back the transaction", e );
+		}
+	}
+
+	// ----------------------------- Bulk Processing ---------------------------
+
+	/**
+	 * Opens a new bulk session, backed by a stateless session of primary session factory. It is independent of the
+	 * current session of thread, and should be closed by caller in finally block. Please refer to BulkSession for
+	 * details.
+	 * 
+	 * @return New bulk session
+	 * @throws DAOException If session can not be opened
+	 */
+	public static BulkSession openBulkSession() throws DAOException
+	{
+		try
+		{
+			if( ( (SessionFactoryImplementor) getSessionFactory() ).getSettings().getJdbcBatchSize() <= 0 )
+			{
+				LOGGER.warn( "hibernate.jdbc.batch_size is not set, bulk session writes will not be batched" );
+			}
+			return new BulkSession( getSessionFactory().openStatelessSession() );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "There is an error in opening bulk session : ", e );
+			throw new DAOException( IErrorCodes.SESSION_OPEN_ERROR, "There is an error in opening bulk session : ", e );
+		}
+	}
+
+	/**
+	 * Executes the given work with a new bulk session. Session is committed and closed after the work, or is rolled
+	 * back and closed if work throws any exception.
+	 * 
+	 * @param bulkWork Work to execute
+	 * @return Value returned by work
+	 * @throws DAOException If work or commit fails
+	 */
+	public static Object executeBulkWork( IBulkWork bulkWork ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( bulkWork );
+
+		long startTime = QueryLatencyMonitor.start();
+		BulkSession bulkSession = openBulkSession();
+		boolean succeeded = false;
+		try
+		{
+			Object result = bulkWork.execute( bulkSession );
+			bulkSession.commit();
+			succeeded = true;
+			LOGGER.debug( "bulk work completed. " + bulkSession );
+			return result;
 		}
 		finally
 		{
-			if( pStmt != null )
+			try
 			{
-				try
+				// rolls back if work or commit has failed
+				bulkSession.close();
+			}
+			catch( DAOException e )
+			{
+				// failure of work is more relevant for caller than failure in closing the session
+				if( succeeded )
 				{
-					pStmt.close();
+					throw e;
 				}
-				catch( Exception e )
+				LOGGER.error( "Error while closing the bulk session after failure of work. work[" + bulkWork + "]", e );
+			}
+			catch( RuntimeException e )
+			{
+				if( succeeded )
 				{
-					LOGGER.error( "Error while executing sql update query. queryString[" + sqlQuery + "] parameters["
-							+ parameters + "]", e );
-					throw new DAOException( IErrorCodes.DAO_ERROR,
-							"Error while executing sql update query. queryString[" + sqlQuery + "]", e );
+					throw e;
 				}
+				LOGGER.error( "Error while closing the bulk session after failure of work. work[" + bulkWork + "]", e );
+			}
+			finally
+			{
+				long writeCount = bulkSession.getInsertCount() + bulkSession.getUpdateCount()
+						+ bulkSession.getDeleteCount();
+				QueryLatencyMonitor.end( "executeBulkWork", null, null, (int) Math.min( Integer.MAX_VALUE,
+						writeCount ), startTime );
 			}
 		}
 	}
 
 	/**
-	 * Executes the specified sql query and return the list of results
+	 * Invalidates the query result cache, and marks the primary write for current thread, after writes done outside
+	 * the current session, like by BulkSession.
 	 * 
-	 * @param sqlQuery SQL query
-	 * @return List of result. It might be list of objects, or list of array of objects or any other result according to
-	 *         query
-	 * @throws DAOException if there is any problem in query execution
+	 * @param entityNames Names of entities written. Null element if some written entities are not known, then whole
+	 *        cache is cleared.
 	 */
-	public static List executeSQLSelect( String sqlQuery ) throws DAOException
+	static void afterExternalWrite( Collection entityNames )
 	{
-		LOGGER.trace( "executeSQLSelect: sqlQuery[" + sqlQuery + "]" );
-		StringUtils.assertQualifiedArgument( sqlQuery );
-
-		try
+		if( entityNames.isEmpty() )
 		{
-			return getCurrentSession().createSQLQuery( sqlQuery ).list();
+			return;
 		}
-		catch( HibernateException he )
+		if( entityNames.contains( null ) )
 		{
-			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
-					"HibernateException while executing the sql query for selecting the records", he );
-			LOGGER.error( daoEx );
-			throw daoEx;
+			clearQueryResultCaches();
+			markPrimaryWrite();
+			return;
+		}
+		for( Iterator iterator = entityNames.iterator(); iterator.hasNext(); )
+		{
+			invalidateQueryResultCache( (String) iterator.next() );
 		}
 	}
 
 	/**
-	 * Executes the specified sql query and return the update count if any
+	 * It flushes the data from current session to database
 	 * 
-	 * @param sqlQuery SQL query
-	 * @return update count for the query, zero if it does not affect any record
-	 * @throws DAOException if there is any problem in query execution
+	 * @throws DAOException if there is any problem
 	 */
-	public static int executeSQLUpdate( String sqlQuery ) throws DAOException
+	public static void flush() throws DAOException
+	{
+		getCurrentSession().flush();
+	}
+
+	// ----------------------------- Object Management -------------------------
+
+	public static Serializable getObjectIdentifier( Object obj )
+	{
+		Utilities.assertNotNullArgument( obj );
+		/*
+		 * If object is proxy, then get the actual implementation and then use it to get class name.
+		 */
+		if( obj instanceof HibernateProxy )
+		{
+			obj = ( (HibernateProxy) obj ).getHibernateLazyInitializer().getImplementation();
+		}
+		return getSessionFactory().getClassMetadata( obj.getClass() ).getIdentifier( obj, EntityMode.POJO );
+	}
+
+	/**
+	 * returns identity column name for the particular className
+	 * 
+	 * @param className
+	 * @return String
+	 * @throws DAOException
+	 */
+	public static String getIdentifierPropertyName( String className ) throws DAOException
+	{
+		LOGGER.trace( "getIdentifierPropertyName: className[" + className + "]" );
+
+		return getEntityMetadata( className ).getIdentifierPropertyName();
+	}
+
+	/**
+	 * returns identity column type for the particular className
+	 * 
+	 * @param className
+	 * @return String
+	 * @throws DAOException
+	 */
+	public static String getIdentifierPropertyType( String className ) throws DAOException
+	{
+		LOGGER.debug( "getIdentifierPropertyType: className[" + className + "]" );
+
+		return getEntityMetadata( className ).getIdentifierPropertyType();
+	}
+
+	// TODO: Remove the unqualified class name, it should be qualified, that is much easier to implement
+	public static Object getObjectById( Serializable id, String className ) throws DAOException, ObjectNotFoundException
+	{
+
+		Utilities.assertNotNullArgument( id );
+		StringUtils.assertQualifiedArgument( className );
+
+		Class cls = getClassByClassName( className );
+		return getObjectById( id, cls );
+	}
+
+	public static Object getObjectById( Serializable id, Class clazz ) throws ObjectNotFoundException, DAOException
 	{
-		LOGGER.trace( "executeSQLUpdate: sqlQuery[" + sqlQuery + "]" );
-		StringUtils.assertQualifiedArgument( sqlQuery );
+
+		LOGGER.trace( "getObjectById: id[ " + id + "] class[ " + clazz + " ]" );
+		Utilities.assertNotNullArgument( id );
+		Utilities.assertNotNullArgument( clazz );
 
 		try
 		{
-			return getCurrentSession().createSQLQuery( sqlQuery ).executeUpdate();
+			Object obj = getCurrentSession().load( clazz, id );
+			LOGGER.debug( "obj[" + obj + "]" );
+			return obj;
 		}
-		catch( HibernateException he )
+		catch( org.hibernate.ObjectNotFoundException e )
 		{
-			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
-					"HibernateException while executing the sql query for updating the records", he );
-			LOGGER.error( daoEx );
-			throw daoEx;
+
+			LOGGER.debug( "Requested object of class[ " + clazz + " ]not found id[ " + id + " ]" );
+			throw new ObjectNotFoundException( IErrorCodes.RESOURCE_NOT_FOUND,
+					"Requested object of class[ " + clazz + " ]not found id[ " + id + " ]" );
+			// , e );
 		}
 	}
 
-	public static List getObjectsByQuery( String queryString ) throws DAOException
+	/**
+	 * Returns the objects of given class for given ids, in the same order as ids. Ids are fetched in chunks, using 'in'
+	 * clause on identifier property, so a list of ids is fetched in a few queries instead of one query per id.
+	 * 
+	 * Chunk size can be configured using 'hibernate.util.inclause.chunksize' property.
+	 * 
+	 * @param clazz Class of objects
+	 * @param ids Ids of objects. These should be of same type as identifier property of class
+	 * @return List of objects found, in order of ids. Ids for which no object is found are skipped
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static List getObjectsByIds( Class clazz, Collection ids ) throws DAOException
 	{
-
-		LOGGER.trace( "getObjectsByQuery: queryString[" + queryString + "]" );
-		return getObjectsByQuery( queryString, null );
+		return getObjectsByIds( clazz, ids, getInClauseChunkSize(), null );
 	}
 
-	public static List getObjectsByQuery( String queryString, Map<Object, Object> parameters ) throws DAOException
+	/**
+	 * Returns the objects of given class for given ids, in the same order as ids. Please refer to
+	 * getObjectsByIds( Class, Collection ) for details.
+	 * 
+	 * @param clazz Class of objects
+	 * @param ids Ids of objects. These should be of same type as identifier property of class
+	 * @param chunkSize Maximum number of ids to fetch in one query
+	 * @param missingIds Collection to which ids are added for which no object is found, can be null
+	 * @return List of objects found, in order of ids
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static List getObjectsByIds( Class clazz, Collection ids, int chunkSize, Collection missingIds )
+			throws DAOException
 	{
+		LOGGER.trace( "getObjectsByIds: class[" + clazz + "] idsCount[" + ( ids == null ? 0 : ids.size() )
+				+ "] chunkSize[" + chunkSize + "]" );
+		Utilities.assertNotNullArgument( clazz );
+		Utilities.assertNotNullArgument( ids );
+		if( chunkSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Chunk size must be greater than zero. chunkSize[" + chunkSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
 
-		LOGGER.trace( "getObjectsByQuery: queryString[" + queryString + "]" );
-		StringUtils.assertQualifiedArgument( queryString );
+		ClassMetadata classMetadata = getMappedClassMetadata( clazz );
+		String queryString = "from " + classMetadata.getEntityName() + " a where a."
+				+ classMetadata.getIdentifierPropertyName() + " in (:ids)";
 
+		Map objectsById = new HashMap( ids.size() * 2 );
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
 		try
 		{
-			Query query = getCurrentSession().createQuery( queryString );
-
-			if( parameters != null && parameters.size() > 0 )
+			Session session = getCurrentSession();
+			List chunk = new ArrayList( Math.min( chunkSize, ids.size() ) );
+			for( Iterator iterator = new LinkedHashSet( ids ).iterator(); iterator.hasNext(); )
 			{
-				for( Object element : parameters.entrySet() )
+				chunk.add( iterator.next() );
+				if( chunk.size() == chunkSize || !iterator.hasNext() )
 				{
-					Map.Entry<Object, Object> parameterEntry = (Map.Entry<Object, Object>) element;
-					// only name based or index based cases are handled
-					if( parameterEntry.getKey() instanceof Integer )
-					{
-						query.setParameter( ( (Integer) parameterEntry.getKey() ).intValue(),
-								parameterEntry.getValue() );
-					}
-					else if( parameterEntry.getKey() instanceof String )
+					List chunkObjects = session.createQuery( queryString ).setParameterList( "ids", chunk ).list();
+					for( Iterator objIterator = chunkObjects.iterator(); objIterator.hasNext(); )
 					{
-						query.setParameter( ( (String) parameterEntry.getKey() ), parameterEntry.getValue() );
-					}
-					else
-					{
-						IllegalArgumentException iae = new IllegalArgumentException(
-								"Only name based and index based parameters can be passed, however the parameter keys are neither integer nor String. queryString["
-										+ queryString + "] parameters[" + parameters + "]" );
-						LOGGER.error(
-								"Only name based and index based parameters can be passed, however the parameter keys are neither integer nor String. queryString["
-										+ queryString + "] parameters[" + parameters + "]",
-								iae );
-						throw iae;
+						Object obj = objIterator.next();
+						objectsById.put( classMetadata.getIdentifier( obj, EntityMode.POJO ), obj );
 					}
-
+					chunk.clear();
 				}
 			}
-
-			List listObjects = query.list();
-			LOGGER.debug( "objectsCount[" + ( listObjects == null ? 0 : listObjects.size() ) + "]" );
-
-			return listObjects;
+			rowCount = objectsById.size();
 		}
-		catch( Exception e )
+		catch( HibernateException e )
 		{
-			LOGGER.error( "Error while getting list of objects. queryString[" + queryString + "]", e );
-			throw new DAOException( IErrorCodes.DAO_ERROR,
-					"Error while getting list of objects. queryString[" + queryString + "]", e );
+			LOGGER.error( "Error while getting objects by ids. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while getting objects by ids. queryString["
+					+ queryString + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "getObjectsByIds", queryString, ids, rowCount, startTime );
 		}
 
+		List objects = new ArrayList( ids.size() );
+		for( Iterator iterator = ids.iterator(); iterator.hasNext(); )
+		{
+			Object id = iterator.next();
+			Object obj = objectsById.get( id );
+			if( obj != null )
+			{
+				objects.add( obj );
+			}
+			else if( missingIds != null )
+			{
+				missingIds.add( id );
+			}
+		}
+		LOGGER.debug( "objectsCount[" + objects.size() + "] missingCount[" + ( ids.size() - objects.size() ) + "]" );
+		return objects;
 	}
 
 	/**
-	 * This method is only for backward compatability, otherwise now we are using fully qualified class name
+	 * deletes object based on id and class name
 	 * 
-	 * @return
-	 * @throws ClassNotFoundException
+	 * @param className String
+	 * @param objectId long
+	 * @throws DAOException
+	 * @throws RelationExistException
+	 * @throws HibernateException
 	 */
-	public static Class getClassByClassName( String className ) throws DAOException
+	public static void deleteObject( String className, Long objectId ) throws DAOException, RelationExistException
 	{
-		LOGGER.debug( "getClassByClassName: unqualifiedName[ " + className + " ]" );
+		LOGGER.debug( "deleteObject: className[ " + className + " ] Id[ " + objectId + " ]" );
+
 		StringUtils.assertQualifiedArgument( className );
+		Utilities.assertNotNullArgument( objectId );
+
+		Class cls = getClassByClassName( className );
+		deleteObjectById( cls, objectId );
+	}
+
+	public static void deleteObjectById( Class clazz, Serializable id ) throws DAOException, RelationExistException
+	{
+		Object pojoObject = getCurrentSession().load( clazz, id );
+		deleteObject( pojoObject );
+	}
+
+	/**
+	 * Deletes the objects of given class for given ids, without loading these. Ids are deleted in chunks, using one
+	 * HQL delete statement with 'in' clause per chunk.
+	 * 
+	 * Being a bulk operation, it does not go through session. So cascades and interceptors are not applied, and objects
+	 * already loaded in current session are not removed from it. Chunk size can be configured using
+	 * 'hibernate.util.inclause.chunksize' property.
+	 * 
+	 * @param clazz Class of objects to delete
+	 * @param ids Ids of objects to delete
+	 * @return Number of objects deleted
+	 * @throws DAOException If there is any problem in deletion
+	 * @throws RelationExistException If any object is referenced by another object
+	 */
+	public static int deleteObjectsByIds( Class clazz, Collection ids ) throws DAOException, RelationExistException
+	{
+		LOGGER.trace( "deleteObjectsByIds: class[" + clazz + "] idsCount[" + ( ids == null ? 0 : ids.size() ) + "]" );
+		Utilities.assertNotNullArgument( clazz );
+		Utilities.assertNotNullArgument( ids );
 
-		Class cls = null;
+		ClassMetadata classMetadata = getMappedClassMetadata( clazz );
+		String queryString = "delete from " + classMetadata.getEntityName() + " a where a."
+				+ classMetadata.getIdentifierPropertyName() + " in (:ids)";
+
+		int deletedCount = 0;
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			Session session = getCurrentSession();
+			List chunk = new ArrayList( Math.min( getInClauseChunkSize(), ids.size() ) );
+			for( Iterator iterator = ids.iterator(); iterator.hasNext(); )
+			{
+				chunk.add( iterator.next() );
+				if( chunk.size() == getInClauseChunkSize() || !iterator.hasNext() )
+				{
+					deletedCount += session.createQuery( queryString ).setParameterList( "ids", chunk )
+							.executeUpdate();
+					chunk.clear();
+				}
+			}
+			LOGGER.debug( "deletedCount[" + deletedCount + "]" );
+			return deletedCount;
+		}
+		catch( org.hibernate.exception.ConstraintViolationException e )
+		{
+			LOGGER.error( "Objects of class[" + clazz
+					+ "] could not be deleted since these are referenced by another object. deletedCount["
+					+ deletedCount + "]", e );
+			throw new RelationExistException( IErrorCodes.CHILD_RECORD_FOUND, "Objects of class[" + clazz
+					+ "] could not be deleted since these are referenced by another object", e );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while deleting objects by ids. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while deleting objects by ids. queryString["
+					+ queryString + "]", e );
+		}
+		finally
+		{
+			if( deletedCount > 0 )
+			{
+				invalidateQueryResultCache( classMetadata.getEntityName() );
+			}
+			QueryLatencyMonitor.end( "deleteObjectsByIds", queryString, ids, deletedCount, startTime );
+		}
+	}
+
+	/**
+	 * Updates the objects of given class matching the where clause, without loading these, using one HQL update
+	 * statement.
+	 * 
+	 * Being a bulk operation, it does not go through session. So version, interceptors and objects already loaded in
+	 * current session are not updated.
+	 * 
+	 * @param clazz Class of objects to update
+	 * @param whereClause Where clause, without 'where' keyword, to select the objects. It should use 'a' as alias. Null
+	 *        to update all the objects
+	 * @param assignments Name of properties to update and their new values
+	 * @param parameters Name or index based parameters used in where clause, can be null. Names starting with
+	 *        'bulkValue' are reserved for assignments
+	 * @return Number of objects updated
+	 * @throws DAOException If there is any problem in update
+	 * @throws RelationExistException If any assignment violates a reference to another object
+	 */
+	public static int bulkUpdate( Class clazz, String whereClause, Map<String, Object> assignments,
+			Map<Object, Object> parameters ) throws DAOException, RelationExistException
+	{
+		LOGGER.trace( "bulkUpdate: class[" + clazz + "] whereClause[" + whereClause + "] assignments[" + assignments
+				+ "] parameters[" + parameters + "]" );
+		Utilities.assertNotNullArgument( clazz );
+		if( assignments == null || assignments.isEmpty() )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"At least one assignment is required for bulk update. class[" + clazz + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		ClassMetadata classMetadata = getMappedClassMetadata( clazz );
+		StringBuffer queryString = new StringBuffer( "update " ).append( classMetadata.getEntityName() ).append(
+				" a set " );
+		int assignmentIndex = 0;
+		for( Iterator iterator = assignments.keySet().iterator(); iterator.hasNext(); assignmentIndex++ )
+		{
+			String propertyName = (String) iterator.next();
+			StringUtils.assertQualifiedArgument( propertyName );
+			queryString.append( assignmentIndex > 0 ? ", a." : "a." ).append( propertyName.trim() ).append(
+					" = :bulkValue" ).append( assignmentIndex );
+		}
+		if( StringUtils.isQualifiedString( whereClause ) )
+		{
+			queryString.append( " where " ).append( whereClause );
+		}
+		LOGGER.debug( "finalQuery[" + queryString + "]" );
+
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentSession().createQuery( queryString.toString() );
+			setQueryParameters( query, queryString.toString(), parameters );
+			assignmentIndex = 0;
+			for( Iterator iterator = assignments.values().iterator(); iterator.hasNext(); assignmentIndex++ )
+			{
+				query.setParameter( "bulkValue" + assignmentIndex, iterator.next() );
+			}
+
+			int updatedCount = query.executeUpdate();
+			LOGGER.debug( "updatedCount[" + updatedCount + "]" );
+			invalidateQueryResultCache( classMetadata.getEntityName() );
+			rowCount = updatedCount;
+			return updatedCount;
+		}
+		catch( org.hibernate.exception.ConstraintViolationException e )
+		{
+			LOGGER.error( "Objects of class[" + clazz
+					+ "] could not be updated as update violates a constraint. queryString[" + queryString + "]", e );
+			throw new RelationExistException( IErrorCodes.CHILD_RECORD_FOUND, "Objects of class[" + clazz
+					+ "] could not be updated as update violates a constraint. queryString[" + queryString + "]", e );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while updating objects in bulk. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while updating objects in bulk. queryString["
+					+ queryString + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "bulkUpdate", queryString.toString(), parameters, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Returns the metadata of given class, or throws exception if class is not mapped with hibernate
+	 */
+	static ClassMetadata getMappedClassMetadata( Class clazz ) throws DAOException
+	{
+		EntityMetadataCache.EntityMetadata entityMetadata = getMetadataCache().getEntityMetadata( clazz.getName() );
+		if( entityMetadata == null )
+		{
+			DAOException daoException = new DAOException( IErrorCodes.RESOURCE_NOT_FOUND,
+					"Class is not mapped with hibernate. class[" + clazz + "]" );
+			LOGGER.error( daoException );
+			throw daoException;
+		}
+		return entityMetadata.getClassMetadata();
+	}
+
+	/**
+	 * Returns the cached metadata of given class name, or throws exception if class is not found or is not mapped with
+	 * hibernate
+	 */
+	private static EntityMetadataCache.EntityMetadata getEntityMetadata( String className ) throws DAOException
+	{
+		className = validateClassName( className );
+		EntityMetadataCache.EntityMetadata entityMetadata = getMetadataCache().getEntityMetadata( className );
+		if( entityMetadata == null )
+		{
+			DAOException daoException = new DAOException( IErrorCodes.RESOURCE_NOT_FOUND,
+					"Class is not mapped with hibernate. className[" + className + "]" );
+			LOGGER.error( daoException );
+			throw daoException;
+		}
+		return entityMetadata;
+	}
+
+	/**
+	 * Clears the cache of class names and entity metadata. It is required only if classes are reloaded at runtime.
+	 */
+	public static void clearMetadataCache()
+	{
+		getMetadataCache().clear();
+	}
+
+	/**
+	 * deletes object based on id and class name
+	 * 
+	 * @param className String
+	 * @param Id long
+	 * @throws DAOException
+	 * @throws RelationExistException
+	 * @throws HibernateException
+	 */
+	public static void deleteObject( Object objToDelete ) throws DAOException, RelationExistException
+	{
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			getCurrentSession().delete( objToDelete );
+
+			/*
+			 * Because we were facing the problem of ConstraintViolationException while server was committing the
+			 * transaction and flushing the session so we are explicitly flushing the session,so that this exception
+			 * will be throw at the time of flushing. and the appropriate action could be taken
+			 */
+			getCurrentSession().flush();
+			invalidateQueryResultCache( objToDelete );
+		}
+		catch( ConstraintViolationException e )
+		{
+
+			LOGGER.error( "Object: " + objToDelete + " could not be deleted since it is referenced by another object",
+					e );
+			throw new RelationExistException( IErrorCodes.CHILD_RECORD_FOUND,
+					"Object: " + objToDelete + " could not be deleted since it is referenced by another object", e );
+		}
+		finally
+		{
+			endWrite( "deleteObject", objToDelete, startTime );
+		}
+	}
+
+	/**
+	 * To save given object in the DataBase.
+	 * 
+	 * @param obj object of POJO class to save in Database.
+	 * @throws DAOException
+	 * @throws ConstraintViolationException
+	 * @throws HibernateException
+	 * 
+	 */
+	public static Object saveNewObject( Object obj ) throws DAOException, ConstraintViolationException
+	{
+		LOGGER.trace( "entered saveNewObject: obj[" + obj + "]" );
+		Utilities.assertNotNullArgument( obj );
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			Long id = (Long) getCurrentSession().save( obj );
+			Object object = getCurrentSession().load( obj.getClass(), id );
+			getCurrentSession().flush();
+			invalidateQueryResultCache( obj );
+			return object;
+		}
+		catch( ConstraintViolationException cve )
+		{
+			ConstraintViolationException localCVE = new ConstraintViolationException(
+					"Constraint Violation exception is faced while saving the object. error-message[" + cve.getMessage()
+							+ "]",
+					cve, null );
+			// , cve.getSQLException() );
+			LOGGER.error( localCVE );
+			throw localCVE;
+		}
+		catch( Exception ex )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while saving new object. error-message[" + ex.getMessage() + "]", ex );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+		finally
+		{
+			endWrite( "saveNewObject", obj, startTime );
+		}
+	}
+
+	/**
+	 * To update the given object in the DataBase.
+	 * 
+	 * Object is locked with the primary session, so it should be read from primary. An object read from replica, like
+	 * by getObjectsByQuery, is still associated with the open replica session, and fails with 'two open sessions'
+	 * error. Such object should be updated using saveOrUpdateObject, which merges its state in primary session, or
+	 * reads should be forced to primary using setPrimaryReads or executeOnPrimary.
+	 * 
+	 * @param obj Object
+	 * @param id long
+	 * @throws DAOException
+	 * @throws HibernateException
+	 */
+	public static Object updateObject( Object obj ) throws DAOException
+	{
+		LOGGER.trace( "updateObject: obj[" + obj + "]" );
+		Utilities.assertNotNullArgument( obj );
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			getCurrentSession().lock( obj, LockMode.UPGRADE );
+			// getSession().update( obj );
+			invalidateQueryResultCache( obj );
+
+			Serializable id = HibernateUtil.getObjectIdentifier( obj );
+			Object object = getCurrentSession().load( obj.getClass(), id );
+			return object;
+		}
+		finally
+		{
+			endWrite( "updateObject", obj, startTime );
+		}
+	}
+
+	/**
+	 * Updates the given object optimistically, i.e. without locking its row while it is being edited. Object is
+	 * written only if its row has not been changed since object was read, otherwise OptimisticLockException is thrown.
+	 * So concurrent writers of different objects do not wait for each other, and concurrent writers of same object are
+	 * detected instead of overwriting each other.
+	 * 
+	 * Changes are detected using the version property, if class is mapped with a version. Otherwise class should be
+	 * an AbstractBDO with mapped 'updatedOn' property, which is then used as version. Its value is compared with the
+	 * row and is set to current time, in one update statement, so column should keep the milliseconds.
+	 * 
+	 * Update should be executed in a transaction, like using inTransaction, so that it is rolled back on conflict. As
+	 * Hibernate session should not be used after an exception, session should be closed on conflict. Please refer to
+	 * the other updateObjectOptimistic method, which retries the update with latest state of object.
+	 * 
+	 * If object is detached, it is not changed, and new 'updatedOn' is set on returned object only. So a detached
+	 * object can be submitted again after a failure. Cached query results of class are invalidated once transaction is
+	 * committed.
+	 * 
+	 * @param obj Object to update, detached or persistent
+	 * @return Persistent object, with the state of given object
+	 * @throws OptimisticLockException If object has been changed by someone else since it was read
+	 * @throws DAOException If there is any other problem in update
+	 */
+	public static Object updateObjectOptimistic( Object obj ) throws DAOException
+	{
+		LOGGER.trace( "updateObjectOptimistic: obj[" + obj + "]" );
+		Utilities.assertNotNullArgument( obj );
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			Session session = getCurrentSession();
+			Object updatedObject = applyOptimisticUpdate( session, obj, getObjectIdentifier( obj ) );
+			String entityName = getMappedClassMetadata( Hibernate.getClass( obj ) ).getEntityName();
+			if( session.getTransaction().isActive() )
+			{
+				// other threads can see the write only after commit, so cached results are invalidated then
+				deferQueryResultInvalidation( entityName );
+			}
+			else
+			{
+				invalidateQueryResultCache( entityName );
+			}
+			return updatedObject;
+		}
+		finally
+		{
+			endWrite( "updateObjectOptimistic", obj, startTime );
+		}
+	}
+
+	/**
+	 * Updates the object of given class and id optimistically, applying the changes on its latest state, and retries
+	 * it if update conflicts with other writer. Each attempt reads the object, applies the changes using updater, and
+	 * writes it as updateObjectOptimistic(Object) does, in its own session and transaction. If it conflicts, retry
+	 * policy decides whether and after how much delay to try again.
+	 * 
+	 * As update is done in its own session, objects of this class which are already read by session of current thread
+	 * are not refreshed.
+	 * 
+	 * @param clazz Class of object
+	 * @param id Id of object
+	 * @param updater Updater to apply the changes, it may be called once per attempt
+	 * @param retryPolicy Policy to decide the retries, can be null to not retry
+	 * @return Updated object, detached
+	 * @throws OptimisticLockException If update conflicts in all the attempts allowed by retry policy
+	 * @throws ObjectNotFoundException If object is not found
+	 * @throws DAOException If there is any other problem in update
+	 */
+	public static Object updateObjectOptimistic( Class clazz, Serializable id, IEntityUpdater updater,
+			IRetryPolicy retryPolicy ) throws DAOException, ObjectNotFoundException
+	{
+		LOGGER.trace( "updateObjectOptimistic: class[" + clazz + "] id[" + id + "] retryPolicy[" + retryPolicy + "]" );
+		Utilities.assertNotNullArgument( clazz );
+		Utilities.assertNotNullArgument( id );
+		Utilities.assertNotNullArgument( updater );
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			for( int attempt = 1;; attempt++ )
+			{
+				OptimisticLockException conflict;
+				Session session = null;
+				Transaction transaction = null;
+				try
+				{
+					session = getSessionFactory().openSession();
+					transaction = session.beginTransaction();
+					Object object = session.get( clazz, id );
+					if( object == null )
+					{
+						throw new ObjectNotFoundException( IErrorCodes.RESOURCE_NOT_FOUND, "Requested object of class[ "
+								+ clazz + " ]not found id[ " + id + " ]" );
+					}
+					updater.update( object );
+					Object updatedObject = applyOptimisticUpdate( session, object, id );
+					transaction.commit();
+					transaction = null;
+					invalidateQueryResultCache( clazz.getName() );
+					return updatedObject;
+				}
+				catch( OptimisticLockException e )
+				{
+					conflict = e;
+				}
+				catch( HibernateException e )
+				{
+					DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+							"Error while updating the object optimistically. class[" + clazz + "] id[" + id + "]", e );
+					LOGGER.error( de );
+					throw de;
+				}
+				finally
+				{
+					if( transaction != null )
+					{
+						rollback( transaction );
+					}
+					if( session != null )
+					{
+						session.close();
+					}
+				}
+
+				long delay = retryPolicy == null ? -1 : retryPolicy.getRetryDelay( attempt, conflict );
+				if( delay < 0 )
+				{
+					LOGGER.error( "optimistic update failed, not retrying. attempt[" + attempt + "] retryPolicy["
+							+ retryPolicy + "]", conflict );
+					throw conflict;
+				}
+				LOGGER.debug( "optimistic update conflicted, retrying. attempt[" + attempt + "] delay[" + delay
+						+ "] class[" + clazz + "] id[" + id + "]" );
+				if( delay > 0 )
+				{
+					try
+					{
+						Thread.sleep( delay );
+					}
+					catch( InterruptedException e )
+					{
+						Thread.currentThread().interrupt();
+						throw conflict;
+					}
+				}
+			}
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "updateObjectOptimistic", clazz.getName(), id, -1, startTime );
+		}
+	}
+
+	/**
+	 * Writes the given object with the given session, if its version is same as of its row
+	 * 
+	 * @return Persistent object
+	 * @throws OptimisticLockException If version of row is different
+	 */
+	private static Object applyOptimisticUpdate( Session session, Object obj, Serializable id ) throws DAOException
+	{
+		ClassMetadata classMetadata = getMappedClassMetadata( Hibernate.getClass( obj ) );
+		String entityName = classMetadata.getEntityName();
+		try
+		{
+			if( classMetadata.isVersioned() )
+			{
+				// hibernate compares the version while merging a detached object, and while flushing the update
+				Object mergedObject = session.merge( obj );
+				session.flush();
+				return mergedObject;
+			}
+
+			if( !( obj instanceof AbstractBDO )
+					|| !Arrays.asList( classMetadata.getPropertyNames() ).contains( UPDATED_ON_PROPERTY ) )
+			{
+				IllegalArgumentException iae = new IllegalArgumentException(
+						"Object should either be mapped with a version, or should be an AbstractBDO with mapped '"
+								+ UPDATED_ON_PROPERTY + "' property, to be updated optimistically. entityName["
+								+ entityName + "]" );
+				LOGGER.error( iae );
+				throw iae;
+			}
+
+			AbstractBDO bdo = (AbstractBDO) obj;
+			Timestamp expectedUpdatedOn = bdo.getUpdatedOn();
+			long now = System.currentTimeMillis();
+			if( expectedUpdatedOn != null && expectedUpdatedOn.getTime() >= now )
+			{
+				// new value should differ from old one, even if clock has not moved
+				now = expectedUpdatedOn.getTime() + 1;
+			}
+			Timestamp newUpdatedOn = new Timestamp( now );
+
+			// compare and set in one statement, so that a concurrent writer can not slip in between
+			Query query = session.createQuery( "update " + entityName + " set " + UPDATED_ON_PROPERTY
+					+ " = :newUpdatedOn where " + classMetadata.getIdentifierPropertyName() + " = :id and "
+					+ UPDATED_ON_PROPERTY + ( expectedUpdatedOn == null ? " is null" : " = :expectedUpdatedOn" ) );
+			query.setParameter( "newUpdatedOn", newUpdatedOn );
+			query.setParameter( "id", id );
+			if( expectedUpdatedOn != null )
+			{
+				query.setParameter( "expectedUpdatedOn", expectedUpdatedOn );
+			}
+			// pending changes of object should not be flushed before the check
+			query.setFlushMode( FlushMode.NEVER );
+			if( query.executeUpdate() == 0 )
+			{
+				throw new OptimisticLockException(
+						"Object has been changed or deleted by someone else since it was read. updatedOn["
+								+ expectedUpdatedOn + "]", entityName, id );
+			}
+
+			// new value is set on merged object, so that a detached object of caller is not changed if flush fails
+			AbstractBDO mergedObject = (AbstractBDO) session.merge( obj );
+			mergedObject.setUpdatedOn( newUpdatedOn );
+			boolean flushed = false;
+			try
+			{
+				session.flush();
+				flushed = true;
+			}
+			finally
+			{
+				if( !flushed && mergedObject == obj )
+				{
+					// object was persistent in session, so it is the caller's object which is restored
+					mergedObject.setUpdatedOn( expectedUpdatedOn );
+				}
+			}
+			return mergedObject;
+		}
+		catch( StaleStateException e )
+		{
+			OptimisticLockException ole = new OptimisticLockException(
+					"Object has been changed or deleted by someone else since it was read.", entityName, id, e );
+			LOGGER.debug( ole );
+			throw ole;
+		}
+		catch( OptimisticLockException e )
+		{
+			LOGGER.debug( e );
+			throw e;
+		}
+		catch( HibernateException e )
+		{
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while updating the object optimistically. entityName[" + entityName + "] id[" + id + "]",
+					e );
+			LOGGER.error( de );
+			throw de;
+		}
+	}
+
+	/**
+	 * saves or updates the object values.
+	 * 
+	 * @param className String
+	 * @param listOfObjects List<HashMap<String, String>>
+	 * @throws DAOException
+	 * @throws ConstraintViolationException
+	 * @throws HibernateException
+	 */
+
+	public static Object saveOrUpdateObject( Object pojoObject ) throws DAOException, ConstraintViolationException
+	{
+		LOGGER.trace( "saveOrUpdateObject: pojoObject[ " + pojoObject + " ]" );
+
+		Utilities.assertNotNullArgument( pojoObject );
+
+		Serializable id = getObjectIdentifier( pojoObject );
+
+		if( id == null )
+		{
+			LOGGER.debug( "newObject-save" );
+			// latency is recorded by saveNewObject
+			return saveNewObject( pojoObject );
+		}
+		else
+		{
+			// LOGGER.debug( "persistentObject-Merge" );
+			long startTime = QueryLatencyMonitor.start();
+			try
+			{
+				pojoObject = getCurrentSession().merge( pojoObject );
+				getCurrentSession().saveOrUpdate( pojoObject );
+				invalidateQueryResultCache( pojoObject );
+				return pojoObject;
+				// getSession().lock( pojoObject, LockMode.NONE );
+			}
+			finally
+			{
+				endWrite( "saveOrUpdateObject", pojoObject, startTime );
+			}
+		}
+	}
+
+	/**
+	 * Saves all the given new objects in the DataBase in batches.
+	 * 
+	 * Unlike saveNewObject, it does not re-load the saved object and does not flush after each object. Session is
+	 * flushed and cleared after every 'batchSize' objects, so that inserts are sent to database as JDBC batches and
+	 * first level cache of session does not grow with the size of collection. JDBC batching itself is controlled by
+	 * 'hibernate.jdbc.batch_size' property of hibernate configuration, it should be same as or multiple of batchSize.
+	 * 
+	 * As session is cleared after every batch, any other object loaded earlier in current session gets detached. So
+	 * this method should be used for bulk imports only, where saved objects are not being used further.
+	 * 
+	 * @param objects Collection of objects of POJO classes to save in Database
+	 * @param batchSize Number of objects after which session should be flushed and cleared
+	 * @return Number of objects saved
+	 * @throws DAOException If there is any problem while saving the objects
+	 * @throws ConstraintViolationException If any object violates a database constraint. Index of the failing object
+	 *         in collection is available as first message parameter of exception, or -1 if it can not be found
+	 *         reliably, like when JDBC batch size is smaller than batchSize or more than one class is saved. Second and
+	 *         third message parameters are the indexes of first and last object which may have failed.
+	 */
+	public static int saveAllObjects( Collection objects, int batchSize ) throws DAOException,
+			ConstraintViolationException
+	{
+		LOGGER.trace( "entered saveAllObjects: objectsCount[" + ( objects == null ? 0 : objects.size() )
+				+ "] batchSize[" + batchSize + "]" );
+		Utilities.assertNotNullArgument( objects );
+		if( batchSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Batch size must be greater than zero. batchSize[" + batchSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		int jdbcBatchSize = ( (SessionFactoryImplementor) getSessionFactory() ).getSettings().getJdbcBatchSize();
+		if( jdbcBatchSize <= 1 )
+		{
+			LOGGER.warn( "JDBC batching is disabled, set 'hibernate.jdbc.batch_size' to get the benefit of batch "
+					+ "inserts. batchSize[" + batchSize + "]" );
+		}
+
+		Session session = getCurrentSession();
+		Map savedClasses = new HashMap();
+		int savedCount = 0;
+		int batchStartIndex = 0;
+		int batchNumber = 0;
+		long batchStartTime = System.currentTimeMillis();
+		long totalStartTime = batchStartTime;
+		boolean flushing = false;
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			for( Iterator iterator = objects.iterator(); iterator.hasNext(); )
+			{
+				Object obj = iterator.next();
+				Utilities.assertNotNullArgument( obj );
+
+				// for identity ids, object is inserted here itself
+				session.save( obj );
+				savedCount++;
+				if( !savedClasses.containsKey( obj.getClass() ) )
+				{
+					savedClasses.put( obj.getClass(), obj );
+				}
+
+				if( savedCount % batchSize == 0 )
+				{
+					flushing = true;
+					flushAndClearBatch( session, ++batchNumber, batchStartIndex, savedCount, batchStartTime );
+					flushing = false;
+					batchStartIndex = savedCount;
+					batchStartTime = System.currentTimeMillis();
+				}
+			}
+			if( savedCount > batchStartIndex )
+			{
+				flushing = true;
+				flushAndClearBatch( session, ++batchNumber, batchStartIndex, savedCount, batchStartTime );
+				flushing = false;
+			}
+			for( Iterator iterator = savedClasses.values().iterator(); iterator.hasNext(); )
+			{
+				invalidateQueryResultCache( iterator.next() );
+			}
+
+			LOGGER.info( "saveAllObjects: savedCount[" + savedCount + "] batches[" + batchNumber + "] timeMillis["
+					+ ( System.currentTimeMillis() - totalStartTime ) + "]" );
+			return savedCount;
+		}
+		catch( org.hibernate.exception.ConstraintViolationException hcve )
+		{
+			int failedIndex;
+			int failedRangeEnd;
+			if( !flushing )
+			{
+				// failed in save, which inserts immediately for identity ids
+				failedIndex = savedCount;
+				failedRangeEnd = savedCount;
+			}
+			else
+			{
+				failedRangeEnd = savedCount - 1;
+				// update counts are relative to JDBC batch, which is same as flushed batch only if whole batch
+				// fits in one JDBC batch of one insert statement
+				failedIndex = savedCount - batchStartIndex <= jdbcBatchSize && savedClasses.size() == 1
+						? getFailedBatchIndex( hcve.getSQLException(), batchStartIndex, savedCount ) : -1;
+			}
+			ConstraintViolationException localCVE = new ConstraintViolationException(
+					"Constraint Violation exception is faced while saving the objects in batch. failedObjectIndex["
+							+ failedIndex + "] failedObjectRange[" + batchStartIndex + " - " + failedRangeEnd
+							+ "] error-message[" + hcve.getMessage() + "]", hcve, hcve.getSQLException() );
+			localCVE.addMessageParameter( new Integer( failedIndex ) );
+			localCVE.addMessageParameter( new Integer( batchStartIndex ) );
+			localCVE.addMessageParameter( new Integer( failedRangeEnd ) );
+			LOGGER.error( localCVE );
+			throw localCVE;
+		}
+		catch( Exception ex )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while saving objects in batch. batchStartIndex[" + batchStartIndex + "] error-message["
+							+ ex.getMessage() + "]",
+					ex );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "saveAllObjects", null, null, savedCount, startTime );
+		}
+	}
+
+	private static void flushAndClearBatch( Session session, int batchNumber, int batchStartIndex, int batchEndIndex,
+			long batchStartTime )
+	{
+		session.flush();
+		session.clear();
+		LOGGER.debug( "batch-saved: batchNumber[" + batchNumber + "] objects[" + batchStartIndex + " - "
+				+ ( batchEndIndex - 1 ) + "] timeMillis[" + ( System.currentTimeMillis() - batchStartTime ) + "]" );
+	}
+
+	/**
+	 * Finds the index of failing object from the update counts of batch, if driver has reported these. Batch should be
+	 * the one executed by driver, as update counts are relative to it.
+	 * 
+	 * @return Index of failing object, or -1 if it can not be found
+	 */
+	private static int getFailedBatchIndex( SQLException sqlException, int batchStartIndex, int batchEndIndex )
+	{
+		if( sqlException instanceof BatchUpdateException )
+		{
+			int[] updateCounts = ( (BatchUpdateException) sqlException ).getUpdateCounts();
+			if( updateCounts != null )
+			{
+				for( int i = 0; i < updateCounts.length; i++ )
+				{
+					if( updateCounts[i] == Statement.EXECUTE_FAILED )
+					{
+						return batchStartIndex + i;
+					}
+				}
+				// drivers which stop at first failure report the counts only for successful statements
+				if( batchStartIndex + updateCounts.length < batchEndIndex )
+				{
+					return batchStartIndex + updateCounts.length;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Lists the results of given query, recording its latency
+	 */
+	private static List listQuery( Query query, String operation, String queryString, Object parameters )
+	{
+		long startTime = QueryLatencyMonitor.start();
+		List results = null;
+		try
+		{
+			results = query.list();
+			return results;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( operation, queryString, parameters, results == null ? -1 : results.size(),
+					startTime );
+		}
+	}
+
+	/**
+	 * Records the latency of a write of given object, with its entity name and id in place of query and parameters
+	 */
+	private static void endWrite( String operation, Object entity, long startTime )
+	{
+		if( startTime == 0 )
+		{
+			// monitoring is disabled, so entity name and id are not required
+			return;
+		}
+		String entityName = entity.getClass().getName();
+		Serializable id = null;
+		try
+		{
+			if( entity instanceof HibernateProxy )
+			{
+				entityName = ( (HibernateProxy) entity ).getHibernateLazyInitializer().getEntityName();
+				id = ( (HibernateProxy) entity ).getHibernateLazyInitializer().getIdentifier();
+			}
+			else
+			{
+				ClassMetadata classMetadata = getSessionFactory().getClassMetadata( entity.getClass() );
+				id = classMetadata == null ? null : classMetadata.getIdentifier( entity, EntityMode.POJO );
+			}
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.debug( "id of entity could not be found for latency monitor. entityName[" + entityName + "]", e );
+		}
+		QueryLatencyMonitor.end( operation, entityName, id, -1, startTime );
+	}
+
+	/**
+	 * Invalidates the cached query results which are using the tables of given entity. These are invalidated again
+	 * after commit, as write is not visible to other threads till then.
+	 */
+	private static void invalidateQueryResultCache( Object entity )
+	{
+		invalidateQueryResultCache( entity instanceof HibernateProxy ? ( (HibernateProxy) entity )
+				.getHibernateLazyInitializer().getEntityName() : entity.getClass().getName() );
+	}
+
+	private static void invalidateQueryResultCache( String entityName )
+	{
+		deferQueryResultInvalidation( entityName );
+		invalidateQueryResultSpaces( entityName );
+	}
+
+	/**
+	 * Records the write of given entity, so that its cached query results are invalidated once transaction is
+	 * committed, but not before
+	 * 
+	 * @param entityName Name of entity written, null if written tables are not known and all results should be
+	 *        invalidated
+	 */
+	static void deferQueryResultInvalidation( String entityName )
+	{
+		markPrimaryWrite();
+		Set pendingInvalidations = (Set) PENDING_INVALIDATIONS.get();
+		if( pendingInvalidations == null )
+		{
+			pendingInvalidations = new HashSet();
+			PENDING_INVALIDATIONS.set( pendingInvalidations );
+		}
+		pendingInvalidations.add( entityName );
+	}
+
+	/**
+	 * @return true if current thread has written entities whose changes are not known to be committed yet
+	 */
+	private static boolean hasPendingWrites()
+	{
+		Set pendingInvalidations = (Set) PENDING_INVALIDATIONS.get();
+		return pendingInvalidations != null && !pendingInvalidations.isEmpty();
+	}
+
+	/**
+	 * @return true if given session is open and its transaction is active
+	 */
+	private static boolean isTransactionActive( Session session )
+	{
+		return session != null && session.isOpen() && session.getTransaction().isActive();
+	}
+
+	/**
+	 * Puts the result read by current thread in the given shared cache, unless it may have the uncommitted state. So
+	 * it is not put if current thread has pending writes, or is in an active transaction, as other threads would be
+	 * served the rows which are not committed yet, or are rolled back later.
+	 * 
+	 * @param transactionActive true if result is read in an active transaction
+	 * @return true if result is put in cache
+	 */
+	static boolean putSharedResult( QueryResultCache cache, boolean transactionActive, String normalizedQuery,
+			Map parameters, List result, Set querySpaces, long generation )
+	{
+		if( transactionActive || hasPendingWrites() )
+		{
+			LOGGER.debug( "result is read in a transaction, not caching it. query[" + normalizedQuery + "]" );
+			return false;
+		}
+		cache.put( normalizedQuery, parameters, result, querySpaces, generation );
+		return true;
+	}
+
+	/**
+	 * Clears all the cached query results after a write whose tables are not known, like of native SQL, and records
+	 * it to clear them again once transaction is committed
+	 */
+	private static void clearQueryResultCachesOnWrite()
+	{
+		// null entity name stands for all the entities
+		deferQueryResultInvalidation( null );
+		clearQueryResultCaches();
+	}
+
+	/**
+	 * Invalidates again the cached query results of entities written by current thread, once their changes are
+	 * committed
+	 */
+	private static void invalidatePendingQueryResults()
+	{
+		Set pendingInvalidations = (Set) PENDING_INVALIDATIONS.get();
+		PENDING_INVALIDATIONS.set( null );
+		if( pendingInvalidations != null && pendingInvalidations.contains( null ) )
+		{
+			clearQueryResultCaches();
+		}
+		else if( pendingInvalidations != null )
+		{
+			for( Iterator iterator = pendingInvalidations.iterator(); iterator.hasNext(); )
+			{
+				invalidateQueryResultSpaces( (String) iterator.next() );
+			}
+		}
+	}
+
+	private static void invalidateQueryResultSpaces( String entityName )
+	{
+		try
+		{
+			Serializable[] querySpaces = ( (SessionFactoryImplementor) getSessionFactory() ).getEntityPersister(
+					entityName ).getQuerySpaces();
+			getQueryResultCache().invalidate( querySpaces );
+			getCountCache().invalidate( querySpaces );
+			getPageCache().invalidate( querySpaces );
+		}
+		catch( MappingException e )
+		{
+			LOGGER.debug( "entity-name not found, clearing whole query result cache. entityName[" + entityName + "]" );
+			clearQueryResultCaches();
+		}
+	}
+
+	private static void clearQueryResultCaches()
+	{
+		getQueryResultCache().clear();
+		getCountCache().clear();
+		getPageCache().clear();
+	}
+
+	/**
+	 * @return Query spaces (table names) used by given HQL query
+	 */
+	private static Set getQuerySpaces( String queryString )
+	{
+		return ( (SessionFactoryImplementor) getSessionFactory() ).getQueryPlanCache().getHQLQueryPlan( queryString,
+				false, Collections.EMPTY_MAP ).getQuerySpaces();
+	}
+
+	/**
+	 * Returns the single flight used to coalesce the identical concurrent queries, which can be used to see its
+	 * metrics.
+	 */
+	public static SingleFlight getSingleFlight()
+	{
+		ensureInitialized();
+		return singleFlight;
+	}
+
+	/**
+	 * Executes the given query work, coalescing it with the identical query in flight from other thread if allowed.
+	 * Please refer to SingleFlight for details.
+	 */
+	private static Object executeCoalesced( String operation, String queryString, Map<Object, Object> parameters,
+			Callable queryWork ) throws DAOException
+	{
+		if( !getSingleFlight().isEnabled() || !isCoalescingAllowed() )
+		{
+			return callWork( queryWork, operation );
+		}
+		Object key = Arrays.asList( new Object[] { operation, QueryResultCache.normalizeQuery( queryString ),
+				parameters == null ? Collections.EMPTY_MAP : new HashMap( parameters ) } );
+		Long writeSequence = (Long) WRITE_FLIGHT_SEQUENCE.get();
+		return getSingleFlight().execute( key, queryWork, writeSequence == null ? 0 : writeSequence.longValue() );
+	}
+
+	/**
+	 * @return false if current thread should read its own writes, which other threads can not see
+	 */
+	private static boolean isCoalescingAllowed()
+	{
+		if( isPrimaryReadsForced() )
+		{
+			return false;
+		}
+		try
+		{
+			Session session = isJ2EEEnv() ? getCurrentJ2EESession() : (Session) SESSION_CACHE.get();
+			if( session != null && session.isOpen() && session.getTransaction().isActive() )
+			{
+				return false;
+			}
+			if( WRITE_FLIGHT_SEQUENCE.get() == UNCONFIRMED_WRITE )
+			{
+				// no transaction is active, so write of thread has ended before now, and queries started from now on
+				// can be shared
+				WRITE_FLIGHT_SEQUENCE.set( new Long( getSingleFlight().getSequence() ) );
+			}
+			return true;
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.debug( "transaction state of current session is not known, query will not be coalesced", e );
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if query returns only values, like numbers, strings or dates, which are not bound to session
+	 */
+	private static boolean isScalarQuery( String queryString )
+	{
+		try
+		{
+			ReturnMetadata returnMetadata = ( (SessionFactoryImplementor) getSessionFactory() ).getQueryPlanCache()
+					.getHQLQueryPlan( queryString, false, Collections.EMPTY_MAP ).getReturnMetadata();
+			if( returnMetadata == null )
+			{
+				return false;
+			}
+			Type[] returnTypes = returnMetadata.getReturnTypes();
+			for( int i = 0; i < returnTypes.length; i++ )
+			{
+				if( returnTypes[i].isAssociationType() || returnTypes[i].isComponentType() )
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		catch( HibernateException e )
+		{
+			// query is executed without coalescing, which reports the problem
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the cache used for pages prefetched by getPaginatedResult, which can be used to see its statistics or to
+	 * clear it.
+	 */
+	public static QueryResultCache getPageCache()
+	{
+		ensureInitialized();
+		return pageCache;
+	}
+
+	/**
+	 * Returns the cache used for counts of records by getTotalNumberOfRecords, which can be used to see its statistics
+	 * or to clear it.
+	 */
+	public static QueryResultCache getCountCache()
+	{
+		ensureInitialized();
+		return countCache;
+	}
+
+	/**
+	 * Returns the cache used for query results, which can be used to see its statistics or to clear it.
+	 */
+	public static QueryResultCache getQueryResultCache()
+	{
+		ensureInitialized();
+		return queryResultCache;
+	}
+
+	/**
+	 * Returns the monitor which publishes the statistics of session factory
+	 */
+	public static HibernateStatisticsMonitor getStatisticsMonitor()
+	{
+		ensureInitialized();
+		return statisticsMonitor;
+	}
+
+	/**
+	 * Returns the tracker of sessions opened for threads, to find the sessions which are not closed, with their age,
+	 * thread and acquisition stack
+	 * 
+	 * @return Session leak tracker, null if tracking is disabled or environment is j2ee
+	 */
+	public static SessionLeakTracker getSessionLeakTracker()
+	{
+		return sessionLeakTracker;
+	}
+
+	/**
+	 * @return Information of sessions opened for threads and not closed yet, oldest first. Empty if tracking is
+	 *         disabled.
+	 */
+	public static List getOpenSessions()
+	{
+		return sessionLeakTracker == null ? Collections.EMPTY_LIST : sessionLeakTracker.getOpenSessions();
+	}
+
+	/**
+	 * Returns the last sampled snapshot of session factory statistics
+	 */
+	public static StatisticsSnapshot getStatisticsSnapshot()
+	{
+		ensureInitialized();
+		return statisticsMonitor.getLastSnapshot();
+	}
+
+	// ------------------------------ Query Management -------------------------
+
+	public static Criteria createCriteria( String criteria ) throws DAOException
+	{
+		try
+		{
+			return getCurrentSession().createCriteria( criteria );
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while creating criteria. criteria-specified[" + criteria + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while creating criteria. criteria-specified[" + criteria + "]", e );
+		}
+
+	}
+
+	/**
+	 * Executes the specified stored procedure using the given parameters. Callable statement is reused from statement
+	 * cache of current thread, if available.
+	 * 
+	 * @param sqlStoredProcedureQuery Call string, like '{call procedure_name(?, ?)}'
+	 * @param parameters Type and value pairs of parameters, where type is Integer of java.sql.Types or Class of value.
+	 *        Please refer to StatementParameterBinder for supported types.
+	 * @return true if first result is a result set
+	 * @throws DAOException If there is any problem in execution
+	 */
+	public static boolean executeSQLStoredProcedure( String sqlStoredProcedureQuery, List parameters )
+			throws DAOException
+	{
+		LOGGER.debug( "executeSQLStoredProcedure: sqlStoredProcedureQuery[" + sqlStoredProcedureQuery + "] parameters["
+				+ parameters + "]" );
+
+		StringUtils.assertQualifiedArgument( sqlStoredProcedureQuery );
+		Connection connection = null;
+		Object statementOwner = null;
+		PreparedStatement callableStmt = null;
+		boolean failed = true;
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			Session session = getCurrentSession();
+			connection = session.connection();
+			statementOwner = getStatementOwner( session );
+			callableStmt = PreparedStatementCache.getStatement( statementOwner, connection, sqlStoredProcedureQuery,
+					true, getStatementCacheSize() );
+			StatementParameterBinder.bindParameters( callableStmt, parameters );
+
+			boolean result = callableStmt.execute();
+			failed = false;
+			// tables affected by procedure are not known
+			clearQueryResultCachesOnWrite();
+			return result;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while executing sql update query. sqlStoredProcedureQuery[" + sqlStoredProcedureQuery
+					+ "] parameters[" + parameters + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while executing sql update query. sqlStoredProcedureQuery[" + sqlStoredProcedureQuery
+							+ "] parameters[" + parameters + "]",
+					e );
+		}
+		finally
+		{
+			PreparedStatementCache.release( statementOwner, connection, callableStmt, sqlStoredProcedureQuery, true,
+					failed );
+			QueryLatencyMonitor.end( "executeSQLStoredProcedure", sqlStoredProcedureQuery, parameters, -1, startTime );
+		}
+	}
+
+	/**
+	 * Executes the given stored procedure call, and streams the rows of all of its result sets to given row handler.
+	 * 
+	 * Result sets are read one after another as returned by procedure, using the fetch size of call, and each row is
+	 * given to handler as soon as it is read. So procedures returning large results can be executed without keeping
+	 * the rows in memory. OUT parameters of cursor type, like Oracle REF CURSOR, are streamed to handler as result sets
+	 * after the returned result sets. Values of other OUT parameters are read after all the results, and are returned
+	 * with update counts in StoredProcedureResult.
+	 * 
+	 * Procedure is executed with the connection of current session, or with read replica if call is read only.
+	 * Callable statement is reused from statement cache of current thread, if available.
+	 * 
+	 * @param call Procedure call with parameters
+	 * @param rowHandler Handler to receive the rows, can be null if procedure does not return any result set
+	 * @return OUT parameter values, update counts and row counts
+	 * @throws DAOException If there is any problem in execution, or handler throws it
+	 */
+	public static StoredProcedureResult executeStoredProcedure( StoredProcedureCall call, IRowHandler rowHandler )
+			throws DAOException
+	{
+		LOGGER.trace( "executeStoredProcedure: call[" + call + "]" );
+		Utilities.assertNotNullArgument( call );
+
+		String callString = call.getCallString();
+		List parameters = call.getParameters();
+		StoredProcedureResult result = new StoredProcedureResult();
+		Connection connection = null;
+		Object statementOwner = null;
+		CallableStatement callableStmt = null;
+		boolean failed = true;
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			Session session = call.isReadOnly() ? getCurrentReadSession() : getCurrentSession();
+			connection = session.connection();
+			statementOwner = getStatementOwner( session );
+			callableStmt = (CallableStatement) PreparedStatementCache.getStatement( statementOwner, connection,
+					callString, true, getStatementCacheSize() );
+			callableStmt.setFetchSize( Math.max( call.getFetchSize(), 0 ) );
+			for( int i = 0; i < parameters.size(); i++ )
+			{
+				StoredProcedureCall.Parameter parameter = (StoredProcedureCall.Parameter) parameters.get( i );
+				if( parameter.isIn() )
+				{
+					StatementParameterBinder.bindParameter( callableStmt, i + 1, parameter.getSqlType(), parameter
+							.getValue() );
+				}
+				if( parameter.isOut() )
+				{
+					callableStmt.registerOutParameter( i + 1, parameter.getSqlType() );
+				}
+			}
+
+			boolean resultSetAvailable = callableStmt.execute();
+			while( true )
+			{
+				if( resultSetAvailable )
+				{
+					ResultSet resultSet = callableStmt.getResultSet();
+					try
+					{
+						streamResultSet( resultSet, call.getFetchSize(), rowHandler, result );
+					}
+					finally
+					{
+						resultSet.close();
+					}
+				}
+				else
+				{
+					int updateCount = callableStmt.getUpdateCount();
+					if( updateCount == -1 )
+					{
+						break;
+					}
+					result.addUpdateCount( updateCount );
+				}
+				resultSetAvailable = callableStmt.getMoreResults();
+			}
+
+			// out parameters are available only after all the results are consumed
+			for( int i = 0; i < parameters.size(); i++ )
+			{
+				if( ( (StoredProcedureCall.Parameter) parameters.get( i ) ).isOut() )
+				{
+					Object value = callableStmt.getObject( i + 1 );
+					if( value instanceof ResultSet )
+					{
+						try
+						{
+							streamResultSet( (ResultSet) value, call.getFetchSize(), rowHandler, result );
+						}
+						finally
+						{
+							( (ResultSet) value ).close();
+						}
+					}
+					else
+					{
+						result.addOutParameter( i + 1, value );
+					}
+				}
+			}
+			failed = false;
+			if( !call.isReadOnly() )
+			{
+				// tables affected by procedure are not known
+				clearQueryResultCachesOnWrite();
+			}
+			LOGGER.debug( "storedProcedureResult[" + result + "]" );
+			return result;
+		}
+		catch( DAOException e )
+		{
+			// thrown by row handler
+			throw e;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while executing stored procedure. call[" + call + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while executing stored procedure. call[" + call
+					+ "]", e );
+		}
+		finally
+		{
+			PreparedStatementCache.release( statementOwner, connection, callableStmt, callString, true, failed );
+			QueryLatencyMonitor.end( "executeStoredProcedure", callString, parameters, (int) Math.min(
+					Integer.MAX_VALUE, result.getRowCount() ), startTime );
+		}
+	}
+
+	/**
+	 * Gives the rows of result set to row handler one by one, till handler asks to stop
+	 */
+	private static void streamResultSet( ResultSet resultSet, int fetchSize, IRowHandler rowHandler,
+			StoredProcedureResult result ) throws SQLException, DAOException
+	{
+		int resultSetIndex = result.getResultSetCount();
+		result.incrementResultSetCount();
+		if( rowHandler == null )
+		{
+			LOGGER.warn( "procedure returned a result set, however no row handler is given. resultSetIndex["
+					+ resultSetIndex + "]" );
+			return;
+		}
+		if( fetchSize > 0 )
+		{
+			resultSet.setFetchSize( fetchSize );
+		}
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		String[] columnNames = new String[metaData.getColumnCount()];
+		for( int i = 0; i < columnNames.length; i++ )
+		{
+			columnNames[i] = metaData.getColumnLabel( i + 1 );
+		}
+		rowHandler.startResultSet( resultSetIndex, columnNames );
+
+		while( resultSet.next() )
+		{
+			Object[] row = new Object[columnNames.length];
+			for( int i = 0; i < row.length; i++ )
+			{
+				row[i] = resultSet.getObject( i + 1 );
+			}
+			result.incrementRowCount();
+			if( !rowHandler.handleRow( resultSetIndex, row ) )
+			{
+				LOGGER.debug( "row handler stopped the result set. resultSetIndex[" + resultSetIndex + "]" );
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Executes the specified prepared statement sql using the given parameters and return the update count. Prepared
+	 * statement is reused from statement cache of current thread, if available.
+	 * 
+	 * @param sqlQuery SQLQuery for prepared statement
+	 * @param parameters Type and value pairs of parameters, where type is Class of value or Integer of java.sql.Types.
+	 *        Please refer to StatementParameterBinder for supported types.
+	 * @return update count
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static int executeSQLUpdateByPreparedStatement( String sqlQuery, List parameters ) throws DAOException
+	{
+		LOGGER.trace( "executeSQLUpdate: sqlQuery[" + sqlQuery + "] parameters[" + parameters + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
+
+		Connection connection = null;
+		Object statementOwner = null;
+		PreparedStatement pStmt = null;
+		boolean failed = true;
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Session session = getCurrentSession();
+			connection = session.connection();
+			statementOwner = getStatementOwner( session );
+			pStmt = PreparedStatementCache.getStatement( statementOwner, connection, sqlQuery, false,
+					getStatementCacheSize() );
+			StatementParameterBinder.bindParameters( pStmt, parameters );
+
+			int updateCount = pStmt.executeUpdate();
+			failed = false;
+			clearQueryResultCachesOnWrite();
+			rowCount = updateCount;
+			return updateCount;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while executing sql update query. queryString[" + sqlQuery + "] parameters["
+					+ parameters + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while executing sql update query. queryString[" + sqlQuery + "]", e );
+		}
+		finally
+		{
+			PreparedStatementCache.release( statementOwner, connection, pStmt, sqlQuery, false, failed );
+			QueryLatencyMonitor.end( "executeSQLUpdateByPreparedStatement", sqlQuery, parameters, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Executes the specified prepared statement sql for each of the given parameter sets, using JDBC batches of
+	 * 'hibernate.jdbc.batch_size' parameter sets, or 100 if it is not configured.
+	 * 
+	 * @see #executeSQLBatch(String, List, int)
+	 */
+	public static int[] executeSQLBatch( String sqlQuery, List parameterSets ) throws DAOException
+	{
+		int batchSize = ( (SessionFactoryImplementor) getSessionFactory() ).getSettings().getJdbcBatchSize();
+		return executeSQLBatch( sqlQuery, parameterSets, batchSize > 0 ? batchSize : 100 );
+	}
+
+	/**
+	 * Executes the specified prepared statement sql for each of the given parameter sets, sending these to database in
+	 * JDBC batches. So thousands of rows can be inserted or updated in a few round trips.
+	 * 
+	 * If a parameter set fails, its index is added as first message parameter of exception, or -1 if driver does not
+	 * report it. Start and end index of the failing batch are added as second and third message parameters. If a
+	 * parameter set can not be bound, it is reported as failing index, and the batch ends with it. Parameter sets of
+	 * previous batches are already executed in current transaction.
+	 * 
+	 * @param sqlQuery SQLQuery for prepared statement
+	 * @param parameterSets List of parameter lists, each having type and value pairs as for
+	 *        executeSQLUpdateByPreparedStatement
+	 * @param batchSize Number of parameter sets to send in one batch
+	 * @return Update counts for each parameter set, as reported by driver
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static int[] executeSQLBatch( String sqlQuery, List parameterSets, int batchSize ) throws DAOException
+	{
+		LOGGER.trace( "executeSQLBatch: sqlQuery[" + sqlQuery + "] parameterSetsCount["
+				+ ( parameterSets == null ? 0 : parameterSets.size() ) + "] batchSize[" + batchSize + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
+		Utilities.assertNotNullArgument( parameterSets );
+		if( batchSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Batch size must be greater than zero. batchSize[" + batchSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		Connection connection = null;
+		Object statementOwner = null;
+		PreparedStatement pStmt = null;
+		boolean failed = true;
+		long startTime = QueryLatencyMonitor.start();
+		int[] updateCounts = new int[parameterSets.size()];
+		int batchStartIndex = 0;
+		int index = 0;
+		boolean binding = false;
+		boolean executing = false;
+		int rowCount = -1;
+		try
+		{
+			Session session = getCurrentSession();
+			connection = session.connection();
+			statementOwner = getStatementOwner( session );
+			pStmt = PreparedStatementCache.getStatement( statementOwner, connection, sqlQuery, false,
+					getStatementCacheSize() );
+
+			for( Iterator iterator = parameterSets.iterator(); iterator.hasNext(); )
+			{
+				binding = true;
+				StatementParameterBinder.bindParameters( pStmt, (List) iterator.next() );
+				pStmt.addBatch();
+				binding = false;
+				index++;
+				if( index - batchStartIndex == batchSize || !iterator.hasNext() )
+				{
+					executing = true;
+					int[] batchUpdateCounts = pStmt.executeBatch();
+					executing = false;
+					System.arraycopy( batchUpdateCounts, 0, updateCounts, batchStartIndex, Math.min(
+							batchUpdateCounts.length, updateCounts.length - batchStartIndex ) );
+					batchStartIndex = index;
+				}
+			}
+			failed = false;
+			if( !parameterSets.isEmpty() )
+			{
+				clearQueryResultCachesOnWrite();
+			}
+			rowCount = parameterSets.size();
+			return updateCounts;
+		}
+		catch( Exception e )
+		{
+			int failedIndex = -1;
+			int failedRangeEnd = index - 1;
+			if( binding )
+			{
+				// parameter set being bound has failed, before batch is sent
+				failedIndex = index;
+				failedRangeEnd = index;
+			}
+			else if( executing && e instanceof SQLException )
+			{
+				// update counts are relative to the batch sent, i.e. parameter sets from batch start to current index
+				failedIndex = getFailedBatchIndex( (SQLException) e, batchStartIndex, index );
+			}
+			DAOException daoException = new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while executing sql batch. failedParameterSetIndex[" + failedIndex
+							+ "] failedParameterSetRange[" + batchStartIndex + " - " + failedRangeEnd + "] queryString["
+							+ sqlQuery + "] error-message[" + e.getMessage() + "]", e );
+			daoException.addMessageParameter( new Integer( failedIndex ) );
+			daoException.addMessageParameter( new Integer( batchStartIndex ) );
+			daoException.addMessageParameter( new Integer( failedRangeEnd ) );
+			LOGGER.error( daoException );
+			throw daoException;
+		}
+		finally
+		{
+			if( failed && pStmt != null )
+			{
+				try
+				{
+					pStmt.clearBatch();
+				}
+				catch( SQLException e )
+				{
+					LOGGER.debug( "Error while clearing the failed batch.", e );
+				}
+			}
+			PreparedStatementCache.release( statementOwner, connection, pStmt, sqlQuery, false, failed );
+			QueryLatencyMonitor.end( "executeSQLBatch", sqlQuery, null, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Executes the specified sql query and return the list of results
+	 * 
+	 * @param sqlQuery SQL query
+	 * @return List of result. It might be list of objects, or list of array of objects or any other result according to
+	 *         query
+	 * @throws DAOException if there is any problem in query execution
+	 */
+	public static List executeSQLSelect( String sqlQuery ) throws DAOException
+	{
+		LOGGER.trace( "executeSQLSelect: sqlQuery[" + sqlQuery + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
+
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			List listObjects = getCurrentReadSession().createSQLQuery( sqlQuery ).list();
+			rowCount = listObjects.size();
+			return listObjects;
+		}
+		catch( HibernateException he )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"HibernateException while executing the sql query for selecting the records", he );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "executeSQLSelect", sqlQuery, null, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Executes the specified sql query and returns an iterator over its results, instead of loading all the results in
+	 * a list. Like executeSQLSelect, it reads from replica if configured. Please refer to iterateObjectsByQuery for
+	 * details.
+	 * 
+	 * @param sqlQuery SQL query
+	 * @param fetchSize Number of rows JDBC driver should fetch in one round trip, zero or less to use driver default
+	 * @return Closeable iterator over the results of query
+	 * @throws DAOException if there is any problem in query execution
+	 */
+	public static ScrollableResultIterator iterateSQLSelect( String sqlQuery, int fetchSize ) throws DAOException
+	{
+		LOGGER.trace( "iterateSQLSelect: sqlQuery[" + sqlQuery + "] fetchSize[" + fetchSize + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
+
+		try
+		{
+			return scroll( getCurrentReadSession().createSQLQuery( sqlQuery ), null, fetchSize );
+		}
+		catch( HibernateException he )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"HibernateException while executing the sql query for iterating the records", he );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+	}
+
+	/**
+	 * Executes the specified sql query and return the update count if any
+	 * 
+	 * @param sqlQuery SQL query
+	 * @return update count for the query, zero if it does not affect any record
+	 * @throws DAOException if there is any problem in query execution
+	 */
+	public static int executeSQLUpdate( String sqlQuery ) throws DAOException
+	{
+		LOGGER.trace( "executeSQLUpdate: sqlQuery[" + sqlQuery + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
+
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			int updateCount = getCurrentSession().createSQLQuery( sqlQuery ).executeUpdate();
+			clearQueryResultCachesOnWrite();
+			rowCount = updateCount;
+			return updateCount;
+		}
+		catch( HibernateException he )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"HibernateException while executing the sql query for updating the records", he );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "executeSQLUpdate", sqlQuery, null, rowCount, startTime );
+		}
+	}
+
+	public static List getObjectsByQuery( String queryString ) throws DAOException
+	{
+
+		LOGGER.trace( "getObjectsByQuery: queryString[" + queryString + "]" );
+		return getObjectsByQuery( queryString, null );
+	}
+
+	/**
+	 * Returns the result of specified query. If query returns only values, like numbers or strings, identical queries
+	 * made concurrently by other threads are executed once and share the result. Please refer to SingleFlight for
+	 * details.
+	 * 
+	 * @param queryString HQL query
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @return List of objects returned by query
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static List getObjectsByQuery( final String queryString, final Map<Object, Object> parameters )
+			throws DAOException
+	{
+
+		LOGGER.trace( "getObjectsByQuery: queryString[" + queryString + "]" );
+		StringUtils.assertQualifiedArgument( queryString );
+
+		if( !getSingleFlight().isEnabled() || !isScalarQuery( queryString ) )
+		{
+			return executeObjectsQuery( queryString, parameters );
+		}
+		List listObjects = (List) executeCoalesced( "getObjectsByQuery", queryString, parameters, new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return executeObjectsQuery( queryString, parameters );
+			}
+		} );
+		// list is shared with coalesced callers, so each caller gets its own copy
+		return listObjects == null ? null : new ArrayList( listObjects );
+	}
+
+	private static List executeObjectsQuery( String queryString, Map<Object, Object> parameters ) throws DAOException
+	{
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentReadSession().createQuery( queryString );
+			setQueryParameters( query, queryString, parameters );
+
+			List listObjects = query.list();
+			LOGGER.debug( "objectsCount[" + ( listObjects == null ? 0 : listObjects.size() ) + "]" );
+			rowCount = listObjects == null ? 0 : listObjects.size();
+
+			return listObjects;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while getting list of objects. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while getting list of objects. queryString[" + queryString + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "getObjectsByQuery", queryString, parameters, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Returns the result of query built by given QueryBuilder. Query is executed with its bound parameters, and is
+	 * restricted to its page if specified.
+	 * 
+	 * @param queryBuilder Builder of query
+	 * @return List of objects, or of selected property values
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static List getObjectsByQuery( QueryBuilder queryBuilder ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( queryBuilder );
+		LOGGER.trace( "getObjectsByQuery: queryBuilder[" + queryBuilder + "]" );
+
+		String queryString = queryBuilder.toHQL();
+		Map<Object, Object> parameters = queryBuilder.getParameters();
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentReadSession().createQuery( queryString );
+			setQueryParameters( query, queryString, parameters );
+			if( queryBuilder.getMaxResults() > 0 )
+			{
+				query.setFirstResult( queryBuilder.getFirstResult() );
+				query.setMaxResults( queryBuilder.getMaxResults() );
+			}
+
+			List listObjects = query.list();
+			rowCount = listObjects == null ? 0 : listObjects.size();
+			LOGGER.debug( "objectsCount[" + rowCount + "]" );
+			return listObjects;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while getting list of objects. queryBuilder[" + queryBuilder + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while getting list of objects. queryBuilder["
+					+ queryBuilder + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "getObjectsByQuery", queryString, parameters, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Returns the result of specified query, from query result cache if available. Otherwise executes the query and
+	 * caches its result. Result is invalidated whenever any entity using same tables is written using HibernateUtil.
+	 * 
+	 * Cached results are shared across the sessions, so caching should be used only for lookup kind of queries whose
+	 * results are used as read only. Please refer to QueryResultCache for details.
+	 * 
+	 * Result read in an active transaction is not put in cache, as it may have the rows which are not committed yet.
+	 * If current thread has written using HibernateUtil and its changes are not committed yet, cache is not used at
+	 * all, so that thread reads its own writes.
+	 * 
+	 * @param queryString HQL query
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @param useCache true if result should be taken from or put in cache
+	 * @return List of objects returned by query
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static List getObjectsByQuery( final String queryString, final Map<Object, Object> parameters,
+			boolean useCache ) throws DAOException
+	{
+		LOGGER.trace( "getObjectsByQuery: queryString[" + queryString + "] useCache[" + useCache + "]" );
+		if( !useCache )
+		{
+			return getObjectsByQuery( queryString, parameters );
+		}
+		StringUtils.assertQualifiedArgument( queryString );
+		if( hasPendingWrites() )
+		{
+			// cache may have the state committed before these writes, which thread should not read
+			return getObjectsByQuery( queryString, parameters );
+		}
+
+		final String normalizedQuery = QueryResultCache.normalizeQuery( queryString );
+		List listObjects = getQueryResultCache().get( normalizedQuery, parameters );
+		if( listObjects != null )
+		{
+			LOGGER.debug( "result found in cache. objectsCount[" + listObjects.size() + "]" );
+			return listObjects;
+		}
+
+		// concurrent misses of same query are executed once, result is shared like the cached one
+		listObjects = (List) executeCoalesced( "getObjectsByQuery-cached", queryString, parameters, new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				long generation = getQueryResultCache().getGeneration();
+				List result = executeObjectsQuery( queryString, parameters );
+				putSharedResult( getQueryResultCache(), isTransactionActive( getOpenCurrentSession() ), normalizedQuery,
+						parameters, result, getQuerySpaces( queryString ), generation );
+				return result;
+			}
+		} );
+		return new ArrayList( listObjects );
+	}
+
+	/**
+	 * Executes the specified query and returns an iterator over its results, instead of loading all the results in a
+	 * list. Results are read from database cursor as iteration progresses, and entities are evicted from session once
+	 * consumed. So it can be used to process the queries with any number of results in constant memory.
+	 * 
+	 * Like getObjectsByQuery, it reads from replica if configured, unless reads of current thread are forced to
+	 * primary, like after its own write. Objects should be modified only if read from primary.
+	 * 
+	 * Caller must close the iterator in finally block, as it keeps the database cursor open till closed.
+	 * 
+	 * @param queryString HQL query
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @param fetchSize Number of rows JDBC driver should fetch in one round trip, zero or less to use driver default
+	 * @return Closeable iterator over the results of query
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static ScrollableResultIterator iterateObjectsByQuery( String queryString, Map<Object, Object> parameters,
+			int fetchSize ) throws DAOException
+	{
+		LOGGER.trace( "iterateObjectsByQuery: queryString[" + queryString + "] fetchSize[" + fetchSize + "]" );
+		StringUtils.assertQualifiedArgument( queryString );
+
+		try
+		{
+			Session session = getCurrentReadSession();
+			Query query = session.createQuery( queryString );
+			setQueryParameters( query, queryString, parameters );
+			return scroll( query, session, fetchSize );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while iterating the objects. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while iterating the objects. queryString["
+					+ queryString + "]", e );
+		}
+	}
+
+	private static ScrollableResultIterator scroll( Query query, Session session, int fetchSize )
+	{
+		if( fetchSize > 0 )
+		{
+			query.setFetchSize( fetchSize );
+		}
+		return new ScrollableResultIterator( query.scroll( ScrollMode.FORWARD_ONLY ), session );
+	}
+
+	/**
+	 * Sets the name or index based parameters to given query
+	 */
+	static void setQueryParameters( Query query, String queryString, Map<Object, Object> parameters )
+	{
+		if( parameters != null && parameters.size() > 0 )
+		{
+			for( Object element : parameters.entrySet() )
+			{
+				Map.Entry<Object, Object> parameterEntry = (Map.Entry<Object, Object>) element;
+				// only name based or index based cases are handled
+				if( parameterEntry.getKey() instanceof Integer )
+				{
+					query.setParameter( ( (Integer) parameterEntry.getKey() ).intValue(), parameterEntry.getValue() );
+				}
+				else if( parameterEntry.getKey() instanceof String )
+				{
+					// collections are bound as list, to be used with 'in'
+					if( parameterEntry.getValue() instanceof Collection )
+					{
+						query.setParameterList( (String) parameterEntry.getKey(), (Collection) parameterEntry
+								.getValue() );
+					}
+					else
+					{
+						query.setParameter( ( (String) parameterEntry.getKey() ), parameterEntry.getValue() );
+					}
+				}
+				else
+				{
+					IllegalArgumentException iae = new IllegalArgumentException(
+							"Only name based and index based parameters can be passed, however the parameter keys are neither integer nor String. queryString["
+									+ queryString + "] parameters[" + parameters + "]" );
+					LOGGER.error(
+							"Only name based and index based parameters can be passed, however the parameter keys are neither integer nor String. queryString["
+									+ queryString + "] parameters[" + parameters + "]",
+							iae );
+					throw iae;
+				}
+
+			}
+		}
+	}
+
+	/**
+	 * This method is only for backward compatability, otherwise now we are using fully qualified class name
+	 * 
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public static Class getClassByClassName( String className ) throws DAOException
+	{
+		LOGGER.debug( "getClassByClassName: unqualifiedName[ " + className + " ]" );
+		StringUtils.assertQualifiedArgument( className );
+
+		// resolved through cache, so unqualified names do not go through class loading exceptions every time
+		Class cls = getMetadataCache().getClass( className );
+		if( cls == null )
+		{
+			DAOException daoException = new DAOException( IErrorCodes.RESOURCE_NOT_FOUND,
+					"No class found for given className[" + className + "]" );
+			LOGGER.error( daoException );
+			throw daoException;
+		}
+		LOGGER.debug( "class[ " + cls.getCanonicalName() + " ]" );
+		return cls;
+	}
+
+	/**
+	 * This method is only for backward compatability, otherwise now we are using fully qualified class name
+	 * 
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public static String validateClassName( String className ) throws DAOException
+	{
+		LOGGER.debug( "validateClassName: className[ " + className + " ]" );
+
+		StringUtils.assertQualifiedArgument( className );
+		Class cls = getClassByClassName( className );
+
+		return cls.getName();
+	}
+
+	public static List getAllObjectsByClassName( String className, String orderBy, String isDescending,
+			String completeWhereClause ) throws DAOException
+	{
+		LOGGER.trace( "getAllObjectsByClassName: className[" + className + "] orderBy[" + orderBy + "] isDescending["
+				+ isDescending + "] whereClause[" + completeWhereClause + "]" );
+
+		return getObjectsByQuery( buildAllObjectsQuery( className, orderBy, isDescending, completeWhereClause ) );
+	}
+
+	/**
+	 * Returns an iterator over all the objects of given class, instead of loading all of these in a list. Please refer
+	 * to iterateObjectsByQuery for details.
+	 */
+	public static ScrollableResultIterator iterateAllObjectsByClassName( String className, String orderBy,
+			String isDescending, String completeWhereClause, int fetchSize ) throws DAOException
+	{
+		LOGGER.trace( "iterateAllObjectsByClassName: className[" + className + "] orderBy[" + orderBy
+				+ "] isDescending[" + isDescending + "] whereClause[" + completeWhereClause + "] fetchSize["
+				+ fetchSize + "]" );
+
+		return iterateObjectsByQuery( buildAllObjectsQuery( className, orderBy, isDescending, completeWhereClause ),
+				null, fetchSize );
+	}
+
+	private static String buildAllObjectsQuery( String className, String orderBy, String isDescending,
+			String completeWhereClause )
+	{
+		className = StringUtils.getSimpleClassName( className );
+		String queryString = "from " + className + " a";
+
+		if( StringUtils.isQualifiedString( completeWhereClause ) )
+		{
+			queryString = queryString + completeWhereClause;
+		}
+
+		if( StringUtils.isQualifiedString( orderBy ) )
+		{
+			if( StringUtils.isQualifiedString( isDescending ) && isDescending.equalsIgnoreCase( "true" ) )
+			{
+				queryString = queryString + " order by a." + orderBy.trim() + " desc";
+			}
+			else
+			{
+				queryString = queryString + " order by a." + orderBy.trim();
+			}
+		}
+		return queryString;
+	}
+
+	public static List getAllObjectsByClassName( String className, String searchString ) throws DAOException
+	{
+
+		LOGGER.trace( "getAllObjectsByClassName: className[" + className + "] searchString[" + searchString + "]" );
+
+		String whereClause = "";
+
+		if( StringUtils.isQualifiedString( searchString ) )
+		{
+			whereClause = whereClause + " where " + searchString;
+			LOGGER.debug( "WHERE CLAUSE ::::" + whereClause );
+		}
+
+		return getAllObjectsByClassName( className, null, null, whereClause );
+	}
+
+	public static List getAllObjectsByColumnName( String className, String columnName, String orderBy,
+			String isDescending, String completeWhereClause ) throws DAOException
+	{
+
+		LOGGER.trace( ( new StringBuilder() ).append( "getAllObjectsByColumnName: className[" ).append( className )
+				.append( "] orderBy[" ).append( orderBy ).append( "] isDescending[" ).append( isDescending )
+				.append( "] whereClause[" ).append( completeWhereClause ).append( "]" ).toString() );
+
+		String queryString = ( new StringBuilder() ).append( "select a." ).append( columnName ).append( " from " )
+				.append( className ).append( " a" ).toString();
+
+		if( StringUtils.isQualifiedString( completeWhereClause ) )
+		{
+			queryString = ( new StringBuilder() ).append( queryString ).append( completeWhereClause ).toString();
+		}
+
+		if( StringUtils.isQualifiedString( orderBy ) )
+		{
+			if( StringUtils.isQualifiedString( isDescending ) && isDescending.equalsIgnoreCase( "true" ) )
+			{
+				queryString = ( new StringBuilder() ).append( queryString ).append( " order by a." )
+						.append( orderBy.trim() ).append( " desc" ).toString();
+			}
+			else
+			{
+				queryString = ( new StringBuilder() ).append( queryString ).append( " order by a." )
+						.append( orderBy.trim() ).toString();
+			}
+		}
+		return getObjectsByQuery( queryString );
+	}
+
+	/**
+	 * Returns the values of given properties of all the objects of given class, as a ColumnarResult. It is the
+	 * columnar form of getAllObjectsByColumnName, for more than one property and large number of rows.
+	 * 
+	 * @param className Name of class
+	 * @param columnNames Names of properties to select
+	 * @param completeWhereClause Where clause starting with ' where', using alias 'a' for class, can be null
+	 * @return Values of properties stored column wise
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static ColumnarResult getColumnarDataByColumnNames( String className, String[] columnNames,
+			String completeWhereClause ) throws DAOException
+	{
+		StringUtils.assertQualifiedArgument( className );
+		Utilities.assertNotNullArgument( columnNames );
+
+		StringBuilder queryString = new StringBuilder( "select " );
+		for( int i = 0; i < columnNames.length; i++ )
+		{
+			queryString.append( i == 0 ? "a." : ", a." ).append( columnNames[i].trim() );
+		}
+		queryString.append( " from " ).append( className ).append( " a" );
+		if( StringUtils.isQualifiedString( completeWhereClause ) )
+		{
+			queryString.append( completeWhereClause );
+		}
+		return getColumnarDataByQuery( queryString.toString(), null, columnNames );
+	}
+
+	/**
+	 * Executes the given HQL projection query, and stores its result column wise. Rows are read with a forward only
+	 * cursor and are appended to primitive column arrays one by one, so boxed values of a row are garbage as soon as
+	 * next row is read. Please refer to ColumnarResult for types of columns.
+	 * 
+	 * Query is executed with read replica, if configured.
+	 * 
+	 * @param queryString HQL query selecting scalar values, like 'select a.region, a.amount from Sale a'
+	 * @param parameters Name or index based parameters for query, can be null
+	 * @param columnNames Names of columns, in order of select clause. Can be null, then columns are named by their
+	 *        aliases if available, otherwise by their position.
+	 * @return Result stored column wise
+	 * @throws DAOException If query selects entities, or there is any problem in query execution
+	 */
+	public static ColumnarResult getColumnarDataByQuery( String queryString, Map<Object, Object> parameters,
+			String[] columnNames ) throws DAOException
+	{
+		LOGGER.trace( "getColumnarDataByQuery: queryString[" + queryString + "]" );
+		StringUtils.assertQualifiedArgument( queryString );
+
+		ScrollableResults scrollableResults = null;
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentReadSession().createQuery( queryString );
+			setQueryParameters( query, queryString, parameters );
+
+			org.hibernate.type.Type[] returnTypes = query.getReturnTypes();
+			int[] columnTypes = new int[returnTypes.length];
+			for( int i = 0; i < returnTypes.length; i++ )
+			{
+				if( returnTypes[i].isEntityType() || returnTypes[i].isCollectionType() )
+				{
+					IllegalArgumentException iae = new IllegalArgumentException(
+							"Only scalar values can be selected for columnar result. queryString[" + queryString
+									+ "] column[" + i + "]" );
+					LOGGER.error( iae );
+					throw iae;
+				}
+				columnTypes[i] = getColumnarType( returnTypes[i].getReturnedClass() );
+			}
+			ColumnarResult result = new ColumnarResult( getColumnNames( columnNames, query.getReturnAliases(),
+					returnTypes.length ), columnTypes );
+
+			scrollableResults = query.scroll( ScrollMode.FORWARD_ONLY );
+			while( scrollableResults.next() )
+			{
+				Object[] row = scrollableResults.get();
+				for( int i = 0; i < columnTypes.length; i++ )
+				{
+					appendColumnarValue( result, i, columnTypes[i], row[i] );
+				}
+				result.endRow();
+			}
+			result.complete();
+
+			LOGGER.debug( "columnarResult[" + result + "]" );
+			rowCount = result.getRowCount();
+			return result;
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while getting columnar data. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while getting columnar data. queryString["
+					+ queryString + "]", e );
+		}
+		finally
+		{
+			if( scrollableResults != null )
+			{
+				scrollableResults.close();
+			}
+			QueryLatencyMonitor.end( "getColumnarDataByQuery", queryString, parameters, rowCount, startTime );
+		}
+	}
+
+	/**
+	 * Executes the given SQL select query, and stores its result column wise. Values are read from JDBC result set with
+	 * primitive getters, like getLong and getDouble, so numeric values are never boxed. Please refer to
+	 * ColumnarResult for types of columns.
+	 * 
+	 * Query is executed with read replica, if configured. Prepared statement is reused from statement cache of current
+	 * thread, if available.
+	 * 
+	 * @param sqlQuery SQL select query
+	 * @param parameters Type and value pairs of parameters, as for executeSQLUpdateByPreparedStatement, can be null
+	 * @param fetchSize Number of rows to fetch from database in one round trip, zero or less to use driver default
+	 * @return Result stored column wise, with columns named by their labels
+	 * @throws DAOException If there is any problem in query execution
+	 */
+	public static ColumnarResult executeSQLSelectColumnar( String sqlQuery, List parameters, int fetchSize )
+			throws DAOException
+	{
+		LOGGER.trace( "executeSQLSelectColumnar: sqlQuery[" + sqlQuery + "] parameters[" + parameters + "]" );
+		StringUtils.assertQualifiedArgument( sqlQuery );
 
+		Connection connection = null;
+		Object statementOwner = null;
+		PreparedStatement pStmt = null;
+		boolean failed = true;
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
 		try
 		{
-			// try if it is a qualified name
-			cls = Class.forName( className );
-		}
-		catch( ClassNotFoundException cnfe )
-		{
-			if( StringUtils.isQualifiedString( POJO_PATH ) )
+			Session session = getCurrentReadSession();
+			connection = session.connection();
+			statementOwner = getStatementOwner( session );
+			pStmt = PreparedStatementCache.getStatement( statementOwner, connection, sqlQuery, false,
+					getStatementCacheSize() );
+			pStmt.setFetchSize( Math.max( fetchSize, 0 ) );
+			StatementParameterBinder.bindParameters( pStmt, parameters );
+
+			ResultSet resultSet = pStmt.executeQuery();
+			try
 			{
-				// try if pojo path helps
-				try
+				ResultSetMetaData metaData = resultSet.getMetaData();
+				int columnCount = metaData.getColumnCount();
+				String[] columnNames = new String[columnCount];
+				int[] sqlTypes = new int[columnCount];
+				int[] columnTypes = new int[columnCount];
+				for( int i = 0; i < columnCount; i++ )
 				{
-					cls = Class.forName( POJO_PATH + "." + className.trim() );
+					columnNames[i] = metaData.getColumnLabel( i + 1 );
+					sqlTypes[i] = metaData.getColumnType( i + 1 );
+					columnTypes[i] = getColumnarType( sqlTypes[i], metaData.getPrecision( i + 1 ), metaData
+							.getScale( i + 1 ) );
 				}
-				catch( ClassNotFoundException e )
+				ColumnarResult result = new ColumnarResult( columnNames, columnTypes );
+
+				while( resultSet.next() )
 				{
-					DAOException daoException = new DAOException( IErrorCodes.RESOURCE_NOT_FOUND,
-							"No class found for given className[" + className + "]", e );
-					LOGGER.error( daoException );
-					throw daoException;
+					for( int i = 0; i < columnCount; i++ )
+					{
+						appendColumnarValue( result, i, columnTypes[i], sqlTypes[i], resultSet );
+					}
+					result.endRow();
 				}
+				result.complete();
+
+				failed = false;
+				LOGGER.debug( "columnarResult[" + result + "]" );
+				rowCount = result.getRowCount();
+				return result;
 			}
-			else
+			finally
 			{
-				DAOException daoException = new DAOException( IErrorCodes.RESOURCE_NOT_FOUND,
-						"No class found for given className[" + className + "]", cnfe );
-				LOGGER.error( daoException );
-				throw daoException;
+				resultSet.close();
 			}
-
 		}
-		LOGGER.debug( "class[ " + cls.getCanonicalName() + " ]" );
-		return cls;
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while executing sql select query. queryString[" + sqlQuery + "] parameters["
+					+ parameters + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while executing sql select query. queryString["
+					+ sqlQuery + "]", e );
+		}
+		finally
+		{
+			PreparedStatementCache.release( statementOwner, connection, pStmt, sqlQuery, false, failed );
+			QueryLatencyMonitor.end( "executeSQLSelectColumnar", sqlQuery, parameters, rowCount, startTime );
+		}
 	}
 
-	/**
-	 * This method is only for backward compatability, otherwise now we are using fully qualified class name
-	 * 
-	 * @return
-	 * @throws ClassNotFoundException
-	 */
-	public static String validateClassName( String className ) throws DAOException
+	private static String[] getColumnNames( String[] columnNames, String[] aliases, int columnCount )
 	{
-		LOGGER.debug( "validateClassName: className[ " + className + " ]" );
-
-		StringUtils.assertQualifiedArgument( className );
-		Class cls = getClassByClassName( className );
-
-		return cls.getName();
+		if( columnNames != null && columnNames.length == columnCount )
+		{
+			return columnNames;
+		}
+		String[] names = new String[columnCount];
+		for( int i = 0; i < columnCount; i++ )
+		{
+			names[i] = aliases != null && i < aliases.length && aliases[i] != null ? aliases[i] : String.valueOf( i );
+		}
+		return names;
 	}
 
-	public static List getAllObjectsByClassName( String className, String orderBy, String isDescending,
-			String completeWhereClause ) throws DAOException
+	/**
+	 * @return Type of ColumnarResult column for the values of given class
+	 */
+	private static int getColumnarType( Class clazz )
 	{
-		LOGGER.trace( "getAllObjectsByClassName: className[" + className + "] orderBy[" + orderBy + "] isDescending["
-				+ isDescending + "] whereClause[" + completeWhereClause + "]" );
-
-		className = StringUtils.getSimpleClassName( className );
-		String queryString = "from " + className + " a";
-
-		if( StringUtils.isQualifiedString( completeWhereClause ) )
+		if( Integer.class.equals( clazz ) || Short.class.equals( clazz ) || Byte.class.equals( clazz )
+				|| Boolean.class.equals( clazz ) )
 		{
-			queryString = queryString + completeWhereClause;
+			return ColumnarResult.TYPE_INT;
 		}
-
-		if( StringUtils.isQualifiedString( orderBy ) )
+		if( Long.class.equals( clazz ) || java.util.Date.class.isAssignableFrom( clazz )
+				|| java.util.Calendar.class.isAssignableFrom( clazz ) )
 		{
-			if( StringUtils.isQualifiedString( isDescending ) && isDescending.equalsIgnoreCase( "true" ) )
-			{
-				queryString = queryString + " order by a." + orderBy.trim() + " desc";
-			}
-			else
-			{
-				queryString = queryString + " order by a." + orderBy.trim();
-			}
+			return ColumnarResult.TYPE_LONG;
 		}
-
-		return getObjectsByQuery( queryString );
+		if( Double.class.equals( clazz ) || Float.class.equals( clazz ) )
+		{
+			return ColumnarResult.TYPE_DOUBLE;
+		}
+		if( java.math.BigInteger.class.equals( clazz ) || java.math.BigDecimal.class.equals( clazz ) )
+		{
+			// kept exact, as these may not fit in long or double
+			return ColumnarResult.TYPE_DECIMAL;
+		}
+		return ColumnarResult.TYPE_STRING;
 	}
 
-	public static List getAllObjectsByClassName( String className, String searchString ) throws DAOException
+	/**
+	 * @return Type of ColumnarResult column for the values of given java.sql.Types type
+	 */
+	private static int getColumnarType( int sqlType, int precision, int scale )
 	{
-
-		LOGGER.trace( "getAllObjectsByClassName: className[" + className + "] searchString[" + searchString + "]" );
-
-		String whereClause = "";
-
-		if( StringUtils.isQualifiedString( searchString ) )
+		switch( sqlType )
 		{
-			whereClause = whereClause + " where " + searchString;
-			LOGGER.debug( "WHERE CLAUSE ::::" + whereClause );
+			case java.sql.Types.TINYINT:
+			case java.sql.Types.SMALLINT:
+			case java.sql.Types.INTEGER:
+			case java.sql.Types.BIT:
+			case java.sql.Types.BOOLEAN:
+				return ColumnarResult.TYPE_INT;
+			case java.sql.Types.BIGINT:
+			case java.sql.Types.DATE:
+			case java.sql.Types.TIME:
+			case java.sql.Types.TIMESTAMP:
+				return ColumnarResult.TYPE_LONG;
+			case java.sql.Types.DECIMAL:
+			case java.sql.Types.NUMERIC:
+				// integral decimals which fit in long, like ids, are kept as long, and others as BigDecimal
+				return scale == 0 && precision > 0 && precision <= 18 ? ColumnarResult.TYPE_LONG
+						: ColumnarResult.TYPE_DECIMAL;
+			case java.sql.Types.REAL:
+			case java.sql.Types.FLOAT:
+			case java.sql.Types.DOUBLE:
+				return ColumnarResult.TYPE_DOUBLE;
+			default:
+				return ColumnarResult.TYPE_STRING;
 		}
-
-		return getAllObjectsByClassName( className, null, null, whereClause );
 	}
 
-	public static List getAllObjectsByColumnName( String className, String columnName, String orderBy,
-			String isDescending, String completeWhereClause ) throws DAOException
+	/**
+	 * Appends the value read by Hibernate to given column of columnar result
+	 */
+	private static void appendColumnarValue( ColumnarResult result, int column, int columnType, Object value )
 	{
-
-		LOGGER.trace( ( new StringBuilder() ).append( "getAllObjectsByColumnName: className[" ).append( className )
-				.append( "] orderBy[" ).append( orderBy ).append( "] isDescending[" ).append( isDescending )
-				.append( "] whereClause[" ).append( completeWhereClause ).append( "]" ).toString() );
-
-		String queryString = ( new StringBuilder() ).append( "select a." ).append( columnName ).append( " from " )
-				.append( className ).append( " a" ).toString();
-
-		if( StringUtils.isQualifiedString( completeWhereClause ) )
+		if( value == null )
 		{
-			queryString = ( new StringBuilder() ).append( queryString ).append( completeWhereClause ).toString();
+			result.appendNull( column );
+			return;
 		}
+		switch( columnType )
+		{
+			case ColumnarResult.TYPE_INT:
+				result.appendInt( column, value instanceof Boolean ? ( ( (Boolean) value ).booleanValue() ? 1 : 0 )
+						: ( (Number) value ).intValue() );
+				break;
+			case ColumnarResult.TYPE_LONG:
+				result.appendLong( column, value instanceof java.util.Date ? ( (java.util.Date) value ).getTime()
+						: value instanceof java.util.Calendar ? ( (java.util.Calendar) value ).getTimeInMillis()
+								: ( (Number) value ).longValue() );
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				result.appendDouble( column, ( (Number) value ).doubleValue() );
+				break;
+			case ColumnarResult.TYPE_DECIMAL:
+				result.appendDecimal( column, value instanceof java.math.BigInteger ? new java.math.BigDecimal(
+						(java.math.BigInteger) value ) : (java.math.BigDecimal) value );
+				break;
+			default:
+				result.appendString( column, value.toString() );
+		}
+	}
 
-		if( StringUtils.isQualifiedString( orderBy ) )
+	/**
+	 * Appends the value of current row of result set to given column of columnar result, using primitive getters
+	 */
+	private static void appendColumnarValue( ColumnarResult result, int column, int columnType, int sqlType,
+			ResultSet resultSet ) throws SQLException
+	{
+		int index = column + 1;
+		switch( columnType )
 		{
-			if( StringUtils.isQualifiedString( isDescending ) && isDescending.equalsIgnoreCase( "true" ) )
-			{
-				queryString = ( new StringBuilder() ).append( queryString ).append( " order by a." )
-						.append( orderBy.trim() ).append( " desc" ).toString();
-			}
-			else
-			{
-				queryString = ( new StringBuilder() ).append( queryString ).append( " order by a." )
-						.append( orderBy.trim() ).toString();
-			}
+			case ColumnarResult.TYPE_INT:
+				int intValue = sqlType == java.sql.Types.BIT || sqlType == java.sql.Types.BOOLEAN ? ( resultSet
+						.getBoolean( index ) ? 1 : 0 ) : resultSet.getInt( index );
+				if( resultSet.wasNull() )
+				{
+					result.appendNull( column );
+				}
+				else
+				{
+					result.appendInt( column, intValue );
+				}
+				break;
+			case ColumnarResult.TYPE_LONG:
+				if( sqlType == java.sql.Types.DATE || sqlType == java.sql.Types.TIME
+						|| sqlType == java.sql.Types.TIMESTAMP )
+				{
+					java.sql.Timestamp timestamp = resultSet.getTimestamp( index );
+					if( timestamp == null )
+					{
+						result.appendNull( column );
+					}
+					else
+					{
+						result.appendLong( column, timestamp.getTime() );
+					}
+					break;
+				}
+				long longValue = resultSet.getLong( index );
+				if( resultSet.wasNull() )
+				{
+					result.appendNull( column );
+				}
+				else
+				{
+					result.appendLong( column, longValue );
+				}
+				break;
+			case ColumnarResult.TYPE_DOUBLE:
+				double doubleValue = resultSet.getDouble( index );
+				if( resultSet.wasNull() )
+				{
+					result.appendNull( column );
+				}
+				else
+				{
+					result.appendDouble( column, doubleValue );
+				}
+				break;
+			case ColumnarResult.TYPE_DECIMAL:
+				java.math.BigDecimal decimalValue = resultSet.getBigDecimal( index );
+				if( decimalValue == null )
+				{
+					result.appendNull( column );
+				}
+				else
+				{
+					result.appendDecimal( column, decimalValue );
+				}
+				break;
+			default:
+				String stringValue = resultSet.getString( index );
+				if( stringValue == null )
+				{
+					result.appendNull( column );
+				}
+				else
+				{
+					result.appendString( column, stringValue );
+				}
 		}
-		return getObjectsByQuery( queryString );
 	}
 
 	// --------------------------- Metadata Management -------------------------
@@ -955,30 +3904,7 @@ public class HibernateUtil
 
 		LOGGER.trace( "getClassMetadataInformation: className[" + className + "]" );
 
-		className = validateClassName( className );
-		LOGGER.debug( "qualified-classname[" + className + "]" );
-
-		ClassMetadata classMetaData = sessionFactory.getClassMetadata( className.trim() );
-
-		String[] names = classMetaData.getPropertyNames();
-		Type[] types = classMetaData.getPropertyTypes();
-		boolean[] nulls = classMetaData.getPropertyNullability();
-
-		List<HashMap<String, String>> properties = new ArrayList<HashMap<String, String>>();
-
-		HashMap<String, String> property;
-		for( int i = 0; i < names.length; i++ )
-		{
-
-			property = new HashMap<String, String>();
-			property.put( PROPERTY_IS_NULL_ALLOWED, "" + nulls[i] );
-			property.put( PROPERTY_NAME, names[i] );
-			property.put( PROPERTY_TYPE, types[i].getClass().getCanonicalName() );
-
-			properties.add( property );
-		}
-
-		return properties;
+		return getEntityMetadata( className ).getPropertyInformation();
 	}
 
 	// ---------------------------- Pagination Management ----------------------
@@ -1027,39 +3953,260 @@ public class HibernateUtil
 
 		StringUtils.assertQualifiedArgument( className );
 
-		String queryString = "Select ";
-		if( selectString != null && selectString.length > 0 )
+		String queryString = buildPaginationQuery( className, selectString, whereClause, orderBy );
+
+		return getPaginatedData( pageStartIndex, pageSize, queryString, totalRecords );
+	}
+
+	private static String buildPaginationQuery( String className, String[] selectString, String whereClause,
+			String orderBy )
+	{
+		String queryString = "Select ";
+		if( selectString != null && selectString.length > 0 )
+		{
+			for( int i = 0; i < selectString.length; i++ )
+			{
+				String field = selectString[i];
+				LOGGER.debug( "select-field[" + field + "]" );
+				if( i == 0 )
+				{
+					queryString += " a." + field.trim();
+				}
+				else
+				{
+					queryString += " ,a." + field.trim();
+				}
+			}
+		}
+
+		queryString = " from " + className.trim() + " a ";
+
+		if( StringUtils.isQualifiedString( whereClause ) )
+		{
+			queryString += " where " + whereClause;
+		}
+
+		if( StringUtils.isQualifiedString( orderBy ) )
+		{
+			queryString += " order by a." + orderBy.trim();
+		}
+
+		LOGGER.debug( "finalQuery[" + queryString + "]" );
+
+		return queryString;
+	}
+
+	/**
+	 * Returns the page of data along with total number of records, for paginated views like grids.
+	 * 
+	 * Records are counted using another session in parallel to the query of page, so time taken is the maximum of two
+	 * queries instead of their sum. Counting uses the executor of AsyncHibernateDAO, and if that is saturated, records
+	 * are counted after the page. So this method should not be called from the tasks running on that executor. If
+	 * caller is in an active transaction, or its reads are forced to primary, records are counted after the page by
+	 * caller thread, so that count sees the same data as page.
+	 * 
+	 * If prefetch owner is specified, like id of user session, next page is prefetched in background and kept for the
+	 * owner in page cache for short time. So if user moves to next page, it is served from cache. Prefetched pages are
+	 * invalidated like cached query results, whenever an entity using same tables is written using HibernateUtil.
+	 * Objects of page are detached from session, whether page is read now or is prefetched, hence lazy associations
+	 * needed by view should be fetched by query.
+	 * 
+	 * @param className Name of class
+	 * @param selectString Names of fields needed from database
+	 * @param whereClause Where clause without 'where', using alias 'a' for class, can be null
+	 * @param pageStartIndex Index of page, starting from 1
+	 * @param pageSize Number of records on page
+	 * @param orderBy Order by, can be null
+	 * @param prefetchOwner Owner for whom next page should be prefetched, null to not prefetch
+	 * @return Page of data with total number of records
+	 * @throws DAOException If there is any problem in reading the page or counting the records
+	 */
+	public static PaginatedResult getPaginatedResult( String className, String[] selectString, String whereClause,
+			int pageStartIndex, int pageSize, String orderBy, String prefetchOwner ) throws DAOException
+	{
+		LOGGER.trace( "getPaginatedResult: className[" + className + "] whereClause[" + whereClause
+				+ "] pageStartIndex[" + pageStartIndex + "] pageSize[" + pageSize + "] prefetchOwner["
+				+ prefetchOwner + "]" );
+		StringUtils.assertQualifiedArgument( className );
+		if( pageSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Page size should be more than zero. pageSize["
+					+ pageSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		if( pageStartIndex == 0 )
+		{
+			pageStartIndex = 1;
+		}
+
+		String queryString = buildPaginationQuery( className, selectString, whereClause, orderBy );
+		String normalizedQuery = QueryResultCache.normalizeQuery( queryString );
+
+		if( prefetchOwner != null )
+		{
+			List prefetchedPage = getPageCache().get( normalizedQuery,
+					getPrefetchKey( prefetchOwner, pageStartIndex, pageSize ) );
+			if( prefetchedPage != null )
+			{
+				PaginatedResult result = (PaginatedResult) prefetchedPage.get( 0 );
+				LOGGER.debug( "page found in prefetched pages. result[" + result + "]" );
+				prefetchNextPage( prefetchOwner, queryString, result );
+				return result;
+			}
+		}
+
+		Future countFuture = null;
+		if( isTransactionActive( getOpenCurrentSession() ) || isPrimaryReadsForced() )
+		{
+			// executor thread would not see the uncommitted writes of caller, or would read from replica
+			LOGGER.debug( "records will be counted after the page by caller thread. className[" + className + "]" );
+		}
+		else
+		{
+			try
+			{
+				countFuture = AsyncHibernateDAO.getTotalNumberOfRecordsAsync( className, whereClause );
+			}
+			catch( DAOException e )
+			{
+				LOGGER.debug( "async executor is saturated, records will be counted after the page. className["
+						+ className + "]" );
+			}
+		}
+
+		List data = null;
+		try
+		{
+			// total is not known yet, as it is being counted in parallel
+			Session session = getCurrentReadSession();
+			data = readPage( session, pageStartIndex, pageSize, queryString );
+			// detached like prefetched pages, so that caller sees same kind of objects whichever way page is served
+			evictPage( session, data );
+		}
+		finally
+		{
+			if( data == null && countFuture != null )
+			{
+				// count is of no use if page has failed
+				countFuture.cancel( false );
+			}
+		}
+
+		int totalRecords = countFuture == null ? getTotalNumberOfRecords( className, whereClause )
+				: waitForCount( countFuture, className );
+		PaginatedResult result = new PaginatedResult( data, totalRecords, pageStartIndex, pageSize, false );
+		if( prefetchOwner != null )
+		{
+			prefetchNextPage( prefetchOwner, queryString, result );
+		}
+		return result;
+	}
+
+	private static int waitForCount( Future countFuture, String className ) throws DAOException
+	{
+		try
+		{
+			return ( (Integer) countFuture.get() ).intValue();
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			countFuture.cancel( false );
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+					"Interrupted while waiting for count of records. className[" + className + "]", e );
+			LOGGER.error( de );
+			throw de;
+		}
+		catch( ExecutionException e )
+		{
+			if( e.getCause() instanceof DAOException )
+			{
+				throw (DAOException) e.getCause();
+			}
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+					"Error while counting the records. className[" + className + "]", e.getCause() );
+			LOGGER.error( de );
+			throw de;
+		}
+	}
+
+	/**
+	 * Prefetches the page next to given page in background, if it is not prefetched already. Prefetch is skipped if
+	 * executor of AsyncHibernateDAO is saturated, as it is only an optimization.
+	 */
+	private static void prefetchNextPage( String prefetchOwner, final String queryString, PaginatedResult page )
+	{
+		if( !page.isNextPageAvailable() )
+		{
+			return;
+		}
+		final int nextPageIndex = page.getPageStartIndex() + 1;
+		final int pageSize = page.getPageSize();
+		final int totalRecords = page.getTotalRecords();
+		final String normalizedQuery = QueryResultCache.normalizeQuery( queryString );
+		final Map prefetchKey = getPrefetchKey( prefetchOwner, nextPageIndex, pageSize );
+		if( getPageCache().get( normalizedQuery, prefetchKey ) != null )
+		{
+			return;
+		}
+
+		// taken before submitting, so that a write done before page is read does not let a stale page get cached
+		final long generation = getPageCache().getGeneration();
+		try
 		{
-			for( int i = 0; i < selectString.length; i++ )
+			AsyncHibernateDAO.submit( new Callable()
 			{
-				String field = selectString[i];
-				LOGGER.debug( "select-field[" + field + "]" );
-				if( i == 0 )
+
+				public Object call() throws Exception
 				{
-					queryString += " a." + field.trim();
+					List data = getPaginatedData( nextPageIndex, pageSize, queryString, totalRecords );
+					getPageCache().put( normalizedQuery, prefetchKey, Collections.singletonList( new PaginatedResult(
+							data, totalRecords, nextPageIndex, pageSize, true ) ), getQuerySpaces( queryString ),
+							generation );
+					return null;
 				}
-				else
+
+				public String toString()
 				{
-					queryString += " ,a." + field.trim();
+					return "prefetchPage: hql[" + queryString + "] pageStartIndex[" + nextPageIndex + "] pageSize["
+							+ pageSize + "]";
 				}
-			}
+			}, false );
 		}
-
-		queryString = " from " + className.trim() + " a ";
-
-		if( StringUtils.isQualifiedString( whereClause ) )
+		catch( DAOException e )
 		{
-			queryString += " where " + whereClause;
+			LOGGER.debug( "async executor is saturated, skipping the prefetch. hql[" + queryString + "]" );
 		}
+	}
 
-		if( StringUtils.isQualifiedString( orderBy ) )
+	/**
+	 * Evicts the entities of given page from session, including the entities of projected rows. With the default
+	 * flush mode, query has flushed the pending changes of these entities before reading, so these are not lost.
+	 */
+	private static void evictPage( Session session, List data )
+	{
+		for( Iterator iterator = data.iterator(); iterator.hasNext(); )
 		{
-			queryString += " order by a." + orderBy.trim();
+			Object record = iterator.next();
+			Object[] values = record instanceof Object[] ? (Object[]) record : new Object[] { record };
+			for( int i = 0; i < values.length; i++ )
+			{
+				if( values[i] != null && session.contains( values[i] ) )
+				{
+					session.evict( values[i] );
+				}
+			}
 		}
+	}
 
-		LOGGER.debug( "finalQuery[" + queryString + "]" );
-
-		return getPaginatedData( pageStartIndex, pageSize, queryString, totalRecords );
+	private static Map getPrefetchKey( String prefetchOwner, int pageStartIndex, int pageSize )
+	{
+		Map prefetchKey = new HashMap();
+		prefetchKey.put( "owner", prefetchOwner );
+		prefetchKey.put( "pageStartIndex", new Integer( pageStartIndex ) );
+		prefetchKey.put( "pageSize", new Integer( pageSize ) );
+		return prefetchKey;
 	}
 
 	public static List getPaginatedData( int pageStartIndex, int pageSize, String completeHQL, int totalRecords )
@@ -1068,7 +4215,16 @@ public class HibernateUtil
 		LOGGER.trace( " getPaginatedData:   pageStartIndex[" + pageStartIndex + "] pageSize[" + pageSize + "] hql["
 				+ completeHQL + "] totalRecords[" + totalRecords + "]" );
 
-		Query query = getCurrentSession().createQuery( completeHQL );
+		return readPage( getCurrentReadSession(), pageStartIndex, pageSize, completeHQL );
+	}
+
+	/**
+	 * Reads the given page of HQL query using given session
+	 */
+	private static List readPage( Session session, int pageStartIndex, int pageSize, String completeHQL )
+			throws DAOException
+	{
+		Query query = session.createQuery( completeHQL );
 		int firstResultIndex = 0;
 
 		/*
@@ -1104,7 +4260,7 @@ public class HibernateUtil
 		// }
 		query.setFirstResult( firstResultIndex );
 		query.setMaxResults( pageSize );
-		List listObjects = query.list();
+		List listObjects = listQuery( query, "getPaginatedData", completeHQL, null );
 
 		LOGGER.debug( "paginatedDataSize[" + ( listObjects == null ? 0 : listObjects.size() ) + "]" );
 		return listObjects;
@@ -1124,7 +4280,7 @@ public class HibernateUtil
 		LOGGER.trace( "getPaginatedDataBySQL: pageStartIndex[" + pageStartIndex + "] pageSize[" + pageSize + "] hql["
 				+ completeSQL + "]" );
 
-		Query query = getCurrentSession().createSQLQuery( completeSQL );
+		Query query = getCurrentReadSession().createSQLQuery( completeSQL );
 		int firstResultIndex = 0;
 
 		if( pageStartIndex == 0 )
@@ -1137,13 +4293,269 @@ public class HibernateUtil
 
 		query.setFirstResult( firstResultIndex );
 		query.setMaxResults( pageSize );
-		List listObjects = query.list();
+		List listObjects = listQuery( query, "getPaginatedDataBySQL", completeSQL, null );
 
 		LOGGER.debug( "paginatedDataSize[" + ( listObjects == null ? 0 : listObjects.size() ) + "]" );
 		return listObjects;
 	}
 
 	/**
+	 * It will return the next page of objects using keyset (seek) pagination.
+	 * 
+	 * Instead of skipping the records of previous pages using offset, it filters the records using the values of sort
+	 * keys of last record of previous page. So database can seek directly to the start of page using index on sort
+	 * keys, and time taken by a page does not depend upon how deep the page is.
+	 * 
+	 * Sort keys should be not-null properties and should uniquely identify a record in combination, like
+	 * {"createdOn", "id"}. Otherwise records having same key values may be skipped across pages.
+	 * 
+	 * @param className Name of the class to get the objects for
+	 * @param whereClause Where clause, without 'where' keyword, to filter the objects. It should use 'a' as alias
+	 * @param keyProperties Properties of class to sort and seek the records
+	 * @param descending true if records should be sorted in descending order of keys
+	 * @param continuationToken Token returned with previous page, null for first page
+	 * @param pageSize Number of records needed on page
+	 * @return Page of objects with token for next page
+	 * @throws DAOException If there is any problem
+	 */
+	public static KeysetPage getPaginatedDataByKeyset( String className, String whereClause, String[] keyProperties,
+			boolean descending, String continuationToken, int pageSize ) throws DAOException
+	{
+		LOGGER.trace( "getPaginatedDataByKeyset: className[" + className + "] whereClause[" + whereClause
+				+ "] keyProperties[" + StringUtils.arrayToString( keyProperties ) + "] descending[" + descending
+				+ "] continuationToken[" + continuationToken + "] pageSize[" + pageSize + "]" );
+
+		StringUtils.assertQualifiedArgument( className );
+		assertKeysetArguments( keyProperties, pageSize );
+
+		Object[] lastKeyValues = KeysetPage.decodeContinuationToken( continuationToken );
+		assertKeyValues( keyProperties, lastKeyValues );
+
+		String queryString = " from " + className.trim() + " a " + buildKeysetClause( "a", keyProperties, descending,
+				whereClause, lastKeyValues != null );
+		LOGGER.debug( "finalQuery[" + queryString + "]" );
+
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentReadSession().createQuery( queryString );
+			List listObjects = executeKeysetQuery( query, lastKeyValues, pageSize );
+			boolean nextPageAvailable = listObjects.size() > pageSize;
+			if( nextPageAvailable )
+			{
+				// copied, as sub list is not serializable and would keep the look ahead row
+				listObjects = new ArrayList( listObjects.subList( 0, pageSize ) );
+			}
+
+			Object[] keyValues = null;
+			if( listObjects.size() > 0 )
+			{
+				Object lastObject = listObjects.get( listObjects.size() - 1 );
+				keyValues = new Object[keyProperties.length];
+				for( int i = 0; i < keyProperties.length; i++ )
+				{
+					keyValues[i] = BeanUtils.getPropertyValue( lastObject, keyProperties[i].trim() );
+				}
+			}
+
+			LOGGER.debug( "paginatedDataSize[" + listObjects.size() + "] nextPageAvailable[" + nextPageAvailable
+					+ "]" );
+			rowCount = listObjects.size();
+			return new KeysetPage( listObjects, keyValues, nextPageAvailable );
+		}
+		catch( Exception e )
+		{
+			LOGGER.error( "Error while getting keyset page of objects. queryString[" + queryString + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while getting keyset page of objects. queryString["
+					+ queryString + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "getPaginatedDataByKeyset", queryString, StringUtils
+					.arrayToString( lastKeyValues ), rowCount, startTime );
+		}
+	}
+
+	/**
+	 * It will return the next page of records using keyset (seek) pagination for the specified SQL query. Please refer
+	 * to getPaginatedDataByKeyset for details of keyset pagination.
+	 * 
+	 * Specified SQL is used as derived table, and keyset condition and order by are applied over it. So it should not
+	 * have its own order by clause, and key columns should be part of its select list.
+	 * 
+	 * @param completeSQL Complete SQL Query
+	 * @param keyColumns Name of columns, as returned by SQL, to sort and seek the records
+	 * @param keyColumnIndexes Index of key columns in returned record, starting from zero
+	 * @param descending true if records should be sorted in descending order of keys
+	 * @param continuationToken Token returned with previous page, null for first page
+	 * @param pageSize Number of records needed on page
+	 * @return Page of records with token for next page
+	 * @throws DAOException If there is any problem
+	 */
+	public static KeysetPage getPaginatedDataBySQLByKeyset( String completeSQL, String[] keyColumns,
+			int[] keyColumnIndexes, boolean descending, String continuationToken, int pageSize ) throws DAOException
+	{
+		LOGGER.trace( "getPaginatedDataBySQLByKeyset: sql[" + completeSQL + "] keyColumns["
+				+ StringUtils.arrayToString( keyColumns ) + "] descending[" + descending + "] continuationToken["
+				+ continuationToken + "] pageSize[" + pageSize + "]" );
+
+		StringUtils.assertQualifiedArgument( completeSQL );
+		assertKeysetArguments( keyColumns, pageSize );
+		Utilities.assertNotNullArgument( keyColumnIndexes );
+		if( keyColumnIndexes.length != keyColumns.length )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Index should be specified for each key column. keyColumns["
+							+ StringUtils.arrayToString( keyColumns ) + "] keyColumnIndexes-length["
+							+ keyColumnIndexes.length + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		Object[] lastKeyValues = KeysetPage.decodeContinuationToken( continuationToken );
+		assertKeyValues( keyColumns, lastKeyValues );
+
+		String sqlQuery = "select * from ( " + completeSQL + " ) keyset_q "
+				+ buildKeysetClause( "keyset_q", keyColumns, descending, null, lastKeyValues != null );
+		LOGGER.debug( "finalQuery[" + sqlQuery + "]" );
+
+		long startTime = QueryLatencyMonitor.start();
+		int rowCount = -1;
+		try
+		{
+			Query query = getCurrentReadSession().createSQLQuery( sqlQuery );
+			List listObjects = executeKeysetQuery( query, lastKeyValues, pageSize );
+			boolean nextPageAvailable = listObjects.size() > pageSize;
+			if( nextPageAvailable )
+			{
+				listObjects = new ArrayList( listObjects.subList( 0, pageSize ) );
+			}
+
+			Object[] keyValues = null;
+			if( listObjects.size() > 0 )
+			{
+				Object lastRecord = listObjects.get( listObjects.size() - 1 );
+				keyValues = new Object[keyColumns.length];
+				for( int i = 0; i < keyColumns.length; i++ )
+				{
+					keyValues[i] = lastRecord instanceof Object[] ? ( (Object[]) lastRecord )[keyColumnIndexes[i]]
+							: lastRecord;
+				}
+			}
+
+			LOGGER.debug( "paginatedDataSize[" + listObjects.size() + "] nextPageAvailable[" + nextPageAvailable
+					+ "]" );
+			rowCount = listObjects.size();
+			return new KeysetPage( listObjects, keyValues, nextPageAvailable );
+		}
+		catch( HibernateException he )
+		{
+			DAOException daoEx = new DAOException( IErrorCodes.DAO_ERROR,
+					"HibernateException while getting keyset page by sql query. sqlQuery[" + sqlQuery + "]", he );
+			LOGGER.error( daoEx );
+			throw daoEx;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "getPaginatedDataBySQLByKeyset", sqlQuery, StringUtils
+					.arrayToString( lastKeyValues ), rowCount, startTime );
+		}
+	}
+
+	private static void assertKeysetArguments( String[] keys, int pageSize )
+	{
+		if( keys == null || keys.length == 0 || pageSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"At least one key and a positive page size is required for keyset pagination. keys["
+							+ StringUtils.arrayToString( keys ) + "] pageSize[" + pageSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		for( int i = 0; i < keys.length; i++ )
+		{
+			StringUtils.assertQualifiedArgument( keys[i] );
+		}
+	}
+
+	private static void assertKeyValues( String[] keys, Object[] keyValues )
+	{
+		if( keyValues != null && keyValues.length != keys.length )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Continuation token does not match with keys. keys[" + StringUtils.arrayToString( keys )
+							+ "] keyValues[" + StringUtils.arrayToString( keyValues ) + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+	}
+
+	/**
+	 * Builds the where and order by clause for keyset pagination. Keyset condition is expanded as
+	 * (k1 > :v1) or (k1 = :v1 and k2 > :v2) ... instead of row value comparison, as later is not supported by all
+	 * databases.
+	 */
+	private static String buildKeysetClause( String alias, String[] keys, boolean descending, String whereClause,
+			boolean seek )
+	{
+		StringBuffer clause = new StringBuffer();
+		String comparator = descending ? " < " : " > ";
+
+		if( StringUtils.isQualifiedString( whereClause ) )
+		{
+			clause.append( " where ( " ).append( whereClause ).append( " )" );
+		}
+		if( seek )
+		{
+			clause.append( clause.length() == 0 ? " where ( " : " and ( " );
+			for( int i = 0; i < keys.length; i++ )
+			{
+				if( i > 0 )
+				{
+					clause.append( " or " );
+				}
+				clause.append( "( " );
+				for( int j = 0; j < i; j++ )
+				{
+					clause.append( alias ).append( "." ).append( keys[j].trim() ).append( " = :keysetValue" )
+							.append( j ).append( " and " );
+				}
+				clause.append( alias ).append( "." ).append( keys[i].trim() ).append( comparator )
+						.append( ":keysetValue" ).append( i ).append( " )" );
+			}
+			clause.append( " )" );
+		}
+
+		clause.append( " order by " );
+		for( int i = 0; i < keys.length; i++ )
+		{
+			if( i > 0 )
+			{
+				clause.append( ", " );
+			}
+			clause.append( alias ).append( "." ).append( keys[i].trim() ).append( descending ? " desc" : "" );
+		}
+		return clause.toString();
+	}
+
+	private static List executeKeysetQuery( Query query, Object[] lastKeyValues, int pageSize )
+	{
+		if( lastKeyValues != null )
+		{
+			for( int i = 0; i < lastKeyValues.length; i++ )
+			{
+				query.setParameter( "keysetValue" + i, lastKeyValues[i] );
+			}
+		}
+		// one extra record to know whether next page is available or not
+		query.setMaxResults( pageSize + 1 );
+		return query.list();
+	}
+
+	/**
+	 * Returns the number of records of given class, counted as per count mode configured using
+	 * 'hibernate.util.count.mode' property. Please refer to getTotalNumberOfRecords with count mode for details.
 	 * 
 	 * @param className
 	 * @param whereClause
@@ -1153,9 +4565,38 @@ public class HibernateUtil
 	 */
 	public static int getTotalNumberOfRecords( String className, String whereClause ) throws DAOException
 	{
+		return getTotalNumberOfRecords( className, whereClause, getDefaultCountMode() );
+	}
 
-		LOGGER.trace( "getTotalNumberOfRecords: className[" + className + "] whereClause[" + whereClause + "]" );
+	/**
+	 * Returns the number of records of given class which satisfy given where clause.
+	 * 
+	 * In cached mode, count is taken from count cache if available, otherwise records are counted and count is cached.
+	 * Count is invalidated whenever any entity using same tables is written using HibernateUtil, or after its time to
+	 * live. In approximate mode, if there is no where clause, count is the estimated number of rows of table kept by
+	 * database for its query planner. So paginated views of large tables do not count all the rows for every page.
+	 * Estimate is also cached, and exact count is used if estimate is not available. Please refer to RowCountEstimator
+	 * for supported databases.
+	 * 
+	 * @param className Name of class
+	 * @param whereClause Where clause without 'where', using alias 'a' for class, can be null
+	 * @param countMode One of COUNT_EXACT, COUNT_CACHED and COUNT_APPROXIMATE
+	 * @return Total number of records, exact or estimated as per count mode
+	 * @throws DAOException If there is any problem in counting
+	 */
+	public static int getTotalNumberOfRecords( String className, String whereClause, int countMode )
+			throws DAOException
+	{
+		LOGGER.trace( "getTotalNumberOfRecords: className[" + className + "] whereClause[" + whereClause
+				+ "] countMode[" + countMode + "]" );
 		StringUtils.assertQualifiedArgument( className );
+		if( countMode < COUNT_EXACT || countMode > COUNT_APPROXIMATE )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Invalid count mode. countMode[" + countMode
+					+ "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
 
 		String queryString = "Select count(*) from " + className.trim() + " a ";
 		if( StringUtils.isQualifiedString( whereClause ) )
@@ -1165,9 +4606,148 @@ public class HibernateUtil
 
 		LOGGER.debug( "query-with-where[" + queryString + "]" );
 
-		Query query = getCurrentSession().createQuery( queryString );
+		if( countMode == COUNT_EXACT )
+		{
+			return countRecords( queryString, null );
+		}
+
+		if( countMode == COUNT_APPROXIMATE && !StringUtils.isQualifiedString( whereClause ) )
+		{
+			long estimate = estimateRecords( className.trim() );
+			if( estimate >= 0 )
+			{
+				return estimate > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) estimate;
+			}
+		}
+
+		return getCachedCount( queryString, null );
+	}
+
+	/**
+	 * Returns the number of records matching the query built by given QueryBuilder, counted as per count mode
+	 * configured using 'hibernate.util.count.mode' property. Selected properties, order and page of query are ignored.
+	 * 
+	 * @param queryBuilder Builder of query
+	 * @return Total number of records
+	 * @throws DAOException If there is any problem in counting
+	 */
+	public static int getTotalNumberOfRecords( QueryBuilder queryBuilder ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( queryBuilder );
+		LOGGER.trace( "getTotalNumberOfRecords: queryBuilder[" + queryBuilder + "]" );
+
+		if( !queryBuilder.hasPredicates() )
+		{
+			// same as counting all records of class, which can use the estimate in approximate mode
+			return getTotalNumberOfRecords( queryBuilder.getClassName(), null );
+		}
+		return getDefaultCountMode() == COUNT_EXACT ? countRecords( queryBuilder.toCountHQL(), queryBuilder
+				.getParameters() ) : getCachedCount( queryBuilder.toCountHQL(), queryBuilder.getParameters() );
+	}
+
+	/**
+	 * Returns the count from count cache if available, otherwise counts the records and caches the count. Count is not
+	 * cached if read in an active transaction, and cache is not used if current thread has uncommitted writes.
+	 */
+	private static int getCachedCount( String queryString, Map<Object, Object> parameters ) throws DAOException
+	{
+		if( hasPendingWrites() )
+		{
+			// cache may have the count committed before these writes, which thread should not read
+			return countRecords( queryString, parameters );
+		}
+		String normalizedQuery = QueryResultCache.normalizeQuery( queryString );
+		List cachedCount = getCountCache().get( normalizedQuery, parameters );
+		if( cachedCount != null )
+		{
+			LOGGER.debug( "count found in cache. count[" + cachedCount.get( 0 ) + "]" );
+			return ( (Integer) cachedCount.get( 0 ) ).intValue();
+		}
+
+		long generation = getCountCache().getGeneration();
+		int count = countRecords( queryString, parameters );
+		putSharedResult( getCountCache(), isTransactionActive( getOpenCurrentSession() ), normalizedQuery, parameters,
+				Collections.singletonList( new Integer( count ) ), getQuerySpaces( queryString ), generation );
+		return count;
+	}
+
+	/**
+	 * @return Count mode used by getTotalNumberOfRecords, if mode is not specified
+	 */
+	public static int getDefaultCountMode()
+	{
+		ensureInitialized();
+		return defaultCountMode;
+	}
+
+	/**
+	 * Returns the estimated number of rows of table of given class, from count cache if available
+	 * 
+	 * @return Estimated number of rows, or -1 if estimate is not available
+	 */
+	private static long estimateRecords( String className ) throws DAOException
+	{
+		ClassMetadata classMetadata = getEntityMetadata( className ).getClassMetadata();
+		String entityName = classMetadata.getEntityName();
+		// key can not collide with counts, as those are HQL queries
+		String cacheKey = "estimate " + entityName;
+		List cachedEstimate = getCountCache().get( cacheKey, null );
+		if( cachedEstimate != null )
+		{
+			return ( (Long) cachedEstimate.get( 0 ) ).longValue();
+		}
+
+		long generation = getCountCache().getGeneration();
+		SessionFactoryImplementor sessionFactoryImplementor = (SessionFactoryImplementor) getSessionFactory();
+		long startTime = QueryLatencyMonitor.start();
+		long estimate;
+		try
+		{
+			estimate = RowCountEstimator.estimate( sessionFactoryImplementor, getCurrentReadSession().connection(),
+					entityName );
+			LOGGER.debug( "estimated rows. entityName[" + entityName + "] estimate[" + estimate + "]" );
+		}
+		catch( SQLException e )
+		{
+			// estimate is an optimization, so exact count is used if it can not be read
+			LOGGER.warn( "Error while reading the estimated number of rows, using exact count. entityName["
+					+ entityName + "]", e );
+			estimate = -1;
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "estimateRecords", entityName, null, -1, startTime );
+		}
+		Serializable[] querySpaces = sessionFactoryImplementor.getEntityPersister( entityName ).getQuerySpaces();
+		getCountCache().put( cacheKey, null, Collections.singletonList( new Long( estimate ) ),
+				new HashSet( Arrays.asList( querySpaces ) ), generation );
+		return estimate;
+	}
+
+	/**
+	 * Executes the given count query
+	 */
+	private static int countRecords( final String queryString, final Map<Object, Object> parameters )
+			throws DAOException
+	{
+		Integer count = (Integer) executeCoalesced( "getTotalNumberOfRecords", queryString, parameters,
+				new Callable()
+				{
+
+					public Object call() throws Exception
+					{
+						return new Integer( executeCount( queryString, parameters ) );
+					}
+				} );
+		return count.intValue();
+	}
+
+	private static int executeCount( String queryString, Map<Object, Object> parameters ) throws DAOException
+	{
+		Query query = getCurrentReadSession().createQuery( queryString );
+		setQueryParameters( query, queryString, parameters );
 
-		List listObjects = query.list();
+		List listObjects = listQuery( query, "getTotalNumberOfRecords", queryString, parameters );
 		LOGGER.debug( "resultList[" + listObjects + "]" );
 
 		if( listObjects != null && listObjects.size() > 0 )
@@ -1215,56 +4795,88 @@ public class HibernateUtil
 		initializeObject( obj, 0 );
 	}
 
+	/**
+	 * Initializes the object and all of its associations up to desired depth. Associations are initialized level by
+	 * level, with batched 'in' queries for all the objects of a level. Please refer to FetchPlanInitializer for
+	 * details.
+	 * 
+	 * As it initializes every association, it may load large part of database for deep or unlimited depth. Prefer
+	 * initializeAssociations with a fetch plan to load only the required paths.
+	 */
 	public static void initializeObject( Object obj, int desiredDepth ) throws DAOException
+	{
+		LOGGER.trace( "initializeObject: obj[" + obj + "] desiredDepth[" + desiredDepth + "]" );
+		Utilities.assertNotNullArgument( obj );
+
+		long startTime = QueryLatencyMonitor.start();
+		try
+		{
+			FetchPlanInitializer initializer = new FetchPlanInitializer( getCurrentSession(), getInClauseChunkSize() );
+			initializer.initializeAll( Collections.singletonList( obj ), desiredDepth );
+			LOGGER.debug( "object initialized. queryCount[" + initializer.getQueryCount() + "]" );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while initializing the object. obj[" + obj + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while initializing the object. obj[" + obj + "]", e );
+		}
+		finally
+		{
+			QueryLatencyMonitor.end( "initializeObject", null, null, -1, startTime );
+		}
+	}
+
+	/**
+	 * Initializes the association paths declared by fetch plan, for the given object
+	 * 
+	 * @see #initializeAssociations(Collection, FetchPlan)
+	 */
+	public static void initializeAssociations( Object obj, FetchPlan fetchPlan ) throws DAOException
 	{
 		Utilities.assertNotNullArgument( obj );
-		initializeObjectInternal( obj, new HashSet(), desiredDepth, 0 );
+		initializeAssociations( Collections.singletonList( obj ), fetchPlan );
 	}
 
-	private static void initializeObjectInternal( Object obj, Set objectsSet, int desiredDepth, int achievedDepth )
-			throws DAOException
+	/**
+	 * Initializes the association paths declared by fetch plan, for all the given objects.
+	 * 
+	 * Paths are initialized level by level. At each level, uninitialized proxies and collections of an association are
+	 * loaded for all the objects together, with 'in' queries of at most 'hibernate.util.inclause.chunksize' ids. So
+	 * initializing 'items.product' for thousand orders takes a few queries, rather than a query per order and item.
+	 * 
+	 * Objects should be associated with the current session.
+	 * 
+	 * @param objects Persistent objects or proxies
+	 * @param fetchPlan Association paths to initialize
+	 * @throws DAOException If a path refers to a property which is not a mapped association, or query fails
+	 */
+	public static void initializeAssociations( Collection objects, FetchPlan fetchPlan ) throws DAOException
 	{
-		LOGGER.debug( "initializing-obj[" + obj + "]" );
-		if( objectsSet.contains( obj ) )
+		LOGGER.trace( "initializeAssociations: objectsCount[" + ( objects == null ? 0 : objects.size() )
+				+ "] fetchPlan[" + fetchPlan + "]" );
+		Utilities.assertNotNullArgument( objects );
+		Utilities.assertNotNullArgument( fetchPlan );
+
+		if( objects.isEmpty() )
 		{
-			LOGGER.debug( "returning as object already initialized." );
 			return;
 		}
-		Hibernate.initialize( obj );
-		if( desiredDepth != -1 && desiredDepth == achievedDepth )
+		long startTime = QueryLatencyMonitor.start();
+		try
 		{
-			LOGGER.debug( "returning as desired depth has been achieved. desiredDepth[" + desiredDepth
-					+ "] achievedDepth[" + achievedDepth + "]" );
-			return;
+			FetchPlanInitializer initializer = new FetchPlanInitializer( getCurrentSession(), getInClauseChunkSize() );
+			initializer.initialize( objects, fetchPlan );
+			LOGGER.debug( "associations initialized. queryCount[" + initializer.getQueryCount() + "]" );
 		}
-		achievedDepth++;
-		objectsSet.add( obj );
-		try
+		catch( HibernateException e )
 		{
-			Class clazz = obj.getClass();
-			Field[] fields = clazz.getFields();
-			if( fields == null || fields.length == 0 )
-			{
-				LOGGER.debug( "no field found with object" );
-				return;
-			}
-			for( Field field : fields )
-			{
-				String propertyName = field.getName();
-				LOGGER.debug( "propertyName[" + propertyName + "]" );
-				Object propertyValue = BeanUtils.getPropertyValue( obj, propertyName );
-				LOGGER.debug( "propertyValue[" + propertyValue + "]" );
-				if( propertyValue != null )
-				{
-					initializeObjectInternal( obj, objectsSet, desiredDepth, achievedDepth );
-				}
-			}
+			LOGGER.error( "Error while initializing the associations. fetchPlan[" + fetchPlan + "]", e );
+			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while initializing the associations. fetchPlan["
+					+ fetchPlan + "]", e );
 		}
-		catch( Exception ex )
+		finally
 		{
-			LOGGER.error( "Error while getting list of objects. obj[" + obj + "]", ex );
-			throw new DAOException( IErrorCodes.DAO_ERROR, "Error while initializing the object. obj[" + obj + "]",
-					ex );
+			QueryLatencyMonitor.end( "initializeAssociations", null, null, objects.size(), startTime );
 		}
 	}
 
@@ -1280,7 +4892,7 @@ public class HibernateUtil
 		// "a.quantity,s.supplierName from PurchaseRequisitionItem as a left join Supplier as s" +
 		// " with a.supplier.id=s.id ";
 
-		List list = sessionFactory.openSession().createQuery( completeHql ).list();
+		List list = getSessionFactory().openSession().createQuery( completeHql ).list();
 
 		System.out.println( "list   " + list.size() );
 
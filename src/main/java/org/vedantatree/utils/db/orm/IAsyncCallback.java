@@ -0,0 +1,30 @@
+package org.vedantatree.utils.db.orm;
+
+/**
+ * Notified by AsyncHibernateDAO when a submitted call completes, so that caller does not have to block on the Future
+ * or poll it.
+ * 
+ * Callback is called by the executor thread after unit of work of call has ended, i.e. session is closed and
+ * transaction, if any, is committed or rolled back. It should return quickly, as executor thread is not available for
+ * other calls meanwhile. Exceptions thrown by callback are logged and do not change the result of Future.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IAsyncCallback
+{
+
+	/**
+	 * Called when call completes successfully
+	 * 
+	 * @param result Value returned by call, same as returned by get of Future
+	 */
+	void onSuccess( Object result );
+
+	/**
+	 * Called when call fails
+	 * 
+	 * @param cause Exception thrown by call, same as cause of ExecutionException thrown by get of Future
+	 */
+	void onFailure( Throwable cause );
+
+}
@@ -0,0 +1,22 @@
+package org.vedantatree.utils.db.orm;
+
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Work to be executed with a BulkSession, using HibernateUtil.executeBulkWork. Session is opened before the work and
+ * is committed and closed after it, or rolled back if work throws any exception.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IBulkWork
+{
+
+	/**
+	 * @param bulkSession Session to execute the bulk operations with
+	 * @return Any result of work, returned back by HibernateUtil.executeBulkWork
+	 * @throws DAOException If there is any problem in work
+	 */
+	Object execute( BulkSession bulkSession ) throws DAOException;
+
+}
@@ -0,0 +1,21 @@
+package org.vedantatree.utils.db.orm;
+
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Applies the changes to an object read for update. It is used by HibernateUtil.updateObjectOptimistic, which may
+ * call it more than once, each time with the latest state of object, if update conflicts with other writers. So it
+ * should only change the object, and should not have other side effects.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IEntityUpdater
+{
+
+	/**
+	 * @param entity Latest state of object, to apply the changes to
+	 */
+	void update( Object entity ) throws DAOException;
+
+}
@@ -0,0 +1,23 @@
+package org.vedantatree.utils.db.orm;
+
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Decides whether a failed operation should be tried again, and after how much delay. It is used by
+ * HibernateUtil.updateObjectOptimistic to retry the updates failed with optimistic lock conflict.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IRetryPolicy
+{
+
+	/**
+	 * @param attempt Number of attempts done so far, starting from 1
+	 * @param failure Failure of last attempt
+	 * @return Delay in milliseconds before next attempt, zero to retry immediately, or less than zero if operation
+	 *         should not be retried
+	 */
+	long getRetryDelay( int attempt, DAOException failure );
+
+}
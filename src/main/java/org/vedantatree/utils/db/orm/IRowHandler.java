@@ -0,0 +1,32 @@
+package org.vedantatree.utils.db.orm;
+
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Receives the rows of result sets one by one, as these are read from database. So large results can be processed
+ * without keeping all the rows in memory.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IRowHandler
+{
+
+	/**
+	 * Called before the rows of each result set
+	 * 
+	 * @param resultSetIndex Index of result set, starting from 0
+	 * @param columnNames Labels of columns of result set
+	 */
+	void startResultSet( int resultSetIndex, String[] columnNames ) throws DAOException;
+
+	/**
+	 * Called for each row of result set
+	 * 
+	 * @param resultSetIndex Index of result set, starting from 0
+	 * @param row Column values of row, in order of columns
+	 * @return true to continue with next row, false to skip the remaining rows of this result set
+	 */
+	boolean handleRow( int resultSetIndex, Object[] row ) throws DAOException;
+
+}
@@ -0,0 +1,34 @@
+package org.vedantatree.utils.db.orm;
+
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Receives the objects read by ParallelScan. Partitions are scanned by different threads, so handler is called
+ * concurrently for different partitions and should be thread safe. Objects of one partition are passed by one thread
+ * only, in ascending order of partition key.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public interface IScanHandler
+{
+
+	/**
+	 * Called for each object of partition
+	 * 
+	 * @param partitionIndex Index of partition, starting from 0 for lowest range of partition key
+	 * @param object Object read, detached from session
+	 * @return true to continue the scan, false to stop the scan of all the partitions
+	 */
+	boolean handleObject( int partitionIndex, Object object ) throws DAOException;
+
+	/**
+	 * Called once all the objects of partition have been handled, like to checkpoint the progress of partition. It is
+	 * not called if scan is stopped or fails before partition completes.
+	 * 
+	 * @param partitionIndex Index of partition
+	 * @param objectCount Number of objects handled for partition
+	 */
+	void partitionCompleted( int partitionIndex, long objectCount ) throws DAOException;
+
+}
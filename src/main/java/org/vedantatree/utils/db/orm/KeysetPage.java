@@ -0,0 +1,266 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.vedantatree.utils.StringUtils;
+
+
+/**
+ * One page of data fetched using keyset (seek) pagination.
+ * 
+ * Keyset pagination does not use any offset. Next page is fetched using the values of sort keys of last record of
+ * current page, so database can seek directly to the start of next page using index on sort keys. Hence time to fetch a
+ * page remains same, however deep the page is.
+ * 
+ * Continuation token is an opaque string which carries the sort key values of last record of this page. Caller should
+ * pass it back as it is, to get the next page.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class KeysetPage implements Serializable
+{
+
+	private static final long	serialVersionUID	= 2014061001L;
+
+	private static Log			LOGGER				= LogFactory.getLog( KeysetPage.class );
+
+	private static final String	TOKEN_SEPARATOR		= ",";
+	private static final String	TYPE_SEPARATOR		= "~";
+	private static final String	TOKEN_ENCODING		= "UTF-8";
+
+	/**
+	 * Records of this page
+	 */
+	private List				data;
+
+	/**
+	 * Sort key values of last record of this page, null if page is empty
+	 */
+	private Object[]			lastKeyValues;
+
+	/**
+	 * True if there are more records after this page
+	 */
+	private boolean				nextPageAvailable;
+
+	public KeysetPage( List data, Object[] lastKeyValues, boolean nextPageAvailable )
+	{
+		this.data = data;
+		this.lastKeyValues = lastKeyValues;
+		this.nextPageAvailable = nextPageAvailable;
+	}
+
+	public List getData()
+	{
+		return data;
+	}
+
+	public Object[] getLastKeyValues()
+	{
+		return lastKeyValues;
+	}
+
+	public boolean isNextPageAvailable()
+	{
+		return nextPageAvailable;
+	}
+
+	/**
+	 * @return token to fetch the next page, null if there is no next page
+	 */
+	public String getContinuationToken()
+	{
+		return nextPageAvailable ? encodeContinuationToken( lastKeyValues ) : null;
+	}
+
+	/**
+	 * Encodes the key values as token. Token is kept as type tagged text instead of serialized java objects, so that a
+	 * token coming back from client can not be used to inject arbitrary objects.
+	 */
+	public static String encodeContinuationToken( Object[] keyValues )
+	{
+		if( keyValues == null )
+		{
+			return null;
+		}
+		try
+		{
+			StringBuffer token = new StringBuffer();
+			for( int i = 0; i < keyValues.length; i++ )
+			{
+				if( i > 0 )
+				{
+					token.append( TOKEN_SEPARATOR );
+				}
+				token.append( getTypeTag( keyValues[i] ) ).append( TYPE_SEPARATOR );
+				token.append( URLEncoder.encode( getTokenValue( keyValues[i] ), TOKEN_ENCODING ) );
+			}
+			return token.toString();
+		}
+		catch( UnsupportedEncodingException e )
+		{
+			IllegalStateException ise = new IllegalStateException( "Encoding is not supported. encoding["
+					+ TOKEN_ENCODING + "]" );
+			ise.initCause( e );
+			LOGGER.error( ise );
+			throw ise;
+		}
+	}
+
+	public static Object[] decodeContinuationToken( String continuationToken )
+	{
+		if( !StringUtils.isQualifiedString( continuationToken ) )
+		{
+			return null;
+		}
+		try
+		{
+			List<String> tokens = StringUtils.getTokenizedString( continuationToken, TOKEN_SEPARATOR );
+			Object[] keyValues = new Object[tokens.size()];
+			for( int i = 0; i < keyValues.length; i++ )
+			{
+				String token = tokens.get( i );
+				int typeEnd = token.indexOf( TYPE_SEPARATOR );
+				keyValues[i] = createValue( token.substring( 0, typeEnd ), URLDecoder.decode( token
+						.substring( typeEnd + 1 ), TOKEN_ENCODING ) );
+			}
+			return keyValues;
+		}
+		catch( Exception e )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Invalid continuation token. token["
+					+ continuationToken + "]" );
+			iae.initCause( e );
+			LOGGER.error( iae );
+			throw iae;
+		}
+	}
+
+	private static String getTypeTag( Object value )
+	{
+		if( value == null )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Null key value can not be used for keyset pagination. Sort keys should be not-null columns." );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		else if( value instanceof String )
+		{
+			return "s";
+		}
+		else if( value instanceof Integer )
+		{
+			return "i";
+		}
+		else if( value instanceof Long )
+		{
+			return "l";
+		}
+		else if( value instanceof Short )
+		{
+			return "h";
+		}
+		else if( value instanceof Double )
+		{
+			return "d";
+		}
+		else if( value instanceof Float )
+		{
+			return "f";
+		}
+		else if( value instanceof BigDecimal )
+		{
+			return "n";
+		}
+		else if( value instanceof BigInteger )
+		{
+			return "g";
+		}
+		else if( value instanceof Boolean )
+		{
+			return "b";
+		}
+		else if( value instanceof Timestamp )
+		{
+			return "t";
+		}
+		else if( value instanceof java.sql.Date )
+		{
+			return "q";
+		}
+		else if( value instanceof Date )
+		{
+			return "u";
+		}
+		else
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Key value type is not supported for keyset pagination. value[" + value + "] class["
+							+ value.getClass() + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+	}
+
+	private static String getTokenValue( Object value )
+	{
+		if( value instanceof Timestamp )
+		{
+			Timestamp timestamp = (Timestamp) value;
+			return timestamp.getTime() + ":" + timestamp.getNanos();
+		}
+		else if( value instanceof Date )
+		{
+			return String.valueOf( ( (Date) value ).getTime() );
+		}
+		return value.toString();
+	}
+
+	private static Object createValue( String typeTag, String value )
+	{
+		switch( typeTag.charAt( 0 ) )
+		{
+			case 's':
+				return value;
+			case 'i':
+				return Integer.valueOf( value );
+			case 'l':
+				return Long.valueOf( value );
+			case 'h':
+				return Short.valueOf( value );
+			case 'd':
+				return Double.valueOf( value );
+			case 'f':
+				return Float.valueOf( value );
+			case 'n':
+				return new BigDecimal( value );
+			case 'g':
+				return new BigInteger( value );
+			case 'b':
+				return Boolean.valueOf( value );
+			case 't':
+				int nanosIndex = value.indexOf( ':' );
+				Timestamp timestamp = new Timestamp( Long.parseLong( value.substring( 0, nanosIndex ) ) );
+				timestamp.setNanos( Integer.parseInt( value.substring( nanosIndex + 1 ) ) );
+				return timestamp;
+			case 'q':
+				return new java.sql.Date( Long.parseLong( value ) );
+			case 'u':
+				return new Date( Long.parseLong( value ) );
+			default:
+				throw new IllegalArgumentException( "Unknown type tag in continuation token. typeTag[" + typeTag + "]" );
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Lock free histogram of latencies, in microseconds.
+ * 
+ * Values are counted in log-linear buckets, in the same way as HDR histograms. Every power of two range is divided in
+ * 16 linear sub buckets, so any recorded value is reported back with at most 1/16 (~6%) error, while all the values up
+ * to ~19 hours need only 544 counters. Recording a value is one array increment and a few atomic updates, without any
+ * lock, so it can be used on every database call.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class LatencyHistogram
+{
+
+	private static final int	SUB_BUCKET_BITS		= 4;
+
+	private static final int	SUB_BUCKET_COUNT	= 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Highest bit of maximum value which can be counted. Larger values are counted in last bucket.
+	 */
+	private static final int	MAX_VALUE_BIT		= 36;
+
+	private static final long	MAX_VALUE			= ( 1L << ( MAX_VALUE_BIT + 1 ) ) - 1;
+
+	private static final int	BUCKET_COUNT		= SUB_BUCKET_COUNT + ( MAX_VALUE_BIT - SUB_BUCKET_BITS + 1 )
+															* SUB_BUCKET_COUNT;
+
+	private final String		name;
+
+	private final AtomicLongArray	counts				= new AtomicLongArray( BUCKET_COUNT );
+
+	private final AtomicLong	totalCount			= new AtomicLong();
+
+	private final AtomicLong	totalValue			= new AtomicLong();
+
+	private final AtomicLong	maxValue			= new AtomicLong();
+
+	public LatencyHistogram( String name )
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Records the given latency
+	 * 
+	 * @param micros Latency in microseconds
+	 */
+	public void record( long micros )
+	{
+		if( micros < 0 )
+		{
+			micros = 0;
+		}
+		counts.incrementAndGet( getBucketIndex( Math.min( micros, MAX_VALUE ) ) );
+		totalCount.incrementAndGet();
+		totalValue.addAndGet( micros );
+
+		long currentMax = maxValue.get();
+		while( micros > currentMax && !maxValue.compareAndSet( currentMax, micros ) )
+		{
+			currentMax = maxValue.get();
+		}
+	}
+
+	private static int getBucketIndex( long value )
+	{
+		if( value < SUB_BUCKET_COUNT )
+		{
+			return (int) value;
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros( value );
+		int shift = highestBit - SUB_BUCKET_BITS;
+		int subBucket = (int) ( value >> shift ) - SUB_BUCKET_COUNT;
+		return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * @return Middle value of the range of values counted in given bucket
+	 */
+	private static long getBucketValue( int bucketIndex )
+	{
+		if( bucketIndex < SUB_BUCKET_COUNT )
+		{
+			return bucketIndex;
+		}
+		int shift = ( bucketIndex - SUB_BUCKET_COUNT ) / SUB_BUCKET_COUNT;
+		int subBucket = ( bucketIndex - SUB_BUCKET_COUNT ) % SUB_BUCKET_COUNT;
+		long lowestValue = (long) ( SUB_BUCKET_COUNT + subBucket ) << shift;
+		return lowestValue + ( ( 1L << shift ) >> 1 );
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getCount()
+	{
+		return totalCount.get();
+	}
+
+	/**
+	 * @return Maximum recorded latency in microseconds
+	 */
+	public long getMax()
+	{
+		return maxValue.get();
+	}
+
+	/**
+	 * @return Mean of recorded latencies in microseconds
+	 */
+	public double getMean()
+	{
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalValue.get() / count;
+	}
+
+	/**
+	 * Returns the latency below which given percentage of recorded latencies lie. As recording may continue while
+	 * reading, value is approximate for the histograms being updated concurrently.
+	 * 
+	 * @param percentile Percentile, like 50, 99 or 99.9
+	 * @return Latency in microseconds
+	 */
+	public long getValueAtPercentile( double percentile )
+	{
+		long[] snapshot = new long[BUCKET_COUNT];
+		long count = 0;
+		for( int i = 0; i < BUCKET_COUNT; i++ )
+		{
+			snapshot[i] = counts.get( i );
+			count += snapshot[i];
+		}
+		if( count == 0 )
+		{
+			return 0;
+		}
+		long targetCount = Math.max( 1, (long) Math.ceil( percentile / 100 * count ) );
+		long cumulativeCount = 0;
+		for( int i = 0; i < BUCKET_COUNT; i++ )
+		{
+			cumulativeCount += snapshot[i];
+			if( cumulativeCount >= targetCount )
+			{
+				return Math.min( getBucketValue( i ), getMax() );
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all the recorded values
+	 */
+	public void reset()
+	{
+		for( int i = 0; i < BUCKET_COUNT; i++ )
+		{
+			counts.set( i, 0 );
+		}
+		totalCount.set( 0 );
+		totalValue.set( 0 );
+		maxValue.set( 0 );
+	}
+
+	public String toString()
+	{
+		return "name[" + name + "] count[" + getCount() + "] meanMicros[" + (long) getMean() + "] p50Micros["
+				+ getValueAtPercentile( 50 ) + "] p90Micros[" + getValueAtPercentile( 90 ) + "] p99Micros["
+				+ getValueAtPercentile( 99 ) + "] maxMicros[" + getMax() + "]";
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+
+
+/**
+ * Point in time information of a session opened by HibernateUtil for a thread, and not closed yet. It is published by
+ * SessionLeakTracker for diagnostics.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class OpenSessionInfo implements Serializable
+{
+
+	private static final long			serialVersionUID	= 2014091501L;
+
+	private final long					sessionId;
+	private final boolean				replica;
+	private final long					openTime;
+	private final long					age;
+	private final String				threadName;
+	private final long					threadId;
+	private final boolean				threadAlive;
+	private final int					entityCount;
+	private final int					collectionCount;
+	private final boolean				leaked;
+	private final StackTraceElement[]	acquisitionStack;
+
+	OpenSessionInfo( long sessionId, boolean replica, long openTime, long captureTime, String threadName,
+			long threadId, boolean threadAlive, int entityCount, int collectionCount, boolean leaked,
+			StackTraceElement[] acquisitionStack )
+	{
+		this.sessionId = sessionId;
+		this.replica = replica;
+		this.openTime = openTime;
+		this.age = captureTime - openTime;
+		this.threadName = threadName;
+		this.threadId = threadId;
+		this.threadAlive = threadAlive;
+		this.entityCount = entityCount;
+		this.collectionCount = collectionCount;
+		this.leaked = leaked;
+		this.acquisitionStack = acquisitionStack;
+	}
+
+	/**
+	 * @return Sequence number of session, assigned by tracker when session was opened
+	 */
+	public long getSessionId()
+	{
+		return sessionId;
+	}
+
+	/**
+	 * @return true if session is of read replica
+	 */
+	public boolean isReplica()
+	{
+		return replica;
+	}
+
+	public long getOpenTime()
+	{
+		return openTime;
+	}
+
+	/**
+	 * @return Milliseconds since the session is open, at the time of this information
+	 */
+	public long getAge()
+	{
+		return age;
+	}
+
+	/**
+	 * @return Name of thread which opened the session
+	 */
+	public String getThreadName()
+	{
+		return threadName;
+	}
+
+	public long getThreadId()
+	{
+		return threadId;
+	}
+
+	/**
+	 * @return false if thread which opened the session has ended, so session can never be closed by it
+	 */
+	public boolean isThreadAlive()
+	{
+		return threadAlive;
+	}
+
+	/**
+	 * @return Number of entities in first level cache of session, -1 if it could not be read
+	 */
+	public int getEntityCount()
+	{
+		return entityCount;
+	}
+
+	/**
+	 * @return Number of collections in first level cache of session, -1 if it could not be read
+	 */
+	public int getCollectionCount()
+	{
+		return collectionCount;
+	}
+
+	/**
+	 * @return true if session is counted as leaked by tracker
+	 */
+	public boolean isLeaked()
+	{
+		return leaked;
+	}
+
+	/**
+	 * @return Stack of the call which opened the session, null if stack capturing is disabled
+	 */
+	public StackTraceElement[] getAcquisitionStack()
+	{
+		return acquisitionStack == null ? null : (StackTraceElement[]) acquisitionStack.clone();
+	}
+
+	/**
+	 * @return Stack of the call which opened the session, as string with one frame per line
+	 */
+	public String getAcquisitionStackAsString()
+	{
+		if( acquisitionStack == null )
+		{
+			return "stack not captured";
+		}
+		StringBuilder stack = new StringBuilder();
+		for( int i = 0; i < acquisitionStack.length; i++ )
+		{
+			stack.append( "\tat " ).append( acquisitionStack[i] ).append( '\n' );
+		}
+		return stack.toString();
+	}
+
+	public String toString()
+	{
+		return "OpenSessionInfo: sessionId[" + sessionId + "] replica[" + replica + "] age[" + age + "] thread["
+				+ threadName + "] threadAlive[" + threadAlive + "] entityCount[" + entityCount + "] collectionCount["
+				+ collectionCount + "] leaked[" + leaked + "]";
+	}
+
+}
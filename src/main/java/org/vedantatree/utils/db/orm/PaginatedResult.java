@@ -0,0 +1,95 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.util.List;
+
+
+/**
+ * One page of data along with total number of records, as returned by HibernateUtil.getPaginatedResult.
+ * 
+ * Objects of page are detached from session. Page may have been prefetched in background while user was viewing the
+ * previous page, in which case total number of records is as counted at the time of prefetch.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class PaginatedResult implements Serializable
+{
+
+	private static final long	serialVersionUID	= 2014102001L;
+
+	/**
+	 * Records of this page
+	 */
+	private List				data;
+
+	/**
+	 * Total number of records of query, as counted by HibernateUtil.getTotalNumberOfRecords
+	 */
+	private int					totalRecords;
+
+	/**
+	 * Index of this page, starting from 1
+	 */
+	private int					pageStartIndex;
+
+	private int					pageSize;
+
+	/**
+	 * True if page is served from the pages prefetched in background
+	 */
+	private boolean				prefetched;
+
+	public PaginatedResult( List data, int totalRecords, int pageStartIndex, int pageSize, boolean prefetched )
+	{
+		this.data = data;
+		this.totalRecords = totalRecords;
+		this.pageStartIndex = pageStartIndex;
+		this.pageSize = pageSize;
+		this.prefetched = prefetched;
+	}
+
+	public List getData()
+	{
+		return data;
+	}
+
+	public int getTotalRecords()
+	{
+		return totalRecords;
+	}
+
+	public int getPageStartIndex()
+	{
+		return pageStartIndex;
+	}
+
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	public boolean isPrefetched()
+	{
+		return prefetched;
+	}
+
+	public int getTotalPages()
+	{
+		return pageSize <= 0 ? 0 : ( totalRecords + pageSize - 1 ) / pageSize;
+	}
+
+	/**
+	 * @return true if there are more records after this page
+	 */
+	public boolean isNextPageAvailable()
+	{
+		return (long) pageStartIndex * pageSize < totalRecords;
+	}
+
+	public String toString()
+	{
+		return "PaginatedResult: pageStartIndex[" + pageStartIndex + "] pageSize[" + pageSize + "] totalRecords["
+				+ totalRecords + "] size[" + ( data == null ? 0 : data.size() ) + "] prefetched[" + prefetched + "]";
+	}
+
+}
@@ -0,0 +1,547 @@
+package org.vedantatree.utils.db.orm;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.vedantatree.utils.StringUtils;
+import org.vedantatree.utils.Utilities;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Scans all the objects of an entity in parallel, for full table jobs like exports and reconciliations.
+ * 
+ * Range of partition key is split into partitions, and each partition is scanned by its own thread with its own
+ * BulkSession, i.e. stateless session. Objects are streamed to an IScanHandler as these are read from database cursor,
+ * in ascending order of partition key within each partition. Nothing is kept by sessions, so memory used remains
+ * constant whatever is the size of table. Objects are read by stateless sessions, hence lazy associations can not be
+ * initialized by handler.
+ * 
+ * Partition key is the identifier property by default, and should be numeric, so that range between its minimum and
+ * maximum values can be split in equal parts. Any other indexed property can be used as partition key, and for non
+ * numeric or skewed keys, boundaries of partitions can be specified. First partition has no lower bound and last one
+ * has no upper bound, so rows outside the range read at start are scanned as well. Rows with null partition key are
+ * not scanned.
+ * 
+ * Number of threads is configured using 'hibernate.util.scan.parallelism' property (default 4), or per scan. It should
+ * not be more than size of connection pool, as each thread keeps a connection till its partition is scanned. Number
+ * of partitions is same as parallelism by default, and more partitions can be used to balance uneven ranges. Progress
+ * of scan can be read from another thread while scan is running.
+ * 
+ * <pre>
+ * ParallelScan scan = new ParallelScan( Order.class ).setParallelism( 8 ).setWhereClause(
+ * 		&quot;a.status = :status&quot;, parameters );
+ * long count = scan.execute( handler );
+ * </pre>
+ * 
+ * Scan object is not thread safe and can be executed once only.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class ParallelScan
+{
+
+	private static Log					LOGGER					= LogFactory.getLog( ParallelScan.class );
+
+	private final static String			PARALLELISM_PRP			= "hibernate.util.scan.parallelism";
+
+	private static final AtomicInteger	SCAN_NUMBER				= new AtomicInteger();
+
+	private final Class					clazz;
+
+	private String						partitionKey;
+
+	private Object[]					boundaries;
+
+	private int							parallelism;
+
+	private int							partitionCount;
+
+	private int							fetchSize				= 1000;
+
+	private String						whereClause;
+
+	private Map<Object, Object>			parameters;
+
+	/**
+	 * Progress of scan, number of objects scanned per partition
+	 */
+	private volatile AtomicLongArray	partitionScannedCounts	= new AtomicLongArray( 0 );
+	private final AtomicLong			scannedCount			= new AtomicLong();
+	private final AtomicInteger			completedPartitionCount	= new AtomicInteger();
+	private volatile long				startTime;
+	private volatile long				endTime;
+
+	private final AtomicBoolean			started					= new AtomicBoolean();
+
+	/**
+	 * Set when handler stops the scan, or any partition fails, so that other partitions stop as well
+	 */
+	private final AtomicBoolean			stopped					= new AtomicBoolean();
+
+	public ParallelScan( Class clazz )
+	{
+		Utilities.assertNotNullArgument( clazz );
+		this.clazz = clazz;
+		HibernateUtil.ensurePropertiesLoaded();
+		this.parallelism = HibernateUtil.getIntegerProperty( PARALLELISM_PRP, 4 );
+	}
+
+	/**
+	 * @param partitionKey Property to partition the rows by, should be indexed. Default is identifier property.
+	 */
+	public ParallelScan setPartitionKey( String partitionKey )
+	{
+		StringUtils.assertQualifiedArgument( partitionKey );
+		this.partitionKey = partitionKey.trim();
+		return this;
+	}
+
+	/**
+	 * Sets the boundaries of partitions, instead of splitting the range of partition key in equal parts. Partition i
+	 * scans the rows with key from boundaries[i - 1] (inclusive) to boundaries[i] (exclusive), so there are one more
+	 * partitions than boundaries.
+	 * 
+	 * @param boundaries Values of partition key in ascending order, of same type as partition key
+	 */
+	public ParallelScan setBoundaries( Object[] boundaries )
+	{
+		Utilities.assertNotNullArgument( boundaries );
+		this.boundaries = (Object[]) boundaries.clone();
+		return this;
+	}
+
+	/**
+	 * @param parallelism Number of partitions to scan at the same time
+	 */
+	public ParallelScan setParallelism( int parallelism )
+	{
+		assertPositive( "parallelism", parallelism );
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param partitionCount Number of partitions to split the range in, when boundaries are not specified. Default is
+	 *        same as parallelism.
+	 */
+	public ParallelScan setPartitionCount( int partitionCount )
+	{
+		assertPositive( "partitionCount", partitionCount );
+		this.partitionCount = partitionCount;
+		return this;
+	}
+
+	/**
+	 * @param fetchSize Number of rows JDBC driver should fetch in one round trip (default 1000)
+	 */
+	public ParallelScan setFetchSize( int fetchSize )
+	{
+		assertPositive( "fetchSize", fetchSize );
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Restricts the scan to the objects matching given where clause
+	 * 
+	 * @param whereClause Where clause without 'where', using alias 'a' for class
+	 * @param parameters Named parameters of where clause, can be null
+	 */
+	public ParallelScan setWhereClause( String whereClause, Map<Object, Object> parameters )
+	{
+		this.whereClause = whereClause;
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * Scans the partitions in parallel and passes the objects to handler. It returns once all the partitions have
+	 * been scanned, or scan is stopped by handler.
+	 * 
+	 * @param scanHandler Handler for the objects, called concurrently for different partitions
+	 * @return Number of objects scanned
+	 * @throws DAOException If scan of any partition fails, after stopping the other partitions
+	 */
+	public long execute( IScanHandler scanHandler ) throws DAOException
+	{
+		Utilities.assertNotNullArgument( scanHandler );
+		if( !started.compareAndSet( false, true ) )
+		{
+			IllegalStateException ise = new IllegalStateException( "Scan can be executed once only. " + this );
+			LOGGER.error( ise );
+			throw ise;
+		}
+
+		startTime = System.currentTimeMillis();
+		long queryStartTime = QueryLatencyMonitor.start();
+		try
+		{
+			if( partitionKey == null )
+			{
+				partitionKey = HibernateUtil.getMappedClassMetadata( clazz ).getIdentifierPropertyName();
+			}
+			Object[] partitionBoundaries = boundaries != null ? boundaries : splitRange();
+			if( partitionBoundaries == null )
+			{
+				LOGGER.debug( "no rows to scan. class[" + clazz.getName() + "]" );
+				return 0;
+			}
+
+			int partitions = partitionBoundaries.length + 1;
+			partitionScannedCounts = new AtomicLongArray( partitions );
+			LOGGER.info( "starting parallel scan. " + this );
+			scanPartitions( partitionBoundaries, scanHandler );
+			LOGGER.info( "parallel scan completed. " + this );
+			return scannedCount.get();
+		}
+		finally
+		{
+			endTime = System.currentTimeMillis();
+			QueryLatencyMonitor.end( "parallelScan", clazz.getName(), parameters, (int) Math.min( Integer.MAX_VALUE,
+					scannedCount.get() ), queryStartTime );
+		}
+	}
+
+	private void scanPartitions( final Object[] partitionBoundaries, final IScanHandler scanHandler )
+			throws DAOException
+	{
+		final int scanNumber = SCAN_NUMBER.incrementAndGet();
+		ExecutorService executor = Executors.newFixedThreadPool( Math.min( parallelism,
+				partitionBoundaries.length + 1 ), new ThreadFactory()
+		{
+
+			private final AtomicInteger	threadNumber	= new AtomicInteger();
+
+			public Thread newThread( Runnable runnable )
+			{
+				Thread thread = new Thread( runnable, "hibernate-parallel-scan-" + scanNumber + "-"
+						+ threadNumber.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+
+		List futures = new ArrayList();
+		try
+		{
+			for( int i = 0; i <= partitionBoundaries.length; i++ )
+			{
+				final int partitionIndex = i;
+				futures.add( executor.submit( new Callable()
+				{
+
+					public Object call() throws Exception
+					{
+						try
+						{
+							scanPartition( partitionIndex, getBoundary( partitionBoundaries, partitionIndex - 1 ),
+									getBoundary( partitionBoundaries, partitionIndex ), scanHandler );
+							return null;
+						}
+						catch( Exception e )
+						{
+							// other partitions are stopped, as scan is failed anyway
+							stopped.set( true );
+							throw e;
+						}
+					}
+				} ) );
+			}
+
+			DAOException failure = null;
+			for( int i = 0; i < futures.size(); i++ )
+			{
+				try
+				{
+					( (Future) futures.get( i ) ).get();
+				}
+				catch( InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					stopped.set( true );
+					failure = new DAOException( IErrorCodes.DAO_ERROR, "Interrupted while waiting for parallel scan. "
+							+ this, e );
+					LOGGER.error( failure );
+					break;
+				}
+				catch( ExecutionException e )
+				{
+					// first failure is reported, others are mostly caused by stopping the scan
+					if( failure == null && e.getCause() instanceof DAOException )
+					{
+						failure = (DAOException) e.getCause();
+					}
+					else if( failure == null )
+					{
+						failure = new DAOException( IErrorCodes.DAO_ERROR,
+								"Error while scanning the partition. partition[" + i + "] " + this, e.getCause() );
+						LOGGER.error( failure );
+					}
+				}
+			}
+			if( failure != null )
+			{
+				throw failure;
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return Boundary at given index, null if index is out of range
+	 */
+	private static Object getBoundary( Object[] partitionBoundaries, int index )
+	{
+		return index < 0 || index >= partitionBoundaries.length ? null : partitionBoundaries[index];
+	}
+
+	private void scanPartition( int partitionIndex, Object lowerBound, Object upperBound, IScanHandler scanHandler )
+			throws DAOException
+	{
+		if( stopped.get() )
+		{
+			return;
+		}
+
+		Map<Object, Object> partitionParameters = new HashMap<Object, Object>();
+		if( parameters != null )
+		{
+			partitionParameters.putAll( parameters );
+		}
+		StringBuffer queryString = new StringBuffer( "from " ).append( clazz.getName() ).append( " a where a." )
+				.append( partitionKey ).append( " is not null" );
+		if( lowerBound != null )
+		{
+			queryString.append( " and a." ).append( partitionKey ).append( " >= :scanLowerBound" );
+			partitionParameters.put( "scanLowerBound", lowerBound );
+		}
+		if( upperBound != null )
+		{
+			queryString.append( " and a." ).append( partitionKey ).append( " < :scanUpperBound" );
+			partitionParameters.put( "scanUpperBound", upperBound );
+		}
+		if( StringUtils.isQualifiedString( whereClause ) )
+		{
+			queryString.append( " and (" ).append( whereClause ).append( ")" );
+		}
+		queryString.append( " order by a." ).append( partitionKey );
+		LOGGER.debug( "scanning partition. partition[" + partitionIndex + "] lowerBound[" + lowerBound
+				+ "] upperBound[" + upperBound + "]" );
+
+		BulkSession bulkSession = HibernateUtil.openBulkSession();
+		boolean completed = false;
+		try
+		{
+			ScrollableResultIterator iterator = bulkSession.scroll( queryString.toString(), partitionParameters,
+					fetchSize );
+			try
+			{
+				while( iterator.hasNext() )
+				{
+					if( stopped.get() )
+					{
+						return;
+					}
+					Object object = iterator.next();
+					partitionScannedCounts.incrementAndGet( partitionIndex );
+					scannedCount.incrementAndGet();
+					if( !scanHandler.handleObject( partitionIndex, object ) )
+					{
+						LOGGER.info( "parallel scan stopped by handler. partition[" + partitionIndex + "] " + this );
+						stopped.set( true );
+						return;
+					}
+				}
+			}
+			finally
+			{
+				iterator.close();
+			}
+			completed = true;
+		}
+		finally
+		{
+			// nothing is written, so closing rolls back the read only transaction
+			bulkSession.close();
+		}
+
+		if( completed )
+		{
+			completedPartitionCount.incrementAndGet();
+			scanHandler.partitionCompleted( partitionIndex, partitionScannedCounts.get( partitionIndex ) );
+		}
+	}
+
+	/**
+	 * Splits the range of partition key between its minimum and maximum values in equal parts
+	 * 
+	 * @return Boundaries of partitions, or null if there are no rows
+	 */
+	private Object[] splitRange() throws DAOException
+	{
+		String queryString = "select min(a." + partitionKey + "), max(a." + partitionKey + ") from " + clazz.getName()
+				+ " a" + ( StringUtils.isQualifiedString( whereClause ) ? " where " + whereClause : "" );
+		Object[] range = (Object[]) HibernateUtil.getObjectsByQuery( queryString, parameters ).get( 0 );
+		if( range[0] == null )
+		{
+			return null;
+		}
+		if( !( range[0] instanceof Number ) )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Partition key is not numeric, boundaries of partitions should be specified. partitionKey["
+							+ partitionKey + "] type[" + range[0].getClass().getName() + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		// computed with BigInteger, as width of range and next boundary can overflow long near its limits
+		BigInteger minimum = toBigInteger( (Number) range[0] );
+		BigInteger maximum = toBigInteger( (Number) range[1] );
+		int partitions = partitionCount > 0 ? partitionCount : parallelism;
+		BigInteger step = maximum.subtract( minimum ).divide( BigInteger.valueOf( partitions ) ).add( BigInteger.ONE );
+		List partitionBoundaries = new ArrayList();
+		for( BigInteger boundary = minimum.add( step ); boundary.compareTo( maximum ) <= 0; boundary = boundary
+				.add( step ) )
+		{
+			partitionBoundaries.add( toKeyType( boundary, (Number) range[0] ) );
+		}
+		LOGGER.debug( "split range of partition key. minimum[" + minimum + "] maximum[" + maximum + "] boundaries["
+				+ partitionBoundaries + "]" );
+		return partitionBoundaries.toArray();
+	}
+
+	/**
+	 * Converts the boundary to type of partition key, so that it is bound with same type as key
+	 */
+	private static Object toKeyType( BigInteger boundary, Number key )
+	{
+		if( key instanceof Integer )
+		{
+			return new Integer( boundary.intValue() );
+		}
+		if( key instanceof Short )
+		{
+			return new Short( boundary.shortValue() );
+		}
+		if( key instanceof BigInteger )
+		{
+			return boundary;
+		}
+		if( key instanceof BigDecimal )
+		{
+			return new BigDecimal( boundary );
+		}
+		return new Long( boundary.longValue() );
+	}
+
+	private static BigInteger toBigInteger( Number key )
+	{
+		if( key instanceof BigInteger )
+		{
+			return (BigInteger) key;
+		}
+		if( key instanceof BigDecimal )
+		{
+			return ( (BigDecimal) key ).toBigInteger();
+		}
+		return BigInteger.valueOf( key.longValue() );
+	}
+
+	private static void assertPositive( String name, int value )
+	{
+		if( value <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( name + " should be more than zero. " + name
+					+ "[" + value + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+	}
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * @return Number of partitions, zero if scan is not started yet
+	 */
+	public int getPartitionCount()
+	{
+		return partitionScannedCounts.length();
+	}
+
+	public int getCompletedPartitionCount()
+	{
+		return completedPartitionCount.get();
+	}
+
+	/**
+	 * @return Number of objects scanned so far
+	 */
+	public long getScannedCount()
+	{
+		return scannedCount.get();
+	}
+
+	/**
+	 * @return Number of objects scanned so far for given partition
+	 */
+	public long getScannedCount( int partitionIndex )
+	{
+		return partitionScannedCounts.get( partitionIndex );
+	}
+
+	/**
+	 * @return Time taken by scan so far, in milliseconds
+	 */
+	public long getElapsedTime()
+	{
+		return startTime == 0 ? 0 : ( endTime == 0 ? System.currentTimeMillis() : endTime ) - startTime;
+	}
+
+	/**
+	 * @return Number of objects scanned per second
+	 */
+	public double getScanRate()
+	{
+		long elapsedTime = getElapsedTime();
+		return elapsedTime == 0 ? 0 : scannedCount.get() * 1000.0 / elapsedTime;
+	}
+
+	public boolean isStopped()
+	{
+		return stopped.get();
+	}
+
+	public String toString()
+	{
+		return "ParallelScan: class[" + clazz.getName() + "] partitionKey[" + partitionKey + "] parallelism["
+				+ parallelism + "] partitions[" + getPartitionCount() + "] completedPartitions["
+				+ getCompletedPartitionCount() + "] scannedCount[" + getScannedCount() + "] elapsedTime["
+				+ getElapsedTime() + "] scanRate[" + getScanRate() + "]";
+	}
+
+}
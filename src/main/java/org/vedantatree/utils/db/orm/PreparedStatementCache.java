@@ -0,0 +1,226 @@
+package org.vedantatree.utils.db.orm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Cache of prepared and callable statements of a connection, kept for current thread.
+ * 
+ * Preparing a statement needs a round trip to database on many drivers, and parsing of SQL on database. So statements
+ * executed repeatedly by HibernateUtil are kept open, and are reused with new parameters as long as thread works in
+ * same transaction of same session. Session may give its connection back to pool when transaction ends, and the
+ * connection given by session is a proxy which is regenerated after that, so statements are cached only for an owner
+ * like the active transaction, and never across owners. Statements are closed when thread is found to be using a
+ * different owner or connection, when least recently used statements exceed the cache size, or when cache is closed
+ * at the end of transaction or session.
+ * 
+ * Statements taken from cache must be given back using release, which keeps the cached statements open and closes
+ * the others. As a statement is reused by next execution of same SQL, result sets of a cached statement should be
+ * consumed before releasing it.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class PreparedStatementCache
+{
+
+	private static Log					LOGGER	= LogFactory.getLog( PreparedStatementCache.class );
+
+	private static final ThreadLocal	CACHE	= new ThreadLocal();
+
+	/**
+	 * Owner of statements, like the transaction these are prepared in
+	 */
+	private final Object				owner;
+
+	private final Connection			connection;
+
+	/**
+	 * SQL to statement, in least recently used first order. Callable statements are keyed with a prefix, so that these
+	 * do not collide with prepared statements of same SQL.
+	 */
+	private final LinkedHashMap			statements;
+
+	private PreparedStatementCache( Object owner, Connection connection, final int maxSize )
+	{
+		this.owner = owner;
+		this.connection = connection;
+		this.statements = new LinkedHashMap( 16, 0.75f, true )
+		{
+
+			private static final long	serialVersionUID	= 2014070101L;
+
+			protected boolean removeEldestEntry( Map.Entry eldest )
+			{
+				if( size() > maxSize )
+				{
+					closeStatement( (PreparedStatement) eldest.getValue() );
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a prepared or callable statement for given SQL, from cache of current thread if available. Statement
+	 * should be given back using release.
+	 * 
+	 * @param owner Owner the statement can be cached for, like the active transaction. Null if statement should not be
+	 *        cached.
+	 * @param connection Connection to prepare the statement with
+	 * @param sql SQL of statement
+	 * @param callable true if a callable statement is required
+	 * @param maxSize Maximum number of statements to cache, zero or less to disable caching
+	 */
+	static PreparedStatement getStatement( Object owner, Connection connection, String sql, boolean callable,
+			int maxSize ) throws SQLException
+	{
+		if( maxSize <= 0 || owner == null )
+		{
+			return prepare( connection, sql, callable );
+		}
+		PreparedStatementCache cache = (PreparedStatementCache) CACHE.get();
+		if( cache != null && ( cache.owner != owner || cache.connection != connection ) )
+		{
+			// cache was not closed when its transaction ended
+			LOGGER.debug( "owner or connection changed, closing the cached statements." );
+			cache.closeAll();
+			cache = null;
+		}
+		if( cache == null )
+		{
+			cache = new PreparedStatementCache( owner, connection, maxSize );
+			CACHE.set( cache );
+		}
+
+		String key = callable ? "{call}" + sql : sql;
+		PreparedStatement statement = (PreparedStatement) cache.statements.remove( key );
+		if( statement == null )
+		{
+			statement = prepare( connection, sql, callable );
+		}
+		// kept out of cache while in use, so that a nested execution of same SQL prepares its own statement
+		return statement;
+	}
+
+	/**
+	 * Gives back the statement taken by getStatement. Statement is cached for reuse, or is closed if caching is
+	 * disabled, it has failed or the owner or connection of thread has changed.
+	 * 
+	 * @param owner Owner given to getStatement
+	 * @param connection Connection given to getStatement
+	 * @param statement Statement to give back, can be null
+	 * @param sql SQL of statement
+	 * @param callable true if it is a callable statement
+	 * @param failed true if execution of statement has failed, then it is not reused
+	 */
+	static void release( Object owner, Connection connection, PreparedStatement statement, String sql,
+			boolean callable, boolean failed )
+	{
+		if( statement == null )
+		{
+			return;
+		}
+		PreparedStatementCache cache = (PreparedStatementCache) CACHE.get();
+		if( failed || owner == null || cache == null || cache.owner != owner || cache.connection != connection )
+		{
+			closeStatement( statement );
+			return;
+		}
+		try
+		{
+			statement.clearParameters();
+			if( statement.getMaxRows() != 0 )
+			{
+				statement.setMaxRows( 0 );
+			}
+		}
+		catch( SQLException e )
+		{
+			LOGGER.debug( "statement can not be reused, closing it.", e );
+			closeStatement( statement );
+			return;
+		}
+		PreparedStatement previous = (PreparedStatement) cache.statements.put( callable ? "{call}" + sql : sql,
+				statement );
+		if( previous != null && previous != statement )
+		{
+			closeStatement( previous );
+		}
+	}
+
+	/**
+	 * Closes all the cached statements of current thread. It should be called before the transaction, which statements
+	 * are cached for, ends.
+	 */
+	static void close()
+	{
+		PreparedStatementCache cache = (PreparedStatementCache) CACHE.get();
+		CACHE.set( null );
+		if( cache != null )
+		{
+			cache.closeAll();
+		}
+	}
+
+	/**
+	 * Detaches the statement cache of current thread, so that thread can work with other connection for a while
+	 * without closing its cached statements
+	 * 
+	 * @return Detached cache, to be given back to resume. Null if thread has no cache.
+	 */
+	static Object suspend()
+	{
+		Object cache = CACHE.get();
+		CACHE.set( null );
+		return cache;
+	}
+
+	/**
+	 * Closes the statements cached by current thread after suspend, and attaches the detached cache again
+	 * 
+	 * @param suspendedCache Cache returned by suspend, can be null
+	 */
+	static void resume( Object suspendedCache )
+	{
+		close();
+		CACHE.set( suspendedCache );
+	}
+
+	private static PreparedStatement prepare( Connection connection, String sql, boolean callable )
+			throws SQLException
+	{
+		return callable ? connection.prepareCall( sql ) : connection.prepareStatement( sql );
+	}
+
+	private void closeAll()
+	{
+		for( Iterator iterator = statements.values().iterator(); iterator.hasNext(); )
+		{
+			closeStatement( (PreparedStatement) iterator.next() );
+		}
+		statements.clear();
+	}
+
+	private static void closeStatement( PreparedStatement statement )
+	{
+		try
+		{
+			statement.close();
+		}
+		catch( SQLException e )
+		{
+			// statement may be closed already with its connection
+			LOGGER.debug( "Error while closing the statement.", e );
+		}
+	}
+
+}
@@ -0,0 +1,451 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Builds an HQL query with bound parameters, as alternative to concatenating the where clauses and values in query
+ * string.
+ * 
+ * Values are never written in query string, these are bound as named parameters. Rendered query is canonical, i.e.
+ * predicates are rendered in order of property and operator, and parameters are named as per their position. So all
+ * the queries of same shape render to same string, whatever the values or order of calls are, and hit the query plan
+ * cache of Hibernate and statement cache of database. Values of 'in' predicates are padded to the next power of two
+ * by repeating the last value, so that lists of different sizes share a few plans only. Padded size is capped at the
+ * 'in' clause chunk size of HibernateUtil ('hibernate.util.inclause.chunksize', default 500), which should be within
+ * the limit of database, like 1000 items of Oracle. Larger lists are split into chunks of that size, rendered as
+ * 'in' predicates combined with 'or', or as 'not in' predicates combined with 'and'.
+ * 
+ * Property and class names are validated as identifiers, so that these can not carry HQL. Predicates are combined
+ * with 'and'. Alias of class is 'a', same as other query methods of HibernateUtil.
+ * 
+ * <pre>
+ * QueryBuilder query = new QueryBuilder( &quot;Order&quot; ).where( &quot;status&quot;, QueryBuilder.EQUAL, status ).whereIn(
+ * 		&quot;customer.id&quot;, customerIds ).orderBy( &quot;createdOn&quot;, true ).page( 2, 50 );
+ * List orders = HibernateUtil.getObjectsByQuery( query );
+ * int total = HibernateUtil.getTotalNumberOfRecords( query );
+ * </pre>
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class QueryBuilder
+{
+
+	private static Log				LOGGER				= LogFactory.getLog( QueryBuilder.class );
+
+	public static final int			EQUAL				= 0;
+	public static final int			NOT_EQUAL			= 1;
+	public static final int			LESS_THAN			= 2;
+	public static final int			LESS_OR_EQUAL		= 3;
+	public static final int			GREATER_THAN		= 4;
+	public static final int			GREATER_OR_EQUAL	= 5;
+	public static final int			LIKE				= 6;
+	public static final int			IN					= 7;
+	public static final int			NOT_IN				= 8;
+	public static final int			IS_NULL				= 9;
+	public static final int			IS_NOT_NULL			= 10;
+
+	private static final String[]	OPERATORS			= { " = ", " <> ", " < ", " <= ", " > ", " >= ", " like ",
+			" in ", " not in ", " is null", " is not null" };
+
+	private static final String		ALIAS				= "a";
+
+	/**
+	 * Dot separated identifiers, like 'status', 'customer.id' or 'org.example.Order'
+	 */
+	private static final Pattern	IDENTIFIER_PATH		= Pattern.compile( "[\\w$]+(\\.[\\w$]+)*" );
+
+	private final String			className;
+
+	private final List				selectProperties	= new ArrayList();
+
+	private final List				predicates			= new ArrayList();
+
+	/**
+	 * Order by properties, each prefixed with alias and followed by ' desc' if descending
+	 */
+	private final List				orderBy				= new ArrayList();
+
+	private int						firstResult;
+
+	private int						maxResults;
+
+	/**
+	 * Rendered queries and parameters, reset whenever query is changed
+	 */
+	private String					queryString;
+	private String					countQueryString;
+	private Map						parameters;
+
+	/**
+	 * @param className Name of class to query, simple or qualified
+	 */
+	public QueryBuilder( String className )
+	{
+		this.className = assertIdentifierPath( className ).trim();
+	}
+
+	/**
+	 * Adds a property to select. If no property is selected, objects of class are returned.
+	 */
+	public QueryBuilder select( String property )
+	{
+		selectProperties.add( ALIAS + "." + assertIdentifierPath( property ).trim() );
+		return changed();
+	}
+
+	/**
+	 * Adds a predicate on a property. Null value for EQUAL and NOT_EQUAL is rendered as 'is null' and 'is not null'.
+	 * 
+	 * @param property Property name, can be a path like 'customer.id'
+	 * @param operator One of the operator constants of this class
+	 * @param value Value to compare with. For IN and NOT_IN, a Collection or array of values. Ignored for IS_NULL and
+	 *        IS_NOT_NULL.
+	 * @return This builder, so that more clauses can be added
+	 */
+	public QueryBuilder where( String property, int operator, Object value )
+	{
+		assertIdentifierPath( property );
+		if( operator < EQUAL || operator > IS_NOT_NULL )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Invalid operator. property[" + property
+					+ "] operator[" + operator + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		if( value == null && ( operator == EQUAL || operator == NOT_EQUAL ) )
+		{
+			operator = operator == EQUAL ? IS_NULL : IS_NOT_NULL;
+		}
+
+		if( operator == IS_NULL || operator == IS_NOT_NULL )
+		{
+			value = null;
+		}
+		else if( operator == IN || operator == NOT_IN )
+		{
+			value = chunkValues( property, value );
+		}
+		else if( value == null )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Value can not be null for comparison. property[" + property + "] operator[" + operator + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		predicates.add( new Predicate( ALIAS + "." + property.trim(), operator, value ) );
+		return changed();
+	}
+
+	public QueryBuilder whereIn( String property, Collection values )
+	{
+		return where( property, IN, values );
+	}
+
+	public QueryBuilder whereNull( String property )
+	{
+		return where( property, IS_NULL, null );
+	}
+
+	public QueryBuilder whereNotNull( String property )
+	{
+		return where( property, IS_NOT_NULL, null );
+	}
+
+	/**
+	 * Adds a property to order the results by. Properties are ordered in the sequence they are added.
+	 */
+	public QueryBuilder orderBy( String property, boolean descending )
+	{
+		orderBy.add( ALIAS + "." + assertIdentifierPath( property ).trim() + ( descending ? " desc" : "" ) );
+		return changed();
+	}
+
+	/**
+	 * Restricts the results to given page. Paging is applied on query object, not in query string, so pages share the
+	 * same query.
+	 * 
+	 * @param pageStartIndex Index of page, starting from 1
+	 * @param pageSize Number of records on page
+	 */
+	public QueryBuilder page( int pageStartIndex, int pageSize )
+	{
+		if( pageStartIndex < 1 || pageSize < 1 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Page index and page size should be at least 1. pageStartIndex[" + pageStartIndex + "] pageSize["
+							+ pageSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		firstResult = ( pageStartIndex - 1 ) * pageSize;
+		maxResults = pageSize;
+		return this;
+	}
+
+	public String getClassName()
+	{
+		return className;
+	}
+
+	/**
+	 * @return true if there is any predicate, i.e. query does not return all the records of class
+	 */
+	public boolean hasPredicates()
+	{
+		return !predicates.isEmpty();
+	}
+
+	/**
+	 * @return Index of first record of page, zero if page is not specified
+	 */
+	public int getFirstResult()
+	{
+		return firstResult;
+	}
+
+	/**
+	 * @return Size of page, zero if page is not specified
+	 */
+	public int getMaxResults()
+	{
+		return maxResults;
+	}
+
+	/**
+	 * @return Canonical HQL query with named parameters
+	 */
+	public String toHQL()
+	{
+		render();
+		return queryString;
+	}
+
+	/**
+	 * @return Canonical HQL query to count the records, without selected properties and order
+	 */
+	public String toCountHQL()
+	{
+		render();
+		return countQueryString;
+	}
+
+	/**
+	 * @return Parameter name to value, for the queries returned by toHQL and toCountHQL
+	 */
+	public Map<Object, Object> getParameters()
+	{
+		render();
+		return parameters;
+	}
+
+	public String toString()
+	{
+		return "QueryBuilder: hql[" + toHQL() + "] parameters[" + getParameters() + "] firstResult[" + firstResult
+				+ "] maxResults[" + maxResults + "]";
+	}
+
+	private QueryBuilder changed()
+	{
+		queryString = null;
+		return this;
+	}
+
+	private void render()
+	{
+		if( queryString != null )
+		{
+			return;
+		}
+
+		Map renderedParameters = new LinkedHashMap();
+		StringBuilder fromClause = new StringBuilder( "from " ).append( className ).append( " " ).append( ALIAS );
+		if( !predicates.isEmpty() )
+		{
+			List sortedPredicates = new ArrayList( predicates );
+			Collections.sort( sortedPredicates, new PredicateComparator() );
+			for( int i = 0; i < sortedPredicates.size(); i++ )
+			{
+				Predicate predicate = (Predicate) sortedPredicates.get( i );
+				fromClause.append( i == 0 ? " where " : " and " );
+				if( predicate.operator == IN || predicate.operator == NOT_IN )
+				{
+					renderChunks( fromClause, predicate, renderedParameters );
+					continue;
+				}
+				fromClause.append( predicate.property ).append( OPERATORS[predicate.operator] );
+				if( predicate.operator == IS_NULL || predicate.operator == IS_NOT_NULL )
+				{
+					continue;
+				}
+				String parameterName = "p" + renderedParameters.size();
+				renderedParameters.put( parameterName, predicate.value );
+				fromClause.append( ":" ).append( parameterName );
+			}
+		}
+
+		StringBuilder query = new StringBuilder();
+		if( !selectProperties.isEmpty() )
+		{
+			query.append( "select " ).append( join( selectProperties ) ).append( " " );
+		}
+		query.append( fromClause );
+		if( !orderBy.isEmpty() )
+		{
+			query.append( " order by " ).append( join( orderBy ) );
+		}
+
+		countQueryString = "select count(*) " + fromClause;
+		parameters = Collections.unmodifiableMap( renderedParameters );
+		queryString = query.toString();
+	}
+
+	/**
+	 * Renders the 'in' or 'not in' predicate, with a parameter per chunk of values. Chunks are combined with 'or' for
+	 * 'in' and with 'and' for 'not in', within parentheses if there are more than one.
+	 */
+	private static void renderChunks( StringBuilder clause, Predicate predicate, Map renderedParameters )
+	{
+		List chunks = (List) predicate.value;
+		String combiner = predicate.operator == IN ? " or " : " and ";
+		if( chunks.size() > 1 )
+		{
+			clause.append( "(" );
+		}
+		for( int i = 0; i < chunks.size(); i++ )
+		{
+			String parameterName = "p" + renderedParameters.size();
+			renderedParameters.put( parameterName, chunks.get( i ) );
+			clause.append( i == 0 ? "" : combiner ).append( predicate.property ).append(
+					OPERATORS[predicate.operator] ).append( "(:" ).append( parameterName ).append( ")" );
+		}
+		if( chunks.size() > 1 )
+		{
+			clause.append( ")" );
+		}
+	}
+
+	private static String join( List values )
+	{
+		StringBuilder joined = new StringBuilder();
+		for( int i = 0; i < values.size(); i++ )
+		{
+			joined.append( i == 0 ? "" : ", " ).append( values.get( i ) );
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Splits the values in chunks of 'in' clause chunk size, and pads the last chunk to next power of two, but not
+	 * beyond chunk size, by repeating the last value
+	 * 
+	 * @return List of chunks, each a List of values
+	 */
+	private static List chunkValues( String property, Object value )
+	{
+		List values;
+		if( value instanceof Collection )
+		{
+			values = new ArrayList( (Collection) value );
+		}
+		else if( value instanceof Object[] )
+		{
+			values = new ArrayList( Arrays.asList( (Object[]) value ) );
+		}
+		else
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Values of 'in' predicate should be a collection or array. property[" + property + "] value["
+							+ value + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		if( values.isEmpty() )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Values of 'in' predicate can not be empty. property[" + property + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		int chunkSize = HibernateUtil.getInClauseChunkSize();
+		if( chunkSize <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Chunk size must be greater than zero. chunkSize[" + chunkSize + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+
+		List chunks = new ArrayList( ( values.size() + chunkSize - 1 ) / chunkSize );
+		for( int start = 0; start < values.size(); start += chunkSize )
+		{
+			List chunk = new ArrayList( values.subList( start, Math.min( start + chunkSize, values.size() ) ) );
+			int paddedSize = Integer.highestOneBit( chunk.size() );
+			if( paddedSize < chunk.size() )
+			{
+				paddedSize = Math.min( paddedSize << 1, chunkSize );
+			}
+			Object lastValue = chunk.get( chunk.size() - 1 );
+			while( chunk.size() < paddedSize )
+			{
+				chunk.add( lastValue );
+			}
+			chunks.add( chunk );
+		}
+		return chunks;
+	}
+
+	private static String assertIdentifierPath( String name )
+	{
+		if( name == null || !IDENTIFIER_PATH.matcher( name.trim() ).matches() )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Name should be a dot separated path of identifiers. name[" + name + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		return name;
+	}
+
+	/**
+	 * Orders the predicates by property and then by operator
+	 */
+	private static final class PredicateComparator implements Comparator
+	{
+
+		public int compare( Object object1, Object object2 )
+		{
+			Predicate predicate1 = (Predicate) object1;
+			Predicate predicate2 = (Predicate) object2;
+			int result = predicate1.property.compareTo( predicate2.property );
+			return result != 0 ? result : predicate1.operator - predicate2.operator;
+		}
+	}
+
+	private static final class Predicate
+	{
+
+		private final String	property;
+		private final int		operator;
+		private final Object	value;
+
+		Predicate( String property, int operator, Object value )
+		{
+			this.property = property;
+			this.operator = operator;
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Records the latency of HibernateUtil operations, and logs the slow queries.
+ * 
+ * Latency is recorded in a LatencyHistogram for each operation (method) and for each normalized query. Whenever an
+ * operation takes more time than slow query threshold, a slow query line is logged with operation, time, row count,
+ * query and parameters, using logger 'org.vedantatree.utils.db.orm.SlowQueryLog'. So it can be routed to a separate
+ * log file by log4j configuration.
+ * 
+ * Monitoring is disabled by default. When disabled, start returns zero without reading the clock and end returns
+ * immediately, so instrumentation costs only a volatile read per operation.
+ * 
+ * Operations are instrumented as
+ * 
+ * <pre>
+ * long startTime = QueryLatencyMonitor.start();
+ * try { ... }
+ * finally { QueryLatencyMonitor.end( &quot;operation&quot;, query, parameters, rowCount, startTime ); }
+ * </pre>
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public final class QueryLatencyMonitor
+{
+
+	private static Log					LOGGER					= LogFactory.getLog( QueryLatencyMonitor.class );
+
+	private static Log					SLOW_QUERY_LOGGER		= LogFactory
+																		.getLog( "org.vedantatree.utils.db.orm.SlowQueryLog" );
+
+	/**
+	 * Name of histogram used for all the queries once number of distinct queries reaches the limit
+	 */
+	public static final String			OTHER_QUERIES			= "[other-queries]";
+
+	private static volatile boolean		enabled;
+
+	private static volatile long		slowQueryThresholdMicros	= 1000 * 1000;
+
+	/**
+	 * Maximum number of distinct queries to keep histogram for. Queries built by concatenating the values may produce
+	 * unlimited distinct strings, so these are counted together after this limit.
+	 */
+	private static volatile int			maxQueryHistograms		= 500;
+
+	private static final ConcurrentHashMap	OPERATION_HISTOGRAMS	= new ConcurrentHashMap();
+
+	private static final ConcurrentHashMap	QUERY_HISTOGRAMS		= new ConcurrentHashMap();
+
+	private QueryLatencyMonitor()
+	{
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public static void setEnabled( boolean enabled )
+	{
+		QueryLatencyMonitor.enabled = enabled;
+		LOGGER.info( "query latency monitoring enabled[" + enabled + "]" );
+	}
+
+	public static long getSlowQueryThresholdMillis()
+	{
+		return slowQueryThresholdMicros / 1000;
+	}
+
+	/**
+	 * @param slowQueryThresholdMillis Time after which an operation is logged as slow query, zero or less to log none
+	 */
+	public static void setSlowQueryThresholdMillis( long slowQueryThresholdMillis )
+	{
+		slowQueryThresholdMicros = slowQueryThresholdMillis <= 0 ? Long.MAX_VALUE : slowQueryThresholdMillis * 1000;
+	}
+
+	public static void setMaxQueryHistograms( int maxQueryHistograms )
+	{
+		QueryLatencyMonitor.maxQueryHistograms = maxQueryHistograms;
+	}
+
+	/**
+	 * @return Start time to be passed to end method, zero if monitoring is disabled
+	 */
+	public static long start()
+	{
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the latency of an operation which was started at given time
+	 * 
+	 * @param operation Name of operation, like name of HibernateUtil method
+	 * @param query Query executed by operation, can be null
+	 * @param parameters Parameters of query, can be null
+	 * @param rowCount Number of rows returned or affected, negative if not known
+	 * @param startTime Time returned by start method
+	 */
+	public static void end( String operation, String query, Object parameters, int rowCount, long startTime )
+	{
+		if( startTime == 0 )
+		{
+			return;
+		}
+		long micros = ( System.nanoTime() - startTime ) / 1000;
+
+		getHistogram( OPERATION_HISTOGRAMS, operation ).record( micros );
+
+		String normalizedQuery = null;
+		if( query != null )
+		{
+			normalizedQuery = QueryResultCache.normalizeQuery( query );
+			String histogramName = QUERY_HISTOGRAMS.size() < maxQueryHistograms
+					|| QUERY_HISTOGRAMS.containsKey( normalizedQuery ) ? normalizedQuery : OTHER_QUERIES;
+			getHistogram( QUERY_HISTOGRAMS, histogramName ).record( micros );
+		}
+
+		if( micros >= slowQueryThresholdMicros && SLOW_QUERY_LOGGER.isWarnEnabled() )
+		{
+			SLOW_QUERY_LOGGER.warn( "slow-query operation[" + operation + "] timeMillis[" + ( micros / 1000 )
+					+ "] rowCount[" + rowCount + "] thread[" + Thread.currentThread().getName() + "] query["
+					+ normalizedQuery + "] parameters[" + parameters + "]" );
+		}
+	}
+
+	private static LatencyHistogram getHistogram( ConcurrentHashMap histograms, String name )
+	{
+		LatencyHistogram histogram = (LatencyHistogram) histograms.get( name );
+		if( histogram == null )
+		{
+			LatencyHistogram newHistogram = new LatencyHistogram( name );
+			histogram = (LatencyHistogram) histograms.putIfAbsent( name, newHistogram );
+			if( histogram == null )
+			{
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return Histogram of given operation, null if operation has not been recorded yet
+	 */
+	public static LatencyHistogram getOperationHistogram( String operation )
+	{
+		return (LatencyHistogram) OPERATION_HISTOGRAMS.get( operation );
+	}
+
+	/**
+	 * @return Histogram of given query, null if query has not been recorded yet
+	 */
+	public static LatencyHistogram getQueryHistogram( String query )
+	{
+		return (LatencyHistogram) QUERY_HISTOGRAMS.get( QueryResultCache.normalizeQuery( query ) );
+	}
+
+	/**
+	 * @return Histograms of all the operations
+	 */
+	public static Collection getOperationHistograms()
+	{
+		return new ArrayList( OPERATION_HISTOGRAMS.values() );
+	}
+
+	/**
+	 * @return Histograms of all the queries
+	 */
+	public static Collection getQueryHistograms()
+	{
+		return new ArrayList( QUERY_HISTOGRAMS.values() );
+	}
+
+	/**
+	 * Logs all the histograms at info level
+	 */
+	public static void logSummary()
+	{
+		for( Iterator iterator = OPERATION_HISTOGRAMS.values().iterator(); iterator.hasNext(); )
+		{
+			LOGGER.info( "operation-latency " + iterator.next() );
+		}
+		for( Iterator iterator = QUERY_HISTOGRAMS.values().iterator(); iterator.hasNext(); )
+		{
+			LOGGER.info( "query-latency " + iterator.next() );
+		}
+	}
+
+	/**
+	 * Removes all the recorded histograms
+	 */
+	public static void reset()
+	{
+		OPERATION_HISTOGRAMS.clear();
+		QUERY_HISTOGRAMS.clear();
+	}
+
+}
@@ -0,0 +1,316 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Size bounded cache for results of HQL queries, used by HibernateUtil for the queries which are opted for caching.
+ * 
+ * Results are cached against the normalized query string and its parameters. Every entry expires after configured
+ * time to live, and least recently used entry is evicted once cache is full.
+ * 
+ * Every entry remembers the query spaces (tables) used by its query. Whenever an entity is written using
+ * HibernateUtil, all entries using the query spaces of that entity are invalidated. Writes done outside HibernateUtil
+ * are not tracked, so entries affected by such writes remain stale till their time to live.
+ * 
+ * Cached results are shared across sessions. So it should be used for lookup kind of queries, which return scalar
+ * values or objects which are used as read only. Entities returned from cache are not associated with the session of
+ * caller, hence lazy associations of these should be initialized before caching.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class QueryResultCache
+{
+
+	private static Log				LOGGER	= LogFactory.getLog( QueryResultCache.class );
+
+	private final int				maxEntries;
+
+	private final long				timeToLiveMillis;
+
+	/**
+	 * Entries in access order, so that eldest entry is the least recently used one
+	 */
+	private final LinkedHashMap		entries;
+
+	/**
+	 * Incremented on every invalidation. Result of a query is cached only if no invalidation has happened while it was
+	 * executing, otherwise a result read before a write may get cached after the write has invalidated the entries.
+	 */
+	private long					generation;
+
+	private long					hitCount;
+	private long					missCount;
+	private long					evictionCount;
+	private long					expiryCount;
+	private long					invalidationCount;
+
+	public QueryResultCache( int maxEntries, long timeToLiveMillis )
+	{
+		if( maxEntries <= 0 || timeToLiveMillis <= 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Max entries and time to live should be greater than zero. maxEntries[" + maxEntries
+							+ "] timeToLiveMillis[" + timeToLiveMillis + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		this.maxEntries = maxEntries;
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.entries = new LinkedHashMap( 16, 0.75f, true )
+		{
+
+			private static final long	serialVersionUID	= 2014061101L;
+
+			protected boolean removeEldestEntry( Map.Entry eldest )
+			{
+				if( size() > QueryResultCache.this.maxEntries )
+				{
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Normalizes the query string by collapsing the white spaces, so that same query written differently maps to same
+	 * entry. Quoted literals, in single or double quotes, are copied as is, as white spaces in these are part of value.
+	 */
+	public static String normalizeQuery( String queryString )
+	{
+		StringBuffer normalized = new StringBuffer( queryString.length() );
+		boolean whitespace = false;
+		char quote = 0;
+		for( int i = 0; i < queryString.length(); i++ )
+		{
+			char ch = queryString.charAt( i );
+			if( quote != 0 )
+			{
+				// escaped quote, like 'it''s', is read as closing and opening quote
+				normalized.append( ch );
+				if( ch == quote )
+				{
+					quote = 0;
+				}
+			}
+			else if( Character.isWhitespace( ch ) )
+			{
+				whitespace = normalized.length() > 0;
+			}
+			else
+			{
+				if( whitespace )
+				{
+					normalized.append( ' ' );
+					whitespace = false;
+				}
+				if( ch == '\'' || ch == '"' )
+				{
+					quote = ch;
+				}
+				normalized.append( ch );
+			}
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * @return copy of cached result, null if result is not cached or has expired
+	 */
+	public synchronized List get( String normalizedQuery, Map parameters )
+	{
+		QueryKey key = new QueryKey( normalizedQuery, parameters );
+		CacheEntry entry = (CacheEntry) entries.get( key );
+		if( entry != null && entry.expiryTime < System.currentTimeMillis() )
+		{
+			entries.remove( key );
+			expiryCount++;
+			entry = null;
+		}
+		if( entry == null )
+		{
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return new ArrayList( entry.result );
+	}
+
+	/**
+	 * @return current generation of cache, to be passed to put method
+	 */
+	public synchronized long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Caches the result of query, if no invalidation has happened since the specified generation
+	 * 
+	 * @param generation Generation of cache taken before executing the query
+	 * @param querySpaces Query spaces (table names) used by query
+	 */
+	public synchronized void put( String normalizedQuery, Map parameters, List result, Set querySpaces,
+			long generation )
+	{
+		if( generation != this.generation )
+		{
+			LOGGER.debug( "skipping to cache the result as cache has been invalidated during query execution. query["
+					+ normalizedQuery + "]" );
+			return;
+		}
+		entries.put( new QueryKey( normalizedQuery, parameters ), new CacheEntry( new ArrayList( result ),
+				querySpaces, System.currentTimeMillis() + timeToLiveMillis ) );
+	}
+
+	/**
+	 * Removes all the entries which are using any of the given query spaces
+	 */
+	public synchronized void invalidate( Serializable[] querySpaces )
+	{
+		generation++;
+		if( querySpaces == null || entries.isEmpty() )
+		{
+			return;
+		}
+		for( Iterator iterator = entries.values().iterator(); iterator.hasNext(); )
+		{
+			CacheEntry entry = (CacheEntry) iterator.next();
+			for( int i = 0; i < querySpaces.length; i++ )
+			{
+				if( entry.querySpaces.contains( querySpaces[i] ) )
+				{
+					iterator.remove();
+					invalidationCount++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the entries. It is used when the tables affected by a write are not known, like for native SQL.
+	 */
+	public synchronized void clear()
+	{
+		generation++;
+		invalidationCount += entries.size();
+		entries.clear();
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public long getTimeToLiveMillis()
+	{
+		return timeToLiveMillis;
+	}
+
+	public synchronized int getSize()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	/**
+	 * @return Number of entries evicted as cache was full
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	/**
+	 * @return Number of entries removed as their time to live was over
+	 */
+	public synchronized long getExpiryCount()
+	{
+		return expiryCount;
+	}
+
+	/**
+	 * @return Number of entries removed because of writes
+	 */
+	public synchronized long getInvalidationCount()
+	{
+		return invalidationCount;
+	}
+
+	public synchronized String toString()
+	{
+		return "QueryResultCache: size[" + entries.size() + "] maxEntries[" + maxEntries + "] timeToLiveMillis["
+				+ timeToLiveMillis + "] hits[" + hitCount + "] misses[" + missCount + "] evictions[" + evictionCount
+				+ "] expiries[" + expiryCount + "] invalidations[" + invalidationCount + "]";
+	}
+
+	private static class QueryKey
+	{
+
+		private final String	query;
+		private final Map		parameters;
+		private final int		hashCode;
+
+		QueryKey( String query, Map parameters )
+		{
+			this.query = query;
+			this.parameters = parameters == null || parameters.isEmpty() ? Collections.EMPTY_MAP : new HashMap(
+					parameters );
+			this.hashCode = query.hashCode() * 31 + this.parameters.hashCode();
+		}
+
+		public boolean equals( Object obj )
+		{
+			if( !( obj instanceof QueryKey ) )
+			{
+				return false;
+			}
+			QueryKey other = (QueryKey) obj;
+			return hashCode == other.hashCode && query.equals( other.query ) && parameters.equals( other.parameters );
+		}
+
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	private static class CacheEntry
+	{
+
+		private final List	result;
+		private final Set	querySpaces;
+		private final long	expiryTime;
+
+		CacheEntry( List result, Set querySpaces, long expiryTime )
+		{
+			this.result = result;
+			this.querySpaces = querySpaces == null ? Collections.EMPTY_SET : querySpaces;
+			this.expiryTime = expiryTime;
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package org.vedantatree.utils.db.orm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+
+/**
+ * Reads the estimated number of rows of the table of an entity, from statistics kept by database for its query planner.
+ * Reading the estimate is a catalog lookup, so it costs the same for any size of table, whereas 'count(*)' scans the
+ * table or an index.
+ * 
+ * Estimate is as fresh as the statistics of table, which are refreshed by database as per its own policy, like by
+ * auto analyze of PostgreSQL. So it should be used where approximate count is acceptable, like total records of a grid.
+ * 
+ * Supported databases are PostgreSQL, MySQL, Oracle and SQL Server, identified by dialect. Estimate is available only
+ * for entities mapped to one table without inheritance, as otherwise rows of table are not rows of entity.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class RowCountEstimator
+{
+
+	private static Log		LOGGER				= LogFactory.getLog( RowCountEstimator.class );
+
+	private static final String	POSTGRESQL_QUERY	= "select c.reltuples from pg_class c join pg_namespace n on n.oid = c.relnamespace where c.relname = ? and n.nspname = coalesce(?, current_schema())";
+
+	private static final String	MYSQL_QUERY			= "select table_rows from information_schema.tables where table_name = ? and table_schema = coalesce(?, database())";
+
+	private static final String	ORACLE_QUERY		= "select num_rows from all_tables where table_name = ? and owner = coalesce(?, sys_context('USERENV', 'CURRENT_SCHEMA'))";
+
+	private static final String	SQLSERVER_QUERY		= "select sum(p.rows) from sys.partitions p where p.object_id = object_id(?) and p.index_id in (0, 1)";
+
+	private RowCountEstimator()
+	{
+	}
+
+	/**
+	 * Reads the estimated number of rows of table of given entity
+	 * 
+	 * @param connection Connection to read the estimate with
+	 * @return Estimated number of rows, or -1 if estimate is not available, like if database is not supported, entity
+	 *         is not mapped to single table, or statistics of table are not collected yet
+	 */
+	static long estimate( SessionFactoryImplementor sessionFactory, Connection connection, String entityName )
+			throws SQLException
+	{
+		String query = getQuery( sessionFactory.getDialect() );
+		String tableName = getTableName( sessionFactory, entityName );
+		if( query == null || tableName == null )
+		{
+			return -1;
+		}
+
+		PreparedStatement statement = connection.prepareStatement( query );
+		try
+		{
+			if( query == SQLSERVER_QUERY )
+			{
+				statement.setString( 1, tableName );
+			}
+			else
+			{
+				String schemaName = null;
+				int dotIndex = tableName.lastIndexOf( '.' );
+				if( dotIndex > 0 )
+				{
+					schemaName = toCatalogName( query, tableName.substring( 0, dotIndex ) );
+					tableName = tableName.substring( dotIndex + 1 );
+				}
+				statement.setString( 1, toCatalogName( query, tableName ) );
+				if( schemaName == null )
+				{
+					statement.setNull( 2, Types.VARCHAR );
+				}
+				else
+				{
+					statement.setString( 2, schemaName );
+				}
+			}
+
+			ResultSet resultSet = statement.executeQuery();
+			try
+			{
+				if( !resultSet.next() )
+				{
+					return -1;
+				}
+				long estimate = resultSet.getLong( 1 );
+				// statistics not collected yet are reported as null, zero or -1 by different databases
+				return resultSet.wasNull() || estimate <= 0 ? -1 : estimate;
+			}
+			finally
+			{
+				resultSet.close();
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+	}
+
+	private static String getQuery( Dialect dialect )
+	{
+		String dialectName = dialect.getClass().getName();
+		if( dialectName.indexOf( "PostgreSQL" ) >= 0 )
+		{
+			return POSTGRESQL_QUERY;
+		}
+		if( dialectName.indexOf( "MySQL" ) >= 0 )
+		{
+			return MYSQL_QUERY;
+		}
+		if( dialectName.indexOf( "Oracle" ) >= 0 )
+		{
+			return ORACLE_QUERY;
+		}
+		if( dialectName.indexOf( "SQLServer" ) >= 0 )
+		{
+			return SQLSERVER_QUERY;
+		}
+		return null;
+	}
+
+	/**
+	 * @return Name of table of entity, or null if entity is not mapped to a single table without inheritance
+	 */
+	private static String getTableName( SessionFactoryImplementor sessionFactory, String entityName )
+	{
+		EntityPersister persister = sessionFactory.getEntityPersister( entityName );
+		if( !( persister instanceof AbstractEntityPersister ) )
+		{
+			return null;
+		}
+		AbstractEntityPersister entityPersister = (AbstractEntityPersister) persister;
+		if( entityPersister.isInherited() || entityPersister.hasSubclasses()
+				|| entityPersister.isMultiTable() )
+		{
+			LOGGER.debug( "entity is not mapped to a single table, estimate is not available. entityName["
+					+ entityName + "]" );
+			return null;
+		}
+		// for a single table without inheritance, table of entity is its root table
+		return entityPersister.getTableName();
+	}
+
+	/**
+	 * Converts the table or schema name of mapping to the case kept in catalog of database, for unquoted names
+	 */
+	private static String toCatalogName( String query, String name )
+	{
+		if( name.length() > 1 && "`\"[".indexOf( name.charAt( 0 ) ) >= 0 )
+		{
+			return name.substring( 1, name.length() - 1 );
+		}
+		if( query == POSTGRESQL_QUERY )
+		{
+			return name.toLowerCase();
+		}
+		if( query == ORACLE_QUERY )
+		{
+			return name.toUpperCase();
+		}
+		return name;
+	}
+
+}
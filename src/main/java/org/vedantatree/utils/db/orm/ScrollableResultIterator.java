@@ -0,0 +1,159 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+
+/**
+ * Iterator over the results of a query, backed by Hibernate ScrollableResults.
+ * 
+ * Records are read from the database cursor one by one as iteration progresses, instead of loading all of these in a
+ * list. Once a record has been consumed, i.e. next record is asked for, entities of previous record are evicted from
+ * session. So memory used by iteration remains constant whatever is the size of result.
+ * 
+ * Each record is returned as single object if query returns single column, or as array of objects otherwise.
+ * 
+ * Iterator keeps the database cursor and connection busy till it is closed. It is closed automatically once all the
+ * records have been iterated, however caller should always close it in finally block to release the cursor in case
+ * iteration is left in between.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class ScrollableResultIterator implements Iterator, Closeable
+{
+
+	private static Log					LOGGER	= LogFactory.getLog( ScrollableResultIterator.class );
+
+	private final ScrollableResults		scrollableResults;
+
+	/**
+	 * Session to evict the consumed entities from. Null if entities need not to be evicted, like for SQL queries or
+	 * stateless sessions.
+	 */
+	private final Session				session;
+
+	/**
+	 * Whether cursor has been moved to next record but record has not been returned yet. Null if cursor has not been
+	 * moved after last returned record.
+	 */
+	private Boolean						nextAvailable;
+
+	/**
+	 * Last record returned to caller, to evict once caller asks for next one
+	 */
+	private Object						lastRecord;
+
+	private int							recordCount;
+
+	private boolean						closed;
+
+	ScrollableResultIterator( ScrollableResults scrollableResults, Session session )
+	{
+		this.scrollableResults = scrollableResults;
+		this.session = session;
+	}
+
+	public boolean hasNext()
+	{
+		if( closed )
+		{
+			return false;
+		}
+		if( nextAvailable == null )
+		{
+			nextAvailable = Boolean.valueOf( scrollableResults.next() );
+			if( !nextAvailable.booleanValue() )
+			{
+				close();
+			}
+		}
+		return nextAvailable.booleanValue();
+	}
+
+	public Object next()
+	{
+		if( !hasNext() )
+		{
+			throw new NoSuchElementException( "No more records available. recordCount[" + recordCount + "]" );
+		}
+		evictLastRecord();
+
+		Object[] record = scrollableResults.get();
+		lastRecord = record.length == 1 ? record[0] : record;
+		nextAvailable = null;
+		recordCount++;
+		return lastRecord;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException( "Records can not be removed using scrollable result iterator." );
+	}
+
+	/**
+	 * @return Number of records returned so far
+	 */
+	public int getRecordCount()
+	{
+		return recordCount;
+	}
+
+	/**
+	 * Closes the underlying cursor and evicts the last consumed record. It is safe to call it more than once.
+	 */
+	public void close()
+	{
+		if( closed )
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			evictLastRecord();
+			scrollableResults.close();
+			LOGGER.debug( "scrollable results closed. recordCount[" + recordCount + "]" );
+		}
+		catch( HibernateException e )
+		{
+			LOGGER.error( "Error while closing the scrollable results. recordCount[" + recordCount + "]", e );
+		}
+	}
+
+	private void evictLastRecord()
+	{
+		if( session == null || lastRecord == null )
+		{
+			return;
+		}
+		if( lastRecord instanceof Object[] )
+		{
+			Object[] record = (Object[]) lastRecord;
+			for( int i = 0; i < record.length; i++ )
+			{
+				evict( record[i] );
+			}
+		}
+		else
+		{
+			evict( lastRecord );
+		}
+		lastRecord = null;
+	}
+
+	private void evict( Object obj )
+	{
+		if( obj != null && session.isOpen() && session.contains( obj ) )
+		{
+			session.evict( obj );
+		}
+	}
+
+}
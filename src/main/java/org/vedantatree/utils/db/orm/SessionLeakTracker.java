@@ -0,0 +1,346 @@
+package org.vedantatree.utils.db.orm;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.hibernate.stat.SessionStatistics;
+
+
+/**
+ * Tracks the sessions opened by HibernateUtil for threads, in non-j2ee environment, till these are closed by
+ * closeCurrentSession.
+ * 
+ * Sessions are kept in thread local cache, and a session is closed only if its thread calls closeCurrentSession. With
+ * pooled threads, a missed close keeps the session, its connection and its first level cache for the life of the
+ * thread. Tracker records open time, thread and acquisition stack of every session, and checks the open sessions at
+ * configured interval using a daemon thread. A session is counted as leaked if it is open for more than maximum age,
+ * or if its thread has ended. Leaked sessions are logged with acquisition stack, and are closed if force close is
+ * enabled. Sessions of ended threads are always closed, as nobody else can close these.
+ * 
+ * Force close closes the session from tracker thread, while its thread may still be using it. It is meant as a last
+ * resort to release the connections, and maximum age should be well above the longest expected unit of work. Thread
+ * gets a new session on its next call after that.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class SessionLeakTracker
+{
+
+	private static Log					LOGGER				= LogFactory.getLog( SessionLeakTracker.class );
+
+	/**
+	 * Session to TrackedSession, for all the open tracked sessions
+	 */
+	private final Map					trackedSessions		= new ConcurrentHashMap();
+
+	private final long					maxAgeMillis;
+
+	private final boolean				forceClose;
+
+	private final boolean				captureStack;
+
+	private final long					checkIntervalMillis;
+
+	private final AtomicLong			sessionSequence		= new AtomicLong();
+
+	private final AtomicLong			leakCount			= new AtomicLong();
+
+	private final AtomicLong			forceClosedCount	= new AtomicLong();
+
+	private ScheduledExecutorService	checker;
+
+	/**
+	 * @param maxAgeMillis Age after which an open session is counted as leaked, zero or less if sessions should be
+	 *        counted as leaked only when their thread ends
+	 * @param forceClose true if leaked sessions should be closed by tracker
+	 * @param captureStack true if stack of the call opening the session should be captured
+	 * @param checkIntervalMillis Interval at which open sessions should be checked, zero or less if these should be
+	 *        checked only on demand
+	 */
+	public SessionLeakTracker( long maxAgeMillis, boolean forceClose, boolean captureStack, long checkIntervalMillis )
+	{
+		this.maxAgeMillis = maxAgeMillis;
+		this.forceClose = forceClose;
+		this.captureStack = captureStack;
+		this.checkIntervalMillis = checkIntervalMillis;
+	}
+
+	/**
+	 * Starts checking the open sessions at configured interval, if interval is more than zero
+	 */
+	public synchronized void start()
+	{
+		if( checker != null || checkIntervalMillis <= 0 )
+		{
+			return;
+		}
+		checker = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+		{
+
+			public Thread newThread( Runnable runnable )
+			{
+				Thread thread = new Thread( runnable, "hibernate-session-leak-tracker" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+		checker.scheduleWithFixedDelay( new Runnable()
+		{
+
+			public void run()
+			{
+				try
+				{
+					check();
+				}
+				catch( Throwable th )
+				{
+					// exception should not stop the subsequent checks
+					LOGGER.error( "Error while checking the open sessions", th );
+				}
+			}
+		}, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS );
+		LOGGER.info( "session leak tracking started. " + this );
+	}
+
+	/**
+	 * Stops checking the open sessions. Sessions are still tracked on open and close.
+	 */
+	public synchronized void stop()
+	{
+		if( checker != null )
+		{
+			checker.shutdownNow();
+			checker = null;
+		}
+	}
+
+	/**
+	 * Starts tracking the given session, opened for current thread
+	 */
+	void sessionOpened( Session session, boolean replica )
+	{
+		trackedSessions.put( session, new TrackedSession( sessionSequence.incrementAndGet(), replica, Thread
+				.currentThread(), captureStack ? new Throwable().getStackTrace() : null ) );
+	}
+
+	/**
+	 * Stops tracking the given session, as it is being closed by its thread
+	 * 
+	 * @return false if session was not tracked, like if it was already closed by tracker
+	 */
+	boolean sessionClosed( Session session )
+	{
+		return trackedSessions.remove( session ) != null;
+	}
+
+	/**
+	 * Checks all the open sessions, and counts, logs and closes the leaked ones as configured
+	 * 
+	 * @return Number of sessions found leaked in this check
+	 */
+	public int check()
+	{
+		long now = System.currentTimeMillis();
+		int leakedNow = 0;
+		for( Iterator iterator = trackedSessions.entrySet().iterator(); iterator.hasNext(); )
+		{
+			Map.Entry entry = (Map.Entry) iterator.next();
+			Session session = (Session) entry.getKey();
+			TrackedSession trackedSession = (TrackedSession) entry.getValue();
+
+			Thread thread = (Thread) trackedSession.thread.get();
+			boolean threadEnded = thread == null || !thread.isAlive();
+			boolean overAge = maxAgeMillis > 0 && now - trackedSession.openTime > maxAgeMillis;
+			if( !threadEnded && !overAge )
+			{
+				continue;
+			}
+			if( !trackedSession.leaked )
+			{
+				trackedSession.leaked = true;
+				leakCount.incrementAndGet();
+				leakedNow++;
+				OpenSessionInfo sessionInfo = trackedSession.getInfo( session, now );
+				LOGGER.warn( "session leak detected. " + sessionInfo + " maxAgeMillis[" + maxAgeMillis
+						+ "] acquisitionStack\n" + sessionInfo.getAcquisitionStackAsString() );
+			}
+			if( threadEnded || forceClose )
+			{
+				forceClose( session, trackedSession );
+			}
+		}
+		return leakedNow;
+	}
+
+	private void forceClose( Session session, TrackedSession trackedSession )
+	{
+		if( trackedSessions.remove( session ) == null )
+		{
+			// closed by its thread meanwhile
+			return;
+		}
+		try
+		{
+			if( session.isOpen() )
+			{
+				session.close();
+			}
+			forceClosedCount.incrementAndGet();
+			LOGGER.warn( "leaked session closed. sessionId[" + trackedSession.sessionId + "] thread["
+					+ trackedSession.threadName + "]" );
+		}
+		catch( Throwable th )
+		{
+			LOGGER.error( "Error while closing the leaked session. sessionId[" + trackedSession.sessionId
+					+ "] thread[" + trackedSession.threadName + "]", th );
+		}
+	}
+
+	/**
+	 * @return Information of all the open tracked sessions, oldest first
+	 */
+	public List getOpenSessions()
+	{
+		long now = System.currentTimeMillis();
+		List openSessions = new ArrayList( trackedSessions.size() );
+		for( Iterator iterator = trackedSessions.entrySet().iterator(); iterator.hasNext(); )
+		{
+			Map.Entry entry = (Map.Entry) iterator.next();
+			openSessions.add( ( (TrackedSession) entry.getValue() ).getInfo( (Session) entry.getKey(), now ) );
+		}
+		Collections.sort( openSessions, new Comparator()
+		{
+
+			public int compare( Object o1, Object o2 )
+			{
+				long openTime1 = ( (OpenSessionInfo) o1 ).getOpenTime();
+				long openTime2 = ( (OpenSessionInfo) o2 ).getOpenTime();
+				return openTime1 < openTime2 ? -1 : ( openTime1 == openTime2 ? 0 : 1 );
+			}
+		} );
+		return openSessions;
+	}
+
+	/**
+	 * @return Number of open tracked sessions
+	 */
+	public int getOpenSessionCount()
+	{
+		return trackedSessions.size();
+	}
+
+	/**
+	 * @return Number of sessions opened since tracker was created
+	 */
+	public long getOpenedSessionCount()
+	{
+		return sessionSequence.get();
+	}
+
+	/**
+	 * @return Number of sessions counted as leaked since tracker was created
+	 */
+	public long getLeakCount()
+	{
+		return leakCount.get();
+	}
+
+	/**
+	 * @return Number of leaked sessions closed by tracker since it was created
+	 */
+	public long getForceClosedCount()
+	{
+		return forceClosedCount.get();
+	}
+
+	public long getMaxAgeMillis()
+	{
+		return maxAgeMillis;
+	}
+
+	public boolean isForceClose()
+	{
+		return forceClose;
+	}
+
+	public String toString()
+	{
+		return "SessionLeakTracker: maxAgeMillis[" + maxAgeMillis + "] forceClose[" + forceClose + "] captureStack["
+				+ captureStack + "] checkIntervalMillis[" + checkIntervalMillis + "] openSessionCount["
+				+ getOpenSessionCount() + "] leakCount[" + getLeakCount() + "] forceClosedCount["
+				+ getForceClosedCount() + "]";
+	}
+
+	/**
+	 * Details of one open session, recorded when it was opened
+	 */
+	private static final class TrackedSession
+	{
+
+		private final long					sessionId;
+
+		private final boolean				replica;
+
+		private final long					openTime;
+
+		/**
+		 * Thread is weakly referred, so that tracked session does not keep an ended thread in memory
+		 */
+		private final WeakReference			thread;
+
+		private final String				threadName;
+
+		private final long					threadId;
+
+		private final StackTraceElement[]	acquisitionStack;
+
+		private volatile boolean			leaked;
+
+		private TrackedSession( long sessionId, boolean replica, Thread thread, StackTraceElement[] acquisitionStack )
+		{
+			this.sessionId = sessionId;
+			this.replica = replica;
+			this.openTime = System.currentTimeMillis();
+			this.thread = new WeakReference( thread );
+			this.threadName = thread.getName();
+			this.threadId = thread.getId();
+			this.acquisitionStack = acquisitionStack;
+		}
+
+		private OpenSessionInfo getInfo( Session session, long now )
+		{
+			// session belongs to other thread, so counts are read on best effort basis
+			int entityCount = -1;
+			int collectionCount = -1;
+			try
+			{
+				SessionStatistics statistics = session.getStatistics();
+				entityCount = statistics.getEntityCount();
+				collectionCount = statistics.getCollectionCount();
+			}
+			catch( RuntimeException e )
+			{
+				LOGGER.debug( "could not read the statistics of session. sessionId[" + sessionId + "]", e );
+			}
+			Thread owner = (Thread) thread.get();
+			return new OpenSessionInfo( sessionId, replica, openTime, now, threadName, threadId, owner != null
+					&& owner.isAlive(), entityCount, collectionCount, leaked, acquisitionStack );
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hibernate.Session;
+
+
+/**
+ * Unit of work opened by HibernateUtil.inSession or inTransaction. It owns the session of the thread which opened it,
+ * and closes it when unit of work ends.
+ * 
+ * Tasks propagated from the scope to other threads work with the same session. As session is not thread safe,
+ * propagated tasks are executed one at a time using lock of scope, and scope waits for the running propagated task
+ * before closing the session.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class SessionScope
+{
+
+	private final Session		session;
+
+	private final String		ownerThreadName;
+
+	private final ReentrantLock	lock	= new ReentrantLock();
+
+	private volatile boolean	closed;
+
+	SessionScope( Session session )
+	{
+		this.session = session;
+		this.ownerThreadName = Thread.currentThread().getName();
+	}
+
+	Session getSession()
+	{
+		return session;
+	}
+
+	/**
+	 * Acquires the scope for a propagated task. It should be released using release, after the task.
+	 * 
+	 * @return false if scope is already closed, and then it is not acquired
+	 */
+	boolean acquire()
+	{
+		lock.lock();
+		if( closed )
+		{
+			lock.unlock();
+			return false;
+		}
+		return true;
+	}
+
+	void release()
+	{
+		lock.unlock();
+	}
+
+	/**
+	 * Marks the scope as closed, after waiting for the running propagated task if any. Propagated tasks started after
+	 * this are rejected.
+	 */
+	void close()
+	{
+		lock.lock();
+		try
+		{
+			closed = true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	boolean isClosed()
+	{
+		return closed;
+	}
+
+	public String toString()
+	{
+		return "SessionScope: ownerThread[" + ownerThreadName + "] closed[" + closed + "]";
+	}
+
+}
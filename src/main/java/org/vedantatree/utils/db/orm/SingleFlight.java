@@ -0,0 +1,244 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.vedantatree.utils.exceptions.IErrorCodes;
+import org.vedantatree.utils.exceptions.db.DAOException;
+
+
+/**
+ * Coalesces the identical calls made concurrently by different threads, so that only one of these is executed and
+ * others wait for it and share its result. It is used by HibernateUtil for read queries, so that a burst of same query
+ * from many threads, like when a popular page is loaded, goes to database once.
+ * 
+ * Call is coalesced only with a call which is in flight, i.e. result is never kept after the call completes. But the
+ * call in flight may have started before the waiting call, so its result can miss a write committed just before the
+ * waiting call. A caller which has written, and should see its own write, passes the sequence of flights taken after
+ * its commit, and is then coalesced only with a call started after that. Failure of call is shared as well, with all
+ * the waiting callers.
+ * 
+ * Callers get the same result object, so it should either be immutable or be copied by caller, and should be used as
+ * read only.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class SingleFlight
+{
+
+	private static Log				LOGGER			= LogFactory.getLog( SingleFlight.class );
+
+	private final boolean			enabled;
+
+	/**
+	 * Key of call to FutureTask executing it
+	 */
+	private final ConcurrentHashMap	inFlightCalls	= new ConcurrentHashMap();
+
+	/**
+	 * Sequence of flights, incremented before each call is started
+	 */
+	private final AtomicLong		flightSequence	= new AtomicLong();
+
+	private final AtomicLong		executionCount	= new AtomicLong();
+	private final AtomicLong		coalescedCount	= new AtomicLong();
+
+	/**
+	 * @param enabled false to execute every call separately
+	 */
+	public SingleFlight( boolean enabled )
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Executes the given call, or waits for the identical call in flight and returns its result
+	 * 
+	 * @param key Key identifying the call, with proper equals and hashCode
+	 * @param call Call to execute
+	 * @return Result of call, shared with other callers of same key
+	 * @throws DAOException If call fails, or thread is interrupted while waiting
+	 */
+	public Object execute( Object key, Callable call ) throws DAOException
+	{
+		return execute( key, call, 0 );
+	}
+
+	/**
+	 * Executes the given call, or waits for the identical call in flight if that has started after given sequence
+	 * 
+	 * @param key Key identifying the call, with proper equals and hashCode
+	 * @param call Call to execute
+	 * @param minSequence Sequence as returned by getSequence, after which call in flight should have started to be
+	 *        shared. Zero to share any call in flight.
+	 * @return Result of call
+	 * @throws DAOException If call fails, or thread is interrupted while waiting
+	 */
+	public Object execute( Object key, Callable call, long minSequence ) throws DAOException
+	{
+		if( !enabled )
+		{
+			return callDirectly( call );
+		}
+
+		Flight task = new Flight( call, flightSequence.incrementAndGet() );
+		Flight inFlightTask = (Flight) inFlightCalls.putIfAbsent( key, task );
+		if( inFlightTask != null && inFlightTask.sequence <= minSequence )
+		{
+			// call in flight may have read before the write of caller was committed
+			executionCount.incrementAndGet();
+			LOGGER.debug( "call in flight has started before the write of caller, executing separately. key[" + key
+					+ "]" );
+			return callDirectly( call );
+		}
+		if( inFlightTask == null )
+		{
+			executionCount.incrementAndGet();
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				inFlightCalls.remove( key, task );
+			}
+			return getResult( task, key );
+		}
+
+		coalescedCount.incrementAndGet();
+		LOGGER.debug( "call coalesced with the call in flight. key[" + key + "]" );
+		return getResult( inFlightTask, key );
+	}
+
+	private static Object callDirectly( Callable call ) throws DAOException
+	{
+		try
+		{
+			return call.call();
+		}
+		catch( DAOException e )
+		{
+			throw e;
+		}
+		catch( RuntimeException e )
+		{
+			throw e;
+		}
+		catch( Exception e )
+		{
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR, "Error while executing the call", e );
+			LOGGER.error( de );
+			throw de;
+		}
+	}
+
+	private static Object getResult( FutureTask task, Object key ) throws DAOException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR,
+					"Interrupted while waiting for the call in flight. key[" + key + "]", e );
+			LOGGER.error( de );
+			throw de;
+		}
+		catch( ExecutionException e )
+		{
+			Throwable cause = e.getCause();
+			if( cause instanceof DAOException )
+			{
+				throw (DAOException) cause;
+			}
+			if( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException) cause;
+			}
+			if( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+			DAOException de = new DAOException( IErrorCodes.DAO_ERROR, "Error while executing the call. key[" + key
+					+ "]", cause );
+			LOGGER.error( de );
+			throw de;
+		}
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @return Sequence of the latest call started. Calls started after this have a greater sequence.
+	 */
+	public long getSequence()
+	{
+		return flightSequence.get();
+	}
+
+	/**
+	 * @return Number of calls executed
+	 */
+	public long getExecutionCount()
+	{
+		return executionCount.get();
+	}
+
+	/**
+	 * @return Number of calls which were not executed, and shared the result of identical call in flight
+	 */
+	public long getCoalescedCount()
+	{
+		return coalescedCount.get();
+	}
+
+	/**
+	 * @return Number of calls in flight
+	 */
+	public int getInFlightCount()
+	{
+		return inFlightCalls.size();
+	}
+
+	/**
+	 * @return Ratio of coalesced calls to all the calls
+	 */
+	public double getCoalesceRatio()
+	{
+		long coalesced = coalescedCount.get();
+		long total = executionCount.get() + coalesced;
+		return total == 0 ? 0 : (double) coalesced / total;
+	}
+
+	public String toString()
+	{
+		return "SingleFlight: enabled[" + enabled + "] executions[" + getExecutionCount() + "] coalesced["
+				+ getCoalescedCount() + "] inFlight[" + getInFlightCount() + "]";
+	}
+
+	/**
+	 * Call in flight, with the sequence taken before it was started
+	 */
+	private static final class Flight extends FutureTask
+	{
+
+		private final long	sequence;
+
+		private Flight( Callable call, long sequence )
+		{
+			super( call );
+			this.sequence = sequence;
+		}
+	}
+
+}
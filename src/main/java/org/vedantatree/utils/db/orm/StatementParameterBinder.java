@@ -0,0 +1,292 @@
+package org.vedantatree.utils.db.orm;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Binds the typed parameters to JDBC prepared and callable statements.
+ * 
+ * Parameters are passed as a list of type and value pairs, i.e. type of first parameter, value of first parameter,
+ * type of second parameter and so on. Type can be given either as Integer of java.sql.Types, or as Class of value.
+ * Null values are bound as SQL null of given type.
+ * 
+ * Supported types are character (CHAR, VARCHAR, LONGVARCHAR, CLOB), numeric (TINYINT, SMALLINT, INTEGER, BIGINT,
+ * REAL, FLOAT, DOUBLE), DECIMAL and NUMERIC, BOOLEAN and BIT, DATE, TIME and TIMESTAMP, and binary (BINARY, VARBINARY,
+ * LONGVARBINARY, BLOB). Values of other types are bound with setObject. java.util.Date values are converted to the
+ * java.sql type asked for.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+final class StatementParameterBinder
+{
+
+	private static Log	LOGGER	= LogFactory.getLog( StatementParameterBinder.class );
+
+	private StatementParameterBinder()
+	{
+	}
+
+	/**
+	 * Binds the given type and value pairs to statement, starting from first parameter
+	 * 
+	 * @param statement Statement to bind the parameters to
+	 * @param parameters Type and value pairs, can be null if there is no parameter
+	 * @return Number of parameters bound
+	 */
+	static int bindParameters( PreparedStatement statement, List parameters ) throws SQLException
+	{
+		if( parameters == null || parameters.isEmpty() )
+		{
+			return 0;
+		}
+		if( parameters.size() % 2 != 0 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException(
+					"Parameters should be type and value pairs, however number of elements is odd. parameters["
+							+ parameters + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		int parameterIndex = 0;
+		for( Iterator iterator = parameters.iterator(); iterator.hasNext(); )
+		{
+			Object parameterType = iterator.next();
+			Object parameterValue = iterator.next();
+			bindParameter( statement, ++parameterIndex, getSQLType( parameterType ), parameterValue );
+		}
+		return parameterIndex;
+	}
+
+	/**
+	 * @param parameterType Integer of java.sql.Types, or Class of value
+	 * @return Type from java.sql.Types
+	 */
+	static int getSQLType( Object parameterType )
+	{
+		if( parameterType instanceof Integer )
+		{
+			return ( (Integer) parameterType ).intValue();
+		}
+		if( parameterType instanceof Class )
+		{
+			return getSQLType( (Class) parameterType );
+		}
+		IllegalArgumentException iae = new IllegalArgumentException(
+				"Parameter type should be Integer of java.sql.Types or Class of value. parameterType[" + parameterType
+						+ "]" );
+		LOGGER.error( iae );
+		throw iae;
+	}
+
+	/**
+	 * @return Type from java.sql.Types for given class of values, Types.OTHER if class is not a known JDBC type
+	 */
+	static int getSQLType( Class clazz )
+	{
+		if( String.class.equals( clazz ) )
+		{
+			return Types.VARCHAR;
+		}
+		if( Integer.class.equals( clazz ) || Integer.TYPE.equals( clazz ) )
+		{
+			return Types.INTEGER;
+		}
+		if( Long.class.equals( clazz ) || Long.TYPE.equals( clazz ) )
+		{
+			return Types.BIGINT;
+		}
+		if( BigDecimal.class.equals( clazz ) || BigInteger.class.equals( clazz ) )
+		{
+			return Types.DECIMAL;
+		}
+		if( Double.class.equals( clazz ) || Double.TYPE.equals( clazz ) )
+		{
+			return Types.DOUBLE;
+		}
+		if( Float.class.equals( clazz ) || Float.TYPE.equals( clazz ) )
+		{
+			return Types.REAL;
+		}
+		if( Short.class.equals( clazz ) || Short.TYPE.equals( clazz ) )
+		{
+			return Types.SMALLINT;
+		}
+		if( Byte.class.equals( clazz ) || Byte.TYPE.equals( clazz ) )
+		{
+			return Types.TINYINT;
+		}
+		if( Boolean.class.equals( clazz ) || Boolean.TYPE.equals( clazz ) )
+		{
+			return Types.BOOLEAN;
+		}
+		if( Character.class.equals( clazz ) || Character.TYPE.equals( clazz ) )
+		{
+			return Types.CHAR;
+		}
+		if( java.sql.Date.class.equals( clazz ) )
+		{
+			return Types.DATE;
+		}
+		if( Time.class.equals( clazz ) )
+		{
+			return Types.TIME;
+		}
+		if( Timestamp.class.equals( clazz ) || Date.class.equals( clazz ) )
+		{
+			return Types.TIMESTAMP;
+		}
+		if( byte[].class.equals( clazz ) )
+		{
+			return Types.VARBINARY;
+		}
+		return Types.OTHER;
+	}
+
+	/**
+	 * Binds the given value as given SQL type
+	 * 
+	 * @param statement Statement to bind the parameter to
+	 * @param parameterIndex Index of parameter, starting from 1
+	 * @param sqlType Type from java.sql.Types
+	 * @param parameterValue Value to bind, can be null
+	 */
+	static void bindParameter( PreparedStatement statement, int parameterIndex, int sqlType, Object parameterValue )
+			throws SQLException
+	{
+		if( parameterValue == null )
+		{
+			statement.setNull( parameterIndex, sqlType == Types.OTHER ? Types.NULL : sqlType );
+			return;
+		}
+		switch( sqlType )
+		{
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.CLOB:
+				if( parameterValue instanceof Character )
+				{
+					parameterValue = parameterValue.toString();
+				}
+				statement.setString( parameterIndex, (String) assertValueType( parameterValue, String.class,
+						sqlType ) );
+				break;
+
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				Number number = (Number) assertValueType( parameterValue, Number.class, sqlType );
+				if( number instanceof Long || number instanceof BigInteger )
+				{
+					// bound as long, so that a value out of int range is not truncated silently
+					statement.setLong( parameterIndex, toLong( number, sqlType ) );
+				}
+				else
+				{
+					statement.setInt( parameterIndex, number.intValue() );
+				}
+				break;
+
+			case Types.BIGINT:
+				statement.setLong( parameterIndex, toLong( (Number) assertValueType( parameterValue, Number.class,
+						sqlType ), sqlType ) );
+				break;
+
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				assertValueType( parameterValue, Number.class, sqlType );
+				statement.setBigDecimal( parameterIndex, parameterValue instanceof BigDecimal
+						? (BigDecimal) parameterValue : new BigDecimal( parameterValue.toString() ) );
+				break;
+
+			case Types.REAL:
+				statement.setFloat( parameterIndex, ( (Number) assertValueType( parameterValue, Number.class,
+						sqlType ) ).floatValue() );
+				break;
+
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				statement.setDouble( parameterIndex, ( (Number) assertValueType( parameterValue, Number.class,
+						sqlType ) ).doubleValue() );
+				break;
+
+			case Types.BOOLEAN:
+			case Types.BIT:
+				statement.setBoolean( parameterIndex, ( (Boolean) assertValueType( parameterValue, Boolean.class,
+						sqlType ) ).booleanValue() );
+				break;
+
+			case Types.DATE:
+				Date date = (Date) assertValueType( parameterValue, Date.class, sqlType );
+				statement.setDate( parameterIndex, date instanceof java.sql.Date ? (java.sql.Date) date
+						: new java.sql.Date( date.getTime() ) );
+				break;
+
+			case Types.TIME:
+				Date time = (Date) assertValueType( parameterValue, Date.class, sqlType );
+				statement.setTime( parameterIndex, time instanceof Time ? (Time) time : new Time( time.getTime() ) );
+				break;
+
+			case Types.TIMESTAMP:
+				Date timestamp = (Date) assertValueType( parameterValue, Date.class, sqlType );
+				statement.setTimestamp( parameterIndex, timestamp instanceof Timestamp ? (Timestamp) timestamp
+						: new Timestamp( timestamp.getTime() ) );
+				break;
+
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				statement.setBytes( parameterIndex, (byte[]) assertValueType( parameterValue, byte[].class, sqlType ) );
+				break;
+
+			case Types.OTHER:
+				statement.setObject( parameterIndex, parameterValue );
+				break;
+
+			default:
+				statement.setObject( parameterIndex, parameterValue, sqlType );
+		}
+	}
+
+	/**
+	 * Returns the value as long, or throws exception if it is a BigInteger out of long range
+	 */
+	private static long toLong( Number number, int sqlType )
+	{
+		if( number instanceof BigInteger && ( (BigInteger) number ).bitLength() > 63 )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Parameter type is " + sqlType
+					+ ", however parameter value is out of range of long. parameterValue[" + number + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		return number.longValue();
+	}
+
+	private static Object assertValueType( Object parameterValue, Class expectedClass, int sqlType )
+	{
+		if( !expectedClass.isInstance( parameterValue ) )
+		{
+			IllegalArgumentException iae = new IllegalArgumentException( "Parameter type is " + sqlType
+					+ ", however parameter value is of different type. parameterValue[" + parameterValue + "] class["
+					+ parameterValue.getClass() + "]" );
+			LOGGER.error( iae );
+			throw iae;
+		}
+		return parameterValue;
+	}
+
+}
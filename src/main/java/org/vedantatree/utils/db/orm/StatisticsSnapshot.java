@@ -0,0 +1,382 @@
+package org.vedantatree.utils.db.orm;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+
+/**
+ * Point in time copy of Hibernate statistics of a session factory.
+ * 
+ * Hibernate keeps the statistics as running counters since the start of session factory, or since these were cleared
+ * last time. Snapshot copies these counters, so that these can be read and published without touching the live
+ * statistics again.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class StatisticsSnapshot implements Serializable
+{
+
+	private static final long	serialVersionUID	= 2014061201L;
+
+	private final long			captureTime;
+	private final long			statisticsStartTime;
+
+	private final long			sessionOpenCount;
+	private final long			sessionCloseCount;
+	private final long			connectCount;
+	private final long			transactionCount;
+
+	private final long			entityLoadCount;
+	private final long			entityFetchCount;
+	private final long			entityInsertCount;
+	private final long			entityUpdateCount;
+	private final long			entityDeleteCount;
+	private final long			collectionLoadCount;
+	private final long			collectionFetchCount;
+
+	private final long			queryExecutionCount;
+	private final long			queryExecutionMaxTime;
+	private final String		queryExecutionMaxTimeQueryString;
+
+	private final long			secondLevelCacheHitCount;
+	private final long			secondLevelCacheMissCount;
+	private final long			secondLevelCachePutCount;
+
+	private final List			queryEntries;
+	private final List			cacheRegionEntries;
+
+	public StatisticsSnapshot( Statistics statistics )
+	{
+		captureTime = System.currentTimeMillis();
+		statisticsStartTime = statistics.getStartTime();
+
+		sessionOpenCount = statistics.getSessionOpenCount();
+		sessionCloseCount = statistics.getSessionCloseCount();
+		connectCount = statistics.getConnectCount();
+		transactionCount = statistics.getTransactionCount();
+
+		entityLoadCount = statistics.getEntityLoadCount();
+		entityFetchCount = statistics.getEntityFetchCount();
+		entityInsertCount = statistics.getEntityInsertCount();
+		entityUpdateCount = statistics.getEntityUpdateCount();
+		entityDeleteCount = statistics.getEntityDeleteCount();
+		collectionLoadCount = statistics.getCollectionLoadCount();
+		collectionFetchCount = statistics.getCollectionFetchCount();
+
+		queryExecutionCount = statistics.getQueryExecutionCount();
+		queryExecutionMaxTime = statistics.getQueryExecutionMaxTime();
+		queryExecutionMaxTimeQueryString = statistics.getQueryExecutionMaxTimeQueryString();
+
+		secondLevelCacheHitCount = statistics.getSecondLevelCacheHitCount();
+		secondLevelCacheMissCount = statistics.getSecondLevelCacheMissCount();
+		secondLevelCachePutCount = statistics.getSecondLevelCachePutCount();
+
+		String[] queries = statistics.getQueries();
+		List queryEntries = new ArrayList( queries.length );
+		for( int i = 0; i < queries.length; i++ )
+		{
+			queryEntries.add( new QueryEntry( queries[i], statistics.getQueryStatistics( queries[i] ) ) );
+		}
+		this.queryEntries = Collections.unmodifiableList( queryEntries );
+
+		String[] regions = statistics.getSecondLevelCacheRegionNames();
+		List cacheRegionEntries = new ArrayList( regions.length );
+		for( int i = 0; i < regions.length; i++ )
+		{
+			cacheRegionEntries.add( new CacheRegionEntry( regions[i], statistics
+					.getSecondLevelCacheStatistics( regions[i] ) ) );
+		}
+		this.cacheRegionEntries = Collections.unmodifiableList( cacheRegionEntries );
+	}
+
+	/**
+	 * @return Ratio of hits to total lookups, or zero if there is no lookup
+	 */
+	static double getHitRatio( long hitCount, long missCount )
+	{
+		long lookupCount = hitCount + missCount;
+		return lookupCount == 0 ? 0 : (double) hitCount / lookupCount;
+	}
+
+	/**
+	 * Returns the queries which have taken maximum total time, i.e. average time multiplied with execution count
+	 * 
+	 * @param maxCount Maximum number of queries to return
+	 * @return List of QueryEntry in descending order of total time
+	 */
+	public List getTopQueriesByTotalTime( int maxCount )
+	{
+		List sortedEntries = new ArrayList( queryEntries );
+		Collections.sort( sortedEntries, new Comparator()
+		{
+
+			public int compare( Object o1, Object o2 )
+			{
+				long totalTime1 = ( (QueryEntry) o1 ).getTotalTime();
+				long totalTime2 = ( (QueryEntry) o2 ).getTotalTime();
+				return totalTime1 > totalTime2 ? -1 : ( totalTime1 == totalTime2 ? 0 : 1 );
+			}
+		} );
+		return sortedEntries.size() > maxCount ? sortedEntries.subList( 0, maxCount ) : sortedEntries;
+	}
+
+	public long getCaptureTime()
+	{
+		return captureTime;
+	}
+
+	public long getStatisticsStartTime()
+	{
+		return statisticsStartTime;
+	}
+
+	public long getSessionOpenCount()
+	{
+		return sessionOpenCount;
+	}
+
+	public long getSessionCloseCount()
+	{
+		return sessionCloseCount;
+	}
+
+	public long getConnectCount()
+	{
+		return connectCount;
+	}
+
+	public long getTransactionCount()
+	{
+		return transactionCount;
+	}
+
+	public long getEntityLoadCount()
+	{
+		return entityLoadCount;
+	}
+
+	public long getEntityFetchCount()
+	{
+		return entityFetchCount;
+	}
+
+	public long getEntityInsertCount()
+	{
+		return entityInsertCount;
+	}
+
+	public long getEntityUpdateCount()
+	{
+		return entityUpdateCount;
+	}
+
+	public long getEntityDeleteCount()
+	{
+		return entityDeleteCount;
+	}
+
+	public long getCollectionLoadCount()
+	{
+		return collectionLoadCount;
+	}
+
+	public long getCollectionFetchCount()
+	{
+		return collectionFetchCount;
+	}
+
+	public long getQueryExecutionCount()
+	{
+		return queryExecutionCount;
+	}
+
+	public long getQueryExecutionMaxTime()
+	{
+		return queryExecutionMaxTime;
+	}
+
+	public String getQueryExecutionMaxTimeQueryString()
+	{
+		return queryExecutionMaxTimeQueryString;
+	}
+
+	public long getSecondLevelCacheHitCount()
+	{
+		return secondLevelCacheHitCount;
+	}
+
+	public long getSecondLevelCacheMissCount()
+	{
+		return secondLevelCacheMissCount;
+	}
+
+	public long getSecondLevelCachePutCount()
+	{
+		return secondLevelCachePutCount;
+	}
+
+	public double getSecondLevelCacheHitRatio()
+	{
+		return getHitRatio( secondLevelCacheHitCount, secondLevelCacheMissCount );
+	}
+
+	/**
+	 * @return List of QueryEntry, one for each query executed
+	 */
+	public List getQueryEntries()
+	{
+		return queryEntries;
+	}
+
+	/**
+	 * @return List of CacheRegionEntry, one for each second level cache region
+	 */
+	public List getCacheRegionEntries()
+	{
+		return cacheRegionEntries;
+	}
+
+	public String toString()
+	{
+		return "StatisticsSnapshot: captureTime[" + captureTime + "] sessionsOpened[" + sessionOpenCount
+				+ "] sessionsClosed[" + sessionCloseCount + "] entityLoads[" + entityLoadCount + "] entityFetches["
+				+ entityFetchCount + "] queryExecutions[" + queryExecutionCount + "] queryMaxTime["
+				+ queryExecutionMaxTime + "] slowestQuery[" + queryExecutionMaxTimeQueryString
+				+ "] secondLevelCacheHitRatio[" + getSecondLevelCacheHitRatio() + "]";
+	}
+
+	/**
+	 * Statistics of one query
+	 */
+	public static class QueryEntry implements Serializable
+	{
+
+		private static final long	serialVersionUID	= 2014061202L;
+
+		private final String		query;
+		private final long			executionCount;
+		private final long			executionAvgTime;
+		private final long			executionMaxTime;
+		private final long			executionMinTime;
+		private final long			executionRowCount;
+
+		QueryEntry( String query, QueryStatistics queryStatistics )
+		{
+			this.query = query;
+			executionCount = queryStatistics.getExecutionCount();
+			executionAvgTime = queryStatistics.getExecutionAvgTime();
+			executionMaxTime = queryStatistics.getExecutionMaxTime();
+			executionMinTime = queryStatistics.getExecutionMinTime();
+			executionRowCount = queryStatistics.getExecutionRowCount();
+		}
+
+		public String getQuery()
+		{
+			return query;
+		}
+
+		public long getExecutionCount()
+		{
+			return executionCount;
+		}
+
+		public long getExecutionAvgTime()
+		{
+			return executionAvgTime;
+		}
+
+		public long getExecutionMaxTime()
+		{
+			return executionMaxTime;
+		}
+
+		public long getExecutionMinTime()
+		{
+			return executionMinTime;
+		}
+
+		public long getExecutionRowCount()
+		{
+			return executionRowCount;
+		}
+
+		public long getTotalTime()
+		{
+			return executionAvgTime * executionCount;
+		}
+
+		public String toString()
+		{
+			return "query[" + query + "] executions[" + executionCount + "] avgTime[" + executionAvgTime
+					+ "] maxTime[" + executionMaxTime + "] rows[" + executionRowCount + "]";
+		}
+	}
+
+	/**
+	 * Statistics of one second level cache region
+	 */
+	public static class CacheRegionEntry implements Serializable
+	{
+
+		private static final long	serialVersionUID	= 2014061203L;
+
+		private final String		regionName;
+		private final long			hitCount;
+		private final long			missCount;
+		private final long			putCount;
+		private final long			elementCountInMemory;
+
+		CacheRegionEntry( String regionName, SecondLevelCacheStatistics cacheStatistics )
+		{
+			this.regionName = regionName;
+			hitCount = cacheStatistics.getHitCount();
+			missCount = cacheStatistics.getMissCount();
+			putCount = cacheStatistics.getPutCount();
+			elementCountInMemory = cacheStatistics.getElementCountInMemory();
+		}
+
+		public String getRegionName()
+		{
+			return regionName;
+		}
+
+		public long getHitCount()
+		{
+			return hitCount;
+		}
+
+		public long getMissCount()
+		{
+			return missCount;
+		}
+
+		public long getPutCount()
+		{
+			return putCount;
+		}
+
+		public long getElementCountInMemory()
+		{
+			return elementCountInMemory;
+		}
+
+		public double getHitRatio()
+		{
+			return StatisticsSnapshot.getHitRatio( hitCount, missCount );
+		}
+
+		public String toString()
+		{
+			return "region[" + regionName + "] hits[" + hitCount + "] misses[" + missCount + "] hitRatio["
+					+ getHitRatio() + "] elementsInMemory[" + elementCountInMemory + "]";
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.vedantatree.utils.StringUtils;
+
+
+/**
+ * Describes a call of stored procedure, to be executed by HibernateUtil.executeStoredProcedure.
+ * 
+ * Parameters are added in the order of placeholders of call string. IN parameters are bound with value, OUT
+ * parameters are registered with type and their values are available in StoredProcedureResult after execution, and
+ * INOUT parameters are both. Types are from java.sql.Types, please refer to StatementParameterBinder for supported
+ * types.
+ * 
+ * <pre>
+ * StoredProcedureCall call = new StoredProcedureCall( &quot;{call sales_report(?, ?, ?)}&quot; )
+ * 		.addInParameter( Types.DATE, fromDate ).addInParameter( Types.DATE, toDate ).addOutParameter( Types.INTEGER )
+ * 		.setFetchSize( 500 ).setReadOnly( true );
+ * </pre>
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class StoredProcedureCall
+{
+
+	private final String	callString;
+
+	/**
+	 * List of Parameter, in order of placeholders
+	 */
+	private final List		parameters	= new ArrayList();
+
+	private int				fetchSize;
+
+	private boolean			readOnly;
+
+	/**
+	 * @param callString Call string, like '{call procedure_name(?, ?)}'
+	 */
+	public StoredProcedureCall( String callString )
+	{
+		StringUtils.assertQualifiedArgument( callString );
+		this.callString = callString;
+	}
+
+	/**
+	 * Adds an IN parameter
+	 * 
+	 * @param sqlType Type from java.sql.Types
+	 * @param value Value of parameter, can be null
+	 */
+	public StoredProcedureCall addInParameter( int sqlType, Object value )
+	{
+		parameters.add( new Parameter( sqlType, value, true, false ) );
+		return this;
+	}
+
+	/**
+	 * Adds an OUT parameter
+	 * 
+	 * @param sqlType Type from java.sql.Types, or driver specific type like cursor type of Oracle
+	 */
+	public StoredProcedureCall addOutParameter( int sqlType )
+	{
+		parameters.add( new Parameter( sqlType, null, false, true ) );
+		return this;
+	}
+
+	/**
+	 * Adds an INOUT parameter
+	 * 
+	 * @param sqlType Type from java.sql.Types
+	 * @param value Value of parameter, can be null
+	 */
+	public StoredProcedureCall addInOutParameter( int sqlType, Object value )
+	{
+		parameters.add( new Parameter( sqlType, value, true, true ) );
+		return this;
+	}
+
+	/**
+	 * @param fetchSize Number of rows to fetch from database in one round trip, zero or less to use driver default
+	 */
+	public StoredProcedureCall setFetchSize( int fetchSize )
+	{
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Marks the procedure as read only, like a reporting procedure. Read only procedures are executed with read replica
+	 * if configured, and do not invalidate the query result cache.
+	 */
+	public StoredProcedureCall setReadOnly( boolean readOnly )
+	{
+		this.readOnly = readOnly;
+		return this;
+	}
+
+	public String getCallString()
+	{
+		return callString;
+	}
+
+	public int getFetchSize()
+	{
+		return fetchSize;
+	}
+
+	public boolean isReadOnly()
+	{
+		return readOnly;
+	}
+
+	/**
+	 * @return List of Parameter, in order of placeholders
+	 */
+	List getParameters()
+	{
+		return Collections.unmodifiableList( parameters );
+	}
+
+	public String toString()
+	{
+		return "StoredProcedureCall: callString[" + callString + "] parameters" + parameters + " fetchSize["
+				+ fetchSize + "] readOnly[" + readOnly + "]";
+	}
+
+	/**
+	 * One parameter of call
+	 */
+	static final class Parameter
+	{
+
+		private final int		sqlType;
+
+		private final Object	value;
+
+		private final boolean	in;
+
+		private final boolean	out;
+
+		private Parameter( int sqlType, Object value, boolean in, boolean out )
+		{
+			this.sqlType = sqlType;
+			this.value = value;
+			this.in = in;
+			this.out = out;
+		}
+
+		int getSqlType()
+		{
+			return sqlType;
+		}
+
+		Object getValue()
+		{
+			return value;
+		}
+
+		boolean isIn()
+		{
+			return in;
+		}
+
+		boolean isOut()
+		{
+			return out;
+		}
+
+		public String toString()
+		{
+			return ( in ? ( out ? "INOUT" : "IN" ) : "OUT" ) + "[" + sqlType + ( in ? ", " + value : "" ) + "]";
+		}
+	}
+
+}
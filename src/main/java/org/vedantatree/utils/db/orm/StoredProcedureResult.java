@@ -0,0 +1,104 @@
+package org.vedantatree.utils.db.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Result of a stored procedure executed by HibernateUtil.executeStoredProcedure. Rows of result sets are given to row
+ * handler while execution, so result keeps only the values of OUT parameters, update counts and counters.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class StoredProcedureResult
+{
+
+	/**
+	 * Index of parameter, starting from 1, to value
+	 */
+	private final Map	outParameters	= new LinkedHashMap();
+
+	private final List	updateCounts	= new ArrayList();
+
+	private int			resultSetCount;
+
+	private long		rowCount;
+
+	StoredProcedureResult()
+	{
+	}
+
+	void addOutParameter( int parameterIndex, Object value )
+	{
+		outParameters.put( new Integer( parameterIndex ), value );
+	}
+
+	void addUpdateCount( int updateCount )
+	{
+		updateCounts.add( new Integer( updateCount ) );
+	}
+
+	void incrementResultSetCount()
+	{
+		resultSetCount++;
+	}
+
+	void incrementRowCount()
+	{
+		rowCount++;
+	}
+
+	/**
+	 * Returns the value of OUT or INOUT parameter. Cursor parameters are streamed to row handler as result sets, and
+	 * their value is not kept.
+	 * 
+	 * @param parameterIndex Index of parameter in call, starting from 1
+	 * @return Value of parameter, null if parameter is not OUT parameter or its value is SQL null
+	 */
+	public Object getOutParameter( int parameterIndex )
+	{
+		return outParameters.get( new Integer( parameterIndex ) );
+	}
+
+	/**
+	 * @return Index of parameter (Integer) to value, for all the OUT and INOUT parameters
+	 */
+	public Map getOutParameters()
+	{
+		return Collections.unmodifiableMap( outParameters );
+	}
+
+	/**
+	 * @return Update counts (Integer) returned by procedure, in order
+	 */
+	public List getUpdateCounts()
+	{
+		return Collections.unmodifiableList( updateCounts );
+	}
+
+	/**
+	 * @return Number of result sets returned by procedure, including the cursor OUT parameters
+	 */
+	public int getResultSetCount()
+	{
+		return resultSetCount;
+	}
+
+	/**
+	 * @return Number of rows given to row handler
+	 */
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+
+	public String toString()
+	{
+		return "StoredProcedureResult: outParameters" + outParameters + " updateCounts" + updateCounts
+				+ " resultSetCount[" + resultSetCount + "] rowCount[" + rowCount + "]";
+	}
+
+}
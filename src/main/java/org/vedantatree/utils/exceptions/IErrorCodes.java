@@ -66,4 +66,6 @@ public interface IErrorCodes
 
 	static int		FORMAT_OF_DATE_WRONG			= 24;
 
+	static int		OPTIMISTIC_LOCK_CONFLICT		= 25;
+
 }
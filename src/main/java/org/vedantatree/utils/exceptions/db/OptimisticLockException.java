@@ -0,0 +1,58 @@
+package org.vedantatree.utils.exceptions.db;
+
+import java.io.Serializable;
+
+import org.vedantatree.utils.exceptions.IErrorCodes;
+
+
+/**
+ * This exception is thrown when an object is updated optimistically, i.e. without locking its row, and it is found
+ * that the object has been changed by someone else since it was read. Caller can read the object again and apply its
+ * changes on latest state, or can report the conflict to user.
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class OptimisticLockException extends DAOException
+{
+
+	private static final long	serialVersionUID	= 2014101001L;
+
+	private final String		entityName;
+
+	private final Serializable	identifier;
+
+	public OptimisticLockException( String message, String entityName, Serializable identifier )
+	{
+		this( message, entityName, identifier, null );
+	}
+
+	public OptimisticLockException( String message, String entityName, Serializable identifier, Throwable th )
+	{
+		super( IErrorCodes.OPTIMISTIC_LOCK_CONFLICT, message, th );
+		this.entityName = entityName;
+		this.identifier = identifier;
+	}
+
+	/**
+	 * @return Name of entity which is found changed
+	 */
+	public String getEntityName()
+	{
+		return entityName;
+	}
+
+	/**
+	 * @return Identifier of object which is found changed
+	 */
+	public Serializable getIdentifier()
+	{
+		return identifier;
+	}
+
+	@Override
+	public String getMessage()
+	{
+		return super.getMessage() + "--entityName[" + entityName + "] identifier[" + identifier + "]";
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+
+
+/**
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class KeysetPageTest
+{
+
+	@Test
+	public void tokenKeepsValueAndTypeOfEachTaggedType()
+	{
+		Timestamp timestamp = new Timestamp( 1402387200123L );
+		timestamp.setNanos( 123456789 );
+
+		Object[] keyValues = new Object[] { "order", new Integer( 42 ), new Long( 9000000000L ), new Short( (short) 7 ),
+				new Double( 12.5 ), new Float( 2.25f ), new BigDecimal( "12345678901234567890.000123" ),
+				new BigInteger( "123456789012345678901234567890" ), Boolean.TRUE, timestamp,
+				new java.sql.Date( 1402387200000L ), new Date( 1402387200456L ) };
+
+		Object[] decoded = KeysetPage.decodeContinuationToken( KeysetPage.encodeContinuationToken( keyValues ) );
+
+		assertArrayEquals( keyValues, decoded );
+		for( int i = 0; i < keyValues.length; i++ )
+		{
+			assertEquals( keyValues[i].getClass(), decoded[i].getClass() );
+		}
+		assertEquals( 123456789, ( (Timestamp) decoded[9] ).getNanos() );
+	}
+
+	@Test
+	public void tokenKeepsSeparatorsInStringValue()
+	{
+		Object[] keyValues = new Object[] { "a,b~c d%", "\u00fcn\u00efcode" };
+
+		assertArrayEquals( keyValues, KeysetPage.decodeContinuationToken( KeysetPage
+				.encodeContinuationToken( keyValues ) ) );
+	}
+
+	@Test
+	public void tokenIsGivenOnlyIfNextPageIsAvailable()
+	{
+		Object[] keyValues = new Object[] { new Long( 10 ) };
+
+		assertEquals( KeysetPage.encodeContinuationToken( keyValues ), new KeysetPage( Collections.EMPTY_LIST,
+				keyValues, true ).getContinuationToken() );
+		assertNull( new KeysetPage( Collections.EMPTY_LIST, keyValues, false ).getContinuationToken() );
+	}
+
+	@Test
+	public void emptyTokenIsDecodedAsNull()
+	{
+		assertNull( KeysetPage.decodeContinuationToken( null ) );
+		assertNull( KeysetPage.decodeContinuationToken( "" ) );
+		assertNull( KeysetPage.encodeContinuationToken( null ) );
+	}
+
+	@Test
+	public void tamperedTokenIsRejected()
+	{
+		assertRejected( "x~10" );
+		assertRejected( "i~abc" );
+		assertRejected( "l~10,i" );
+		assertRejected( "t~1402387200123" );
+		assertRejected( "n~1.2.3" );
+		// serialized java object, as a client may try to inject
+		assertRejected( "rO0ABXNyABFqYXZhLnV0aWwuSGFzaE1hcA" );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullKeyValueIsRejected()
+	{
+		KeysetPage.encodeContinuationToken( new Object[] { "order", null } );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedKeyValueTypeIsRejected()
+	{
+		KeysetPage.encodeContinuationToken( new Object[] { new StringBuffer( "order" ) } );
+	}
+
+	private static void assertRejected( String token )
+	{
+		try
+		{
+			KeysetPage.decodeContinuationToken( token );
+			fail( "tampered token should be rejected. token[" + token + "]" );
+		}
+		catch( IllegalArgumentException e )
+		{
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+/**
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class LatencyHistogramTest
+{
+
+	@Test
+	public void smallValuesAreExact()
+	{
+		LatencyHistogram histogram = new LatencyHistogram( "test" );
+		for( int i = 0; i < 16; i++ )
+		{
+			histogram.record( i );
+		}
+
+		assertEquals( 0, histogram.getValueAtPercentile( 0 ) );
+		assertEquals( 7, histogram.getValueAtPercentile( 50 ) );
+		assertEquals( 15, histogram.getValueAtPercentile( 100 ) );
+	}
+
+	@Test
+	public void valueIsReportedWithinBucketError()
+	{
+		long[] values = new long[] { 17, 100, 999, 12345, 1000000, 987654321, 60000000000L };
+		for( int i = 0; i < values.length; i++ )
+		{
+			LatencyHistogram histogram = new LatencyHistogram( "test" );
+			histogram.record( values[i] );
+			histogram.record( values[i] + 1 );
+
+			assertWithinError( values[i], histogram.getValueAtPercentile( 50 ) );
+		}
+	}
+
+	@Test
+	public void percentilesOfUniformLatencies()
+	{
+		LatencyHistogram histogram = new LatencyHistogram( "test" );
+		for( int i = 1; i <= 10000; i++ )
+		{
+			histogram.record( i );
+		}
+
+		assertWithinError( 5000, histogram.getValueAtPercentile( 50 ) );
+		assertWithinError( 9000, histogram.getValueAtPercentile( 90 ) );
+		assertWithinError( 9900, histogram.getValueAtPercentile( 99 ) );
+		assertWithinError( 9990, histogram.getValueAtPercentile( 99.9 ) );
+		assertWithinError( 10000, histogram.getValueAtPercentile( 100 ) );
+		assertEquals( 10000, histogram.getMax() );
+		assertEquals( 10000, histogram.getCount() );
+		assertEquals( 5000.5, histogram.getMean(), 0.001 );
+	}
+
+	@Test
+	public void tailLatencyIsNotHiddenByFastCalls()
+	{
+		LatencyHistogram histogram = new LatencyHistogram( "test" );
+		for( int i = 0; i < 980; i++ )
+		{
+			histogram.record( 200 );
+		}
+		for( int i = 0; i < 20; i++ )
+		{
+			histogram.record( 50000 );
+		}
+
+		assertWithinError( 200, histogram.getValueAtPercentile( 50 ) );
+		assertWithinError( 200, histogram.getValueAtPercentile( 98 ) );
+		assertWithinError( 50000, histogram.getValueAtPercentile( 99 ) );
+	}
+
+	@Test
+	public void emptyAndResetHistogramReportsZero()
+	{
+		LatencyHistogram histogram = new LatencyHistogram( "test" );
+		assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+
+		histogram.record( 1000 );
+		histogram.record( -5 );
+		assertEquals( 0, histogram.getValueAtPercentile( 50 ) );
+
+		histogram.reset();
+		assertEquals( 0, histogram.getCount() );
+		assertEquals( 0, histogram.getMax() );
+		assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+	}
+
+	@Test
+	public void concurrentRecordingIsNotLost() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram( "test" );
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			List futures = new ArrayList();
+			for( int t = 0; t < 4; t++ )
+			{
+				futures.add( executor.submit( new Runnable()
+				{
+
+					public void run()
+					{
+						for( int i = 1; i <= 10000; i++ )
+						{
+							histogram.record( i );
+						}
+					}
+				} ) );
+			}
+			for( Iterator iter = futures.iterator(); iter.hasNext(); )
+			{
+				( (Future) iter.next() ).get();
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		assertEquals( 40000, histogram.getCount() );
+		assertEquals( 10000, histogram.getMax() );
+		assertWithinError( 5000, histogram.getValueAtPercentile( 50 ) );
+	}
+
+	/**
+	 * Asserts that reported value is within 1/16 of expected value, the error of sub buckets
+	 */
+	private static void assertWithinError( long expected, long actual )
+	{
+		assertTrue( "expected[" + expected + "] actual[" + actual + "]",
+				Math.abs( expected - actual ) <= expected / 16 );
+	}
+
+}
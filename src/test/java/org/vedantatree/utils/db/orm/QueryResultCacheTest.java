@@ -0,0 +1,163 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+/**
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class QueryResultCacheTest
+{
+
+	private static final List	RESULT	= Collections.singletonList( "result" );
+
+	@Test
+	public void resultIsCachedAgainstQueryAndParameters()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		Map parameters = new HashMap();
+		parameters.put( "status", "OPEN" );
+		cache.put( "from Order a where a.status = :status", parameters, RESULT, spaces( "ORDERS" ), cache
+				.getGeneration() );
+
+		Map sameParameters = new HashMap( parameters );
+		assertEquals( RESULT, cache.get( "from Order a where a.status = :status", sameParameters ) );
+
+		Map otherParameters = new HashMap();
+		otherParameters.put( "status", "CLOSED" );
+		assertNull( cache.get( "from Order a where a.status = :status", otherParameters ) );
+		assertEquals( 1, cache.getHitCount() );
+		assertEquals( 1, cache.getMissCount() );
+	}
+
+	@Test
+	public void resultReadBeforeInvalidationIsNotCached()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		long generation = cache.getGeneration();
+
+		// a write happens while query is executing
+		cache.invalidate( new Serializable[] { "CUSTOMERS" } );
+		cache.put( "from Order a", null, RESULT, spaces( "ORDERS" ), generation );
+
+		assertNull( cache.get( "from Order a", null ) );
+	}
+
+	@Test
+	public void resultReadBeforeClearIsNotCached()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		long generation = cache.getGeneration();
+
+		cache.clear();
+		cache.put( "from Order a", null, RESULT, spaces( "ORDERS" ), generation );
+
+		assertNull( cache.get( "from Order a", null ) );
+	}
+
+	@Test
+	public void invalidationRemovesOnlyEntriesUsingWrittenSpaces()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		cache.put( "from Order a", null, RESULT, spaces( "ORDERS" ), cache.getGeneration() );
+		cache.put( "from Customer a", null, RESULT, spaces( "CUSTOMERS" ), cache.getGeneration() );
+
+		cache.invalidate( new Serializable[] { "ORDERS" } );
+
+		assertNull( cache.get( "from Order a", null ) );
+		assertNotNull( cache.get( "from Customer a", null ) );
+		assertEquals( 1, cache.getInvalidationCount() );
+	}
+
+	@Test
+	public void entryExpiresAfterTimeToLive() throws InterruptedException
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 1 );
+		cache.put( "from Order a", null, RESULT, spaces( "ORDERS" ), cache.getGeneration() );
+
+		Thread.sleep( 20 );
+
+		assertNull( cache.get( "from Order a", null ) );
+		assertEquals( 1, cache.getExpiryCount() );
+		assertEquals( 0, cache.getSize() );
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted()
+	{
+		QueryResultCache cache = new QueryResultCache( 2, 60000 );
+		cache.put( "query1", null, RESULT, spaces( "T" ), cache.getGeneration() );
+		cache.put( "query2", null, RESULT, spaces( "T" ), cache.getGeneration() );
+		// query1 is used, so query2 becomes least recently used
+		cache.get( "query1", null );
+
+		cache.put( "query3", null, RESULT, spaces( "T" ), cache.getGeneration() );
+
+		assertNotNull( cache.get( "query1", null ) );
+		assertNull( cache.get( "query2", null ) );
+		assertNotNull( cache.get( "query3", null ) );
+		assertEquals( 1, cache.getEvictionCount() );
+	}
+
+	@Test
+	public void cachedResultIsCopied()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		cache.put( "from Order a", null, RESULT, spaces( "ORDERS" ), cache.getGeneration() );
+
+		cache.get( "from Order a", null ).clear();
+
+		assertEquals( RESULT, cache.get( "from Order a", null ) );
+	}
+
+	@Test
+	public void normalizationCollapsesWhitespaceOutsideQuotes()
+	{
+		assertEquals( "from Order a where a.status = :status", QueryResultCache
+				.normalizeQuery( "  from   Order a\n\twhere a.status =  :status  " ) );
+	}
+
+	@Test
+	public void normalizationKeepsQuotedLiterals()
+	{
+		assertEquals( "from Order a where a.note = 'two  spaces'", QueryResultCache
+				.normalizeQuery( "from Order a  where a.note = 'two  spaces'" ) );
+		assertEquals( "select \"order  name\" from ORDERS", QueryResultCache
+				.normalizeQuery( "select   \"order  name\"   from ORDERS" ) );
+	}
+
+	@Test
+	public void normalizationKeepsEscapedQuotes()
+	{
+		assertEquals( "from Order a where a.note = 'it''s  open' and a.id = 1", QueryResultCache
+				.normalizeQuery( "from Order a where a.note = 'it''s  open'   and a.id = 1" ) );
+	}
+
+	@Test
+	public void queriesDifferingInQuotedLiteralsDoNotShareEntry()
+	{
+		QueryResultCache cache = new QueryResultCache( 10, 60000 );
+		String query = QueryResultCache.normalizeQuery( "from Order a where a.note = 'a  b'" );
+		cache.put( query, null, RESULT, spaces( "ORDERS" ), cache.getGeneration() );
+
+		assertNull( cache.get( QueryResultCache.normalizeQuery( "from Order a where a.note = 'a b'" ), null ) );
+	}
+
+	private static Set spaces( String space )
+	{
+		return new HashSet( Collections.singleton( space ) );
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks that results read by a thread, while its writes are not committed, are not shared with other threads through
+ * the query result cache
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class SharedResultCachingTest
+{
+
+	private static final String	QUERY	= QueryResultCache
+													.normalizeQuery( "from Order a where a.status = :status" );
+
+	private QueryResultCache	cache;
+
+	private ExecutorService		writer;
+	private ExecutorService		reader;
+
+	@Before
+	public void setUp()
+	{
+		cache = new QueryResultCache( 100, 60000 );
+		writer = Executors.newSingleThreadExecutor();
+		reader = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown()
+	{
+		writer.shutdownNow();
+		reader.shutdownNow();
+	}
+
+	@Test
+	public void rowWrittenInOpenTransactionIsNotVisibleToOtherThread() throws Exception
+	{
+		List uncommittedResult = Collections.singletonList( "order written in open transaction" );
+
+		assertFalse( putByWriter( true, false, uncommittedResult ) );
+		assertNull( "other thread should not see the uncommitted row", getByReader() );
+	}
+
+	@Test
+	public void rowWrittenBeforeCommitIsNotVisibleToOtherThread() throws Exception
+	{
+		// transaction state is not known, but write of thread is not committed by HibernateUtil yet
+		List uncommittedResult = Collections.singletonList( "order written before commit" );
+
+		assertFalse( putByWriter( false, true, uncommittedResult ) );
+		assertNull( "other thread should not see the uncommitted row", getByReader() );
+	}
+
+	@Test
+	public void resultReadOutsideTransactionIsShared() throws Exception
+	{
+		List committedResult = Collections.singletonList( "committed order" );
+
+		assertTrue( putByWriter( false, false, committedResult ) );
+		assertEquals( committedResult, getByReader() );
+	}
+
+	/**
+	 * Puts the result in cache from writer thread, as read in the given state
+	 */
+	private boolean putByWriter( final boolean transactionActive, final boolean written, final List result )
+			throws Exception
+	{
+		final long generation = cache.getGeneration();
+		return ( (Boolean) writer.submit( new Callable()
+		{
+
+			public Object call()
+			{
+				if( written )
+				{
+					HibernateUtil.deferQueryResultInvalidation( "Order" );
+				}
+				return Boolean.valueOf( HibernateUtil.putSharedResult( cache, transactionActive, QUERY, null, result,
+						querySpaces(), generation ) );
+			}
+		} ).get() ).booleanValue();
+	}
+
+	private List getByReader() throws Exception
+	{
+		return (List) reader.submit( new Callable()
+		{
+
+			public Object call()
+			{
+				return cache.get( QUERY, null );
+			}
+		} ).get();
+	}
+
+	private static Set querySpaces()
+	{
+		return new HashSet( Collections.singleton( "ORDERS" ) );
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class SingleFlightTest
+{
+
+	private static final String	KEY	= "from Order a";
+
+	private SingleFlight		singleFlight;
+
+	private ExecutorService		executor;
+
+	/**
+	 * Released when call of leader has started
+	 */
+	private CountDownLatch		started;
+
+	/**
+	 * Released by test to let the call of leader complete
+	 */
+	private CountDownLatch		release;
+
+	@Before
+	public void setUp()
+	{
+		singleFlight = new SingleFlight( true );
+		executor = Executors.newFixedThreadPool( 2 );
+		started = new CountDownLatch( 1 );
+		release = new CountDownLatch( 1 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void identicalCallInFlightIsCoalesced() throws Exception
+	{
+		Future leader = startLeader();
+		Future follower = submit( new ResultCall( "follower" ), 0 );
+		waitForCoalescedCount( 1 );
+
+		release.countDown();
+
+		assertEquals( "leader", leader.get() );
+		assertEquals( "leader", follower.get() );
+		assertEquals( 1, singleFlight.getExecutionCount() );
+		assertEquals( 1, singleFlight.getCoalescedCount() );
+		assertEquals( 0, singleFlight.getInFlightCount() );
+	}
+
+	@Test
+	public void callStartedBeforeMinSequenceIsNotShared() throws Exception
+	{
+		Future leader = startLeader();
+		// caller has committed a write after the leader started
+		long minSequence = singleFlight.getSequence();
+
+		// leader is still blocked, so this returns only if it is not coalesced
+		assertEquals( "caller", singleFlight.execute( KEY, new ResultCall( "caller" ), minSequence ) );
+
+		release.countDown();
+		assertEquals( "leader", leader.get() );
+		assertEquals( 2, singleFlight.getExecutionCount() );
+		assertEquals( 0, singleFlight.getCoalescedCount() );
+	}
+
+	@Test
+	public void callStartedAfterMinSequenceIsShared() throws Exception
+	{
+		long minSequence = singleFlight.getSequence();
+		Future leader = startLeader();
+		Future follower = submit( new ResultCall( "follower" ), minSequence );
+		waitForCoalescedCount( 1 );
+
+		release.countDown();
+
+		assertEquals( "leader", leader.get() );
+		assertEquals( "leader", follower.get() );
+		assertEquals( 1, singleFlight.getExecutionCount() );
+	}
+
+	@Test
+	public void completedCallIsNotShared() throws Exception
+	{
+		assertEquals( "first", singleFlight.execute( KEY, new ResultCall( "first" ) ) );
+		assertEquals( "second", singleFlight.execute( KEY, new ResultCall( "second" ) ) );
+		assertEquals( 2, singleFlight.getExecutionCount() );
+		assertEquals( 0, singleFlight.getCoalescedCount() );
+	}
+
+	@Test
+	public void disabledSingleFlightExecutesEveryCall() throws Exception
+	{
+		singleFlight = new SingleFlight( false );
+		Future leader = startLeader();
+
+		assertEquals( "caller", singleFlight.execute( KEY, new ResultCall( "caller" ) ) );
+
+		release.countDown();
+		assertEquals( "leader", leader.get() );
+		assertEquals( 0, singleFlight.getCoalescedCount() );
+	}
+
+	/**
+	 * Starts the call of leader, which stays in flight till release is counted down
+	 */
+	private Future startLeader() throws InterruptedException
+	{
+		Future leader = submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				started.countDown();
+				release.await();
+				return "leader";
+			}
+		}, 0 );
+		started.await();
+		return leader;
+	}
+
+	private Future submit( final Callable call, final long minSequence )
+	{
+		return executor.submit( new Callable()
+		{
+
+			public Object call() throws Exception
+			{
+				return singleFlight.execute( KEY, call, minSequence );
+			}
+		} );
+	}
+
+	private void waitForCoalescedCount( long count ) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+		while( singleFlight.getCoalescedCount() < count && System.currentTimeMillis() < deadline )
+		{
+			Thread.sleep( 5 );
+		}
+		assertEquals( count, singleFlight.getCoalescedCount() );
+	}
+
+	private static final class ResultCall implements Callable
+	{
+
+		private final Object	result;
+
+		private ResultCall( Object result )
+		{
+			this.result = result;
+		}
+
+		public Object call()
+		{
+			return result;
+		}
+	}
+
+}
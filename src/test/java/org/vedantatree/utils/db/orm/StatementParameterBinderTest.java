@@ -0,0 +1,235 @@
+package org.vedantatree.utils.db.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks the setter of statement used for each type, using a statement which records the calls made to it
+ * 
+ * @author Mohit Gupta [mohit.gupta@vedantatree.com]
+ */
+public class StatementParameterBinderTest
+{
+
+	/**
+	 * Calls made to statement, as method name followed by arguments
+	 */
+	private List				calls;
+
+	private PreparedStatement	statement;
+
+	@Before
+	public void setUp()
+	{
+		calls = new ArrayList();
+		statement = (PreparedStatement) Proxy.newProxyInstance( getClass().getClassLoader(),
+				new Class[] { PreparedStatement.class }, new InvocationHandler()
+				{
+
+					public Object invoke( Object proxy, Method method, Object[] args )
+					{
+						List call = new ArrayList();
+						call.add( method.getName() );
+						if( args != null )
+						{
+							call.addAll( Arrays.asList( args ) );
+						}
+						calls.add( call );
+						return null;
+					}
+				} );
+	}
+
+	@Test
+	public void classIsMappedToSQLType()
+	{
+		assertEquals( Types.VARCHAR, StatementParameterBinder.getSQLType( String.class ) );
+		assertEquals( Types.INTEGER, StatementParameterBinder.getSQLType( Integer.class ) );
+		assertEquals( Types.INTEGER, StatementParameterBinder.getSQLType( Integer.TYPE ) );
+		assertEquals( Types.BIGINT, StatementParameterBinder.getSQLType( Long.class ) );
+		assertEquals( Types.DECIMAL, StatementParameterBinder.getSQLType( BigDecimal.class ) );
+		assertEquals( Types.DECIMAL, StatementParameterBinder.getSQLType( BigInteger.class ) );
+		assertEquals( Types.DOUBLE, StatementParameterBinder.getSQLType( Double.class ) );
+		assertEquals( Types.REAL, StatementParameterBinder.getSQLType( Float.class ) );
+		assertEquals( Types.SMALLINT, StatementParameterBinder.getSQLType( Short.class ) );
+		assertEquals( Types.TINYINT, StatementParameterBinder.getSQLType( Byte.class ) );
+		assertEquals( Types.BOOLEAN, StatementParameterBinder.getSQLType( Boolean.TYPE ) );
+		assertEquals( Types.CHAR, StatementParameterBinder.getSQLType( Character.class ) );
+		assertEquals( Types.DATE, StatementParameterBinder.getSQLType( java.sql.Date.class ) );
+		assertEquals( Types.TIME, StatementParameterBinder.getSQLType( Time.class ) );
+		assertEquals( Types.TIMESTAMP, StatementParameterBinder.getSQLType( Timestamp.class ) );
+		assertEquals( Types.TIMESTAMP, StatementParameterBinder.getSQLType( Date.class ) );
+		assertEquals( Types.VARBINARY, StatementParameterBinder.getSQLType( byte[].class ) );
+		assertEquals( Types.OTHER, StatementParameterBinder.getSQLType( StringBuffer.class ) );
+		assertEquals( Types.CLOB, StatementParameterBinder.getSQLType( new Integer( Types.CLOB ) ) );
+	}
+
+	@Test
+	public void valuesAreBoundWithSetterOfType() throws SQLException
+	{
+		byte[] bytes = new byte[] { 1, 2 };
+		BigDecimal amount = new BigDecimal( "12345678901234567890.12" );
+		int count = StatementParameterBinder.bindParameters( statement, Arrays.asList( new Object[] { String.class,
+				"order", Integer.class, new Integer( 5 ), Long.class, new Long( 9000000000L ), BigDecimal.class,
+				amount, Double.class, new Double( 1.5 ), Float.class, new Float( 2.5f ), Boolean.class, Boolean.TRUE,
+				byte[].class, bytes } ) );
+
+		assertEquals( 8, count );
+		assertCall( 0, "setString", 1, "order" );
+		assertCall( 1, "setInt", 2, new Integer( 5 ) );
+		assertCall( 2, "setLong", 3, new Long( 9000000000L ) );
+		assertCall( 3, "setBigDecimal", 4, amount );
+		assertCall( 4, "setDouble", 5, new Double( 1.5 ) );
+		assertCall( 5, "setFloat", 6, new Float( 2.5f ) );
+		assertCall( 6, "setBoolean", 7, Boolean.TRUE );
+		assertCall( 7, "setBytes", 8, bytes );
+	}
+
+	@Test
+	public void characterIsBoundAsString() throws SQLException
+	{
+		StatementParameterBinder.bindParameter( statement, 1, Types.CHAR, new Character( 'Y' ) );
+
+		assertCall( 0, "setString", 1, "Y" );
+	}
+
+	@Test
+	public void longValueOfIntegerTypeIsNotTruncated() throws SQLException
+	{
+		StatementParameterBinder.bindParameter( statement, 1, Types.INTEGER, new Long( 9000000000L ) );
+		StatementParameterBinder.bindParameter( statement, 2, Types.SMALLINT, new Short( (short) 3 ) );
+
+		assertCall( 0, "setLong", 1, new Long( 9000000000L ) );
+		assertCall( 1, "setInt", 2, new Integer( 3 ) );
+	}
+
+	@Test
+	public void bigIntegerIsBoundExactly() throws SQLException
+	{
+		StatementParameterBinder.bindParameter( statement, 1, Types.DECIMAL, new BigInteger(
+				"123456789012345678901234567890" ) );
+		StatementParameterBinder.bindParameter( statement, 2, Types.BIGINT, new BigInteger( "9000000000" ) );
+
+		assertCall( 0, "setBigDecimal", 1, new BigDecimal( "123456789012345678901234567890" ) );
+		assertCall( 1, "setLong", 2, new Long( 9000000000L ) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bigIntegerOutOfLongRangeIsRejected() throws SQLException
+	{
+		StatementParameterBinder.bindParameter( statement, 1, Types.BIGINT, new BigInteger(
+				"123456789012345678901234567890" ) );
+	}
+
+	@Test
+	public void utilDateIsConvertedToAskedSQLType() throws SQLException
+	{
+		Date date = new Date( 1402387200123L );
+		StatementParameterBinder.bindParameter( statement, 1, Types.DATE, date );
+		StatementParameterBinder.bindParameter( statement, 2, Types.TIME, date );
+		StatementParameterBinder.bindParameter( statement, 3, Types.TIMESTAMP, date );
+
+		assertCall( 0, "setDate", 1, new java.sql.Date( date.getTime() ) );
+		assertEquals( java.sql.Date.class, getArgument( 0, 2 ).getClass() );
+		assertCall( 1, "setTime", 2, new Time( date.getTime() ) );
+		assertEquals( Time.class, getArgument( 1, 2 ).getClass() );
+		assertCall( 2, "setTimestamp", 3, new Timestamp( date.getTime() ) );
+		assertEquals( Timestamp.class, getArgument( 2, 2 ).getClass() );
+	}
+
+	@Test
+	public void timestampIsBoundAsItIs() throws SQLException
+	{
+		Timestamp timestamp = new Timestamp( 1402387200123L );
+		timestamp.setNanos( 123456789 );
+		StatementParameterBinder.bindParameter( statement, 1, Types.TIMESTAMP, timestamp );
+
+		assertSame( timestamp, getArgument( 0, 2 ) );
+	}
+
+	@Test
+	public void nullIsBoundAsNullOfType() throws SQLException
+	{
+		StatementParameterBinder.bindParameters( statement, Arrays.asList( new Object[] { Long.class, null,
+				StringBuffer.class, null } ) );
+
+		assertCall( 0, "setNull", 1, new Integer( Types.BIGINT ) );
+		assertCall( 1, "setNull", 2, new Integer( Types.NULL ) );
+	}
+
+	@Test
+	public void unknownTypeIsBoundAsObject() throws SQLException
+	{
+		StringBuffer value = new StringBuffer( "order" );
+		StatementParameterBinder.bindParameters( statement, Arrays.asList( new Object[] { StringBuffer.class,
+				value } ) );
+		StatementParameterBinder.bindParameter( statement, 2, Types.ARRAY, value );
+
+		assertCall( 0, "setObject", 1, value );
+		assertEquals( Arrays.asList( new Object[] { "setObject", new Integer( 2 ), value,
+				new Integer( Types.ARRAY ) } ), calls.get( 1 ) );
+	}
+
+	@Test
+	public void valueOfDifferentTypeIsRejected() throws SQLException
+	{
+		assertRejected( Types.INTEGER, "5" );
+		assertRejected( Types.VARCHAR, new Integer( 5 ) );
+		assertRejected( Types.BOOLEAN, "true" );
+		assertRejected( Types.TIMESTAMP, new Long( 1402387200123L ) );
+		assertEquals( 0, calls.size() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void oddParametersAreRejected() throws SQLException
+	{
+		StatementParameterBinder.bindParameters( statement, Arrays.asList( new Object[] { String.class } ) );
+	}
+
+	private void assertCall( int callIndex, String methodName, int parameterIndex, Object value )
+	{
+		List call = (List) calls.get( callIndex );
+		assertEquals( methodName, call.get( 0 ) );
+		assertEquals( new Integer( parameterIndex ), call.get( 1 ) );
+		assertEquals( value, call.get( 2 ) );
+	}
+
+	private Object getArgument( int callIndex, int argumentIndex )
+	{
+		return ( (List) calls.get( callIndex ) ).get( argumentIndex );
+	}
+
+	private void assertRejected( int sqlType, Object value ) throws SQLException
+	{
+		try
+		{
+			StatementParameterBinder.bindParameter( statement, 1, sqlType, value );
+			fail( "value of different type should be rejected. sqlType[" + sqlType + "] value[" + value + "]" );
+		}
+		catch( IllegalArgumentException e )
+		{
+			// expected
+		}
+	}
+
+}